@@ -92,6 +92,8 @@
 import java.awt.*;                // older Java GUI support
 import java.awt.event.*;          // older Java GUI event support
 import java.io.*;                 // standard I/O
+import java.nio.*;                // byte buffers for large regions
+import java.nio.channels.*;       // file channels for large regions
 import java.text.*;               // number formatting
 import java.util.*;               // calendars, dates, lists, maps, vectors
 import java.util.regex.*;         // regular expressions
@@ -124,6 +126,7 @@ public class FontChecksum2
   static final int MIN_FRAME = 200; // minimum window height or width in pixels
   static final String PROGRAM_TITLE =
     "Verify Checksums in OpenType and TrueType Font Files - by: Keith Fenske";
+  static final int REGION_SIZE = 0x100000; // large region buffer (1 MB)
   static final String SYSTEM_FONT = "Dialog"; // this font is always available
   static final int TIMER_DELAY = 700; // 0.700 seconds between status updates
   static final long TTF_CHECKSUM = 0xB1B0AFBAL; // checksum for OTF/TTF files
@@ -156,6 +159,7 @@ public class FontChecksum2
   static JTextArea outputText;    // generated report if running as GUI
   static JCheckBox recurseCheckbox; // graphical option for <recurseFlag>
   static boolean recurseFlag;     // true if we process folders and subfolders
+  static ByteBuffer regionBuffer; // reuse this direct buffer for big regions
   static JButton saveButton;      // "Save" button for writing output text
   static JCheckBox showAllCheckbox; // graphical choice for <showAllFlag>
   static boolean showAllFlag;     // true if we show all files, not just errors
@@ -200,6 +204,7 @@ public class FontChecksum2
     maximizeFlag = false;         // by default, don't maximize our main window
     mswinFlag = System.getProperty("os.name").startsWith("Windows");
     recurseFlag = false;          // by default, don't process subfolders
+    regionBuffer = ByteBuffer.allocateDirect(REGION_SIZE); // for big regions
     showAllFlag = false;          // by default, show only files with errors
     statusPending = EMPTY_STATUS; // begin with no text for <statusDialog>
     totalCorrect = totalErrors = totalFiles = totalWarning = 0; // counters
@@ -605,6 +610,7 @@ public class FontChecksum2
     int numTables;                // number of entries in "Offset Table"
     String prevTagName;           // previous entry tag name or null
     RandomAccessFile ramFile;     // file stream for reading font file
+    TreeMap regionSums;           // checksums for all table regions in file
     long signature;               // signature bytes from beginning of file
     boolean stopFlag;             // local flag to stop processing file
     String stopText;              // message for why we stopped processing
@@ -776,6 +782,8 @@ public class FontChecksum2
 
       if ((!cancelFlag) && (!stopFlag)) // continue only if no errors so far
       {
+        regionSums = checkFileTables(ramFile, fileSize, fontOffsets, numFonts);
+                                  // read all tables once, in file order
         for (curFont = 0; curFont < numFonts; curFont ++) // first <for> loop
         {
           if (cancelFlag)         // stop if user hit the panic button
@@ -845,8 +853,8 @@ public class FontChecksum2
             continue;             // restart first <for> loop
           }
 
-          /* Calculate and compare checksums for each table directory listed in
-          the current "Offset Table". */
+          /* Compare checksums for each table directory listed in the current
+          "Offset Table", using what checkFileTables() calculated. */
 
           badNameOrder = false;   // assume entry tag names in correct order
           prevTagName = null;     // there is no previous entry tag name
@@ -932,7 +940,8 @@ public class FontChecksum2
             }
 
             maxFileUsed = Math.max(maxFileUsed, (entryOffset + entryLength));
-            signature = checkFileRegion(ramFile, entryOffset, entryLength);
+            signature = ((Long) regionSums.get(new Long((entryOffset << 32)
+              | entryLength))).longValue(); // already summed by region
             if (cancelFlag)       // stop if user hit the panic button
             {
               stopFlag = true;    // stop looking at this file
@@ -941,8 +950,9 @@ public class FontChecksum2
             }
             if (entryName.equals("head") && (entryLength >= 12))
             {
-              ramFile.seek(entryOffset + 8); // find "checkSumAdjustment"
-              long checkSumAdjustment = ((long) ramFile.readInt()) & INT_MASK;
+              long checkSumAdjustment = ((Long) regionSums.get(new Long(
+                ((entryOffset + 8) << 32) | 4))).longValue();
+                                  // "checkSumAdjustment" as 4-byte region
               signature = (signature - checkSumAdjustment) & INT_MASK;
             }
             if (entryChecksum == signature) // did we get the same checksum?
@@ -1121,7 +1131,12 @@ public class FontChecksum2
 
   Font file checksums are simple sums of 4-byte integers, ignoring overflow.
   If the given length to read is not a multiple of four bytes, then we supply
-  imaginary zero bytes.
+  imaginary zero bytes.  Small regions (most tables) are read into our input
+  buffer.  Large regions (glyph outlines, or the whole file) are read through
+  the file channel into a direct buffer, in pieces of REGION_SIZE bytes.  We
+  don't map the file into memory: mappings are released only by garbage
+  collection, and Windows won't rename a mapped file (-cornish option).
+  Either way, sumWords() does the actual adding.
 */
   static long checkFileRegion(
     RandomAccessFile ramFile,     // file stream for reading font file
@@ -1129,36 +1144,142 @@ public class FontChecksum2
     long length)                  // length to read in bytes
     throws IOException            // comes from read() and seek()
   {
-    int bytesRead;                // number of bytes successfully read this I/O
-    long bytesWanted;             // maximum number of bytes wanted on this I/O
-    int i;                        // index variable
+    FileChannel channel;          // file channel for reading large regions
+    long done;                    // number of bytes processed so far
     long result;                  // our calculated checksum
-    long totalRead;               // total bytes read and processed for all I/O
+    int size;                     // number of bytes to read this time
+
+    if ((offset + length) > ramFile.length()) // don't go past end of file
+      length = Math.max(0, (ramFile.length() - offset));
 
-    ramFile.seek(offset);         // position to start of selected region
-    result = 0;                   // simple checksums start with zero sum
-    totalRead = 0;                // no bytes read and processed yet
-    while ((!cancelFlag) && (totalRead < length))
+    if (length <= BUFFER_SIZE)    // small enough for our input buffer?
+    {
+      ramFile.seek(offset);       // position to start of selected region
+      ramFile.readFully(inputBuffer, 0, (int) length);
+      result = sumWords(ByteBuffer.wrap(inputBuffer, 0, (int) length));
+    }
+    else                          // read large regions, one piece at a time
     {
-      bytesWanted = length - totalRead; // can we do all bytes at once?
-      if (bytesWanted > BUFFER_SIZE) // no, asking for too much
-        bytesWanted = BUFFER_SIZE; // so reduce to actual size of buffer
-      bytesRead = ramFile.read(inputBuffer, 0, (int) bytesWanted);
-      if (bytesRead <= 0)         // did we read anything?
-        break;                    // no, error or end of file
-      for (i = 0; i < bytesRead; i ++) // process all bytes read
+      channel = ramFile.getChannel(); // shares file with <ramFile>
+      done = 0;                   // no bytes processed yet
+      result = 0;                 // simple checksums start with zero sum
+      while ((!cancelFlag) && (done < length))
       {
-        result += ((long) (inputBuffer[i] & BYTE_MASK)) << BYTE_SHIFTS[(int)
-          (totalRead & 0x03)];    // shift byte to position, then add to total
-        result &= INT_MASK;       // and throw away any overflow
-        totalRead ++;             // increment total bytes read and processed
+        size = (int) Math.min(REGION_SIZE, (length - done)); // multiple of 4
+        regionBuffer.clear();     // empty buffer from previous piece
+        regionBuffer.limit(size); // fill completely to keep word alignment
+        while (regionBuffer.hasRemaining())
+        {
+          if (channel.read(regionBuffer, (offset + done
+            + regionBuffer.position())) <= 0) // file got shorter?
+          {
+            throw new EOFException(); // same as readFully() for small regions
+          }
+        }
+        regionBuffer.flip();      // prepare to use what we just read
+        result += sumWords(regionBuffer);
+        done += size;             // move forward to next piece
       }
     }
-    return(result);               // return our calculated checksum
+    return(result & INT_MASK);    // throw away any overflow
 
   } // end of checkFileRegion() method
 
 
+/*
+  checkFileTables() method
+
+  Calculate the checksum for every table region listed in all "Offset Tables"
+  of a font file, and return them in a sorted map.  Each region is read once,
+  in order of file offset, even when several internal fonts in a TrueType
+  collection share the same table.  This saves seeking back and forth on slow
+  disks and network shares.  The caller then looks up checksums by region as
+  it makes its report in directory order.
+
+  Map keys are the region's offset shifted into the high-order 32 bits plus
+  the length, so that the natural order of the keys is the order in the file.
+  Offsets are less than MAX_FILE_SIZE, which keeps the keys positive.  The
+  "checkSumAdjustment" field in the "head" table is also stored as a 4-byte
+  region, since its checksum is its value.
+
+  Directory entries that the caller would reject (bad signatures, tables past
+  the end of the file) are silently ignored here; the caller reports them.
+*/
+  static TreeMap checkFileTables(
+    RandomAccessFile ramFile,     // file stream for reading font file
+    long fileSize,                // length of file in bytes
+    long[] fontOffsets,           // offset for each font's "Offset Table"
+    int numFonts)                 // number of fonts in this file
+    throws IOException            // comes from checkFileRegion() and read()
+  {
+    int curFont;                  // current font index, up to <numFonts>
+    int curTable;                 // current table index, up to <numTables>
+    long entryLength;             // table directory length in bytes
+    long entryOffset;             // table directory file offset
+    long entryTag;                // table directory tag name (as integer)
+    int i;                        // index variable
+    Long key;                     // offset and length for one region
+    Object[] keys;                // all regions, sorted by offset
+    int numTables;                // number of entries in "Offset Table"
+    TreeMap result;               // our map from regions to checksums
+    long signature;               // signature bytes for "Offset Table"
+    long table;                   // current location in "Offset Table"
+
+    /* Collect the distinct regions from all "Offset Tables", using the same
+    limits as checkFile(). */
+
+    result = new TreeMap();       // no regions found yet
+    for (curFont = 0; curFont < numFonts; curFont ++)
+    {
+      table = fontOffsets[curFont]; // get start of this "Offset Table"
+      if (fileSize < (table + 12)) // can we read start of this table?
+        continue;                 // no, caller will complain
+      ramFile.seek(table);        // position to start of "Offset Table"
+      signature = ((long) ramFile.readInt()) & INT_MASK;
+      if ((signature != 0x00010000L) // binary version 1.0 for TrueType
+        && (signature != 0x4F54544FL) // "OTTO" for OpenType
+        && (signature != 0x74727565L)) // "true" for Macintosh TrueType
+      {
+        continue;                 // not an "Offset Table"
+      }
+      numTables = ramFile.readUnsignedShort(); // get entries in table
+      if ((numTables < 1) || (numTables > 299)
+        || (fileSize < (table + 12 + (16 * numTables))))
+      {
+        continue;                 // directory is bad or incomplete
+      }
+      for (curTable = 0; curTable < numTables; curTable ++)
+      {
+        ramFile.seek(table + 12 + (16 * curTable)); // reset file position
+        entryTag = ((long) ramFile.readInt()) & INT_MASK;
+        ramFile.readInt();        // skip over stored checksum
+        entryOffset = ((long) ramFile.readInt()) & INT_MASK;
+        entryLength = ((long) ramFile.readInt()) & INT_MASK;
+        if (fileSize < (entryOffset + entryLength))
+          continue;               // table goes past end of file
+        result.put(new Long((entryOffset << 32) | entryLength), null);
+        if ((entryTag == 0x68656164L) && (entryLength >= 12)) // "head"
+          result.put(new Long(((entryOffset + 8) << 32) | 4), null);
+      }
+    }
+
+    /* Now read each region in order.  Regions may overlap, so this is not
+    always strictly forward, but there are no long jumps back. */
+
+    keys = result.keySet().toArray(); // sorted by offset, then by length
+    for (i = 0; i < keys.length; i ++)
+    {
+      if (cancelFlag)             // stop if user hit the panic button
+        break;                    // caller checks <cancelFlag> before using map
+      key = (Long) keys[i];
+      result.put(key, new Long(checkFileRegion(ramFile,
+        (key.longValue() >>> 32), (key.longValue() & INT_MASK))));
+    }
+    return(result);               // give caller whatever we found
+
+  } // end of checkFileTables() method
+
+
 /*
   cornishRename() method
 
@@ -1668,6 +1789,51 @@ public class FontChecksum2
   } // end of sortFileList() method
 
 
+/*
+  sumWords() method
+
+  Add up a buffer as big-endian 4-byte integers, the way font checksums are
+  calculated.  The caller's buffer starts on a word boundary for the checksum,
+  which may not be a word boundary in the file.  We take eight bytes at a time
+  as a <long> and add both halves, since that's faster than going byte by
+  byte.  Any bytes after the last full word are padded with imaginary zeros.
+  The result is not masked, so partial sums can be added together; overflow
+  past 64 bits doesn't change the low-order 32 bits that we keep.
+*/
+  static long sumWords(ByteBuffer buffer)
+  {
+    int i;                        // index variable
+    int length;                   // number of bytes in caller's buffer
+    LongBuffer longs;             // same buffer as 8-byte integers
+    long result;                  // our calculated sum
+    long word;                    // one 8-byte integer from buffer
+
+    buffer.order(ByteOrder.BIG_ENDIAN); // font files are big-endian
+    length = buffer.remaining();  // this buffer is read once, from start
+    longs = buffer.asLongBuffer(); // view of all complete 8-byte integers
+    result = 0;                   // sums start with zero
+    while (longs.hasRemaining())  // do two 4-byte integers at a time
+    {
+      word = longs.get();
+      result += (word >>> 32) + (word & INT_MASK);
+    }
+    i = length & ~0x07;           // first byte after complete 8-byte integers
+    if ((length - i) >= 4)        // one complete 4-byte integer left?
+    {
+      result += buffer.getInt(buffer.position() + i) & INT_MASK;
+      i += 4;
+    }
+    while (i < length)            // partial integer gets imaginary zeros
+    {
+      result += ((long) (buffer.get(buffer.position() + i) & BYTE_MASK))
+        << BYTE_SHIFTS[i & 0x03];
+      i ++;
+    }
+    return(result);               // caller masks to 32 bits when done
+
+  } // end of sumWords() method
+
+
 /*
   userButton() method
 
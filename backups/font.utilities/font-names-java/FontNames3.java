@@ -25,8 +25,9 @@
         http://developer.apple.com/textfonts/TTRefMan/RM06/Chap6name.html
         http://developer.apple.com/textfonts/TTRefMan/RM06/Chap6OS2.html
 
-  OpenType (*.OTF) and TrueType (*.TTC, *.TTF) files are supported.  Adobe
-  PostScript (*.PFB, *.PFM) files are not supported.
+  OpenType (*.OTF) and TrueType (*.TTC, *.TTF) files are supported, as are
+  WOFF and WOFF2 web fonts (*.WOFF, *.WOFF2).  Adobe PostScript (*.PFB, *.PFM)
+  files are not supported.
 
   There aren't many options.  You can choose some of the optional name fields
   (copyright, version, etc).  Then open one or more font files with the "Open"
@@ -97,11 +98,71 @@
 
       java  FontNames3  -s  d:\fonts  >report.txt
 
+  Large folders of fonts are read faster with an option such as -t4, which
+  parses several files at the same time.  The report is the same as with only
+  one thread (the default), in the same order.
+
+  ZIP archives (*.ZIP files) are searched like folders.  Fonts inside are read
+  into memory, so there is no need to extract the archive first.
+
+  WOFF and WOFF2 web fonts are compressed.  Only the "name" and "OS/2" tables
+  are expanded, so reading a web font costs little more than a plain TTF file.
+  Java has no decoder for the Brotli compression in WOFF2 files.  To read them,
+  put the "org.brotli.dec" package (published by Google) on the class path;
+  otherwise each WOFF2 file is reported as an error.
+
   The console application will return an exit status of 1 for success, -1 for
   failure, and 0 for unknown.  The graphical interface can be very slow when
   the output text area gets too big, which will happen if thousands of files
   are reported.
 
+  Structured Output
+  -----------------
+  The report is meant for people, not for other programs.  The -c and -j
+  options write the same information as records: CSV with one row per name
+  table entry, or JSON Lines with one line per internal font.  Each record has
+  every name entry (platform, encoding, language, name ID, and text) plus the
+  OS/2 vendor ID, no matter which fields were chosen for the report.  Files
+  with errors get a record with the error message.  Records are formatted and
+  written in UTF-8 by a separate thread with a large buffer, so the slow part
+  of a big catalog stays with reading the fonts.  Put the option before any
+  file or folder names:
+
+      java  FontNames3  -s  -jnames.jsonl  d:\fonts  >report.txt
+
+  Catalog of Font Names
+  ---------------------
+  Reading thousands of fonts takes time, even when most of them haven't changed
+  since the last run.  The -d option names a catalog file that keeps the name
+  tables and OS/2 vendor IDs found in each font file.  Later runs read only new
+  or changed files (by size, date, and the system's file key), and take the
+  rest from the catalog.  The report is the same either way.  Use -r1 to read
+  every file again and drop files that no longer exist, or -r2 to read every
+  file and compare with the catalog:
+
+      java  FontNames3  -s  -dfonts.cat  d:\fonts  >report.txt
+
+  Search Index
+  ------------
+  Questions such as "which fonts have Adobe in the copyright" are answered by a
+  search index (-i option) instead of reading a long report.  The index keeps
+  the words in the family name, vendor, designer, copyright, trademark,
+  license, and URL fields of each font.  It is updated as files are read, and
+  only files that are new or have changed are added again.  The -q option
+  lists the fonts with all of the given words, which may be limited to one
+  field, or end with "*" for words that start with the given letters:
+
+      java  FontNames3  -s  -ifonts.idx  d:\fonts  >report.txt
+      java  FontNames3  -ifonts.idx  "-qcopyright:adobe  family:gar*"
+
+  OS/2 Vendor Names
+  -----------------
+  The -n22 option reports the OS/2 vendor ID, and the name of the vendor if we
+  know it.  Names are read from a "vendors.txt" file in the current working
+  directory, in the format used by Al Jones' FontOrg program, so the list can
+  be updated without changing this program.  Use the -v option for a different
+  file.  A short list of major vendors is built in, for when there is no file.
+
   Restrictions and Limitations
   ----------------------------
   Not all font files are correctly structured.  Before reporting an error in
@@ -114,15 +175,24 @@
 import java.awt.*;                // older Java GUI support
 import java.awt.event.*;          // older Java GUI event support
 import java.io.*;                 // standard I/O
+import java.nio.*;                // byte and character buffers
+import java.nio.charset.*;        // character set decoders
+import java.nio.file.*;           // file attributes for catalog
+import java.nio.file.attribute.*; // size, date, and file key
 import java.text.*;               // number formatting
 import java.util.*;               // calendars, dates, lists, maps, vectors
+import java.util.concurrent.*;    // blocking queue for structured output
 import java.util.regex.*;         // regular expressions
+import java.util.zip.*;           // catalog entries, archives, WOFF tables
 import javax.swing.*;             // newer Java GUI support
 
 public class FontNames3
 {
   /* constants */
 
+  static final String BROTLI_TEXT = "WOFF2 file needs a Brotli decoder ("
+    + FontNames3Woff.BROTLI_CLASS + ") on the class path."; // not cataloged
+  static final String CANCEL_TEXT = "cancelled by user"; // message for cancel
   static final String COPYRIGHT_NOTICE =
     "Copyright (c) 2007 by Keith Fenske.  Released under GNU Public License.";
   static final int DEFAULT_HEIGHT = -1; // default window height in pixels
@@ -149,17 +219,56 @@ public class FontNames3
     "30"};                        // point sizes for text in output text area
   static final long INT_MASK = 0x00000000FFFFFFFFL;
                                   // logical mask for one int as long value
+  static final int ARCHIVE_BUDGET = 0x8000000; // archive bytes queued (128 MB)
+  static final int MAX_ARCHIVE = 0x4000000; // largest font in ZIP (64 MB)
   static final int MIN_FRAME = 200; // minimum window height or width in pixels
+  static final int PIPELINE_DEPTH = 8; // queued files per parsing thread
   static final String PROGRAM_TITLE =
     "Extract OpenType and TrueType Font Names - by: Keith Fenske";
   static final char REPLACE_CHAR = '\uFFFD'; // Unicode replacement character
   static final String SYSTEM_FONT = "Dialog"; // this font is always available
   static final int TIMER_DELAY = 700; // 0.700 seconds between status updates
+  static final String VENDOR_FILE = "vendors.txt"; // OS/2 vendor names
+  static final String[] VENDOR_NAMES = { // built-in OS/2 vendor IDs
+    "1ASC", "Ascender",
+    "ADBE", "Adobe",
+    "AGFA", "Agfa Monotype",
+    "ALTS", "Altsys (Macromedia) Fontographer software",
+    "AMT ", "Agfa Monotype",
+    "APPL", "Apple",
+    "ARPH", "Arphic (Taiwan)",
+    "BDFZ", "Beijing Founder (China)",
+    "BITS", "Bitstream",
+    "CANT", "Canada Type",
+    "DYNA", "DynaComware, DynaFont, DynaLab (Taiwan)",
+    "FWKS", "Fontworks (Japan)",
+    "GOOD", "Goodfont (Korea)",
+    "HANY", "Beijing Hanyi Keyin (China)",
+    "HP  ", "Hewlett-Packard",
+    "HY  ", "HanYang (Korea)",
+    "ITC ", "International Typeface",
+    "LINO", "Linotype",
+    "MACR", "Macromedia Fontographer software",
+    "MONO", "Monotype Imaging",
+    "MRSW", "Morisawa (Japan)",
+    "MS  ", "Microsoft",
+    "MT  ", "Monotype Imaging",
+    "P22 ", "P22 Type Foundry",
+    "PFED", "PfaEdit or FontForge software",
+    "PYRS", "Pyrus FontLab software",
+    "RICO", "Ricoh (Japan)",
+    "RIX ", "Fontrix (Korea)",
+    "SAND", "Sandoll Type Bank (Korea)",
+    "URW ", "URW++ Design & Development",
+    "YDI ", "Yoon Design (Korea)"};
 
   /* class variables */
 
   static JButton cancelButton;    // graphical button for <cancelFlag>
-  static boolean cancelFlag;      // our signal from user to stop processing
+  static volatile boolean cancelFlag; // our signal from user to stop processing
+  static FontNames3Catalog catalog; // names from earlier runs, or null
+  static String catalogFile;      // file name for catalog, or null
+  static int catalogMode;         // reuse, rebuild, or verify catalog entries
   static boolean consoleFlag;     // true if running as a console application
   static JButton exitButton;      // "Exit" button for ending this application
   static boolean[] fieldFlags;    // true if we report given name ID numbers
@@ -176,21 +285,33 @@ public class FontNames3
   static JCheckBox hexCheckbox;   // graphical option for <hexFlag>
   static boolean hexFlag;         // true if we report all name fields in hex
   static boolean hiddenFlag;      // true if we process hidden files or folders
+  static FontNames3Index index;   // search index of name records, or null
+  static String indexFile;        // file name for search index, or null
   static JFrame mainFrame;        // this application's window if GUI
   static boolean mswinFlag;       // true if running on Microsoft Windows
   static JButton openButton;      // "Open" button for files or folders
   static File[] openFileList;     // list of files selected by user
   static Thread openFilesThread;  // separate thread for doOpenButton() method
+  static ThreadLocal messageSink; // output lines held for committer, or null
   static JTextArea outputText;    // generated report if running as GUI
+  static FontNames3Writer outputWriter; // CSV or JSON Lines records, or null
+  static String queryText;        // words to find in search index, or null
   static JCheckBox recurseCheckbox; // graphical option for <recurseFlag>
+  static ExecutorService pipelinePool; // threads for parsing font files
+  static Semaphore archiveBudget; // bytes for archive entries being parsed
+  static BlockingQueue pipelineQueue; // parsed files in order, or null
   static boolean recurseFlag;     // true if we process folders and subfolders
+  static boolean reportFlag;      // true if console report on standard output
   static JButton saveButton;      // "Save" button for writing output text
   static JLabel statusDialog;     // status message during extended processing
   static String statusPending;    // will become <statusDialog> after delay
   static javax.swing.Timer statusTimer; // timer for updating status message
   static String systemFileSep;    // file/folder separator for local system
+  static int threadCount;         // number of threads for parsing font files
   static int totalErrors;         // total number of files with problems
   static int totalFiles;          // total number of files found (good or bad)
+  static String vendorFile;       // text file with OS/2 vendor names
+  static FontNames3Vendors vendorTable; // OS/2 vendor ID to name, or null
 
   /* The following class variables are for the pop-up menu that selects which
   name ID numbers will be reported.  It's ugly but it works. */
@@ -227,18 +348,32 @@ public class FontNames3
 
     buttonFont = null;            // by default, don't use customized font
     cancelFlag = false;           // don't cancel unless user complains
+    catalog = null;               // open catalog before first font file
+    catalogFile = null;           // by default, no catalog
+    catalogMode = FontNames3Catalog.REUSE; // use entries for unchanged files
     consoleFlag = false;          // assume no files or folders on command line
     fontFilter = new FontNames3Filter(); // create our shared file filter
     fontName = "Arial Unicode MS"; // preferred font name for output text area
     fontSize = 16;                // default point size for output text area
     hexFlag = false;              // by default, convert name fields to text
     hiddenFlag = false;           // by default, don't process hidden files
+    index = null;                 // open search index before first font file
+    indexFile = null;             // by default, no search index
     maximizeFlag = false;         // by default, don't maximize our main window
+    messageSink = new ThreadLocal(); // all threads print directly for now
     mswinFlag = System.getProperty("os.name").startsWith("Windows");
+    outputWriter = null;          // by default, no structured output
+    pipelinePool = null;          // by default, parse one file at a time
+    pipelineQueue = null;
+    queryText = null;             // by default, no query
     recurseFlag = false;          // by default, don't process subfolders
+    reportFlag = true;            // by default, console report on stdout
     statusPending = EMPTY_STATUS; // begin with no text for <statusDialog>
+    threadCount = 1;              // by default, parse one file at a time
     totalErrors = 0;              // total number of files with problems
     totalFiles = 0;               // total number of files found (good or bad)
+    vendorFile = VENDOR_FILE;     // default file name for OS/2 vendor names
+    vendorTable = null;           // load vendor names before first font file
     windowHeight = DEFAULT_HEIGHT; // default window position and size
     windowLeft = DEFAULT_LEFT;
     windowTop = DEFAULT_TOP;
@@ -285,6 +420,52 @@ public class FontNames3
         System.exit(EXIT_UNKNOWN); // exit application after printing help
       }
 
+      else if (word.startsWith("-c") || (mswinFlag && word.startsWith("/c"))
+        || word.startsWith("-j") || (mswinFlag && word.startsWith("/j")))
+      {
+        /* This option is followed by a file name for structured output: CSV
+        for -c and JSON Lines for -j.  Without a file name, records go on
+        standard output and replace the usual report. */
+
+        if (outputWriter != null) // only one structured output at a time
+        {
+          System.err.println("Only one -c or -j option is allowed: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(EXIT_FAILURE); // exit application after printing help
+        }
+        String name = args[i].substring(2); // original case for file name
+        try                       // open file and start writer thread
+        {
+          outputWriter = new FontNames3Writer(((name.length() > 0)
+            ? new File(name) : null), (word.charAt(1) == 'c'));
+        }
+        catch (IOException ioe)   // can't create or write output file
+        {
+          System.err.println("Can't write structured output file: " + name);
+          System.exit(EXIT_FAILURE); // exit application after printing error
+        }
+        if (name.length() == 0)   // records going to standard output?
+          reportFlag = false;     // yes, don't mix in the usual report
+      }
+
+      else if (word.startsWith("-d") || (mswinFlag && word.startsWith("/d")))
+      {
+        /* This option is followed by a file name for the catalog, which keeps
+        names from earlier runs so that unchanged files aren't read again. */
+
+        if (vendorTable != null)  // too late if we already loaded a file
+        {
+          System.err.println("Option -d must come before file names: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(EXIT_FAILURE); // exit application after printing help
+        }
+        catalogFile = args[i].substring(2); // original case for file name
+        if (catalogFile.length() == 0) // empty name means no catalog
+          catalogFile = null;
+      }
+
       else if (word.equals("-h") || (mswinFlag && word.equals("/h"))
         || word.equals("-h1") || (mswinFlag && word.equals("/h1")))
       {
@@ -293,6 +474,23 @@ public class FontNames3
       else if (word.equals("-h0") || (mswinFlag && word.equals("/h0")))
         hiddenFlag = false;       // ignore hidden files or subfolders
 
+      else if (word.startsWith("-i") || (mswinFlag && word.startsWith("/i")))
+      {
+        /* This option is followed by a file name for the search index, which
+        is updated with files that are new or have changed. */
+
+        if (vendorTable != null)  // too late if we already loaded a file
+        {
+          System.err.println("Option -i must come before file names: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(EXIT_FAILURE); // exit application after printing help
+        }
+        indexFile = args[i].substring(2); // original case for file name
+        if (indexFile.length() == 0) // empty name means no index
+          indexFile = null;
+      }
+
       else if (word.equals("-k") || (mswinFlag && word.equals("/k"))
         || word.equals("-k1") || (mswinFlag && word.equals("/k1")))
       {
@@ -328,6 +526,31 @@ public class FontNames3
         fieldFlags[num] = true;   // report this name ID, whatever it is
       }
 
+      else if (word.startsWith("-q") || (mswinFlag && word.startsWith("/q")))
+      {
+        /* This option is followed by words to find in the search index.  The
+        query is answered after any files or folders have been read. */
+
+        queryText = args[i].substring(2); // original case, doesn't matter
+        if ((indexFile == null) || (queryText.trim().length() == 0))
+        {
+          System.err.println(
+            "Option -q must follow -i and have words to find: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(EXIT_FAILURE); // exit application after printing help
+        }
+      }
+
+      else if (word.equals("-r0") || (mswinFlag && word.equals("/r0")))
+        catalogMode = FontNames3Catalog.REUSE; // use unchanged entries
+      else if (word.equals("-r") || (mswinFlag && word.equals("/r"))
+        || word.equals("-r1") || (mswinFlag && word.equals("/r1")))
+      {
+        catalogMode = FontNames3Catalog.REBUILD; // read all files again
+      }
+      else if (word.equals("-r2") || (mswinFlag && word.equals("/r2")))
+        catalogMode = FontNames3Catalog.VERIFY; // read all files and compare
+
       else if (word.equals("-s") || (mswinFlag && word.equals("/s"))
         || word.equals("-s1") || (mswinFlag && word.equals("/s1")))
       {
@@ -336,6 +559,28 @@ public class FontNames3
       else if (word.equals("-s0") || (mswinFlag && word.equals("/s0")))
         recurseFlag = false;      // stop doing subfolders
 
+      else if (word.startsWith("-t") || (mswinFlag && word.startsWith("/t")))
+      {
+        /* This option is followed by the number of threads that parse font
+        files at the same time.  The report is still in the same order. */
+
+        try                       // try to parse remainder as unsigned integer
+        {
+          threadCount = Integer.parseInt(word.substring(2));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          threadCount = -1;       // set result to an illegal value
+        }
+        if ((threadCount < 1) || (threadCount > 99))
+        {
+          System.err.println("Number of threads must be from 1 to 99: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(EXIT_FAILURE); // exit application after printing help
+        }
+      }
+
       else if (word.startsWith("-u") || (mswinFlag && word.startsWith("/u")))
       {
         /* This option is followed by a font point size that will be used for
@@ -362,6 +607,18 @@ public class FontNames3
         fontSize = size;          // use same point size for output text font
       }
 
+      else if (word.startsWith("-v") || (mswinFlag && word.startsWith("/v")))
+      {
+        if (vendorTable != null)  // too late if we already loaded a file
+        {
+          System.err.println("Option -v must come before file names: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(EXIT_FAILURE); // exit application after printing help
+        }
+        vendorFile = args[i].substring(2); // accept anything for file name
+      }
+
       else if (word.startsWith("-w") || (mswinFlag && word.startsWith("/w")))
       {
         /* This option is followed by a list of four numbers for the initial
@@ -403,7 +660,16 @@ public class FontNames3
         interrupting us at this point (no graphical interface). */
 
         consoleFlag = true;       // don't allow GUI methods to be called
-        openFileFolder(new File(args[i]), "");
+        if (vendorTable == null)  // read vendor names only once
+        {
+          loadVendors();
+          openCatalog();          // and open catalog, if any, only once
+          openIndex();            // and search index, if any
+        }
+        if (threadCount > 1)      // parse files in parallel?
+          processPipeline(new File[] {new File(args[i])}); // yes, with threads
+        else
+          openFileFolder(new File(args[i]), "");
                                   // use original parameter, not lowercase word
       }
     }
@@ -412,10 +678,27 @@ public class FontNames3
     command line.  Exit to the system with an integer status: +1 for success,
     -1 for failure, and 0 for unknown. */
 
+    if ((consoleFlag == false) && (queryText != null)) // only a query?
+      System.exit((queryIndex() > 0) ? EXIT_SUCCESS : EXIT_UNKNOWN);
+
     if (consoleFlag)              // was at least one file/folder given?
     {
+      closeCatalog();             // write catalog and print statistics
+      closeIndex();               // and search index
+      if (outputWriter != null)   // wait for structured output to be written
+      {
+        try { outputWriter.close(); }
+        catch (IOException ioe)   // writer thread couldn't write a record
+        {
+          System.err.println("Can't write structured output: "
+            + ioe.getMessage());
+          totalErrors ++;         // so that exit status shows failure
+        }
+      }
       System.err.println("Found " + prettyPlural(totalFiles, "file") + " with "
         + prettyPlural(totalErrors, "error") + ".");
+      if (queryText != null)      // answer query after reading files
+        queryIndex();
       if (totalErrors > 0)        // did any of the files have errors?
         System.exit(EXIT_FAILURE); // yes, even one error means failure
       else if (totalFiles > 0)    // no errors, but were there any files?
@@ -441,6 +724,8 @@ public class FontNames3
 //    System.err.println("Unsupported Java look-and-feel: " + ulafe);
 //  }
 
+    loadVendors();                // read vendor names before any file opens
+
     /* Initialize shared graphical objects. */
 
     action = new FontNames3User(); // create our shared action listener
@@ -806,18 +1091,23 @@ public class FontNames3
 
   Open one OpenType or TrueType font file and read the internal names.  All
   other methods in this program eventually come here.  We print our result and
-  increment global counters for good and bad files.
+  return true if the file had errors, so the caller can count bad files.  This
+  may be called by several parsing threads at once (see the -t option), so we
+  don't change any global variables.
 */
-  static void checkFile(
+  static boolean checkFile(
     File givenFile,               // caller's Java File object (may be valid)
-    String givenName)             // caller's name for file, or empty, or null
+    String givenName,             // caller's name for file, or empty, or null
+    byte[] givenBytes,            // archive entry in memory, or null for file
+    int fileNumber)               // caller's count of files, for the report
   {
-    final String CANCEL_TEXT = "cancelled by user"; // message when cancelled
     String charname;              // our nice name for name table character set
     String charset;               // official name for name table character set
     int curFont;                  // current font index, up to <numFonts>
     int curName;                  // current name index, up to <numNames>
-    int curTable;                 // current table index, up to <numTables>
+    FontNames3Data data;          // raw name and OS/2 data for this file
+    Object[] decoded;             // output, names, stop text for shared table
+    IdentityHashMap decodedTables; // name tables already decoded, or null
     byte[] entryBytes;            // name table entry: raw bytes for name
     int entryEncoding;            // name table entry: specific encoding ID
     int entryLanguage;            // name table entry: language ID
@@ -825,41 +1115,34 @@ public class FontNames3
     int entryNameID;              // name table entry: name ID
     int entryOffset;              // name table entry: offset to string
     int entryPlatform;            // name table entry: platform ID
+    String entryText;             // name table entry: converted string
     String fileName;              // our name for the file
     long fileSize;                // length of file in bytes
-    long[] fontOffsets;           // for each font, offset from beginning of
-                                  // ... file to start of its "Offset Table"
+    FontNames3Font font;          // raw data for current internal font
     int i;                        // index variable
-    boolean multiFlag;            // true if processing TrueType collection
-    long name;                    // offset to start of current name table
-    int nameTableSize;            // size of current name table in bytes
-    long nameTableStrings;        // start of strings for current name table
+    String indexPath;             // path name for search index
+    Vector lines;                 // name output for a shared table, or null
+    Vector indexRecords;          // name records for search index, or null
+    String indexStamp;            // size, date, and file key for index
+    ByteBuffer nameBuffer;        // name table for current internal font
     int numFonts;                 // number of fonts in this file
-    int numNames;                 // number of name table entries
-    int numTables;                // number of entries in "Offset Table"
-    long os2;                     // offset to start of current OS/2 table
-    int os2TableSize;             // size of current OS/2 table in bytes
-    int os2TableVersion;          // version number of current OS/2 table
+    int numNames;                 // name table entries still to be decoded
     String os2VendorID;           // extracted 4-character OS/2 vendor ID
     String os2VendorIdUpper;      // uppercase conversion of <os2VendorID>
     String os2VendorName;         // our interpreted name for <os2VendorID>
     boolean printFlag;            // true if we print current name table entry
     String printName;             // printable name for current name table entry
-    RandomAccessFile ramFile;     // file stream for reading font file
+    FontNames3Record record;      // structured output for current font, or null
     boolean relaxFlag;            // true if we relax rules for allowed chars
-    long signature;               // signature bytes from beginning of file
+    String stamp;                 // size, date, and file key for catalog
     boolean stopFlag;             // local flag to stop processing file
     String stopText;              // message for why we stopped processing
-    long table;                   // current location in "Offset Table"
 
     /* Initialize local variables. */
 
-    fontOffsets = null;           // just to keep compiler happy
-    multiFlag = false;            // just to keep compiler happy
-    numFonts = 0;                 // just to keep compiler happy
+    record = null;                // no structured output for this font yet
     stopFlag = false;             // everything is okay so far
     stopText = "";                // no reason for stopping yet
-    totalFiles ++;                // count the number of files we try to open
 
     /* Use the caller's name for the file, if one was given.  This allows the
     caller to display a cleaner name, such as a relative path name. */
@@ -868,834 +1151,771 @@ public class FontNames3
       fileName = givenName;       // caller gave us a non-empty string
     else
       fileName = givenFile.getPath(); // get full path name plus file name
-    fileSize = givenFile.length(); // get length of file in bytes
+    fileSize = (givenBytes != null) ? givenBytes.length : givenFile.length();
+                                  // get length of file or entry in bytes
     putOutput("", false);         // blank line
-    putOutput(("file #" + totalFiles + ": " + fileName), false);
+    putOutput(("file #" + fileNumber + ": " + fileName), false);
     setStatusMessage("Reading file " + fileName); // let user know where we are
 
-    /* Open the file and start reading the header information. */
+    /* Get the name tables and OS/2 vendor IDs for this file: from the catalog
+    if the file hasn't changed since it was last read, or else from the file
+    itself.  New data goes into the catalog, unless we were cancelled or there
+    was no decoder for a WOFF2 file.  Fonts inside archives are already in
+    memory, so the catalog wouldn't help. */
 
-    try                           // catch file I/O errors
+    data = null;                  // nothing from catalog yet
+    stamp = null;                 // catalog key: size, date, and file key
+    if ((catalog != null) && (givenBytes == null)) // keeping a catalog?
+    {
+      stamp = FontNames3Catalog.stampFor(givenFile);
+      if (stamp != null)          // null if we can't get file attributes
+        data = catalog.get(givenFile.getAbsolutePath(), stamp);
+    }
+    if (data == null)             // no catalog, or file not in catalog
+    {
+      data = readFontData(givenFile, givenBytes, fileSize); // read font data
+      if ((stamp != null) && (CANCEL_TEXT.equals(data.stopText) == false)
+        && (BROTLI_TEXT.equals(data.stopText) == false)
+        && (catalog.put(givenFile.getAbsolutePath(), stamp, data) == false))
+      {
+        putError("Catalog entry didn't match file: " + givenFile.getPath());
+      }
+    }
+
+    /* If there is a search index, then it needs name records for files that
+    are new or have changed.  (Hex names from the -k option aren't indexed.) */
+
+    indexPath = indexStamp = null; // not in search index
+    indexRecords = null;
+    if ((index != null) && (hexFlag == false)) // updating search index?
     {
-      ramFile = new RandomAccessFile(givenFile, "r"); // open file for reading
+      indexPath = givenFile.getAbsolutePath(); // same key as catalog
+      indexStamp = (givenBytes != null) ? FontNames3Catalog.stampFor(
+        givenBytes) : (stamp != null) ? stamp
+        : FontNames3Catalog.stampFor(givenFile);
+      if ((indexStamp != null) && index.needs(indexPath, indexStamp))
+        indexRecords = new Vector(); // collect records for this file
+    }
 
-      /* Figure out what type of file this is, if it's even a font file! */
+    /* Report each internal font.  The data is the same raw bytes whether it
+    came from the catalog or the file, so options such as -k and -n still
+    apply to names found in the catalog. */
 
-      if (fileSize < 12)          // need this many bytes for signature
+    numFonts = data.numFonts;     // number of fonts claimed by file
+    decodedTables = data.multiFlag ? new IdentityHashMap() : null;
+                                  // collections may share name tables
+    for (curFont = 0; curFont < data.fonts.size(); curFont ++)
+                                  // first <for> loop
+    {
+      if (cancelFlag)             // stop if user hit the panic button
       {
         stopFlag = true;          // stop looking at this file
-        stopText = "File size too small for OTF/TTC/TTF signature, "
-          + prettyPlural(fileSize, "byte") + ".";
-                                  // summary reason for why we stopped
+        stopText = CANCEL_TEXT;
+        break;                    // exit from first <for> loop
       }
-      else
+      font = (FontNames3Font) data.fonts.get(curFont);
+
+      /* Do we identify each internal font for TTC files? */
+
+      if (data.multiFlag)
+        putOutput(("   internal font #" + (curFont + 1) + " of " + numFonts
+          + ":"), false);
+
+      if (font.stopText != null)  // did reading stop at this font?
       {
-        signature = ((long) ramFile.readInt()) & INT_MASK;
-                                  // read four signature bytes
-        if ((signature == 0x00010000L) // binary version 1.0 for TrueType
-          || (signature == 0x4F54544FL) // "OTTO" for OpenType
-          || (signature == 0x74727565L)) // "true" for Macintosh TrueType
-        {
-          /* This is an OpenType or TrueType file containing a single font. */
+        stopFlag = true;          // stop looking at this file
+        stopText = font.stopText;
+        break;                    // exit from first <for> loop
+      }
 
-          multiFlag = false;      // this is not a TrueType collection
-          numFonts = 1;           // there is only one font in this file
-          fontOffsets = new long[1]; // so we only look at one "Offset Table"
-          fontOffsets[0] = 0;     // conveniently located at start of file
-        }
-        else if (signature == 0x74746366L) // "ttcf" for TrueType collection
-        {
-          /* This is a TrueType collection containing at least one font. */
+      /* Loop through the entries in the name table.  Select the ones most
+      useful to us.  Structured output wants all of them. */
 
-          multiFlag = true;       // now processing a collection of fonts
-          ramFile.skipBytes(4);   // skip over TTC version number
-          numFonts = ramFile.readInt(); // get number of fonts in this file
-          if ((numFonts < 1) || (numFonts > 29)) // error check arbitrary limits
-          {
-            stopFlag = true;      // stop looking at this file
-            stopText = "Too many internal fonts in TTC file (" + numFonts
-              + ").";
-          }
-          else if (fileSize < ((4 * numFonts) + 12)) // can read offset list?
+      if ((outputWriter != null) || (indexRecords != null)) // need records?
+        record = new FontNames3Record(givenFile.getPath(), fileSize,
+          (curFont + 1), numFonts, font.numNames);
+
+      /* Internal fonts in a collection often point at the same name table,
+      which readFontData() then reads only once.  Decode each shared table
+      once, and repeat the same output and names for the other fonts. */
+
+      lines = null;               // assume table not shared or not seen
+      numNames = font.numNames;   // assume we decode every entry
+      if (decodedTables != null)  // is this a TrueType collection?
+      {
+        decoded = (Object[]) decodedTables.get(font.nameBytes);
+        if (decoded != null)      // already decoded for an earlier font?
+        {
+          lines = (Vector) decoded[0];
+          for (i = 0; i < lines.size(); i ++)
+            putOutput((String) lines.get(i), false);
+          if ((record != null) && (decoded[1] != null))
+            record.copyNames((FontNames3Record) decoded[1]);
+          if (decoded[2] != null) // did decoding stop early?
           {
             stopFlag = true;      // stop looking at this file
-            stopText = "File size too small for list of " + numFonts
-              + " TTC offsets.";
-          }
-          else
-          {
-            fontOffsets = new long[numFonts]; // multiple "Offset Tables"
-            for (curFont = 0; curFont < numFonts; curFont ++)
-              fontOffsets[curFont] = ((long) ramFile.readInt()) & INT_MASK;
-                                  // save file offset to each "Offset Table"
+            stopText = (String) decoded[2];
           }
+          lines = null;           // nothing more to collect
+          numNames = 0;           // skip the second <for> loop
         }
         else
+          lines = new Vector();   // collect output for later fonts
+      }
+
+      nameBuffer = ByteBuffer.wrap(font.nameBytes); // big-endian by default
+      for (curName = 0; curName < numNames; curName ++)
+                                  // second <for> loop
+      {
+        if (cancelFlag)           // stop if user hit the panic button
         {
           stopFlag = true;        // stop looking at this file
-          stopText =
-            "File not recognized as OpenType or TrueType font, 0x"
-            + Long.toHexString(signature) + " signature.";
+          stopText = CANCEL_TEXT;
+          break;                  // exit from second <for> loop
+        }
+        i = 6 + (curName * 12);   // start of this entry
+        if ((i + 12) > font.nameBytes.length) // entry past end of file?
+        {
+          stopFlag = true;        // stop looking at this file
+          stopText = "Can't read from file."; // same as reading past end
+          break;                  // exit from second <for> loop
+        }
+        entryPlatform = nameBuffer.getChar(i); // platform ID
+        entryEncoding = nameBuffer.getChar(i + 2); // specific encoding
+        entryLanguage = nameBuffer.getChar(i + 4); // language ID
+        entryNameID = nameBuffer.getChar(i + 6); // name ID
+        entryLength = nameBuffer.getChar(i + 8); // length of string
+        entryOffset = nameBuffer.getChar(i + 10); // string offset
+
+        if ((entryOffset < 0) || (entryLength < 0)
+          || ((entryOffset + entryLength) > font.nameTableSize))
+        {
+          stopFlag = true;        // stop looking at this file
+          stopText = "Bad string offset in name table entry, 0x"
+            + Integer.toHexString(entryOffset) + " with length 0x"
+            + Integer.toHexString(entryLength) + ".";
+          break;                  // exit from second <for> loop
         }
-      }
 
-      /* No matter what type of font file this started as, we now have a common
-      list of the locations (offsets) to the start of each "Offset Table" for
-      each font contained in the file.  This information must all be checked,
-      before being used, because the user may have given us a bad file. */
+        /* Before going through the numerous <if> and <switch> statements
+        below, decide if we will be printing this name table entry.  We have a
+        boolean array <fieldFlags> to tell us which name IDs to print, and we
+        have a boolean array <FIELD_RELAX> to tell us whether we should relax
+        the rules for allowable characters. */
 
-      if (!stopFlag)              // continue only if no errors so far
-      {
-        for (curFont = 0; curFont < numFonts; curFont ++) // first <for> loop
+        if ((entryNameID >= 0) && (entryNameID < FIELD_COUNT)
+          && (entryNameID != 15)) // #15 is reserved, treat as unknown ID
         {
-          if (cancelFlag)         // stop if user hit the panic button
+          printFlag = fieldFlags[entryNameID]; // true if we print this ID
+          printName = FIELD_NAMES[entryNameID]; // printable name for field
+          relaxFlag = FIELD_RELAX[entryNameID]; // true if we relax rules
+        }
+        else
+        {
+          printFlag = fieldFlags[fieldUnknown]; // true if we print unknowns
+          printName = FIELD_NAMES[fieldUnknown] + " " + entryNameID;
+          relaxFlag = FIELD_RELAX[fieldUnknown]; // true if we relax rules
+        }
+        if (printFlag || (record != null)) // only work if we will print
+        {
+          /* Figure out which character set this byte string is in.  For
+          some of the Chinese-Japanese-Korean character sets, we are
+          guessing about the encoding.  Font makers aren't all that
+          consistent, so our guess is often as good as theirs....  For most
+          of the Macintosh languages, we simply don't know what the correct
+          encoding is. */
+
+          if (entryPlatform == 0) // Unicode
           {
-            stopFlag = true;      // stop looking at this file
-            stopText = CANCEL_TEXT;
-            break;                // exit from first <for> loop
+            charname = "Unicode " + entryEncoding + " " + entryLanguage;
+                              // our name for this character set
+            charset = "UTF-16"; // assume all bytes are encoded in Unicode
           }
+          else if (entryPlatform == 1) // Macintosh
+          {
+            /* First, do the encoding, which affects how we interpret the
+            raw bytes forming the name.  We don't have enough information
+            about some of the Macintosh encodings, so we default to
+            US-ASCII for those. */
+
+            charname = "Macintosh " + entryEncoding;
+                              // our name for this character set
+            charset = "US-ASCII"; // default to ASCII if don't know better
+            switch (entryEncoding)
+            {
+              case (0):
+                charname += " Roman"; // our name for this character set
+                charset = "MacRoman"; // special encoding for Roman/Latin
+                break;
+              case (1): charname += " Japanese"; charset = "Shift_JIS"; break;
+              case (2): charname += " Trad. Chinese"; charset = "Big5"; break;
+              case (3): charname += " Korean"; charset = "EUC-KR"; break;
+              case (4): charname += " Arabic"; charset = "MacArabic"; break;
+              case (5): charname += " Hebrew"; charset = "MacHebrew"; break;
+              case (6): charname += " Greek"; charset = "MacGreek"; break;
+              case (7): charname += " Russian"; charset = "MacCyrillic"; break;
+              case (8): charname += " RSymbol"; break; // assume ASCII
+              case (9): charname += " Devanagari"; break; // assume ASCII
+              case (10): charname += " Gurmukhi"; break; // assume ASCII
+              case (11): charname += " Gujarati"; break; // assume ASCII
+              case (12): charname += " Oriya"; break; // assume ASCII
+              case (13): charname += " Bengali"; break; // assume ASCII
+              case (14): charname += " Tamil"; break; // assume ASCII
+              case (15): charname += " Telugu"; break; // assume ASCII
+              case (16): charname += " Kannada"; break; // assume ASCII
+              case (17): charname += " Malayalam"; break; // assume ASCII
+              case (18): charname += " Sinhalese"; break; // assume ASCII
+              case (19): charname += " Burmese"; break; // assume ASCII
+              case (20): charname += " Khmer"; break; // assume ASCII
+              case (21): charname += " Thai"; charset = "MacThai"; break;
+              case (22): charname += " Laotian"; break; // assume ASCII
+              case (23): charname += " Georgian"; break; // assume ASCII
+              case (24): charname += " Armenian"; break; // assume ASCII
+              case (25): charname += " Simp. Chinese"; charset = "GBK"; break;
+              case (26): charname += " Tibetan"; break; // assume ASCII
+              case (27): charname += " Mongolian"; break; // assume ASCII
+              case (28): charname += " Geez"; break; // assume ASCII
+              case (29): charname += " Slavic"; break; // assume ASCII
+              case (30): charname += " Vietnamese"; break; // assume ASCII
+              case (31): charname += " Sindhi"; break; // assume ASCII
+              default: /* do nothing */ break;
+            }
 
-          /* Do we identify each internal font for TTC files? */
-
-          if (multiFlag)
-            putOutput(("   internal font #" + (curFont + 1) + " of " + numFonts
-              + ":"), false);
-
-          /* See if we can read the entire "Offset Table" and if the size makes
-          sense. */
+            /* Second, append the language, which is purely informational.
+            We may find later that the encoding must be combined with the
+            language to find the correct Macintosh character set. */
 
-          table = fontOffsets[curFont]; // get start of this "Offset Table"
-          if (fileSize < (table + 12)) // can we read start of this table?
+            charname += " " + entryLanguage; // append language identifier
+            switch (entryLanguage)
+            {
+              case (0): charname += " English"; break;
+              case (1): charname += " French"; break;
+              case (2): charname += " German"; break;
+              case (3): charname += " Italian"; break;
+              case (4): charname += " Dutch"; break;
+              case (5): charname += " Swedish"; break;
+              case (6): charname += " Spanish"; break;
+              case (7): charname += " Danish"; break;
+              case (8): charname += " Portuguese"; break;
+              case (9): charname += " Norwegian"; break;
+              case (10): charname += " Hebrew"; break;
+              case (11): charname += " Japanese"; break;
+              case (12): charname += " Arabic"; break;
+              case (13): charname += " Finnish"; break;
+              case (14): charname += " Greek"; break;
+              case (15): charname += " Icelandic"; break;
+              case (16): charname += " Maltese"; break;
+              case (17): charname += " Turkish"; break;
+              case (18): charname += " Croatian"; break;
+              case (19): charname += " Trad. Chinese"; break;
+              case (20): charname += " Urdu"; break;
+              case (21): charname += " Hindi"; break;
+              case (22): charname += " Thai"; break;
+              case (23): charname += " Korean"; break;
+              case (24): charname += " Lithuanian"; break;
+              case (25): charname += " Polish"; break;
+              case (26): charname += " Hungarian"; break;
+              case (27): charname += " Estonian"; break;
+              case (28): charname += " Latvian"; break;
+              case (29): charname += " Sami"; break;
+              case (30): charname += " Faroese"; break;
+              case (31): charname += " Farsi/Persian"; break;
+              case (32): charname += " Russian"; break;
+              case (33): charname += " Simp. Chinese"; break;
+              case (34): charname += " Flemish"; break;
+              case (35): charname += " Irish Gaelic"; break;
+              case (36): charname += " Albanian"; break;
+              case (37): charname += " Romanian"; break;
+              case (38): charname += " Czech"; break;
+              case (39): charname += " Slovak"; break;
+              case (40): charname += " Slovenian"; break;
+              case (41): charname += " Yiddish"; break;
+              case (42): charname += " Serbian"; break;
+              case (43): charname += " Macedonian"; break;
+              case (44): charname += " Bulgarian"; break;
+              case (45): charname += " Ukrainian"; break;
+              case (46): charname += " Byelorussian"; break;
+              case (47): charname += " Uzbek"; break;
+              case (48): charname += " Kazakh"; break;
+              case (49): charname += " Azerbaijani (Cyrillic)"; break;
+              case (50): charname += " Azerbaijani (Arabic)"; break;
+              case (51): charname += " Armenian"; break;
+              case (52): charname += " Georgian"; break;
+              case (53): charname += " Moldavian"; break;
+              case (54): charname += " Kirghiz"; break;
+              case (55): charname += " Tajiki"; break;
+              case (56): charname += " Turkmen"; break;
+              case (57): charname += " Mongolian (Mongolian)"; break;
+              case (58): charname += " Mongolian (Cyrillic)"; break;
+              case (59): charname += " Pashto"; break;
+              case (60): charname += " Kurdish"; break;
+              case (61): charname += " Kashmiri"; break;
+              case (62): charname += " Sindhi"; break;
+              case (63): charname += " Tibetan"; break;
+              case (64): charname += " Nepali"; break;
+              case (65): charname += " Sanskrit"; break;
+              case (66): charname += " Marathi"; break;
+              case (67): charname += " Bengali"; break;
+              case (68): charname += " Assamese"; break;
+              case (69): charname += " Gujarati"; break;
+              case (70): charname += " Punjabi"; break;
+              case (71): charname += " Oriya"; break;
+              case (72): charname += " Malayalam"; break;
+              case (73): charname += " Kannada"; break;
+              case (74): charname += " Tamil"; break;
+              case (75): charname += " Telugu"; break;
+              case (76): charname += " Sinhalese"; break;
+              case (77): charname += " Burmese"; break;
+              case (78): charname += " Khmer"; break;
+              case (79): charname += " Lao"; break;
+              case (80): charname += " Vietnamese"; break;
+              case (81): charname += " Indonesian"; break;
+              case (82): charname += " Tagalog"; break;
+              case (83): charname += " Malay (Roman)"; break;
+              case (84): charname += " Malay (Arabic)"; break;
+              case (85): charname += " Amharic"; break;
+              case (86): charname += " Tigrinya"; break;
+              case (87): charname += " Galla"; break;
+              case (88): charname += " Somali"; break;
+              case (89): charname += " Swahili"; break;
+              case (90): charname += " Kinyarwanda/Ruanda"; break;
+              case (91): charname += " Rundi"; break;
+              case (92): charname += " Nyanja/Chewa"; break;
+              case (93): charname += " Malagasy"; break;
+              case (94): charname += " Esperanto"; break;
+              case (128): charname += " Welsh"; break;
+              case (129): charname += " Basque"; break;
+              case (130): charname += " Catalan"; break;
+              case (131): charname += " Latin"; break;
+              case (132): charname += " Quechua"; break;
+              case (133): charname += " Guarani"; break;
+              case (134): charname += " Aymara"; break;
+              case (135): charname += " Tatar"; break;
+              case (136): charname += " Uighur"; break;
+              case (137): charname += " Dzongkha"; break;
+              case (138): charname += " Javanese (Roman)"; break;
+              case (139): charname += " Sundanese (Roman)"; break;
+              case (140): charname += " Galician"; break;
+              case (141): charname += " Afrikaans"; break;
+              case (142): charname += " Breton"; break;
+              case (143): charname += " Inuktitut"; break;
+              case (144): charname += " Scottish Gaelic"; break;
+              case (145): charname += " Manx Gaelic"; break;
+              case (146): charname += " Irish Gaelic (dot above)"; break;
+              case (147): charname += " Tongan"; break;
+              case (148): charname += " Greek (polytonic)"; break;
+              case (149): charname += " Greenlandic"; break;
+              case (150): charname += " Azerbaijani (Roman)"; break;
+              default: /* do nothing */ break;
+            }
+          }
+          else if ((entryPlatform == 3) && ((entryEncoding == 0)
+            || (entryEncoding == 1) || (entryEncoding == 10))) // Windows
           {
-            stopFlag = true;      // stop looking at this file
-            stopText = "File size too small for start of Offset Table, "
-              + prettyPlural(fileSize, "byte") + ".";
-            break;                // exit from first <for> loop
+            charname = "Windows " + entryEncoding + " " + entryLanguage;
+                              // our name for this character set
+            charset = "UTF-16"; // assume all bytes are encoded in Unicode
+            switch (entryLanguage)
+            {
+              case (1025): charname += " Arabic (Saudi Arabia)"; break;
+              case (1026): charname += " Bulgarian"; break;
+              case (1027): charname += " Catalan"; break;
+              case (1028): charname += " Trad. Chinese (Taiwan)"; break;
+              case (1029): charname += " Czech"; break;
+              case (1030): charname += " Danish"; break;
+              case (1031): charname += " German"; break;
+              case (1032): charname += " Greek"; break;
+              case (1033): charname += " English"; break;
+              case (1034): charname += " Spanish (Traditional)"; break;
+              case (1035): charname += " Finnish"; break;
+              case (1036): charname += " French (France)"; break;
+              case (1037): charname += " Hebrew"; break;
+              case (1038): charname += " Hungarian"; break;
+              case (1039): charname += " Icelandic"; break;
+              case (1040): charname += " Italian"; break;
+              case (1041): charname += " Japanese"; break;
+              case (1042): charname += " Korean"; break;
+              case (1043): charname += " Dutch"; break;
+              case (1044): charname += " Norwegian"; break;
+              case (1045): charname += " Polish"; break;
+              case (1046): charname += " Portuguese (Brazil)"; break;
+              case (1047): charname += " Rhaeto-Romanic"; break;
+              case (1048): charname += " Romanian"; break;
+              case (1049): charname += " Russian"; break;
+              case (1050): charname += " Croatian"; break;
+              case (1051): charname += " Slovak"; break;
+              case (1052): charname += " Albanian"; break;
+              case (1053): charname += " Swedish"; break;
+              case (1054): charname += " Thai"; break;
+              case (1055): charname += " Turkish"; break;
+              case (1056): charname += " Urdu"; break;
+              case (1057): charname += " Indonesian"; break;
+              case (1058): charname += " Ukrainian"; break;
+              case (1059): charname += " Belarusian"; break;
+              case (1060): charname += " Slovenian"; break;
+              case (1061): charname += " Estonian"; break;
+              case (1062): charname += " Latvian"; break;
+              case (1063): charname += " Lithuanian"; break;
+              case (1064): charname += " Tajik"; break;
+              case (1065): charname += " Farsi"; break;
+              case (1066): charname += " Vietnamese"; break;
+              case (1067): charname += " Armenian"; break;
+              case (1068): charname += " Azeri (Latin)"; break;
+              case (1069): charname += " Basque"; break;
+              case (1070): charname += " Sorbian"; break;
+              case (1071): charname += " FYRO Macedonian"; break;
+              case (1072): charname += " Sesotho/Sutu"; break;
+              case (1073): charname += " Tsonga"; break;
+              case (1074): charname += " Tswana"; break;
+              case (1075): charname += " Venda"; break;
+              case (1076): charname += " Xhosa"; break;
+              case (1077): charname += " Zulu"; break;
+              case (1078): charname += " Afrikaans"; break;
+              case (1079): charname += " Georgian"; break;
+              case (1080): charname += " Faroese"; break;
+              case (1081): charname += " Hindi"; break;
+              case (1082): charname += " Maltese"; break;
+              case (1083): charname += " Sami Lappish"; break;
+              case (1084): charname += " Gaelic Scotland"; break;
+              case (1086): charname += " Malay (Malaysia)"; break;
+              case (1087): charname += " Kazakh"; break;
+              case (1088): charname += " Kyrgyz (Cyrillic)"; break;
+              case (1089): charname += " Swahili"; break;
+              case (1090): charname += " Turkmen"; break;
+              case (1091): charname += " Uzbek (Latin)"; break;
+              case (1092): charname += " Tatar"; break;
+              case (1093): charname += " Bengali"; break;
+              case (1094): charname += " Punjabi"; break;
+              case (1095): charname += " Gujarati"; break;
+              case (1096): charname += " Oriya"; break;
+              case (1097): charname += " Tamil"; break;
+              case (1098): charname += " Telugu"; break;
+              case (1099): charname += " Kannada"; break;
+              case (1100): charname += " Malayalam"; break;
+              case (1101): charname += " Assamese"; break;
+              case (1102): charname += " Marathi"; break;
+              case (1103): charname += " Sanskrit"; break;
+              case (1104): charname += " Mongolian (Cyrillic)"; break;
+              case (1105): charname += " Tibetan"; break;
+              case (1106): charname += " Welsh"; break;
+              case (1107): charname += " Khmer"; break;
+              case (1108): charname += " Lao"; break;
+              case (1109): charname += " Burmese"; break;
+              case (1110): charname += " Galician"; break;
+              case (1111): charname += " Konkani"; break;
+              case (1112): charname += " Manipuri"; break;
+              case (1113): charname += " Sindhi"; break;
+              case (1114): charname += " Syriac"; break;
+              case (1120): charname += " Kashmiri"; break;
+              case (1121): charname += " Nepali"; break;
+              case (1122): charname += " Frisian (Netherlands)"; break;
+              case (1125): charname += " Divehi"; break;
+              case (2049): charname += " Arabic (Iraq)"; break;
+              case (2052): charname += " Simp. Chinese (China)"; break;
+              case (2055): charname += " German (Switzerland)"; break;
+              case (2057): charname += " English (United Kingdom)"; break;
+              case (2058): charname += " Spanish (Mexico)"; break;
+              case (2060): charname += " French (Belgium)"; break;
+              case (2064): charname += " Italian (Switzerland)"; break;
+              case (2067): charname += " Dutch (Belgium)"; break;
+              case (2068): charname += " Norwegian (Nynorsk)"; break;
+              case (2070): charname += " Portuguese (Portugal)"; break;
+              case (2072): charname += " Romanian (Moldova)"; break;
+              case (2073): charname += " Russian Moldova"; break;
+              case (2074): charname += " Serbian (Latin)"; break;
+              case (2077): charname += " Swedish (Finland)"; break;
+              case (2092): charname += " Azeri (Cyrillic)"; break;
+              case (2108): charname += " Gaelic Ireland"; break;
+              case (2110): charname += " Malay (Brunei Darussalam)"; break;
+              case (2115): charname += " Uzbek (Cyrillic)"; break;
+              case (3073): charname += " Arabic (Egypt)"; break;
+              case (3076): charname += " Chinese (Hong Kong S.A.R.)"; break;
+              case (3079): charname += " German (Austria)"; break;
+              case (3081): charname += " English (Australia)"; break;
+              case (3082): charname += " Spanish (International)"; break;
+              case (3084): charname += " French (Canada)"; break;
+              case (3098): charname += " Serbian (Cyrillic)"; break;
+              case (4097): charname += " Arabic (Libya)"; break;
+              case (4100): charname += " Chinese (Singapore)"; break;
+              case (4103): charname += " German (Luxembourg)"; break;
+              case (4105): charname += " English (Canada)"; break;
+              case (4106): charname += " Spanish (Guatemala)"; break;
+              case (4108): charname += " French (Switzerland)"; break;
+              case (5121): charname += " Arabic (Algeria)"; break;
+              case (5124): charname += " Chinese (Macau S.A.R.)"; break;
+              case (5127): charname += " German (Liechtenstein)"; break;
+              case (5129): charname += " English (New Zealand)"; break;
+              case (5130): charname += " Spanish (Costa Rica)"; break;
+              case (5132): charname += " French (Luxembourg)"; break;
+              case (6145): charname += " Arabic (Morocco)"; break;
+              case (6153): charname += " English (Ireland)"; break;
+              case (6154): charname += " Spanish (Panama)"; break;
+              case (6156): charname += " French (Monaco)"; break;
+              case (7169): charname += " Arabic (Tunisia)"; break;
+              case (7177): charname += " English (South Africa)"; break;
+              case (7178): charname += " Spanish (Dominican Republic)"; break;
+              case (7180): charname += " French (West Indies)"; break;
+              case (8193): charname += " Arabic (Oman)"; break;
+              case (8201): charname += " English (Jamaica)"; break;
+              case (8202): charname += " Spanish (Venezuela)"; break;
+              case (9217): charname += " Arabic (Yemen)"; break;
+              case (9225): charname += " English (Caribbean)"; break;
+              case (9226): charname += " Spanish (Colombia)"; break;
+              case (9228): charname += " French (Congo, DRC)"; break;
+              case (10241): charname += " Arabic (Syria)"; break;
+              case (10249): charname += " English (Belize)"; break;
+              case (10250): charname += " Spanish (Peru)"; break;
+              case (10252): charname += " French (Senegal)"; break;
+              case (11265): charname += " Arabic (Jordan)"; break;
+              case (11273): charname += " English (Trinidad)"; break;
+              case (11274): charname += " Spanish (Argentina)"; break;
+              case (11276): charname += " French (Cameroon)"; break;
+              case (12289): charname += " Arabic (Lebanon)"; break;
+              case (12297): charname += " English (Zimbabwe)"; break;
+              case (12298): charname += " Spanish (Ecuador)"; break;
+              case (12300): charname += " French (Cote d'Ivoire)"; break;
+              case (13313): charname += " Arabic (Kuwait)"; break;
+              case (13321): charname += " English (Philippines)"; break;
+              case (13322): charname += " Spanish (Chile)"; break;
+              case (13324): charname += " French (Mali)"; break;
+              case (14337): charname += " Arabic (U.A.E.)"; break;
+              case (14346): charname += " Spanish (Uruguay)"; break;
+              case (15361): charname += " Arabic (Bahrain)"; break;
+              case (15370): charname += " Spanish (Paraguay)"; break;
+              case (16385): charname += " Arabic (Qatar)"; break;
+              case (16394): charname += " Spanish (Bolivia)"; break;
+              case (17418): charname += " Spanish (El Salvador)"; break;
+              case (18442): charname += " Spanish (Honduras)"; break;
+              case (19466): charname += " Spanish (Nicaragua)"; break;
+              case (20490): charname += " Spanish (Puerto Rico)"; break;
+              default: /* do nothing */ break;
+            }
           }
-
-          ramFile.seek(table);    // position to start of "Offset Table"
-          signature = ((long) ramFile.readInt()) & INT_MASK;
-                                  // read four signature bytes
-          if ((signature != 0x00010000L) // binary version 1.0 for TrueType
-            && (signature != 0x4F54544FL) // "OTTO" for OpenType
-            && (signature != 0x74727565L)) // "true" for Macintosh TrueType
+          else if ((entryPlatform == 3) && (entryEncoding == 2)) // Windows
           {
-            stopFlag = true;      // stop looking at this file
-            stopText = "Bad signature in Offset Table, 0x"
-              + Long.toHexString(signature) + ".";
-            break;                // exit from first <for> loop
+            charname = "Windows " + entryEncoding + " " + entryLanguage
+              + " Japanese Shift-JIS"; // our name for this character set
+            charset = "Shift_JIS"; // special encoding for Japanese (Japan)
           }
-
-          /* Looks like the start of a valid "Offset Table".  See if we can
-          read the whole table. */
-
-          numTables = ramFile.readUnsignedShort(); // get entries in table
-          if ((numTables < 1) || (numTables > 299)) // check arbitrary limits
+          else if ((entryPlatform == 3) && (entryEncoding == 3)) // Windows
           {
-            stopFlag = true;      // stop looking at this file
-            stopText = "Too many entries in Offset Table (" + numTables + ").";
-            break;                // exit from first <for> loop
+            charname = "Windows " + entryEncoding + " " + entryLanguage
+              + " Simp. Chinese GBK"; // our name for this character set
+            charset = "GBK";  // special encoding for Chinese (China)
           }
-          if (fileSize < (table + 12 + (16 * numTables)))
+          else if ((entryPlatform == 3) && (entryEncoding == 4)) // Windows
           {
-            stopFlag = true;      // stop looking at this file
-            stopText = "File size too small to contain Offset Table at 0x"
-              + Long.toHexString(table) + ".";
-            break;                // exit from first <for> loop
+            charname = "Windows " + entryEncoding + " " + entryLanguage
+              + " Trad. Chinese Big5"; // our name for this character set
+            charset = "Big5"; // special encoding for Chinese (Taiwan)
           }
-
-          /* Look for name table entries.  We don't check for duplicate tables,
-          and we don't make any promises about which table we will use if there
-          are duplicates. */
-
-          name = nameTableSize = -1; // assume we can't find proper name table
-          os2 = os2TableSize = -1;  // assume we can't find proper OS/2 table
-          ramFile.skipBytes(6);   // ignore the search range and shift numbers
-          for (curTable = 0; curTable < numTables; curTable ++)
+          else if ((entryPlatform == 3) && (entryEncoding == 5)) // Windows
           {
-            signature = ((long) ramFile.readInt()) & INT_MASK; // get four bytes
-            if (signature == 0x6E616D65L) // is this a "name" table?
-            {
-              ramFile.skipBytes(4); // yes, skip over checksum
-              name = ((long) ramFile.readInt()) & INT_MASK;
-                                  // get starting location of name table
-              nameTableSize = ramFile.readInt(); // get size of table in bytes
-            }
-            else if (signature == 0x4F532F32L) // is this an "OS/2" table?
-            {
-              ramFile.skipBytes(4); // yes, skip over checksum
-              os2 = ((long) ramFile.readInt()) & INT_MASK;
-                                  // get starting location of OS/2 table
-              os2TableSize = ramFile.readInt(); // get size of table in bytes
-            }
-            else
-              ramFile.skipBytes(12); // not a table we want, skip to next entry
+            charname = "Windows " + entryEncoding + " " + entryLanguage
+              + " Korean Wansung"; // our name for this character set
+            charset = "EUC-KR"; // special encoding for Korean Wansung
+          }
+          else if ((entryPlatform == 3) && (entryEncoding == 6)) // Windows
+          {
+            charname = "Windows " + entryEncoding + " " + entryLanguage
+              + " Korean Johab"; // our name for this character set
+            charset = "x-Johab"; // special encoding for Korean Johab
+          }
+          else                // generic for anything we don't understand
+          {
+            charname = "Platform " + entryPlatform + " encoding "
+              + entryEncoding + " language " + entryLanguage;
+                              // our name for an unknown character set
+            charset = "US-ASCII"; // assume all bytes are encoded in ASCII
           }
 
-          /* Check if we can read the name table. */
+          /* Do we have something worth printing? */
 
-          if ((name < 0) || (nameTableSize < 16)) // was there a name table?
+          charname += ", " + printName; // append field name to string
+          if (entryLength == 0)   // does field have a non-empty value?
           {
-            stopFlag = true;      // stop looking at this file
-            stopText = "Missing entry for \"name\" table in Offset Table.";
-            break;                // exit from first <for> loop
+            entryText = "";       // nothing to convert
+            if (printFlag)
+              putNameOutput(lines, ("      " + charname
+                + " is empty string"));
           }
-          if (fileSize < (name + nameTableSize))
+          else
           {
-            stopFlag = true;      // stop looking at this file
-            stopText = "File size too small to contain \"name\" table at 0x"
-              + Long.toHexString(name) + ".";
-            break;                // exit from first <for> loop
-          }
-          ramFile.seek(name);     // go to start of name table
-          signature = ((long) ramFile.readUnsignedShort()) & INT_MASK;
-                                  // check structure of table
-//        if (signature != 0)     // disable code: ignore signature bytes
-//        {
-//          stopFlag = true;      // stop looking at this file
-//          stopText = "Bad signature in \"name\" table, 0x"
-//            + Long.toHexString(signature) + ".";
-//          break;                // exit from first <for> loop
-//        }
-          numNames = ramFile.readUnsignedShort(); // number name table entries
-          if ((numNames < 1) || (numNames > 9999)) // check arbitrary limits
-          {
-            stopFlag = true;      // stop looking at this file
-            stopText = "Too many entries in \"name\" table (" + numNames
-              + ").";
-            break;                // exit from first <for> loop
-          }
-          nameTableStrings = name + ramFile.readUnsignedShort();
-                                  // starting location of all strings in table
-          if ((nameTableStrings < name)
-            || (nameTableStrings > (name + nameTableSize)))
-          {
-            stopFlag = true;      // stop looking at this file
-            stopText = "Bad starting offset for strings in \"name\" table, 0x"
-              + Long.toHexString(nameTableStrings) + ".";
-            break;                // exit from first <for> loop
+            entryBytes = new byte[entryLength]; // zeros past end of file
+            i = font.stringStart + entryOffset; // where string starts
+            if (i < font.nameBytes.length) // copy what the file has
+              System.arraycopy(font.nameBytes, i, entryBytes, 0,
+                Math.min(entryLength, (font.nameBytes.length - i)));
+            entryText = convertEncodedBytes(charset, entryBytes, relaxFlag);
+            if (printFlag)
+              putNameOutput(lines, ("      " + charname + ": "
+                + entryText));
           }
+          if (record != null)     // save every entry for structured output
+            record.addName(entryPlatform, entryEncoding, entryLanguage,
+              entryNameID, entryText);
+        }
+      } // end of second <for> loop
 
-          /* Loop through the entries in the name table.  Select the ones most
-          useful to us. */
+      if (lines != null)          // save decoded table for other fonts
+        decodedTables.put(font.nameBytes, new Object[] {lines, record,
+          (stopFlag ? stopText : null)});
 
-          for (curName = 0; curName < numNames; curName ++)
-                                  // second <for> loop
-          {
-            if (cancelFlag)       // stop if user hit the panic button
-            {
-              stopFlag = true;    // stop looking at this file
-              stopText = CANCEL_TEXT;
-              break;              // exit from second <for> loop
-            }
-            ramFile.seek(name + 6 + (curName * 12)); // start of this entry
-            entryPlatform = ramFile.readUnsignedShort(); // platform ID
-            entryEncoding = ramFile.readUnsignedShort(); // specific encoding
-            entryLanguage = ramFile.readUnsignedShort(); // language ID
-            entryNameID = ramFile.readUnsignedShort(); // name ID
-            entryLength = ramFile.readUnsignedShort(); // length of string
-            entryOffset = ramFile.readUnsignedShort(); // string offset
-
-            if ((entryOffset < 0) || (entryLength < 0)
-              || ((entryOffset + entryLength) > nameTableSize))
-            {
-              stopFlag = true;    // stop looking at this file
-              stopText = "Bad string offset in name table entry, 0x"
-                + Integer.toHexString(entryOffset) + " with length 0x"
-                + Integer.toHexString(entryLength) + ".";
-              break;              // exit from second <for> loop
-            }
+      if (stopFlag)               // did second <for> loop end early?
+        break;                    // yes, exit from first <for> loop
 
-            /* Before going through the numerous <if> and <switch> statements
-            below, decide if we will be printing this name table entry.  We
-            have a boolean array <fieldFlags> to tell us which name IDs to
-            print, and we have a boolean array <FIELD_RELAX> to tell us whether
-            we should relax the rules for allowable characters. */
+      /* One small piece of information is found only in the OS/2 table, not
+      in the name table: the font vendor ID.  This ID has exactly four bytes
+      and must be interpreted to obtain the full name of the font vendor.  We
+      only recognize the major font vendors; for an official list, see the
 
-            if ((entryNameID >= 0) && (entryNameID < FIELD_COUNT)
-              && (entryNameID != 15)) // #15 is reserved, treat as unknown ID
-            {
-              printFlag = fieldFlags[entryNameID]; // true if we print this ID
-              printName = FIELD_NAMES[entryNameID]; // printable name for field
-              relaxFlag = FIELD_RELAX[entryNameID]; // true if we relax rules
-            }
-            else
-            {
-              printFlag = fieldFlags[fieldUnknown]; // true if we print unknowns
-              printName = FIELD_NAMES[fieldUnknown] + " " + entryNameID;
-              relaxFlag = FIELD_RELAX[fieldUnknown]; // true if we relax rules
-            }
-            if (printFlag)        // only do more work if we really will print
-            {
-              /* Figure out which character set this byte string is in.  For
-              some of the Chinese-Japanese-Korean character sets, we are
-              guessing about the encoding.  Font makers aren't all that
-              consistent, so our guess is often as good as theirs....  For most
-              of the Macintosh languages, we simply don't know what the correct
-              encoding is. */
-
-              if (entryPlatform == 0) // Unicode
-              {
-                charname = "Unicode " + entryEncoding + " " + entryLanguage;
-                                  // our name for this character set
-                charset = "UTF-16"; // assume all bytes are encoded in Unicode
-              }
-              else if (entryPlatform == 1) // Macintosh
-              {
-                /* First, do the encoding, which affects how we interpret the
-                raw bytes forming the name.  We don't have enough information
-                about some of the Macintosh encodings, so we default to
-                US-ASCII for those. */
-
-                charname = "Macintosh " + entryEncoding;
-                                  // our name for this character set
-                charset = "US-ASCII"; // default to ASCII if don't know better
-                switch (entryEncoding)
-                {
-                  case (0):
-                    charname += " Roman"; // our name for this character set
-                    charset = "MacRoman"; // special encoding for Roman/Latin
-                    break;
-                  case (1): charname += " Japanese"; charset = "Shift_JIS"; break;
-                  case (2): charname += " Trad. Chinese"; charset = "Big5"; break;
-                  case (3): charname += " Korean"; charset = "EUC-KR"; break;
-                  case (4): charname += " Arabic"; charset = "MacArabic"; break;
-                  case (5): charname += " Hebrew"; charset = "MacHebrew"; break;
-                  case (6): charname += " Greek"; charset = "MacGreek"; break;
-                  case (7): charname += " Russian"; charset = "MacCyrillic"; break;
-                  case (8): charname += " RSymbol"; break; // assume ASCII
-                  case (9): charname += " Devanagari"; break; // assume ASCII
-                  case (10): charname += " Gurmukhi"; break; // assume ASCII
-                  case (11): charname += " Gujarati"; break; // assume ASCII
-                  case (12): charname += " Oriya"; break; // assume ASCII
-                  case (13): charname += " Bengali"; break; // assume ASCII
-                  case (14): charname += " Tamil"; break; // assume ASCII
-                  case (15): charname += " Telugu"; break; // assume ASCII
-                  case (16): charname += " Kannada"; break; // assume ASCII
-                  case (17): charname += " Malayalam"; break; // assume ASCII
-                  case (18): charname += " Sinhalese"; break; // assume ASCII
-                  case (19): charname += " Burmese"; break; // assume ASCII
-                  case (20): charname += " Khmer"; break; // assume ASCII
-                  case (21): charname += " Thai"; charset = "MacThai"; break;
-                  case (22): charname += " Laotian"; break; // assume ASCII
-                  case (23): charname += " Georgian"; break; // assume ASCII
-                  case (24): charname += " Armenian"; break; // assume ASCII
-                  case (25): charname += " Simp. Chinese"; charset = "GBK"; break;
-                  case (26): charname += " Tibetan"; break; // assume ASCII
-                  case (27): charname += " Mongolian"; break; // assume ASCII
-                  case (28): charname += " Geez"; break; // assume ASCII
-                  case (29): charname += " Slavic"; break; // assume ASCII
-                  case (30): charname += " Vietnamese"; break; // assume ASCII
-                  case (31): charname += " Sindhi"; break; // assume ASCII
-                  default: /* do nothing */ break;
-                }
-
-                /* Second, append the language, which is purely informational.
-                We may find later that the encoding must be combined with the
-                language to find the correct Macintosh character set. */
-
-                charname += " " + entryLanguage; // append language identifier
-                switch (entryLanguage)
-                {
-                  case (0): charname += " English"; break;
-                  case (1): charname += " French"; break;
-                  case (2): charname += " German"; break;
-                  case (3): charname += " Italian"; break;
-                  case (4): charname += " Dutch"; break;
-                  case (5): charname += " Swedish"; break;
-                  case (6): charname += " Spanish"; break;
-                  case (7): charname += " Danish"; break;
-                  case (8): charname += " Portuguese"; break;
-                  case (9): charname += " Norwegian"; break;
-                  case (10): charname += " Hebrew"; break;
-                  case (11): charname += " Japanese"; break;
-                  case (12): charname += " Arabic"; break;
-                  case (13): charname += " Finnish"; break;
-                  case (14): charname += " Greek"; break;
-                  case (15): charname += " Icelandic"; break;
-                  case (16): charname += " Maltese"; break;
-                  case (17): charname += " Turkish"; break;
-                  case (18): charname += " Croatian"; break;
-                  case (19): charname += " Trad. Chinese"; break;
-                  case (20): charname += " Urdu"; break;
-                  case (21): charname += " Hindi"; break;
-                  case (22): charname += " Thai"; break;
-                  case (23): charname += " Korean"; break;
-                  case (24): charname += " Lithuanian"; break;
-                  case (25): charname += " Polish"; break;
-                  case (26): charname += " Hungarian"; break;
-                  case (27): charname += " Estonian"; break;
-                  case (28): charname += " Latvian"; break;
-                  case (29): charname += " Sami"; break;
-                  case (30): charname += " Faroese"; break;
-                  case (31): charname += " Farsi/Persian"; break;
-                  case (32): charname += " Russian"; break;
-                  case (33): charname += " Simp. Chinese"; break;
-                  case (34): charname += " Flemish"; break;
-                  case (35): charname += " Irish Gaelic"; break;
-                  case (36): charname += " Albanian"; break;
-                  case (37): charname += " Romanian"; break;
-                  case (38): charname += " Czech"; break;
-                  case (39): charname += " Slovak"; break;
-                  case (40): charname += " Slovenian"; break;
-                  case (41): charname += " Yiddish"; break;
-                  case (42): charname += " Serbian"; break;
-                  case (43): charname += " Macedonian"; break;
-                  case (44): charname += " Bulgarian"; break;
-                  case (45): charname += " Ukrainian"; break;
-                  case (46): charname += " Byelorussian"; break;
-                  case (47): charname += " Uzbek"; break;
-                  case (48): charname += " Kazakh"; break;
-                  case (49): charname += " Azerbaijani (Cyrillic)"; break;
-                  case (50): charname += " Azerbaijani (Arabic)"; break;
-                  case (51): charname += " Armenian"; break;
-                  case (52): charname += " Georgian"; break;
-                  case (53): charname += " Moldavian"; break;
-                  case (54): charname += " Kirghiz"; break;
-                  case (55): charname += " Tajiki"; break;
-                  case (56): charname += " Turkmen"; break;
-                  case (57): charname += " Mongolian (Mongolian)"; break;
-                  case (58): charname += " Mongolian (Cyrillic)"; break;
-                  case (59): charname += " Pashto"; break;
-                  case (60): charname += " Kurdish"; break;
-                  case (61): charname += " Kashmiri"; break;
-                  case (62): charname += " Sindhi"; break;
-                  case (63): charname += " Tibetan"; break;
-                  case (64): charname += " Nepali"; break;
-                  case (65): charname += " Sanskrit"; break;
-                  case (66): charname += " Marathi"; break;
-                  case (67): charname += " Bengali"; break;
-                  case (68): charname += " Assamese"; break;
-                  case (69): charname += " Gujarati"; break;
-                  case (70): charname += " Punjabi"; break;
-                  case (71): charname += " Oriya"; break;
-                  case (72): charname += " Malayalam"; break;
-                  case (73): charname += " Kannada"; break;
-                  case (74): charname += " Tamil"; break;
-                  case (75): charname += " Telugu"; break;
-                  case (76): charname += " Sinhalese"; break;
-                  case (77): charname += " Burmese"; break;
-                  case (78): charname += " Khmer"; break;
-                  case (79): charname += " Lao"; break;
-                  case (80): charname += " Vietnamese"; break;
-                  case (81): charname += " Indonesian"; break;
-                  case (82): charname += " Tagalog"; break;
-                  case (83): charname += " Malay (Roman)"; break;
-                  case (84): charname += " Malay (Arabic)"; break;
-                  case (85): charname += " Amharic"; break;
-                  case (86): charname += " Tigrinya"; break;
-                  case (87): charname += " Galla"; break;
-                  case (88): charname += " Somali"; break;
-                  case (89): charname += " Swahili"; break;
-                  case (90): charname += " Kinyarwanda/Ruanda"; break;
-                  case (91): charname += " Rundi"; break;
-                  case (92): charname += " Nyanja/Chewa"; break;
-                  case (93): charname += " Malagasy"; break;
-                  case (94): charname += " Esperanto"; break;
-                  case (128): charname += " Welsh"; break;
-                  case (129): charname += " Basque"; break;
-                  case (130): charname += " Catalan"; break;
-                  case (131): charname += " Latin"; break;
-                  case (132): charname += " Quechua"; break;
-                  case (133): charname += " Guarani"; break;
-                  case (134): charname += " Aymara"; break;
-                  case (135): charname += " Tatar"; break;
-                  case (136): charname += " Uighur"; break;
-                  case (137): charname += " Dzongkha"; break;
-                  case (138): charname += " Javanese (Roman)"; break;
-                  case (139): charname += " Sundanese (Roman)"; break;
-                  case (140): charname += " Galician"; break;
-                  case (141): charname += " Afrikaans"; break;
-                  case (142): charname += " Breton"; break;
-                  case (143): charname += " Inuktitut"; break;
-                  case (144): charname += " Scottish Gaelic"; break;
-                  case (145): charname += " Manx Gaelic"; break;
-                  case (146): charname += " Irish Gaelic (dot above)"; break;
-                  case (147): charname += " Tongan"; break;
-                  case (148): charname += " Greek (polytonic)"; break;
-                  case (149): charname += " Greenlandic"; break;
-                  case (150): charname += " Azerbaijani (Roman)"; break;
-                  default: /* do nothing */ break;
-                }
-              }
-              else if ((entryPlatform == 3) && ((entryEncoding == 0)
-                || (entryEncoding == 1) || (entryEncoding == 10))) // Windows
-              {
-                charname = "Windows " + entryEncoding + " " + entryLanguage;
-                                  // our name for this character set
-                charset = "UTF-16"; // assume all bytes are encoded in Unicode
-                switch (entryLanguage)
-                {
-                  case (1025): charname += " Arabic (Saudi Arabia)"; break;
-                  case (1026): charname += " Bulgarian"; break;
-                  case (1027): charname += " Catalan"; break;
-                  case (1028): charname += " Trad. Chinese (Taiwan)"; break;
-                  case (1029): charname += " Czech"; break;
-                  case (1030): charname += " Danish"; break;
-                  case (1031): charname += " German"; break;
-                  case (1032): charname += " Greek"; break;
-                  case (1033): charname += " English"; break;
-                  case (1034): charname += " Spanish (Traditional)"; break;
-                  case (1035): charname += " Finnish"; break;
-                  case (1036): charname += " French (France)"; break;
-                  case (1037): charname += " Hebrew"; break;
-                  case (1038): charname += " Hungarian"; break;
-                  case (1039): charname += " Icelandic"; break;
-                  case (1040): charname += " Italian"; break;
-                  case (1041): charname += " Japanese"; break;
-                  case (1042): charname += " Korean"; break;
-                  case (1043): charname += " Dutch"; break;
-                  case (1044): charname += " Norwegian"; break;
-                  case (1045): charname += " Polish"; break;
-                  case (1046): charname += " Portuguese (Brazil)"; break;
-                  case (1047): charname += " Rhaeto-Romanic"; break;
-                  case (1048): charname += " Romanian"; break;
-                  case (1049): charname += " Russian"; break;
-                  case (1050): charname += " Croatian"; break;
-                  case (1051): charname += " Slovak"; break;
-                  case (1052): charname += " Albanian"; break;
-                  case (1053): charname += " Swedish"; break;
-                  case (1054): charname += " Thai"; break;
-                  case (1055): charname += " Turkish"; break;
-                  case (1056): charname += " Urdu"; break;
-                  case (1057): charname += " Indonesian"; break;
-                  case (1058): charname += " Ukrainian"; break;
-                  case (1059): charname += " Belarusian"; break;
-                  case (1060): charname += " Slovenian"; break;
-                  case (1061): charname += " Estonian"; break;
-                  case (1062): charname += " Latvian"; break;
-                  case (1063): charname += " Lithuanian"; break;
-                  case (1064): charname += " Tajik"; break;
-                  case (1065): charname += " Farsi"; break;
-                  case (1066): charname += " Vietnamese"; break;
-                  case (1067): charname += " Armenian"; break;
-                  case (1068): charname += " Azeri (Latin)"; break;
-                  case (1069): charname += " Basque"; break;
-                  case (1070): charname += " Sorbian"; break;
-                  case (1071): charname += " FYRO Macedonian"; break;
-                  case (1072): charname += " Sesotho/Sutu"; break;
-                  case (1073): charname += " Tsonga"; break;
-                  case (1074): charname += " Tswana"; break;
-                  case (1075): charname += " Venda"; break;
-                  case (1076): charname += " Xhosa"; break;
-                  case (1077): charname += " Zulu"; break;
-                  case (1078): charname += " Afrikaans"; break;
-                  case (1079): charname += " Georgian"; break;
-                  case (1080): charname += " Faroese"; break;
-                  case (1081): charname += " Hindi"; break;
-                  case (1082): charname += " Maltese"; break;
-                  case (1083): charname += " Sami Lappish"; break;
-                  case (1084): charname += " Gaelic Scotland"; break;
-                  case (1086): charname += " Malay (Malaysia)"; break;
-                  case (1087): charname += " Kazakh"; break;
-                  case (1088): charname += " Kyrgyz (Cyrillic)"; break;
-                  case (1089): charname += " Swahili"; break;
-                  case (1090): charname += " Turkmen"; break;
-                  case (1091): charname += " Uzbek (Latin)"; break;
-                  case (1092): charname += " Tatar"; break;
-                  case (1093): charname += " Bengali"; break;
-                  case (1094): charname += " Punjabi"; break;
-                  case (1095): charname += " Gujarati"; break;
-                  case (1096): charname += " Oriya"; break;
-                  case (1097): charname += " Tamil"; break;
-                  case (1098): charname += " Telugu"; break;
-                  case (1099): charname += " Kannada"; break;
-                  case (1100): charname += " Malayalam"; break;
-                  case (1101): charname += " Assamese"; break;
-                  case (1102): charname += " Marathi"; break;
-                  case (1103): charname += " Sanskrit"; break;
-                  case (1104): charname += " Mongolian (Cyrillic)"; break;
-                  case (1105): charname += " Tibetan"; break;
-                  case (1106): charname += " Welsh"; break;
-                  case (1107): charname += " Khmer"; break;
-                  case (1108): charname += " Lao"; break;
-                  case (1109): charname += " Burmese"; break;
-                  case (1110): charname += " Galician"; break;
-                  case (1111): charname += " Konkani"; break;
-                  case (1112): charname += " Manipuri"; break;
-                  case (1113): charname += " Sindhi"; break;
-                  case (1114): charname += " Syriac"; break;
-                  case (1120): charname += " Kashmiri"; break;
-                  case (1121): charname += " Nepali"; break;
-                  case (1122): charname += " Frisian (Netherlands)"; break;
-                  case (1125): charname += " Divehi"; break;
-                  case (2049): charname += " Arabic (Iraq)"; break;
-                  case (2052): charname += " Simp. Chinese (China)"; break;
-                  case (2055): charname += " German (Switzerland)"; break;
-                  case (2057): charname += " English (United Kingdom)"; break;
-                  case (2058): charname += " Spanish (Mexico)"; break;
-                  case (2060): charname += " French (Belgium)"; break;
-                  case (2064): charname += " Italian (Switzerland)"; break;
-                  case (2067): charname += " Dutch (Belgium)"; break;
-                  case (2068): charname += " Norwegian (Nynorsk)"; break;
-                  case (2070): charname += " Portuguese (Portugal)"; break;
-                  case (2072): charname += " Romanian (Moldova)"; break;
-                  case (2073): charname += " Russian Moldova"; break;
-                  case (2074): charname += " Serbian (Latin)"; break;
-                  case (2077): charname += " Swedish (Finland)"; break;
-                  case (2092): charname += " Azeri (Cyrillic)"; break;
-                  case (2108): charname += " Gaelic Ireland"; break;
-                  case (2110): charname += " Malay (Brunei Darussalam)"; break;
-                  case (2115): charname += " Uzbek (Cyrillic)"; break;
-                  case (3073): charname += " Arabic (Egypt)"; break;
-                  case (3076): charname += " Chinese (Hong Kong S.A.R.)"; break;
-                  case (3079): charname += " German (Austria)"; break;
-                  case (3081): charname += " English (Australia)"; break;
-                  case (3082): charname += " Spanish (International)"; break;
-                  case (3084): charname += " French (Canada)"; break;
-                  case (3098): charname += " Serbian (Cyrillic)"; break;
-                  case (4097): charname += " Arabic (Libya)"; break;
-                  case (4100): charname += " Chinese (Singapore)"; break;
-                  case (4103): charname += " German (Luxembourg)"; break;
-                  case (4105): charname += " English (Canada)"; break;
-                  case (4106): charname += " Spanish (Guatemala)"; break;
-                  case (4108): charname += " French (Switzerland)"; break;
-                  case (5121): charname += " Arabic (Algeria)"; break;
-                  case (5124): charname += " Chinese (Macau S.A.R.)"; break;
-                  case (5127): charname += " German (Liechtenstein)"; break;
-                  case (5129): charname += " English (New Zealand)"; break;
-                  case (5130): charname += " Spanish (Costa Rica)"; break;
-                  case (5132): charname += " French (Luxembourg)"; break;
-                  case (6145): charname += " Arabic (Morocco)"; break;
-                  case (6153): charname += " English (Ireland)"; break;
-                  case (6154): charname += " Spanish (Panama)"; break;
-                  case (6156): charname += " French (Monaco)"; break;
-                  case (7169): charname += " Arabic (Tunisia)"; break;
-                  case (7177): charname += " English (South Africa)"; break;
-                  case (7178): charname += " Spanish (Dominican Republic)"; break;
-                  case (7180): charname += " French (West Indies)"; break;
-                  case (8193): charname += " Arabic (Oman)"; break;
-                  case (8201): charname += " English (Jamaica)"; break;
-                  case (8202): charname += " Spanish (Venezuela)"; break;
-                  case (9217): charname += " Arabic (Yemen)"; break;
-                  case (9225): charname += " English (Caribbean)"; break;
-                  case (9226): charname += " Spanish (Colombia)"; break;
-                  case (9228): charname += " French (Congo, DRC)"; break;
-                  case (10241): charname += " Arabic (Syria)"; break;
-                  case (10249): charname += " English (Belize)"; break;
-                  case (10250): charname += " Spanish (Peru)"; break;
-                  case (10252): charname += " French (Senegal)"; break;
-                  case (11265): charname += " Arabic (Jordan)"; break;
-                  case (11273): charname += " English (Trinidad)"; break;
-                  case (11274): charname += " Spanish (Argentina)"; break;
-                  case (11276): charname += " French (Cameroon)"; break;
-                  case (12289): charname += " Arabic (Lebanon)"; break;
-                  case (12297): charname += " English (Zimbabwe)"; break;
-                  case (12298): charname += " Spanish (Ecuador)"; break;
-                  case (12300): charname += " French (Cote d'Ivoire)"; break;
-                  case (13313): charname += " Arabic (Kuwait)"; break;
-                  case (13321): charname += " English (Philippines)"; break;
-                  case (13322): charname += " Spanish (Chile)"; break;
-                  case (13324): charname += " French (Mali)"; break;
-                  case (14337): charname += " Arabic (U.A.E.)"; break;
-                  case (14346): charname += " Spanish (Uruguay)"; break;
-                  case (15361): charname += " Arabic (Bahrain)"; break;
-                  case (15370): charname += " Spanish (Paraguay)"; break;
-                  case (16385): charname += " Arabic (Qatar)"; break;
-                  case (16394): charname += " Spanish (Bolivia)"; break;
-                  case (17418): charname += " Spanish (El Salvador)"; break;
-                  case (18442): charname += " Spanish (Honduras)"; break;
-                  case (19466): charname += " Spanish (Nicaragua)"; break;
-                  case (20490): charname += " Spanish (Puerto Rico)"; break;
-                  default: /* do nothing */ break;
-                }
-              }
-              else if ((entryPlatform == 3) && (entryEncoding == 2)) // Windows
-              {
-                charname = "Windows " + entryEncoding + " " + entryLanguage
-                  + " Japanese Shift-JIS"; // our name for this character set
-                charset = "Shift_JIS"; // special encoding for Japanese (Japan)
-              }
-              else if ((entryPlatform == 3) && (entryEncoding == 3)) // Windows
-              {
-                charname = "Windows " + entryEncoding + " " + entryLanguage
-                  + " Simp. Chinese GBK"; // our name for this character set
-                charset = "GBK";  // special encoding for Chinese (China)
-              }
-              else if ((entryPlatform == 3) && (entryEncoding == 4)) // Windows
-              {
-                charname = "Windows " + entryEncoding + " " + entryLanguage
-                  + " Trad. Chinese Big5"; // our name for this character set
-                charset = "Big5"; // special encoding for Chinese (Taiwan)
-              }
-              else if ((entryPlatform == 3) && (entryEncoding == 5)) // Windows
-              {
-                charname = "Windows " + entryEncoding + " " + entryLanguage
-                  + " Korean Wansung"; // our name for this character set
-                charset = "EUC-KR"; // special encoding for Korean Wansung
-              }
-              else if ((entryPlatform == 3) && (entryEncoding == 6)) // Windows
-              {
-                charname = "Windows " + entryEncoding + " " + entryLanguage
-                  + " Korean Johab"; // our name for this character set
-                charset = "x-Johab"; // special encoding for Korean Johab
-              }
-              else                // generic for anything we don't understand
-              {
-                charname = "Platform " + entryPlatform + " encoding "
-                  + entryEncoding + " language " + entryLanguage;
-                                  // our name for an unknown character set
-                charset = "US-ASCII"; // assume all bytes are encoded in ASCII
-              }
-
-              /* Do we have something worth printing? */
-
-              charname += ", " + printName; // append field name to string
-              if (entryLength == 0) // does field have a non-empty value?
-                putOutput(("      " + charname + " is empty string"), false);
-              else
-              {
-                ramFile.seek(nameTableStrings + entryOffset); // position file
-                entryBytes = new byte[entryLength]; // how many bytes to read
-                ramFile.read(entryBytes); // grab raw name bytes to convert
-                putOutput(("      " + charname + ": "
-                  + convertEncodedBytes(charset, entryBytes, relaxFlag)),
-                  false);
-              }
-            }
-          } // end of second <for> loop
+          http://www.microsoft.com/typography/links/VendorList.aspx
 
-          if (stopFlag)           // did second <for> loop end early?
-            break;                // yes, exit from first <for> loop
+      web page.  The OS/2 table is required even for Macintosh fonts. */
 
-          /* One small piece of information is found only in the OS/2 table,
-          not in the name table: the font vendor ID.  This ID has exactly four
-          bytes and must be interpreted to obtain the full name of the font
-          vendor.  We only recognize the major font vendors; for an official
-          list, see the
+      if ((fieldFlags[fieldOs2ID] == false) && (record == null))
+      {
+        /* Do nothing if the user doesn't want the vendor ID. */
+      }
+      else if (font.os2 < 0)      // a missing table is not a problem for us
+      {
+        if (fieldFlags[fieldOs2ID]) // structured output just omits it
+          putOutput("      OS/2 table is missing.", false);
+      }
+      else if (font.vendorBytes == null) // offset or length was bad
+      {
+        if (fieldFlags[fieldOs2ID]) // only an error if vendor requested
+        {
+          stopFlag = true;        // stop looking at this file
+          stopText = "OS/2 table offset (0x" + Long.toHexString(font.os2)
+            + ") or length (" + font.os2TableSize + ") is bad.";
+          break;                  // exit from first <for> loop
+        }
+      }
+      else                        // we have the OS/2 vendor ID
+      {
+        os2VendorID = convertEncodedBytes("ASCII-Z", font.vendorBytes, false);
+        os2VendorIdUpper = os2VendorID.toUpperCase(); // for comparisons
+
+        /* Look up the vendor ID in the table from our vendor file, which also
+        holds the major vendor IDs that are built in.  An exact match comes
+        first, so that IDs differing only in case can be told apart.
+        Otherwise we accept any case, as older versions did. */
+
+        os2VendorName = vendorTable.get(os2VendorID);
+        if (os2VendorName == null) // no exact match, try uppercase
+          os2VendorName = vendorTable.get(os2VendorIdUpper);
+        if (os2VendorName == null) // report nothing for IDs we don't know
+          os2VendorName = "";
+
+        /* Print what we found. */
+
+        if (fieldFlags[fieldOs2ID])
+          putOutput(("      OS/2 (" + font.os2TableVersion + ", "
+            + font.os2TableSize + ") vendor ID is "
+            + ((os2VendorID.length() == 4)
+            ? ("\"" + os2VendorID + "\"") : os2VendorID)
+            + ((os2VendorName.length() > 0) ? (" for " + os2VendorName)
+            : "") + "."), false);
+        if (record != null)
+        {
+          record.vendorID = os2VendorID;
+          record.vendorName = os2VendorName;
+        }
+      }
 
-              http://www.microsoft.com/typography/links/VendorList.aspx
+      /* Hand the finished record to the writer thread, which does all of the
+      formatting and I/O.  The search index only reads from the record. */
 
-          web page.  The OS/2 table is required even for Macintosh fonts. */
+      if (record != null)
+      {
+        if (indexRecords != null) // updating search index?
+          indexRecords.add(record);
+        if (outputWriter != null) // writing structured output?
+          putRecord(record);
+        record = null;            // don't reuse, writer owns it now
+      }
+    } // end of first <for> loop
 
-          if (fieldFlags[fieldOs2ID] == false) // was OS/2 vendor requested?
-          {
-            /* Do nothing if the user doesn't want the vendor ID. */
-          }
-          else if (os2 < 0)       // a missing table is not a problem for us
-          {
-            putOutput("      OS/2 table is missing.", false);
-          }
-          else if ((os2TableSize < 68) || (os2TableSize > 200)
-            || (fileSize < (os2 + os2TableSize))) // check arbitrary limits
-          {
-            stopFlag = true;      // stop looking at this file
-            stopText = "OS/2 table offset (0x" + Long.toHexString(os2)
-              + ") or length (" + os2TableSize + ") is bad.";
-            break;                // exit from first <for> loop
-          }
-          else                    // should be able to read OS/2 vendor ID
-          {
-            ramFile.seek(os2);    // go to start of OS/2 table
-            os2TableVersion = ramFile.readUnsignedShort(); // version number
-            entryBytes = new byte[4]; // allocate byte array for vendor ID
-            ramFile.seek(os2 + 58); // where vendor ID bytes start in file
-            ramFile.read(entryBytes); // grab raw name bytes to convert
-            os2VendorID = convertEncodedBytes("ASCII-Z", entryBytes, false);
-            os2VendorIdUpper = os2VendorID.toUpperCase(); // for comparisons
-
-            /* Look for the major font vendor IDs.  There are too many to
-            include here, and the list keeps changing.  Yes, this would be
-            better done as a table, or read from a configuration file. */
-
-            if (os2VendorIdUpper.equals("1ASC"))
-              os2VendorName = "Ascender";
-            else if (os2VendorIdUpper.equals("ADBE"))
-              os2VendorName = "Adobe";
-            else if (os2VendorIdUpper.equals("AGFA"))
-              os2VendorName = "Agfa Monotype";
-            else if (os2VendorIdUpper.equals("ALTS"))
-              os2VendorName = "Altsys (Macromedia) Fontographer software";
-            else if (os2VendorIdUpper.equals("AMT "))
-              os2VendorName = "Agfa Monotype";
-            else if (os2VendorIdUpper.equals("APPL"))
-              os2VendorName = "Apple";
-            else if (os2VendorIdUpper.equals("ARPH"))
-              os2VendorName = "Arphic (Taiwan)";
-            else if (os2VendorIdUpper.equals("BDFZ"))
-              os2VendorName = "Beijing Founder (China)";
-            else if (os2VendorIdUpper.equals("BITS"))
-              os2VendorName = "Bitstream";
-            else if (os2VendorIdUpper.equals("CANT"))
-              os2VendorName = "Canada Type";
-            else if (os2VendorIdUpper.equals("DYNA"))
-              os2VendorName = "DynaComware, DynaFont, DynaLab (Taiwan)";
-            else if (os2VendorIdUpper.equals("FWKS"))
-              os2VendorName = "Fontworks (Japan)";
-            else if (os2VendorIdUpper.equals("GOOD"))
-              os2VendorName = "Goodfont (Korea)";
-            else if (os2VendorIdUpper.equals("HANY"))
-              os2VendorName = "Beijing Hanyi Keyin (China)";
-            else if (os2VendorIdUpper.equals("HP  "))
-              os2VendorName = "Hewlett-Packard";
-            else if (os2VendorIdUpper.equals("HY  "))
-              os2VendorName = "HanYang (Korea)";
-            else if (os2VendorIdUpper.equals("ITC "))
-              os2VendorName = "International Typeface";
-            else if (os2VendorIdUpper.equals("LINO"))
-              os2VendorName = "Linotype";
-            else if (os2VendorIdUpper.equals("MACR"))
-              os2VendorName = "Macromedia Fontographer software";
-            else if (os2VendorIdUpper.equals("MONO"))
-              os2VendorName = "Monotype Imaging";
-            else if (os2VendorIdUpper.equals("MRSW"))
-              os2VendorName = "Morisawa (Japan)";
-            else if (os2VendorIdUpper.equals("MS  "))
-              os2VendorName = "Microsoft";
-            else if (os2VendorIdUpper.equals("MT  "))
-              os2VendorName = "Monotype Imaging";
-            else if (os2VendorIdUpper.equals("P22 "))
-              os2VendorName = "P22 Type Foundry";
-            else if (os2VendorIdUpper.equals("PFED"))
-              os2VendorName = "PfaEdit or FontForge software";
-            else if (os2VendorIdUpper.equals("PYRS"))
-              os2VendorName = "Pyrus FontLab software";
-            else if (os2VendorIdUpper.equals("RICO"))
-              os2VendorName = "Ricoh (Japan)";
-            else if (os2VendorIdUpper.equals("RIX "))
-              os2VendorName = "Fontrix (Korea)";
-            else if (os2VendorIdUpper.equals("SAND"))
-              os2VendorName = "Sandoll Type Bank (Korea)";
-            else if (os2VendorIdUpper.equals("URW "))
-              os2VendorName = "URW++ Design & Development";
-            else if (os2VendorIdUpper.equals("YDI "))
-              os2VendorName = "Yoon Design (Korea)";
-            else
-              os2VendorName = ""; // report nothing for IDs we don't recognize
+    if ((stopFlag == false) && (data.stopText != null)) // whole file problem?
+    {
+      stopFlag = true;            // stop looking at this file
+      stopText = data.stopText;
+    }
 
-            /* Print what we found. */
+    /* Replace this file in the search index, with whatever fonts we could
+    read, unless we were cancelled or had no decoder for a WOFF2 file. */
 
-            putOutput(("      OS/2 (" + os2TableVersion + ", " + os2TableSize
-              + ") vendor ID is " + ((os2VendorID.length() == 4)
-              ? ("\"" + os2VendorID + "\"") : os2VendorID)
-              + ((os2VendorName.length() > 0) ? (" for " + os2VendorName) : "")
-              + "."), false);
-          }
-        } // end of first <for> loop
-      }
+    if ((indexRecords != null) && (stopText.equals(CANCEL_TEXT) == false)
+      && (stopText.equals(BROTLI_TEXT) == false))
+      index.put(indexPath, indexStamp, indexRecords);
 
-      /* Close the input font file. */
+    /* Print a summary.  The caller counts the errors. */
 
-      ramFile.close();            // try to close input file
+    if (stopFlag)                 // did we stop for a reason?
+    {
+      if (stopText.equals(CANCEL_TEXT) == false) // don't echo "cancelled"
+      {
+        putOutput(("   " + stopText), false); // file name already printed
+        if (outputWriter != null) // structured output gets an error record
+        {
+          record = new FontNames3Record(givenFile.getPath(), fileSize, 0,
+            numFonts, 0);
+          record.error = stopText;
+          putRecord(record);
+        }
+      }
     }
+    return(stopFlag);             // true if this file counts as an error
 
-    /* Catch any file I/O errors, here or in called methods. */
+  } // end of checkFile() method
 
-    catch (IOException ioe)
+
+/*
+  closeCatalog() method
+
+  Finish writing the catalog, if there is one, and say how much it helped.
+  Errors are reported but are otherwise ignored, since the catalog only makes
+  later runs faster.
+*/
+  static void closeCatalog()
+  {
+    if (catalog == null)          // do nothing if there is no catalog
+      return;
+    try { catalog.close(); }
+    catch (IOException ioe)       // can't write new catalog or rename it
     {
-      stopFlag = true;            // stop looking at this file
-      stopText = "Can't read from file."; // why we stopped
+      putError("Can't write catalog file " + catalogFile + ": "
+        + ioe.getMessage());
     }
+    putError("Catalog: " + prettyPlural(catalog.hits, "file")
+      + " from catalog, " + prettyPlural(catalog.reads, "file") + " read"
+      + ((catalog.mismatches > 0) ? (", "
+      + prettyPlural(catalog.mismatches, "entry") + " didn't match") : "")
+      + ".");
+    catalog = null;               // open again for next GUI run
+  }
 
-    /* Print a summary and increment global counters. */
 
-    if (stopFlag)                 // did we stop for a reason?
+/*
+  closeIndex() method
+
+  Save the search index, if there is one, with changes from this run.
+*/
+  static void closeIndex()
+  {
+    if (index == null)            // do nothing if there is no index
+      return;
+    try { index.close(); }
+    catch (IOException ioe)       // can't write new index or rename it
     {
-      totalErrors ++;             // yes, count this file as an error
-      if (stopText.equals(CANCEL_TEXT) == false) // don't echo "cancelled"
-        putOutput(("   " + stopText), false); // file name already printed
+      putError("Can't write index file " + indexFile + ": "
+        + ioe.getMessage());
     }
-  } // end of checkFile() method
+    putError("Index: " + prettyPlural(index.added, "file") + " added or "
+      + "updated, " + prettyPlural(index.removed, "file") + " removed.");
+    index = null;                 // open again for next GUI run
+  }
 
 
 /*
@@ -1722,8 +1942,7 @@ public class FontNames3
   {
     StringBuffer buffer;          // faster than String for multiple appends
     char ch;                      // one character from input string
-    byte[] adjust;                // caller's byte array with nulls removed
-    int from, to;                 // index variables
+    int from;                     // index variable
     int length;                   // size of byte array or character string
     String result;                // our converted result
 
@@ -1771,15 +1990,8 @@ public class FontNames3
 
         if (relaxFlag)            // are we operating under relaxed rules?
         {
-          length = input.length;  // count number of caller's original bytes
-          adjust = new byte[length]; // allocate new array for removing nulls
-          to = 0;                 // put next non-null byte at this index
-          for (from = 0; from < length; from ++)
-          {
-            if ((input[from] != 0x00) && (input[from] != 0x7F)) // null, delete
-              adjust[to ++] = input[from]; // keep everything else to convert
-          }
-          result = new String(adjust, 0, to, charset); // convert, may exception
+          result = FontNames3Charsets.decode(charset, input, true);
+                                  // remove nulls, convert, may exception
           length = result.length(); // get resulting string length
           for (from = 0; from < length; from ++) // inspect converted characters
           {
@@ -1848,7 +2060,8 @@ public class FontNames3
         true Unicode characters, which is why this is a separate case from most
         other character sets (see below). */
 
-        result = new String(input, charset); // convert, may throw exception
+        result = FontNames3Charsets.decode(charset, input, false);
+                                  // convert, may throw exception
         length = result.length(); // get resulting string length
         for (from = 0; from < length; from ++) // inspect converted characters
         {
@@ -1867,17 +2080,11 @@ public class FontNames3
         /* For all other character sets, remove null bytes.  Then convert to
         standard Java characters (Unicode) using the given encoding.  Inspect
         the result.  If Unicode 0xFFFD replacement characters appear, replace
-        our conversion with the original bytes in hexadecimal. */
+        our conversion with the original bytes in hexadecimal.  Null bytes are
+        removed in the same pass that converts the bytes. */
 
-        length = input.length;    // count number of caller's original bytes
-        adjust = new byte[length]; // allocate new array for removing nulls
-        to = 0;                   // put next non-null byte at this index
-        for (from = 0; from < length; from ++)
-        {
-          if ((input[from] != 0x00) && (input[from] != 0x7F)) // null, delete
-            adjust[to ++] = input[from]; // keep everything else to convert
-        }
-        result = new String(adjust, 0, to, charset); // convert, may exception
+        result = FontNames3Charsets.decode(charset, input, true);
+                                  // remove nulls, convert, may exception
         length = result.length(); // get resulting string length
         for (from = 0; from < length; from ++) // inspect converted characters
         {
@@ -1917,6 +2124,53 @@ public class FontNames3
   }
 
 
+/*
+  doCommitRunner() method
+
+  This method is called inside a separate thread by the runnable interface of
+  our "committer" class when font files are parsed in parallel.  We take jobs
+  from <pipelineQueue> in the same order as the files were found, wait for each
+  file to finish parsing, then print the output that was held back.  The report
+  is the same as if everything was done one file at a time.  Once the user has
+  cancelled, we keep taking jobs (so nobody waits on a full queue) but print
+  nothing more.  We return the number of files with errors.
+*/
+  static int doCommitRunner()
+  {
+    int errors;                   // number of files with errors
+    int i;                        // index variable
+    FontNames3Job job;            // next parsed file (or messages) in order
+    Object line;                  // one held-back line or record
+
+    errors = 0;                   // no errors found yet
+    while (true)                  // until walker tells us that it's done
+    {
+      try { job = (FontNames3Job) pipelineQueue.take(); }
+      catch (InterruptedException ie) { break; } // should never happen
+      job.waitDone();             // wait for parsing thread to finish
+
+      if (job.error)              // did this file have problems?
+        errors ++;
+      if (cancelFlag == false)    // print only if user hasn't cancelled
+      {
+        for (i = 0; i < job.messages.size(); i ++)
+        {
+          line = job.messages.get(i);
+          if (line instanceof FontNames3Record) // structured output record
+            putRecord((FontNames3Record) line);
+          else if (line instanceof String[]) // from putError()
+            putError(((String[]) line)[0]);
+          else                    // from putOutput()
+            putOutput((String) line, false);
+        }
+      }
+      if (job.last) break;        // exit from loop after last queued item
+    }
+    return(errors);
+
+  } // end of doCommitRunner() method
+
+
 /*
   doOpenButton() method
 
@@ -1970,17 +2224,36 @@ public class FontNames3
   {
     int i;                        // index variable
 
+    openCatalog();                // read catalog again, may have changed
+    openIndex();                  // and search index
+
     /* Loop once for each file name selected.  Don't assume that these are all
     valid file names or even fonts. */
 
-    for (i = 0; i < openFileList.length; i ++)
+    if (threadCount > 1)          // parse files in parallel?
+      processPipeline(openFileList); // yes, with multiple threads
+    else
     {
-      if (cancelFlag) break;      // exit from <for> loop if user cancelled
-      openFileFolder(openFileList[i], ""); // process this file or folder
+      for (i = 0; i < openFileList.length; i ++)
+      {
+        if (cancelFlag) break;    // exit from <for> loop if user cancelled
+        openFileFolder(openFileList[i], ""); // process this file or folder
+      }
     }
 
     /* If we weren't cancelled, print a summary. */
 
+    closeCatalog();               // catalog is written even if cancelled
+    closeIndex();                 // and search index
+    if (outputWriter != null)     // make records visible after each run
+    {
+      try { outputWriter.flush(); }
+      catch (IOException ioe)     // writer thread couldn't write a record
+      {
+        putOutput("Can't write structured output: " + ioe.getMessage());
+      }
+    }
+
     if (!cancelFlag)
     {
       putOutput("", false);       // blank line
@@ -1999,6 +2272,36 @@ public class FontNames3
   } // end of doOpenRunner() method
 
 
+/*
+  doParseRunner() method
+
+  This method is called by one of the threads in <pipelinePool> to parse a font
+  file.  All output from this thread goes into the job's list of messages, for
+  the committer thread to print in the correct order.  Files still waiting in
+  the pool when the user cancels are skipped.
+*/
+  static void doParseRunner(FontNames3Job job)
+  {
+    messageSink.set(job.messages); // hold back output for this file
+    try
+    {
+      if (cancelFlag == false)    // don't start new files after cancel
+        job.error = checkFile(job.givenFile, job.givenName, job.givenBytes,
+          job.fileNumber);
+    }
+    finally
+    {
+      if (job.givenBytes != null) // done with font from archive in memory
+      {
+        archiveBudget.release(job.givenBytes.length);
+        job.givenBytes = null;    // memory can be reused now
+      }
+      messageSink.set(null);      // stop holding back output from this thread
+      job.setDone();              // tell committer that it can print
+    }
+  } // end of doParseRunner() method
+
+
 /*
   doSaveButton() method
 
@@ -2097,6 +2400,184 @@ public class FontNames3
   } // end of formatHexBytes() method
 
 
+/*
+  loadVendors() method
+
+  Build the table of OS/2 vendor names.  We start with the major vendor IDs
+  built into this program, then add each line from the vendor file, replacing
+  any built-in name for the same ID.  The file is the "vendors.txt" distributed
+  with FontOrg: a vendor ID, a tab, the company or foundry, and optionally a
+  tab and the designer.  Lines starting with "#" are comments.  Short vendor
+  IDs are padded with spaces, the same as in the OS/2 table.  A missing file is
+  not an error if it's the default file name; we use the built-in list alone.
+*/
+  static void loadVendors()
+  {
+    String[] fields;              // tab-separated fields from input line
+    int i;                        // index variable
+    String id;                    // vendor ID from input line
+    BufferedReader inputFile;     // input character stream from text file
+    String name;                  // vendor name from input line
+    String text;                  // one input line from file
+
+    vendorTable = new FontNames3Vendors(); // empty hash table
+    for (i = 0; i < VENDOR_NAMES.length; i += 2) // built-in IDs go first
+      vendorTable.put(VENDOR_NAMES[i], VENDOR_NAMES[i + 1]);
+
+    try                           // catch specific and general I/O errors
+    {
+      inputFile = new BufferedReader(new InputStreamReader(new
+        FileInputStream(vendorFile), "windows-1252")); // FontOrg uses ANSI
+      while ((text = inputFile.readLine()) != null)
+      {
+        fields = text.split("\t"); // ID, company, designer
+        if (text.startsWith("#") || (fields.length < 2))
+          continue;               // ignore comments, blank or bad lines
+        id = fields[0];           // remove padding after ID, but not before
+        while (id.endsWith(" "))
+          id = id.substring(0, (id.length() - 1));
+        name = fields[1].trim();  // company or foundry
+        if ((fields.length > 2) && (fields[2].trim().length() > 0))
+          name += " (" + fields[2].trim() + ")"; // append designer
+        if (name.length() > 0)    // table ignores IDs that aren't valid
+          vendorTable.put(id, name);
+      }
+      inputFile.close();          // try to close input file
+    }
+
+    catch (FileNotFoundException fnfe) // if our vendor file does not exist
+    {
+      if (vendorFile.equals(VENDOR_FILE) == false)
+      {
+        System.err.println("Vendor data file not found: " + vendorFile);
+        System.err.println("in current working directory "
+          + System.getProperty("user.dir"));
+      }
+    }
+
+    catch (IOException ioe)       // for all other file I/O errors
+    {
+      System.err.println("Unable to read vendor names from file "
+        + vendorFile);
+      System.err.println(ioe.getMessage());
+    }
+  } // end of loadVendors() method
+
+
+/*
+  openArchive() method
+
+  The caller gives us a ZIP archive, which we treat like a folder.  Each font
+  file in the archive is inflated into memory and checked from there, without
+  any temporary files.  Entries are read in the order that they are stored,
+  because a ZIP file can be read as a stream (forward only), and all fonts in
+  the archive are checked, including those in folders inside the archive.  As
+  with real folders, other files are silently ignored, and so are hidden files
+  (names starting with a period, and Macintosh "__MACOSX" resource forks)
+  unless the user asked for hidden files.
+
+  Entry names are UTF-8 only if the archive says so.  Older archives use the
+  DOS code page (IBM437), or the local code page, which we can't know.  Names
+  are decoded as IBM437, which accepts any bytes, so a strange name is only
+  printed wrong, instead of stopping us.
+*/
+  static void openArchive(
+    File givenFile,               // caller's Java File object for ZIP file
+    String givenPath)             // caller's name for ZIP file
+  {
+    byte[] bytes;                 // entry inflated into memory, or null
+    ZipEntry entry;               // next entry from ZIP archive
+    ZipInputStream input;         // ZIP archive opened for reading
+    String lower;                 // entry name in lowercase, for comparison
+    String name;                  // our name for entry, with caller's path
+
+    if (consoleFlag)              // write on standard error for consoles
+      putError("Searching archive " + givenPath);
+    else                          // show running status message for GUI
+      setStatusMessage("Searching archive " + givenPath);
+
+    try                           // catch file I/O and ZIP format errors
+    {
+      input = new ZipInputStream(new BufferedInputStream(new FileInputStream(
+        givenFile), 0x10000), Charset.forName("IBM437"));
+      while ((entry = input.getNextEntry()) != null)
+      {
+        if (cancelFlag) break;    // exit from <while> loop if user cancelled
+        lower = entry.getName().toLowerCase(); // for comparing file types
+        if (entry.isDirectory()   // folders are implied by entry names
+          || ((lower.endsWith(".otf") || lower.endsWith(".ttc")
+          || lower.endsWith(".ttf") || lower.endsWith(".woff")
+          || lower.endsWith(".woff2")) == false))
+        {
+          continue;               // silently ignore anything but fonts
+        }
+        if ((hiddenFlag == false) && (lower.startsWith("__macosx/")
+          || lower.startsWith(".") || (lower.indexOf("/.") >= 0)))
+        {
+          continue;               // silently ignore hidden files
+        }
+
+        totalFiles ++;            // count the number of files we try to open
+        name = givenPath + systemFileSep + entry.getName().replace("/",
+          systemFileSep);         // same style as files in real folders
+        bytes = readArchiveEntry(input); // inflate entry into memory
+        if (bytes == null)        // too big for memory?
+        {
+          putOutput("", false);   // blank line
+          putOutput(("file #" + totalFiles + ": " + name), false);
+          putOutput(("   Font in archive is bigger than "
+            + prettyPlural(MAX_ARCHIVE, "byte") + "."), false);
+          totalErrors ++;         // count this file as an error
+        }
+        else if (pipelineQueue != null) // are we parsing files in parallel?
+        {
+          queueFile(new File(givenFile, entry.getName()), name, bytes,
+            totalFiles);          // let pipeline do the work
+        }
+        else if (checkFile(new File(givenFile, entry.getName()), name, bytes,
+          totalFiles))            // one file at a time
+        {
+          totalErrors ++;         // count this file as an error
+        }
+      }
+      input.close();              // try to close ZIP archive
+    }
+    catch (IOException ioe)       // includes ZipException for bad archives
+    {
+      putError("Unable to read archive: " + givenFile.getPath() + " ("
+        + ioe.getMessage() + ")");
+      totalErrors ++;             // count bad archives as errors
+    }
+    catch (IllegalArgumentException iae) // bad entry name in archive
+    {
+      putError("Unable to read archive: " + givenFile.getPath() + " ("
+        + iae.getMessage() + ")");
+      totalErrors ++;             // count bad archives as errors
+    }
+  } // end of openArchive() method
+
+
+/*
+  openCatalog() method
+
+  Open the catalog file given by the -d option, if any.  An old catalog is
+  indexed but not read until its entries are needed.  If the catalog can't be
+  opened, then we report the error and continue without a catalog.
+*/
+  static void openCatalog()
+  {
+    if (catalogFile == null)      // do nothing if there is no catalog
+      return;
+    try { catalog = new FontNames3Catalog(new File(catalogFile), catalogMode); }
+    catch (IOException ioe)       // bad catalog or can't create new file
+    {
+      putError("Can't open catalog file " + catalogFile + ": "
+        + ioe.getMessage());
+      catalog = null;             // continue without catalog
+    }
+  }
+
+
 /*
   openFileFolder() method
 
@@ -2163,9 +2644,18 @@ public class FontNames3
         }
       }
     }
+    else if (givenFile.isFile()   // ZIP archives are treated as folders
+      && givenFile.getName().toLowerCase().endsWith(".zip"))
+    {
+      openArchive(givenFile, name); // fonts inside archive, in memory
+    }
     else if (givenFile.isFile())  // we do want to look at normal files
     {
-      checkFile(givenFile, name); // always open files given by user
+      totalFiles ++;              // count the number of files we try to open
+      if (pipelineQueue != null)  // are we parsing files in parallel?
+        queueFile(givenFile, name, null, totalFiles); // let pipeline work
+      else if (checkFile(givenFile, name, null, totalFiles)) // one at a time
+        totalErrors ++;           // count this file as an error
     }
     else                          // user gave bad file or folder name
     {
@@ -2175,6 +2665,26 @@ public class FontNames3
   } // end of openFileFolder() method
 
 
+/*
+  openIndex() method
+
+  Open the search index given by the -i option, if any.  If the index can't be
+  read, then we report the error and continue without an index.
+*/
+  static void openIndex()
+  {
+    if (indexFile == null)        // do nothing if there is no index
+      return;
+    try { index = new FontNames3Index(new File(indexFile)); }
+    catch (IOException ioe)       // bad index file
+    {
+      putError("Can't open index file " + indexFile + ": "
+        + ioe.getMessage());
+      index = null;               // continue without index
+    }
+  }
+
+
 /*
   prettyPlural() method
 
@@ -2213,6 +2723,51 @@ public class FontNames3
   } // end of prettyPlural() method
 
 
+/*
+  processPipeline() method
+
+  Same as calling openFileFolder() for each file or folder, except that font
+  files are parsed by a pool of <threadCount> threads while the current thread
+  keeps searching folders.  A single committer thread prints the results in the
+  order that the files were found.  The queue between us and the committer is
+  bounded, so if parsing or printing falls behind, then we wait instead of
+  filling memory with pending files.  When the user cancels, the parsing
+  threads stop at their next check of <cancelFlag> and skip any files that
+  haven't started.
+*/
+  static void processPipeline(File[] givenList)
+  {
+    FontNames3Committer committer; // runnable that prints files in order
+    int i;                        // index variable
+    Thread thread;                // thread for <committer>
+
+    archiveBudget = new Semaphore(ARCHIVE_BUDGET); // fonts from archives
+    pipelinePool = Executors.newFixedThreadPool(threadCount);
+    pipelineQueue = new ArrayBlockingQueue(PIPELINE_DEPTH * threadCount);
+    committer = new FontNames3Committer();
+    thread = new Thread(committer, "doCommitRunner");
+    thread.start();               // start printing as soon as files are parsed
+
+    messageSink.set(new Vector()); // hold back our own output for committer
+    for (i = 0; i < givenList.length; i ++)
+    {
+      if (cancelFlag) break;      // exit from <for> loop if user cancelled
+      openFileFolder(givenList[i], ""); // search folders, queue files to parse
+    }
+    queueMessages(true);          // remaining output, then committer stops
+    messageSink.set(null);        // print directly from this thread again
+
+    try { thread.join(); }        // wait for all files to be printed
+    catch (InterruptedException ie) { cancelFlag = true; } // shouldn't happen
+    totalErrors += committer.errors; // only now is it safe to add errors
+    pipelinePool.shutdown();      // parsing threads are no longer needed
+    pipelinePool = null;          // and go back to one file at a time
+    archiveBudget = null;
+    pipelineQueue = null;
+
+  } // end of processPipeline() method
+
+
 /*
   putError() method
 
@@ -2223,7 +2778,10 @@ public class FontNames3
 */
   static void putError(String text)
   {
-    if (consoleFlag)              // are we running as a console application?
+    Vector sink = (Vector) messageSink.get(); // held for committer thread?
+    if (sink != null)             // are we parsing files in parallel?
+      sink.add(new String[] {text}); // yes, array marks error for committer
+    else if (consoleFlag)         // are we running as a console application?
       System.err.println(text);   // console output goes onto standard error
     else
     {
@@ -2233,6 +2791,23 @@ public class FontNames3
   }
 
 
+/*
+  putNameOutput() method
+
+  Print one line about a name table entry, and also save the line if the name
+  table may be shared by other internal fonts in a TrueType collection.  See
+  checkFile() for details.
+*/
+  static void putNameOutput(
+    Vector lines,                 // saved lines for a shared table, or null
+    String text)                  // one line of output, without a newline
+  {
+    if (lines != null)            // might this table be used again?
+      lines.add(text);            // yes, save a copy for the other fonts
+    putOutput(text, false);       // print as usual, without scrolling
+  }
+
+
 /*
   putOutput() method
 
@@ -2247,6 +2822,9 @@ public class FontNames3
   is easier and faster than manipulating the scroll bars directly.  However, it
   does cancel any selection that the user might have made, for example, to copy
   text from the output area.
+
+  When files are parsed in parallel, each thread's output is held back in
+  <messageSink> and printed later by the committer thread, in order.
 */
   static void putOutput(String text)
   {
@@ -2255,8 +2833,14 @@ public class FontNames3
 
   static void putOutput(String text, boolean scroll)
   {
-    if (consoleFlag)              // are we running as a console application?
-      System.out.println(text);   // console output goes onto standard output
+    Vector sink = (Vector) messageSink.get(); // held for committer thread?
+    if (sink != null)             // are we parsing files in parallel?
+      sink.add(text);             // yes, committer prints this line later
+    else if (consoleFlag)         // are we running as a console application?
+    {
+      if (reportFlag)             // unless structured output took its place
+        System.out.println(text); // console output goes onto standard output
+    }
     else
     {
       outputText.append(text + "\n"); // graphical output goes into text area
@@ -2267,449 +2851,3024 @@ public class FontNames3
 
 
 /*
-  setStatusMessage() method
+  putRecord() method
 
-  Set the text for the status message if we are running as a GUI application.
-  This gives the user some indication of our progress if processing is slow.
-  If the update timer is running, then this message will not appear until the
-  timer kicks in.  This prevents the status from being updated too often, and
-  hence being unreadable.
+  Give one structured output record to the writer thread, or hold it back with
+  the other output if files are being parsed in parallel.
 */
-  static void setStatusMessage(String text)
+  static void putRecord(FontNames3Record record)
   {
-    statusPending = text;         // save caller's message for later
-    if (consoleFlag)              // are we running as a console application?
-    {
-      /* Do nothing: console doesn't show running status messages. */
+    Vector sink = (Vector) messageSink.get(); // held for committer thread?
+    if (sink != null)             // are we parsing files in parallel?
+      sink.add(record);           // yes, committer writes this record later
+    else
+      outputWriter.put(record);   // writer thread formats and writes it
+  }
+
+
+/*
+  queryIndex() method
+
+  Answer the query given by the -q option, from the search index given by the
+  -i option.  Matching fonts are written on standard output, one line each,
+  sorted by path name.  We return the number of fonts found.
+*/
+  static int queryIndex()
+  {
+    int i;                        // index variable
+    Vector lines;                 // one line for each font found
+    FontNames3Index search;       // search index, read only
+    long started;                 // starting time in milliseconds
+
+    try { search = new FontNames3Index(new File(indexFile)); }
+    catch (IOException ioe)       // bad index file
+    {
+      System.err.println("Can't open index file " + indexFile + ": "
+        + ioe.getMessage());
+      return(0);                  // nothing found
+    }
+    started = System.currentTimeMillis(); // not counting time to read index
+    lines = search.query(queryText);
+    for (i = 0; i < lines.size(); i ++)
+      System.out.println((String) lines.get(i));
+    System.err.println("Query found " + prettyPlural(lines.size(), "font")
+      + " in " + prettyPlural((System.currentTimeMillis() - started),
+      "millisecond") + ".");
+    return(lines.size());
+
+  } // end of queryIndex() method
+
+
+/*
+  queueFile() method
+
+  Give a font file to the pool of parsing threads, and put the file on the
+  pipeline queue to be printed in order.
+*/
+  static void queueFile(
+    File givenFile,               // caller's Java File object (may be valid)
+    String givenName,             // caller's name for file, or empty, or null
+    byte[] givenBytes,            // archive entry in memory, or null for file
+    int fileNumber)               // caller's count of files, for the report
+  {
+    FontNames3Job job;            // our parsing job for this file
+
+    queueMessages(false);         // earlier output must be printed first
+    job = new FontNames3Job(givenFile, givenName, fileNumber);
+    job.givenBytes = givenBytes;  // only for fonts inside archives
+    if (givenBytes != null)       // wait until archive memory is available
+      archiveBudget.acquireUninterruptibly(givenBytes.length);
+    pipelinePool.execute(job);    // parse file as soon as a thread is free
+    queuePut(job);                // committer will wait for parsing to finish
+
+  } // end of queueFile() method
+
+
+/*
+  queueMessages() method
+
+  Put any output that the current (searching) thread has held back onto the
+  pipeline queue, so the committer thread prints it in the correct order.  The
+  last call tells the committer to stop.
+*/
+  static void queueMessages(boolean last)
+  {
+    FontNames3Job job;            // placeholder job with only messages
+    Vector sink;                  // output held back by this thread
+
+    sink = (Vector) messageSink.get(); // output since we last queued anything
+    if (last || (sink.size() > 0)) // anything for the committer to do?
+    {
+      job = new FontNames3Job(null, null, 0); // not a file, just messages
+      job.last = last;            // may be the end of the pipeline
+      job.messages = sink;
+      job.setDone();              // nothing to wait for
+      queuePut(job);              // add to end of pipeline
+      messageSink.set(new Vector()); // start holding back new output
+    }
+  } // end of queueMessages() method
+
+
+/*
+  queuePut() method
+
+  Add a job to the end of the pipeline queue, waiting if the queue is full.
+*/
+  static void queuePut(FontNames3Job job)
+  {
+    while (true)                  // until we succeed
+    {
+      try { pipelineQueue.put(job); return; }
+      catch (InterruptedException ie) { /* try again */ }
+    }
+  }
+
+
+/*
+  readArchiveEntry() method
+
+  Inflate the current entry in a ZIP archive into memory, and return the bytes,
+  or null if the entry is too big.  The size in the archive directory is only a
+  hint, because it may be missing for entries written as a stream.
+*/
+  static byte[] readArchiveEntry(ZipInputStream input) throws IOException
+  {
+    byte[] buffer;                // bytes inflated so far
+    int length;                   // number of bytes in <buffer>
+    int read;                     // number of bytes from last read
+
+    buffer = new byte[0x10000];   // grows as needed
+    length = 0;
+    while ((read = input.read(buffer, length, (buffer.length - length))) > 0)
+    {
+      length += read;
+      if (length == buffer.length) // is buffer full?
+      {
+        if (length >= MAX_ARCHIVE) // don't run out of memory for one font
+          return(null);           // rest of entry is skipped by caller
+        buffer = Arrays.copyOf(buffer, Math.min(MAX_ARCHIVE, (length * 2)));
+      }
+    }
+    return(Arrays.copyOf(buffer, length)); // exactly the size of the entry
+
+  } // end of readArchiveEntry() method
+
+
+/*
+  readFontData() method
+
+  Read the name table and the start of the OS/2 table for each internal font in
+  an OpenType or TrueType file, as raw bytes.  We check the structure of the
+  file as we go.  A problem stops the reading, and we save the message with
+  the internal font where it was found, or with the whole file.  Decoding and
+  printing the names is left to checkFile(), which may get the same data from
+  the catalog instead of calling us.
+*/
+  static FontNames3Data readFontData(
+    File givenFile,               // caller's Java File object (may be valid)
+    byte[] givenBytes,            // archive entry in memory, or null for file
+    long fileSize)                // length of file in bytes
+  {
+    int curFont;                  // current font index, up to <numFonts>
+    int curName;                  // current name index, up to <numNames>
+    int curTable;                 // current table index, up to <numTables>
+    FontNames3Data data;          // everything we found in this file
+    byte[] entryBytes;            // name table entries, or start of OS/2 table
+    int entryLength;              // name table entry: length of string
+    int entryOffset;              // name table entry: offset to string
+    FontNames3Font font;          // current internal font, or null
+    long[] fontOffsets;           // for each font, offset from beginning of
+                                  // ... file to start of its "Offset Table"
+    int i;                        // index variable
+    HashMap nameTables;           // Long offset to font that read name table
+    boolean multiFlag;            // true if processing TrueType collection
+    long name;                    // offset to start of current name table
+    int nameTableSize;            // size of current name table in bytes
+    long nameTableStrings;        // start of strings for current name table
+    int needed;                   // bytes of name table used by good entries
+    int numFonts;                 // number of fonts in this file
+    int numNames;                 // number of name table entries
+    int numTables;                // number of entries in "Offset Table"
+    long os2;                     // offset to start of current OS/2 table
+    HashMap os2Tables;            // Long offset to font that read OS/2 table
+    int os2TableSize;             // size of current OS/2 table in bytes
+    FontNames3Input ramFile;      // file or memory for reading font data
+    FontNames3Font shared;        // earlier font with the same table, or null
+    long signature;               // signature bytes from beginning of file
+    boolean stopFlag;             // local flag to stop processing file
+    String stopText;              // message for why we stopped processing
+    long table;                   // current location in "Offset Table"
+    byte[] woffBytes;             // tables expanded from WOFF file, or null
+
+    /* Initialize local variables. */
+
+    data = new FontNames3Data();  // nothing found yet
+    font = null;                  // not reading an internal font yet
+    fontOffsets = null;           // just to keep compiler happy
+    multiFlag = false;            // just to keep compiler happy
+    nameTables = new HashMap();   // no name tables read yet
+    numFonts = 0;                 // just to keep compiler happy
+    os2Tables = new HashMap();    // no OS/2 tables read yet
+    stopFlag = false;             // everything is okay so far
+    stopText = "";                // no reason for stopping yet
+
+    /* Open the file and start reading the header information. */
+
+    try                           // catch file I/O errors
+    {
+      ramFile = (givenBytes != null) ? new FontNames3Input(givenBytes)
+        : new FontNames3Input(givenFile); // open file for reading
+
+      /* Figure out what type of file this is, if it's even a font file! */
+
+      if (fileSize < 12)          // need this many bytes for signature
+      {
+        stopFlag = true;          // stop looking at this file
+        stopText = "File size too small for OTF/TTC/TTF signature, "
+          + prettyPlural(fileSize, "byte") + ".";
+                                  // summary reason for why we stopped
+      }
+      else
+      {
+        signature = ((long) ramFile.readInt()) & INT_MASK;
+                                  // read four signature bytes
+        if ((signature == FontNames3Woff.WOFF)
+          || (signature == FontNames3Woff.WOFF2))
+        {
+          /* This is a WOFF or WOFF2 web font.  Expand only the tables that we
+          want into a small font in memory, and read that instead. */
+
+          woffBytes = null;       // assume failure
+          if ((signature == FontNames3Woff.WOFF2)
+            && (FontNames3Woff.brotliAvailable() == false))
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = BROTLI_TEXT; // try again if decoder is added later
+          }
+          else if ((woffBytes = FontNames3Woff.extract(ramFile, fileSize,
+            new String[] {"name", "OS/2"})) == null)
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "Bad table directory or compressed data in "
+              + ((signature == FontNames3Woff.WOFF) ? "WOFF" : "WOFF2")
+              + " file.";
+          }
+          else
+          {
+            ramFile.close();      // done with original file
+            ramFile = new FontNames3Input(woffBytes); // expanded tables
+            fileSize = woffBytes.length; // only for checking offsets
+            signature = ((long) ramFile.readInt()) & INT_MASK;
+          }
+        }
+
+        if (stopFlag)
+        {
+          /* Do nothing if a WOFF or WOFF2 file couldn't be expanded. */
+        }
+        else if ((signature == 0x00010000L) // binary version 1.0 for TrueType
+          || (signature == 0x4F54544FL) // "OTTO" for OpenType
+          || (signature == 0x74727565L)) // "true" for Macintosh TrueType
+        {
+          /* This is an OpenType or TrueType file containing a single font. */
+
+          multiFlag = false;      // this is not a TrueType collection
+          numFonts = 1;           // there is only one font in this file
+          fontOffsets = new long[1]; // so we only look at one "Offset Table"
+          fontOffsets[0] = 0;     // conveniently located at start of file
+        }
+        else if (signature == 0x74746366L) // "ttcf" for TrueType collection
+        {
+          /* This is a TrueType collection containing at least one font.
+          There is no limit on the number of fonts, other than the list of
+          offsets must fit inside the file. */
+
+          multiFlag = true;       // now processing a collection of fonts
+          ramFile.skipBytes(4);   // skip over TTC version number
+          numFonts = ramFile.readInt(); // get number of fonts in this file
+          if (numFonts < 1)       // negative is a huge unsigned number
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "Bad number of internal fonts in TTC file ("
+              + (((long) numFonts) & INT_MASK) + ").";
+          }
+          else if (fileSize < ((4L * numFonts) + 12)) // can read offset list?
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "File size too small for list of " + numFonts
+              + " TTC offsets.";
+          }
+          else
+          {
+            entryBytes = new byte[4 * numFonts]; // read whole list at once
+            ramFile.readFully(entryBytes);
+            fontOffsets = new long[numFonts]; // multiple "Offset Tables"
+            for (curFont = 0; curFont < numFonts; curFont ++)
+              fontOffsets[curFont] = ((long) ByteBuffer.wrap(entryBytes)
+                .getInt(4 * curFont)) & INT_MASK;
+                                  // save file offset to each "Offset Table"
+          }
+        }
+        else
+        {
+          stopFlag = true;        // stop looking at this file
+          stopText =
+            "File not recognized as OpenType or TrueType font, 0x"
+            + Long.toHexString(signature) + " signature.";
+        }
+      }
+
+      /* No matter what type of font file this started as, we now have a common
+      list of the locations (offsets) to the start of each "Offset Table" for
+      each font contained in the file.  This information must all be checked,
+      before being used, because the user may have given us a bad file. */
+
+      if (!stopFlag)              // continue only if no errors so far
+      {
+        for (curFont = 0; curFont < numFonts; curFont ++) // first <for> loop
+        {
+          font = null;            // no current font until we start one
+          if (cancelFlag)         // stop if user hit the panic button
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = CANCEL_TEXT;
+            break;                // exit from first <for> loop
+          }
+
+          /* This is where checkFile() identifies each internal font.  Any
+          problem from here on belongs to this font. */
+
+          font = new FontNames3Font(); // empty until we can read tables
+          data.fonts.add(font);
+
+          /* See if we can read the entire "Offset Table" and if the size makes
+          sense. */
+
+          table = fontOffsets[curFont]; // get start of this "Offset Table"
+          if (fileSize < (table + 12)) // can we read start of this table?
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "File size too small for start of Offset Table, "
+              + prettyPlural(fileSize, "byte") + ".";
+            break;                // exit from first <for> loop
+          }
+
+          ramFile.seek(table);    // position to start of "Offset Table"
+          signature = ((long) ramFile.readInt()) & INT_MASK;
+                                  // read four signature bytes
+          if ((signature != 0x00010000L) // binary version 1.0 for TrueType
+            && (signature != 0x4F54544FL) // "OTTO" for OpenType
+            && (signature != 0x74727565L)) // "true" for Macintosh TrueType
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "Bad signature in Offset Table, 0x"
+              + Long.toHexString(signature) + ".";
+            break;                // exit from first <for> loop
+          }
+
+          /* Looks like the start of a valid "Offset Table".  See if we can
+          read the whole table. */
+
+          numTables = ramFile.readUnsignedShort(); // get entries in table
+          if ((numTables < 1) || (numTables > 299)) // check arbitrary limits
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "Too many entries in Offset Table (" + numTables + ").";
+            break;                // exit from first <for> loop
+          }
+          if (fileSize < (table + 12 + (16 * numTables)))
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "File size too small to contain Offset Table at 0x"
+              + Long.toHexString(table) + ".";
+            break;                // exit from first <for> loop
+          }
+
+          /* Look for name table entries.  We don't check for duplicate tables,
+          and we don't make any promises about which table we will use if there
+          are duplicates. */
+
+          name = nameTableSize = -1; // assume we can't find proper name table
+          os2 = os2TableSize = -1;  // assume we can't find proper OS/2 table
+          ramFile.skipBytes(6);   // ignore the search range and shift numbers
+          for (curTable = 0; curTable < numTables; curTable ++)
+          {
+            signature = ((long) ramFile.readInt()) & INT_MASK; // get four bytes
+            if (signature == 0x6E616D65L) // is this a "name" table?
+            {
+              ramFile.skipBytes(4); // yes, skip over checksum
+              name = ((long) ramFile.readInt()) & INT_MASK;
+                                  // get starting location of name table
+              nameTableSize = ramFile.readInt(); // get size of table in bytes
+            }
+            else if (signature == 0x4F532F32L) // is this an "OS/2" table?
+            {
+              ramFile.skipBytes(4); // yes, skip over checksum
+              os2 = ((long) ramFile.readInt()) & INT_MASK;
+                                  // get starting location of OS/2 table
+              os2TableSize = ramFile.readInt(); // get size of table in bytes
+            }
+            else
+              ramFile.skipBytes(12); // not a table we want, skip to next entry
+          }
+
+          /* Read the OS/2 table up to and including the vendor ID, if the
+          offset and length make sense.  Whether a bad table is an error
+          depends upon the options, so that is left to checkFile().  Fonts in
+          a collection that share an OS/2 table also share what we read. */
+
+          font.os2 = os2;         // negative if there is no OS/2 table
+          font.os2TableSize = os2TableSize;
+          shared = (FontNames3Font) os2Tables.get(new Long(os2));
+          if ((shared != null) && (shared.os2TableSize == os2TableSize))
+          {
+            font.os2TableVersion = shared.os2TableVersion;
+            font.vendorBytes = shared.vendorBytes; // may be null, that's okay
+          }
+          else if ((os2 >= 0) && (os2TableSize >= 68) && (os2TableSize <= 200)
+            && (fileSize >= (os2 + os2TableSize))) // check arbitrary limits
+          {
+            entryBytes = new byte[62]; // version number to vendor ID
+            ramFile.seek(os2);    // go to start of OS/2 table
+            ramFile.readFully(entryBytes);
+            font.os2TableVersion = ((entryBytes[0] & 0xFF) << 8)
+              | (entryBytes[1] & 0xFF);
+            font.vendorBytes = new byte[4]; // vendor ID is at offset 58
+            System.arraycopy(entryBytes, 58, font.vendorBytes, 0, 4);
+            os2Tables.put(new Long(os2), font); // for later fonts
+          }
+
+          /* Check if we can read the name table. */
+
+          if ((name < 0) || (nameTableSize < 16)) // was there a name table?
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "Missing entry for \"name\" table in Offset Table.";
+            break;                // exit from first <for> loop
+          }
+
+          /* Fonts in a collection often share tables.  Large CJK collections
+          may have dozens of fonts with the same name table, so we read each
+          table only once, and checkFile() decodes it only once. */
+
+          shared = (FontNames3Font) nameTables.get(new Long(name));
+          if ((shared != null) && (shared.nameTableSize == nameTableSize))
+          {
+            font.name = name;     // same table as an earlier font
+            font.nameBytes = shared.nameBytes; // same array, not a copy
+            font.nameTableSize = nameTableSize;
+            font.numNames = shared.numNames;
+            font.stringStart = shared.stringStart;
+            continue;             // nothing more to read for this font
+          }
+
+          if (fileSize < (name + nameTableSize))
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "File size too small to contain \"name\" table at 0x"
+              + Long.toHexString(name) + ".";
+            break;                // exit from first <for> loop
+          }
+          ramFile.seek(name);     // go to start of name table
+          signature = ((long) ramFile.readUnsignedShort()) & INT_MASK;
+                                  // check structure of table
+//        if (signature != 0)     // disable code: ignore signature bytes
+//        {
+//          stopFlag = true;      // stop looking at this file
+//          stopText = "Bad signature in \"name\" table, 0x"
+//            + Long.toHexString(signature) + ".";
+//          break;                // exit from first <for> loop
+//        }
+          numNames = ramFile.readUnsignedShort(); // number name table entries
+          if ((numNames < 1) || (numNames > 9999)) // check arbitrary limits
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "Too many entries in \"name\" table (" + numNames
+              + ").";
+            break;                // exit from first <for> loop
+          }
+          nameTableStrings = name + ramFile.readUnsignedShort();
+                                  // starting location of all strings in table
+          if ((nameTableStrings < name)
+            || (nameTableStrings > (name + nameTableSize)))
+          {
+            stopFlag = true;      // stop looking at this file
+            stopText = "Bad starting offset for strings in \"name\" table, 0x"
+              + Long.toHexString(nameTableStrings) + ".";
+            break;                // exit from first <for> loop
+          }
+
+          /* Read the name table with as few calls as possible: first the
+          header and entries, then the strings that the entries point to.
+          Strings may legally start anywhere in the table and run past its end,
+          so we read as far as any good entry goes, limited by the end of the
+          file.  Entries after a bad one are never used. */
+
+          font.name = name;       // save for messages
+          font.nameTableSize = nameTableSize;
+          font.numNames = numNames;
+          font.stringStart = (int) (nameTableStrings - name);
+          entryBytes = new byte[(int) Math.min((6 + (12 * numNames)),
+            (fileSize - name))];  // header and entries, if file is that big
+          ramFile.seek(name);     // go to start of name table
+          ramFile.readFully(entryBytes);
+          needed = entryBytes.length; // at least the header and entries
+          for (curName = 0; (6 + (12 * curName) + 12) <= entryBytes.length;
+            curName ++)
+          {
+            i = 6 + (12 * curName) + 8; // length and offset of this string
+            entryLength = ((entryBytes[i] & 0xFF) << 8)
+              | (entryBytes[i + 1] & 0xFF);
+            entryOffset = ((entryBytes[i + 2] & 0xFF) << 8)
+              | (entryBytes[i + 3] & 0xFF);
+            if ((entryOffset + entryLength) > nameTableSize)
+              break;              // bad entry, report stops here
+            needed = (int) Math.max(needed, Math.min((fileSize - name),
+              (font.stringStart + entryOffset + entryLength)));
+          }
+          font.nameBytes = new byte[needed]; // name table as far as needed
+          System.arraycopy(entryBytes, 0, font.nameBytes, 0,
+            entryBytes.length);   // don't read the entries twice
+          ramFile.readFully(font.nameBytes, entryBytes.length,
+            (needed - entryBytes.length));
+          nameTables.put(new Long(name), font); // for later fonts
+
+        } // end of first <for> loop
+      }
+
+      /* Close the input font file. */
+
+      ramFile.close();            // try to close input file
+    }
+
+    /* Catch any file I/O errors, here or in called methods. */
+
+    catch (IOException ioe)
+    {
+      stopFlag = true;            // stop looking at this file
+      stopText = "Can't read from file."; // why we stopped
+    }
+
+    /* A problem belongs to the internal font where it was found, or else to
+    the whole file. */
+
+    if (stopFlag)                 // did we stop for a reason?
+    {
+      if (font != null)           // were we reading an internal font?
+        font.stopText = stopText;
+      else
+        data.stopText = stopText;
+    }
+    data.multiFlag = multiFlag;
+    data.numFonts = numFonts;
+    return(data);
+
+  } // end of readFontData() method
+
+
+/*
+  setStatusMessage() method
+
+  Set the text for the status message if we are running as a GUI application.
+  This gives the user some indication of our progress if processing is slow.
+  If the update timer is running, then this message will not appear until the
+  timer kicks in.  This prevents the status from being updated too often, and
+  hence being unreadable.
+*/
+  static void setStatusMessage(String text)
+  {
+    statusPending = text;         // save caller's message for later
+    if (consoleFlag)              // are we running as a console application?
+    {
+      /* Do nothing: console doesn't show running status messages. */
+    }
+    else if (statusTimer.isRunning()) // are we updating on a timed basis?
+    {
+      /* Do nothing: wait for timer to kick in and update GUI text. */
+    }
+    else
+      statusDialog.setText(text); // show the status message now
+  }
+
+
+/*
+  showHelp() method
+
+  Show the help summary.  This is a UNIX standard and is expected for all
+  console applications, even very simple ones.
+*/
+  static void showHelp()
+  {
+    System.err.println();
+    System.err.println(PROGRAM_TITLE);
+    System.err.println();
+    System.err.println("  java  FontNames3  [options]  [file or folder names]");
+    System.err.println();
+    System.err.println("Options:");
+    System.err.println("  -? = -help = show summary of command-line syntax");
+    System.err.println("  -c# = write CSV records (one row per name) to file #; example: -cfonts.csv");
+    System.err.println("  -d# = catalog file # keeps names between runs; example: -dfonts.cat");
+    System.err.println("  -h0 = ignore hidden files or folders (default)");
+    System.err.println("  -h1 = -h = process hidden files and folders");
+    System.err.println("  -i# = search index file # of name records, updated as files change");
+    System.err.println("  -j# = write JSON Lines records (one line per font) to file #;");
+    System.err.println("      -c or -j without a file name writes records on standard output");
+    System.err.println("  -k0 = convert name fields to text characters, if possible (default)");
+    System.err.println("  -k1 = -k = report all name fields in hexadecimal only, no text");
+    System.err.println("  -n0 to -n" + (FIELD_COUNT - 1) + " = report name fields with given name ID numbers");
+    System.err.println("  -n" + fieldUnknown + " = report all name fields with unknown name ID numbers");
+    System.err.println("  -n" + fieldOs2ID + " = report OS/2 vendor ID");
+    System.err.println("  -q# = find fonts in index with all words #; example: -q\"copyright:adobe\"");
+    System.err.println("      fields: family, vendor, designer, copyright, trademark, license, url");
+    System.err.println("  -r0 = use catalog entries for unchanged files (default)");
+    System.err.println("  -r1 = -r = rebuild catalog: read all files, drop files not found");
+    System.err.println("  -r2 = verify catalog: read all files, report entries that don't match");
+    System.err.println("  -s0 = do only given files or folders, no subfolders (default)");
+    System.err.println("  -s1 = -s = process files, folders, and subfolders");
+    System.err.println("  -t# = number of threads for reading font files; default is -t1");
+    System.err.println("  -u# = font size for buttons, dialogs, etc; default is local system;");
+    System.err.println("      example: -u16");
+    System.err.println("  -v# = text file with OS/2 vendor names; default is -v\"" + VENDOR_FILE + "\"");
+    System.err.println("  -w(#,#,#,#) = normal window position: left, top, width, height;");
+    System.err.println("      example: -w(50,50,700,500)");
+    System.err.println("  -x = maximize application window; default is normal window");
+    System.err.println();
+    System.err.println("Output may be redirected with the \">\" operator.  If no file or folder names");
+    System.err.println("are given on the command line, then a graphical interface will open.");
+    System.err.println();
+    System.err.println(COPYRIGHT_NOTICE);
+//  System.err.println();
+
+  } // end of showHelp() method
+
+
+/*
+  sortFileList() method
+
+  When we ask for a list of files or subfolders in a directory, the list is not
+  likely to be in our preferred order.  Java does not guarantee any particular
+  order, and the observed order is whatever is supplied by the underlying file
+  system (which can be very jumbled for FAT16/FAT32).  We would like the file
+  names to be sorted, and since we recurse on subfolders, we also want the
+  subfolders to appear in order.
+
+  The caller's parameter may be <null> and this may happen if the caller asks
+  File.listFiles() for the contents of a protected system directory.  All calls
+  to listFiles() in this program are wrapped inside a call to us, so we replace
+  a null parameter with an empty array as our result.
+*/
+  static File[] sortFileList(File[] input)
+  {
+    String fileName;              // file name without the path
+    int i;                        // index variable
+    TreeMap list;                 // our list of files
+    File[] result;                // our result
+    StringBuffer sortKey;         // created sorting key for each file
+
+    if (input == null)            // were we given a null pointer?
+      result = new File[0];       // yes, replace with an empty array
+    else if (input.length < 2)    // don't sort lists with zero or one element
+      result = input;             // just copy input array as result array
+    else
+    {
+      /* First, create a sorted list with our choice of index keys and the File
+      objects as data.  Names are sorted as files or folders, then in lowercase
+      to ignore differences in uppercase versus lowercase, then in the original
+      form for systems where case is distinct. */
+
+      list = new TreeMap();       // create empty sorted list with keys
+      sortKey = new StringBuffer(); // allocate empty string buffer for keys
+      for (i = 0; i < input.length; i ++)
+      {
+        sortKey.setLength(0);     // empty any previous contents of buffer
+        if (input[i].isDirectory()) // is this "file" actually a folder?
+          sortKey.append("2 ");   // yes, put subfolders after files
+        else                      // must be a file or an unknown object
+          sortKey.append("1 ");   // put files before subfolders
+
+        fileName = input[i].getName(); // get the file name without the path
+        sortKey.append(fileName.toLowerCase()); // start by ignoring case
+        sortKey.append(" ");      // separate lowercase from original case
+        sortKey.append(fileName); // then sort file name on original case
+        list.put(sortKey.toString(), input[i]); // put file into sorted list
+      }
+
+      /* Second, now that the TreeMap object has done all the hard work of
+      sorting, pull the File objects from the list in order as determined by
+      the sort keys that we created. */
+
+      result = (File[]) list.values().toArray(new File[0]);
+    }
+    return(result);               // give caller whatever we could find
+
+  } // end of sortFileList() method
+
+
+/*
+  userButton() method
+
+  This method is called by our action listener actionPerformed() to process
+  buttons, in the context of the main FontNames3 class.
+*/
+  static void userButton(ActionEvent event)
+  {
+    Object source = event.getSource(); // where the event came from
+    if (source == cancelButton)   // "Cancel" button
+    {
+      doCancelButton();           // stop opening files or folders
+    }
+    else if (source == exitButton) // "Exit" button
+    {
+      System.exit(0);             // always exit with zero status from GUI
+    }
+    else if (source == fontNameDialog) // font name for output text area
+    {
+      /* We can safely assume that the font name is valid, because we obtained
+      the names from getAvailableFontFamilyNames(), and the user can't edit
+      this dialog field. */
+
+      fontName = (String) fontNameDialog.getSelectedItem();
+      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+    }
+    else if (source == fontSizeDialog) // point size for output text area
+    {
+      /* We can safely parse the point size as an integer, because we supply
+      the only choices allowed, and the user can't edit this dialog field. */
+
+      fontSize = Integer.parseInt((String) fontSizeDialog.getSelectedItem());
+      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+    }
+    else if (source == hexCheckbox) // report all name fields in hexadecimal
+    {
+      hexFlag = hexCheckbox.isSelected();
+    }
+    else if (source == menuButton) // button for selecting name IDs to report
+    {
+      menuPopup.show(menuButton, 0, menuButton.getHeight());
+    }
+
+    /* The following are called when individual checkbox items are changed in
+    the menu to select name IDs.  They are not called, directly or indirectly,
+    when the "all" or "none" groups are chosen below. */
+
+    else if (source == menuField00) // identical processing for numbered fields
+      fieldFlags[ 0] = menuField00.isSelected();
+    else if (source == menuField01)
+      fieldFlags[ 1] = menuField01.isSelected(); // font family name (ID #1)
+    else if (source == menuField02)
+      fieldFlags[ 2] = menuField02.isSelected();
+    else if (source == menuField03)
+      fieldFlags[ 3] = menuField03.isSelected();
+    else if (source == menuField04)
+      fieldFlags[ 4] = menuField04.isSelected(); // font full name (name ID #4)
+    else if (source == menuField05)
+      fieldFlags[ 5] = menuField05.isSelected();
+    else if (source == menuField06)
+      fieldFlags[ 6] = menuField06.isSelected();
+    else if (source == menuField07)
+      fieldFlags[ 7] = menuField07.isSelected();
+    else if (source == menuField08)
+      fieldFlags[ 8] = menuField08.isSelected();
+    else if (source == menuField09)
+      fieldFlags[ 9] = menuField09.isSelected();
+    else if (source == menuField10)
+      fieldFlags[10] = menuField10.isSelected();
+    else if (source == menuField11)
+      fieldFlags[11] = menuField11.isSelected();
+    else if (source == menuField12)
+      fieldFlags[12] = menuField12.isSelected();
+    else if (source == menuField13)
+      fieldFlags[13] = menuField13.isSelected();
+    else if (source == menuField14)
+      fieldFlags[14] = menuField14.isSelected();
+//  else if (source == menuField15)
+//    fieldFlags[15] = menuField15.isSelected(); // reserved (name ID #15)
+    else if (source == menuField16)
+      fieldFlags[16] = menuField16.isSelected();
+    else if (source == menuField17)
+      fieldFlags[17] = menuField17.isSelected();
+    else if (source == menuField18)
+      fieldFlags[18] = menuField18.isSelected();
+    else if (source == menuField19)
+      fieldFlags[19] = menuField19.isSelected();
+    else if (source == menuField20)
+      fieldFlags[20] = menuField20.isSelected();
+    else if (source == menuFieldOs2ID)
+      fieldFlags[fieldOs2ID] = menuFieldOs2ID.isSelected();
+    else if (source == menuFieldUnknown)
+    {
+      fieldFlags[fieldUnknown] = menuFieldUnknown.isSelected();
+    }
+
+    /* The following are called when group items ("all" or "none") are chosen
+    in the menu to select name IDs.  Note that our calling setSelected() here
+    does *not* invoke the action listener, and hence the individual check boxes
+    above do not get called twice. */
+
+    else if (source == menuLegalAll) // enable all "legal" name IDs
+    {
+      fieldFlags[ 0] = true; menuField00.setSelected(true);
+      fieldFlags[ 7] = true; menuField07.setSelected(true);
+      fieldFlags[13] = true; menuField13.setSelected(true);
+      fieldFlags[14] = true; menuField14.setSelected(true);
+    }
+    else if (source == menuLegalNone) // disable all "legal" name IDs
+    {
+      fieldFlags[ 0] = false; menuField00.setSelected(false);
+      fieldFlags[ 7] = false; menuField07.setSelected(false);
+      fieldFlags[13] = false; menuField13.setSelected(false);
+      fieldFlags[14] = false; menuField14.setSelected(false);
+    }
+    else if (source == menuMakerAll) // enable all designer/vendor name IDs
+    {
+      fieldFlags[ 8] = true; menuField08.setSelected(true);
+      fieldFlags[ 9] = true; menuField09.setSelected(true);
+      fieldFlags[11] = true; menuField11.setSelected(true);
+      fieldFlags[12] = true; menuField12.setSelected(true);
+      fieldFlags[fieldOs2ID] = true; menuFieldOs2ID.setSelected(true);
+    }
+    else if (source == menuMakerNone) // disable all designer/vendor name IDs
+    {
+      fieldFlags[ 8] = false; menuField08.setSelected(false);
+      fieldFlags[ 9] = false; menuField09.setSelected(false);
+      fieldFlags[11] = false; menuField11.setSelected(false);
+      fieldFlags[12] = false; menuField12.setSelected(false);
+      fieldFlags[fieldOs2ID] = false; menuFieldOs2ID.setSelected(false);
+    }
+    else if (source == menuNamesAll) // enable all detailed name IDs
+    {
+//    fieldFlags[ 1] = true; menuField01.setSelected(true); // font family name
+      fieldFlags[ 2] = true; menuField02.setSelected(true);
+      fieldFlags[ 3] = true; menuField03.setSelected(true);
+      fieldFlags[ 4] = true; menuField04.setSelected(true); // font full name
+      fieldFlags[ 6] = true; menuField06.setSelected(true);
+      fieldFlags[16] = true; menuField16.setSelected(true);
+      fieldFlags[17] = true; menuField17.setSelected(true);
+      fieldFlags[18] = true; menuField18.setSelected(true);
+      fieldFlags[20] = true; menuField20.setSelected(true);
+    }
+    else if (source == menuNamesNone) // disable all detailed name IDs
+    {
+//    fieldFlags[ 1] = false; menuField01.setSelected(false); // font family name
+      fieldFlags[ 2] = false; menuField02.setSelected(false);
+      fieldFlags[ 3] = false; menuField03.setSelected(false);
+      fieldFlags[ 4] = false; menuField04.setSelected(false); // font full name
+      fieldFlags[ 6] = false; menuField06.setSelected(false);
+      fieldFlags[16] = false; menuField16.setSelected(false);
+      fieldFlags[17] = false; menuField17.setSelected(false);
+      fieldFlags[18] = false; menuField18.setSelected(false);
+      fieldFlags[20] = false; menuField20.setSelected(false);
+    }
+    else if (source == menuOtherAll) // enable all miscellaneous name IDs
+    {
+      fieldFlags[ 5] = true; menuField05.setSelected(true);
+      fieldFlags[10] = true; menuField10.setSelected(true);
+      fieldFlags[19] = true; menuField19.setSelected(true);
+      fieldFlags[fieldUnknown] = true; menuFieldUnknown.setSelected(true);
+    }
+    else if (source == menuOtherNone) // disable all miscellaneous name IDs
+    {
+      fieldFlags[ 5] = false; menuField05.setSelected(false);
+      fieldFlags[10] = false; menuField10.setSelected(false);
+      fieldFlags[19] = false; menuField19.setSelected(false);
+      fieldFlags[fieldUnknown] = false; menuFieldUnknown.setSelected(false);
     }
-    else if (statusTimer.isRunning()) // are we updating on a timed basis?
+    else if (source == menuPopupAll) // enable all name IDs available to user
+    {
+      fieldFlags[ 0] = true; menuField00.setSelected(true);
+//    fieldFlags[ 1] = true; menuField01.setSelected(true); // font family name
+      fieldFlags[ 2] = true; menuField02.setSelected(true);
+      fieldFlags[ 3] = true; menuField03.setSelected(true);
+      fieldFlags[ 4] = true; menuField04.setSelected(true); // font full name
+      fieldFlags[ 5] = true; menuField05.setSelected(true);
+      fieldFlags[ 6] = true; menuField06.setSelected(true);
+      fieldFlags[ 7] = true; menuField07.setSelected(true);
+      fieldFlags[ 8] = true; menuField08.setSelected(true);
+      fieldFlags[ 9] = true; menuField09.setSelected(true);
+      fieldFlags[10] = true; menuField10.setSelected(true);
+      fieldFlags[11] = true; menuField11.setSelected(true);
+      fieldFlags[12] = true; menuField12.setSelected(true);
+      fieldFlags[13] = true; menuField13.setSelected(true);
+      fieldFlags[14] = true; menuField14.setSelected(true);
+//    fieldFlags[15] = true; menuField15.setSelected(true); // reserved (#15)
+      fieldFlags[16] = true; menuField16.setSelected(true);
+      fieldFlags[17] = true; menuField17.setSelected(true);
+      fieldFlags[18] = true; menuField18.setSelected(true);
+      fieldFlags[19] = true; menuField19.setSelected(true);
+      fieldFlags[20] = true; menuField20.setSelected(true);
+      fieldFlags[fieldOs2ID] = true; menuFieldOs2ID.setSelected(true);
+      fieldFlags[fieldUnknown] = true; menuFieldUnknown.setSelected(true);
+    }
+    else if (source == menuPopupNone) // disable all name IDs available to user
+    {
+      fieldFlags[ 0] = false; menuField00.setSelected(false);
+//    fieldFlags[ 1] = false; menuField01.setSelected(false); // font family name
+      fieldFlags[ 2] = false; menuField02.setSelected(false);
+      fieldFlags[ 3] = false; menuField03.setSelected(false);
+      fieldFlags[ 4] = false; menuField04.setSelected(false); // font full name
+      fieldFlags[ 5] = false; menuField05.setSelected(false);
+      fieldFlags[ 6] = false; menuField06.setSelected(false);
+      fieldFlags[ 7] = false; menuField07.setSelected(false);
+      fieldFlags[ 8] = false; menuField08.setSelected(false);
+      fieldFlags[ 9] = false; menuField09.setSelected(false);
+      fieldFlags[10] = false; menuField10.setSelected(false);
+      fieldFlags[11] = false; menuField11.setSelected(false);
+      fieldFlags[12] = false; menuField12.setSelected(false);
+      fieldFlags[13] = false; menuField13.setSelected(false);
+      fieldFlags[14] = false; menuField14.setSelected(false);
+//    fieldFlags[15] = false; menuField15.setSelected(false); // reserved (#15)
+      fieldFlags[16] = false; menuField16.setSelected(false);
+      fieldFlags[17] = false; menuField17.setSelected(false);
+      fieldFlags[18] = false; menuField18.setSelected(false);
+      fieldFlags[19] = false; menuField19.setSelected(false);
+      fieldFlags[20] = false; menuField20.setSelected(false);
+      fieldFlags[fieldOs2ID] = false; menuFieldOs2ID.setSelected(false);
+      fieldFlags[fieldUnknown] = false; menuFieldUnknown.setSelected(false);
+    }
+
+    /* Continue with non-menu items in alphabetical order. */
+
+    else if (source == openButton) // "Open" button for files or folders
+    {
+      doOpenButton();             // open font files or folders
+    }
+    else if (source == recurseCheckbox) // recursion for folders, subfolders
+    {
+      recurseFlag = recurseCheckbox.isSelected();
+    }
+    else if (source == saveButton) // "Save Output" button
+    {
+      doSaveButton();             // write output text area to a file
+    }
+    else if (source == statusTimer) // update timer for status message text
+    {
+      if (statusPending.equals(statusDialog.getText()) == false)
+        statusDialog.setText(statusPending); // new message, update the display
+    }
+    else                          // fault in program logic, not by user
+    {
+      System.err.println("Error in userButton(): unknown ActionEvent: "
+        + event);                 // should never happen, so write on console
+    }
+  } // end of userButton() method
+
+} // end of FontNames3 class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Catalog class
+
+  This class keeps the raw name and OS/2 data for font files between runs, so
+  that only new or changed files need to be read again.  Entries are keyed by
+  absolute path name, and are only used if the file's size, date, and file key
+  (if the system has one) are the same as when the entry was written.
+
+  The catalog is a plain binary file: a header, then for each font file the
+  path name, the file stamp, and the data compressed with "deflate", each
+  preceded by its length.  We index the old catalog when opening, and write a
+  new catalog as files are found.  Entries for files that weren't seen in this
+  run are copied at the end (unless rebuilding), so that a run on one folder
+  doesn't forget another folder.  The new catalog replaces the old one only
+  after it has been completely written.
+
+  Several parsing threads may call us at once, so all public methods are
+  synchronized.  The time spent inside them is small compared to reading fonts.
+*/
+
+class FontNames3Catalog
+{
+  /* constants */
+
+  static final String HEADER = "FontNames3 catalog 2"; // first bytes of file
+  static final String PREFIX = "FontNames3 catalog "; // any version of header
+  static final int REBUILD = 1;   // mode: ignore old entries, don't copy them
+  static final int REUSE = 0;     // mode: use entries for unchanged files
+  static final int VERIFY = 2;    // mode: read all files, compare with entries
+
+  /* instance variables */
+
+  File file;                      // catalog file given by user
+  int hits;                       // number of files served from catalog
+  int mismatches;                 // files that didn't match entry in catalog
+  int mode;                       // REBUILD, REUSE, or VERIFY
+  File newFile;                   // temporary file for new catalog
+  DataOutputStream newStream;     // output stream for new catalog
+  RandomAccessFile oldFile;       // old catalog for reading entries, or null
+  HashMap oldOffsets;             // path name to Long offset of entry data
+  HashMap oldStamps;              // path name to file stamp in old catalog
+  int reads;                      // number of files read and parsed
+  HashSet written;                // path names already in new catalog
+
+  public FontNames3Catalog(File givenFile, int givenMode) throws IOException
+  {
+    file = givenFile;
+    hits = mismatches = reads = 0;
+    mode = givenMode;
+    oldFile = null;
+    oldOffsets = new HashMap();
+    oldStamps = new HashMap();
+    written = new HashSet();
+
+    /* Index the old catalog, if there is one.  We refuse to replace a file
+    that isn't a catalog, in case the user gave the wrong file name.  A partial
+    entry at the end is ignored, as from a run that was killed.  A catalog
+    from an older version is replaced, since its entries have another format.
+    */
+
+    if (file.exists())
+    {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+      long offset = 0;            // current position in old catalog
+      try
+      {
+        byte[] header = readBlock(input);
+        String text = (header == null) ? "" : new String(header, "UTF-8");
+        if (text.startsWith(PREFIX) == false)
+          throw new IOException("not a catalog file: " + file.getPath());
+        offset += 4 + header.length;
+        boolean current = HEADER.equals(text); // false for older versions
+        while (current)
+        {
+          byte[] path = readBlock(input);
+          byte[] stamp = readBlock(input);
+          int length = input.readInt(); // length of entry data
+          if ((path == null) || (stamp == null) || (length < 0))
+            break;                // old catalog is damaged from here on
+          offset += 4 + path.length + 4 + stamp.length;
+          String name = new String(path, "UTF-8");
+          oldOffsets.put(name, new Long(offset));
+          oldStamps.put(name, new String(stamp, "UTF-8"));
+          offset += 4 + length;
+          if (input.skipBytes(length) < length) // skipping data, not reading
+          {
+            oldOffsets.remove(name); // data was cut short
+            oldStamps.remove(name);
+            break;
+          }
+        }
+      }
+      catch (EOFException eofe) { /* normal end of old catalog */ }
+      finally { input.close(); }
+      oldFile = new RandomAccessFile(file, "r");
+    }
+
+    /* Start the new catalog. */
+
+    newFile = new File(file.getPath() + ".new");
+    newStream = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(newFile), 0x10000));
+    writeBlock(HEADER.getBytes("UTF-8"));
+  }
+
+  /* close new catalog, copy unseen entries, and replace old catalog */
+
+  public synchronized void close() throws IOException
+  {
+    if ((oldFile != null) && (mode != REBUILD))
+    {
+      Iterator list = oldStamps.keySet().iterator();
+      while (list.hasNext())
+      {
+        String path = (String) list.next();
+        if (written.contains(path) == false) // keep files not seen this run
+          writeEntry(path, (String) oldStamps.get(path), readOld(path));
+      }
+    }
+    newStream.close();
+    if (oldFile != null)
+    {
+      oldFile.close();
+      file.delete();              // some systems won't rename over a file
+    }
+    if (newFile.renameTo(file) == false)
+      throw new IOException("can't rename " + newFile.getPath());
+  }
+
+  /* get data for an unchanged file, or null if the file must be read */
+
+  public synchronized FontNames3Data get(String path, String stamp)
+  {
+    if ((mode != REUSE) || (stamp.equals(oldStamps.get(path)) == false))
+      return(null);               // not in catalog, or file has changed
+    try
+    {
+      byte[] data = readOld(path);
+      FontNames3Data result = FontNames3Data.read(new DataInputStream(
+        new InflaterInputStream(new ByteArrayInputStream(data))));
+      if (written.contains(path) == false) // same file given twice?
+        writeEntry(path, stamp, data); // copy compressed data as it was
+      hits ++;
+      return(result);
+    }
+    catch (IOException ioe)       // damaged entry: read the file instead
+    {
+      return(null);
+    }
+  }
+
+  /* add data for a file that was read; false if it didn't match catalog */
+
+  public synchronized boolean put(String path, String stamp,
+    FontNames3Data data)
+  {
+    boolean match = true;         // assume data is the same as the catalog
+    try
+    {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(bytes);
+      data.write(output);
+      output.close();
+      byte[] plain = bytes.toByteArray();
+
+      if ((mode == VERIFY) && stamp.equals(oldStamps.get(path)))
+      {
+        ByteArrayOutputStream old = new ByteArrayOutputStream();
+        InflaterInputStream input = new InflaterInputStream(
+          new ByteArrayInputStream(readOld(path)));
+        byte[] buffer = new byte[0x1000];
+        int length;
+        while ((length = input.read(buffer)) > 0)
+          old.write(buffer, 0, length);
+        if (Arrays.equals(plain, old.toByteArray()) == false)
+        {
+          match = false;
+          mismatches ++;
+        }
+      }
+
+      bytes = new ByteArrayOutputStream();
+      DeflaterOutputStream deflate = new DeflaterOutputStream(bytes);
+      deflate.write(plain);
+      deflate.close();
+      if (written.contains(path) == false)
+        writeEntry(path, stamp, bytes.toByteArray());
+    }
+    catch (IOException ioe)       // not fatal: file just isn't in catalog
+    {
+      if (mode == VERIFY)         // can't compare a damaged entry
+      {
+        match = false;
+        mismatches ++;
+      }
+    }
+    reads ++;
+    return(match);
+  }
+
+  /* read a length and that many bytes, or null if length is impossible */
+
+  static byte[] readBlock(DataInputStream input) throws IOException
+  {
+    int length = input.readInt();
+    if ((length < 0) || (length > 0xFFFF)) // paths and stamps are short
+      return(null);
+    byte[] result = new byte[length];
+    input.readFully(result);
+    return(result);
+  }
+
+  /* read compressed data for one entry in the old catalog */
+
+  byte[] readOld(String path) throws IOException
+  {
+    oldFile.seek(((Long) oldOffsets.get(path)).longValue());
+    byte[] result = new byte[oldFile.readInt()];
+    oldFile.readFully(result);
+    return(result);
+  }
+
+  /* file stamp: size, date, and file key (inode, etc), or null if error */
+
+  static String stampFor(File givenFile)
+  {
+    try
+    {
+      BasicFileAttributes attributes = Files.readAttributes(givenFile.toPath(),
+        BasicFileAttributes.class);
+      return(attributes.size() + " "
+        + attributes.lastModifiedTime().toMillis() + " "
+        + attributes.fileKey()); // "null" on systems without file keys
+    }
+    catch (IOException ioe)
+    {
+      return(null);
+    }
+  }
+
+  /* stamp for a font in memory (from an archive): size and CRC32 checksum */
+
+  static String stampFor(byte[] data)
+  {
+    CRC32 crcDigest = new CRC32();
+    crcDigest.update(data);
+    return(data.length + " crc " + Long.toHexString(crcDigest.getValue()));
+  }
+
+  /* write a length and bytes */
+
+  void writeBlock(byte[] data) throws IOException
+  {
+    newStream.writeInt(data.length);
+    newStream.write(data);
+  }
+
+  /* write one entry in the new catalog */
+
+  void writeEntry(String path, String stamp, byte[] data) throws IOException
+  {
+    writeBlock(path.getBytes("UTF-8"));
+    writeBlock(stamp.getBytes("UTF-8"));
+    writeBlock(data);
+    written.add(path);
+  }
+
+} // end of FontNames3Catalog class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Charsets class
+
+  This class decodes name strings from font files.  Creating a String from
+  bytes with a character set name looks up the character set each time, and
+  creates a new decoder.  Here, each thread keeps its own decoders, one per
+  character set (MacRoman, Shift_JIS, Big5, GBK, EUC-KR, x-Johab, UTF-16, etc),
+  along with buffers for the bytes and characters, all of which are reused.
+  Decoders can't be shared between threads.
+
+  Malformed or unmappable bytes become the Unicode replacement character, the
+  same as <new String(bytes, charset)> would give.
+*/
+
+class FontNames3Charsets
+{
+  static ThreadLocal cache = new ThreadLocal(); // one instance per thread
+
+  byte[] bytes;                   // bytes with nulls removed
+  CharBuffer chars;               // decoded characters
+  HashMap decoders;               // character set name to CharsetDecoder
+
+  public FontNames3Charsets()
+  {
+    bytes = new byte[256];        // big enough for most name strings
+    chars = CharBuffer.allocate(256);
+    decoders = new HashMap();
+  }
+
+  /* decode bytes, optionally removing null bytes */
+
+  public static String decode(
+    String charset,               // official Java character set name
+    byte[] input,                 // array of encoded bytes
+    boolean removeNulls)          // true if we delete null (0x00, 0x7F) bytes
+    throws UnsupportedEncodingException
+  {
+    ByteBuffer in;                // encoded bytes given to decoder
+    int i, to;                    // index variables
+
+    FontNames3Charsets local = forThread();
+    CharsetDecoder decoder = (CharsetDecoder) local.decoders.get(charset);
+    if (decoder == null)          // first use of this character set?
+    {
+      decoder = forName(charset).newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      local.decoders.put(charset, decoder);
+    }
+
+    if (removeNulls)              // copy bytes, except nulls and deletes
+    {
+      if (local.bytes.length < input.length) // is our byte buffer big enough?
+        local.bytes = new byte[input.length];
+      to = 0;                     // put next non-null byte at this index
+      for (i = 0; i < input.length; i ++)
+      {
+        if ((input[i] != 0x00) && (input[i] != 0x7F))
+          local.bytes[to ++] = input[i]; // all but nulls, deletes
+      }
+      in = ByteBuffer.wrap(local.bytes, 0, to);
+    }
+    else                          // decode directly from caller's array
+      in = ByteBuffer.wrap(input);
+
+    int needed = (int) Math.ceil(in.remaining()
+      * (double) decoder.maxCharsPerByte()) + 1;
+    if (local.chars.capacity() < needed) // is our character buffer too small?
+      local.chars = CharBuffer.allocate(needed);
+    local.chars.clear();          // empty character buffer for decoding
+    decoder.reset();              // forget anything from previous string
+    decoder.decode(in, local.chars, true);
+    decoder.flush(local.chars);
+    local.chars.flip();           // prepare characters for reading
+    return(local.chars.toString());
+  }
+
+  /* look up a character set, as the old String methods would */
+
+  static Charset forName(String charset)
+    throws UnsupportedEncodingException
+  {
+    try { return(Charset.forName(charset)); }
+    catch (IllegalArgumentException iae) // illegal or unsupported name
+    {
+      throw new UnsupportedEncodingException(charset);
+    }
+  }
+
+  /* get the decoders for the current thread */
+
+  static FontNames3Charsets forThread()
+  {
+    FontNames3Charsets local = (FontNames3Charsets) cache.get();
+    if (local == null)            // first use by this thread?
+    {
+      local = new FontNames3Charsets();
+      cache.set(local);
+    }
+    return(local);
+  }
+
+} // end of FontNames3Charsets class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Committer class
+
+  This class prints parsed font files in order when the files are parsed by
+  several threads.  See the doCommitRunner() method.
+*/
+
+class FontNames3Committer implements Runnable
+{
+  int errors;                     // number of files with errors, when done
+
+  public FontNames3Committer()
+  {
+    errors = 0;
+  }
+
+  /* separate thread for printing files in order */
+
+  public void run()
+  {
+    errors = FontNames3.doCommitRunner();
+  }
+
+} // end of FontNames3Committer class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Data class
+
+  This class holds the raw name and OS/2 data for one font file, as read by the
+  readFontData() method or from the catalog.  See the FontNames3Font class for
+  each internal font.
+*/
+
+class FontNames3Data
+{
+  Vector fonts;                   // FontNames3Font objects read so far
+  boolean multiFlag;              // true if file is TrueType collection
+  int numFonts;                   // number of fonts claimed by file
+  String stopText;                // problem with whole file, or null
+
+  public FontNames3Data()
+  {
+    fonts = new Vector();
+    multiFlag = false;
+    numFonts = 0;
+    stopText = null;
+  }
+
+  /* read from catalog, in the same order as write() */
+
+  static FontNames3Data read(DataInputStream input) throws IOException
+  {
+    FontNames3Data result = new FontNames3Data();
+    result.multiFlag = input.readBoolean();
+    result.numFonts = input.readInt();
+    result.stopText = readText(input);
+    int count = input.readInt();
+    for (int i = 0; i < count; i ++)
+    {
+      int same = input.readInt(); // earlier font with same name table, or -1
+      FontNames3Font font = FontNames3Font.read(input);
+      if ((same >= 0) && (same < i)) // share one array, as readFontData() does
+        font.nameBytes = ((FontNames3Font) result.fonts.get(same)).nameBytes;
+      result.fonts.add(font);
+    }
+    return(result);
+  }
+
+  /* read a byte array that may be null */
+
+  static byte[] readBytes(DataInputStream input) throws IOException
+  {
+    int length = input.readInt();
+    if (length < 0)
+      return(null);
+    byte[] result = new byte[length];
+    input.readFully(result);
+    return(result);
+  }
+
+  /* read a string that may be null */
+
+  static String readText(DataInputStream input) throws IOException
+  {
+    if (input.readBoolean())
+      return(input.readUTF());
+    return(null);
+  }
+
+  /* write to catalog */
+
+  void write(DataOutputStream output) throws IOException
+  {
+    output.writeBoolean(multiFlag);
+    output.writeInt(numFonts);
+    writeText(output, stopText);
+    output.writeInt(fonts.size());
+    for (int i = 0; i < fonts.size(); i ++)
     {
-      /* Do nothing: wait for timer to kick in and update GUI text. */
+      FontNames3Font font = (FontNames3Font) fonts.get(i);
+      int same = -1;              // assume name table isn't shared
+      for (int j = 0; (same < 0) && (j < i); j ++)
+        if ((font.nameBytes != null)
+          && (((FontNames3Font) fonts.get(j)).nameBytes == font.nameBytes))
+        {
+          same = j;               // write shared table only once
+        }
+      output.writeInt(same);
+      font.write(output, (same < 0));
     }
+  }
+
+  /* write a byte array that may be null */
+
+  static void writeBytes(DataOutputStream output, byte[] data)
+    throws IOException
+  {
+    if (data == null)
+      output.writeInt(-1);
     else
-      statusDialog.setText(text); // show the status message now
+    {
+      output.writeInt(data.length);
+      output.write(data);
+    }
+  }
+
+  /* write a string that may be null */
+
+  static void writeText(DataOutputStream output, String text)
+    throws IOException
+  {
+    output.writeBoolean(text != null);
+    if (text != null)
+      output.writeUTF(text);
   }
 
+} // end of FontNames3Data class
+
+// ------------------------------------------------------------------------- //
 
 /*
-  showHelp() method
+  FontNames3Filter class
 
-  Show the help summary.  This is a UNIX standard and is expected for all
-  console applications, even very simple ones.
+  This class limits the files shown in the file open dialog box to font files.
 */
-  static void showHelp()
+
+class FontNames3Filter extends javax.swing.filechooser.FileFilter
+                implements java.io.FileFilter // not the same as filechooser.*
+{
+  /* empty constructor */
+
+  public FontNames3Filter() { }
+
+  /* file filter: accept files of given types */
+
+  public boolean accept(File givenFile)
   {
-    System.err.println();
-    System.err.println(PROGRAM_TITLE);
-    System.err.println();
-    System.err.println("  java  FontNames3  [options]  [file or folder names]");
-    System.err.println();
-    System.err.println("Options:");
-    System.err.println("  -? = -help = show summary of command-line syntax");
-    System.err.println("  -h0 = ignore hidden files or folders (default)");
-    System.err.println("  -h1 = -h = process hidden files and folders");
-    System.err.println("  -k0 = convert name fields to text characters, if possible (default)");
-    System.err.println("  -k1 = -k = report all name fields in hexadecimal only, no text");
-    System.err.println("  -n0 to -n" + (FIELD_COUNT - 1) + " = report name fields with given name ID numbers");
-    System.err.println("  -n" + fieldUnknown + " = report all name fields with unknown name ID numbers");
-    System.err.println("  -n" + fieldOs2ID + " = report OS/2 vendor ID");
-    System.err.println("  -s0 = do only given files or folders, no subfolders (default)");
-    System.err.println("  -s1 = -s = process files, folders, and subfolders");
-    System.err.println("  -u# = font size for buttons, dialogs, etc; default is local system;");
-    System.err.println("      example: -u16");
-    System.err.println("  -w(#,#,#,#) = normal window position: left, top, width, height;");
-    System.err.println("      example: -w(50,50,700,500)");
-    System.err.println("  -x = maximize application window; default is normal window");
-    System.err.println();
-    System.err.println("Output may be redirected with the \">\" operator.  If no file or folder names");
-    System.err.println("are given on the command line, then a graphical interface will open.");
-    System.err.println();
-    System.err.println(COPYRIGHT_NOTICE);
-//  System.err.println();
+    String name = givenFile.getName().toLowerCase(); // get name of file
+    if (givenFile.isDirectory()   // allow user to navigate directories
+      || name.endsWith(".otf")    // accept this list of file types
+      || name.endsWith(".ttc")
+      || name.endsWith(".ttf")
+      || name.endsWith(".woff")   // web fonts
+      || name.endsWith(".woff2")
+      || name.endsWith(".zip"))   // archives are searched like folders
+    {
+      return(true);               // accept directories and most font files
+    }
+    return(false);                // reject anything else
+  }
+
+  /* file filter: return description of files that we accept */
+
+  public String getDescription()
+  {
+    return("OpenType, TrueType, and WOFF font files, ZIP archives");
+  }
+
+} // end of FontNames3Filter class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Font class
+
+  This class holds the raw name table and OS/2 vendor ID for one internal font.
+  Names are decoded when the report is printed, so that options like -k (hex)
+  also apply to data from the catalog.
+*/
+
+class FontNames3Font
+{
+  long name;                      // offset to start of name table in file
+  byte[] nameBytes;               // name table up to last string needed
+  int nameTableSize;              // size of name table in bytes
+  int numNames;                   // number of name table entries
+  long os2;                       // offset to start of OS/2 table, or -1
+  int os2TableSize;               // size of OS/2 table in bytes
+  int os2TableVersion;            // version number from OS/2 table
+  String stopText;                // why reading stopped at this font, or null
+  int stringStart;                // offset of strings in <nameBytes>
+  byte[] vendorBytes;             // OS/2 vendor ID, or null if table is bad
+
+  public FontNames3Font()
+  {
+    name = os2 = -1;
+    nameBytes = vendorBytes = null;
+    nameTableSize = numNames = os2TableSize = os2TableVersion = 0;
+    stopText = null;
+    stringStart = 0;
+  }
+
+  /* read from catalog, in the same order as write() */
+
+  static FontNames3Font read(DataInputStream input) throws IOException
+  {
+    FontNames3Font result = new FontNames3Font();
+    result.name = input.readLong();
+    result.nameBytes = FontNames3Data.readBytes(input);
+    result.nameTableSize = input.readInt();
+    result.numNames = input.readInt();
+    result.os2 = input.readLong();
+    result.os2TableSize = input.readInt();
+    result.os2TableVersion = input.readInt();
+    result.stopText = FontNames3Data.readText(input);
+    result.stringStart = input.readInt();
+    result.vendorBytes = FontNames3Data.readBytes(input);
+    return(result);
+  }
+
+  /* write to catalog, without the name table if an earlier font has it */
+
+  void write(DataOutputStream output, boolean names) throws IOException
+  {
+    output.writeLong(name);
+    FontNames3Data.writeBytes(output, (names ? nameBytes : null));
+    output.writeInt(nameTableSize);
+    output.writeInt(numNames);
+    output.writeLong(os2);
+    output.writeInt(os2TableSize);
+    output.writeInt(os2TableVersion);
+    FontNames3Data.writeText(output, stopText);
+    output.writeInt(stringStart);
+    FontNames3Data.writeBytes(output, vendorBytes);
+  }
+
+} // end of FontNames3Font class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Index class
+
+  This class is a word index over the name records of fonts, for answering
+  questions like "which fonts have Adobe in the copyright" without reading a
+  report.  Each internal font is one document, with the text of a few fields:
+  family name, vendor (name ID #8 and the OS/2 vendor), designer, copyright,
+  trademark, license, and URLs.  For each word (in lowercase), we keep a list
+  of the documents that have the word in any field.  A query looks up each
+  word, and keeps the documents that are in every list.  Words limited to one
+  field ("copyright:adobe") are then checked against the text for that field.
+
+  The index is updated as files change: a file with the same size, date, and
+  file key as before keeps its documents, and a changed file has its old
+  documents marked as deleted before the new ones are added.  Deleted documents
+  are dropped when the index is saved.  Files that weren't seen during a run
+  are kept, unless they no longer exist.
+
+  Several parsing threads may call us at once, so methods that change the index
+  are synchronized.
+*/
+
+class FontNames3Index
+{
+  /* constants */
+
+  static final String[] FIELDS = {"family", "vendor", "designer", "copyright",
+    "trademark", "license", "url"}; // field names for queries
+  static final int[] FIELD_IDS = {1, 16, -1, 8, 22, -1, 9, -1, 0, -1, 7, -1,
+    13, -1, 11, 12, 14};
+                                  // name IDs by field, -1 between fields,
+                                  // ... and 22 for OS/2 vendor ID and name
+  static final String HEADER = "FontNames3 index 1"; // first bytes of file
+  static final int MAX_TEXT = 2000; // longest field text that we keep
+
+  /* instance variables */
+
+  int added;                      // number of files added or updated
+  Vector docs;                    // for each document: path, stamp, font, and
+                                  // ... field texts; or null if deleted
+  File file;                      // index file given by user
+  HashMap paths;                  // path to Vector of Integer document numbers
+  HashMap postings;               // word to int[]: count, document numbers
+  int removed;                    // number of files no longer found
+  HashSet seen;                   // paths found during this run
+
+  public FontNames3Index(File givenFile) throws IOException
+  {
+    added = removed = 0;
+    docs = new Vector();
+    file = givenFile;
+    paths = new HashMap();
+    postings = new HashMap();
+    seen = new HashSet();
+
+    if (file.exists() == false)   // new index starts empty
+      return;
+    DataInputStream input = new DataInputStream(new BufferedInputStream(
+      new FileInputStream(file), 0x10000));
+    try
+    {
+      if (HEADER.equals(input.readUTF()) == false) // don't replace other files
+        throw new IOException("not an index file: " + file.getPath());
+      int count = input.readInt(); // number of documents
+      for (int i = 0; i < count; i ++)
+      {
+        String[] doc = new String[3 + FIELDS.length];
+        for (int k = 0; k < doc.length; k ++)
+          doc[k] = input.readUTF();
+        addPath(doc[0], i);
+        docs.add(doc);
+      }
+      count = input.readInt();    // number of words
+      for (int i = 0; i < count; i ++)
+      {
+        String word = input.readUTF();
+        int[] list = new int[input.readInt() + 1];
+        list[0] = list.length - 1; // list is full
+        for (int k = 1; k < list.length; k ++)
+          list[k] = input.readInt();
+        postings.put(word, list);
+      }
+    }
+    catch (EOFException eofe)     // index was cut short, don't trust it
+    {
+      throw new IOException("index file is incomplete: " + file.getPath());
+    }
+    finally { input.close(); }
+  }
+
+  /* remember which documents belong to a path */
+
+  void addPath(String path, int number)
+  {
+    Vector list = (Vector) paths.get(path);
+    if (list == null)
+    {
+      list = new Vector();
+      paths.put(path, list);
+    }
+    list.add(new Integer(number));
+  }
+
+  /* add a document number to the list for a word */
+
+  void addPosting(String word, int number)
+  {
+    int[] list = (int[]) postings.get(word);
+    if (list == null)
+      list = new int[4];
+    else if ((list[0] > 0) && (list[list[0]] == number)) // same document?
+      return;
+    else if ((list[0] + 1) == list.length) // is list full?
+      list = Arrays.copyOf(list, (list.length * 2));
+    list[++ list[0]] = number;    // numbers are added in increasing order
+    postings.put(word, list);
+  }
+
+  /* is this document still here, and does its field have these words? */
+
+  boolean check(int number, int field, Vector words, boolean prefix)
+  {
+    String[] doc = (String[]) docs.get(number);
+    if (doc == null)              // deleted document
+      return(false);
+    if (field < 0)                // any field, already found by postings
+      return(true);
+    Vector have = tokenize(doc[3 + field]);
+    for (int i = 0; i < words.size(); i ++)
+    {
+      String word = (String) words.get(i);
+      boolean found = false;
+      for (int k = 0; (found == false) && (k < have.size()); k ++)
+      {
+        String next = (String) have.get(k);
+        found = prefix && (i == (words.size() - 1)) ? next.startsWith(word)
+          : next.equals(word);
+      }
+      if (found == false)
+        return(false);
+    }
+    return(true);
+  }
+
+  /* make our changes permanent: drop deleted documents and save */
+
+  public synchronized void close() throws IOException
+  {
+    /* Files that we didn't see during this run are removed if they no longer
+    exist.  For fonts inside archives, we look for the archive. */
+
+    Iterator list = new Vector(paths.keySet()).iterator();
+    while (list.hasNext())
+    {
+      String path = (String) list.next();
+      if (seen.contains(path))
+        continue;
+      File next = new File(path);
+      while ((next != null) && (next.exists() == false))
+        next = next.getParentFile(); // archive, or folder that remains
+      if ((next == null) || next.isDirectory()) // file is gone
+      {
+        remove(path);
+        removed ++;
+      }
+    }
+
+    /* Number the remaining documents again, in order. */
+
+    int[] renumber = new int[docs.size()];
+    int count = 0;
+    for (int i = 0; i < docs.size(); i ++)
+      renumber[i] = (docs.get(i) != null) ? count ++ : -1;
+
+    File newFile = new File(file.getPath() + ".new");
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(newFile), 0x10000));
+    output.writeUTF(HEADER);
+    output.writeInt(count);
+    for (int i = 0; i < docs.size(); i ++)
+    {
+      String[] doc = (String[]) docs.get(i);
+      if (doc != null)
+        for (int k = 0; k < doc.length; k ++)
+          output.writeUTF(doc[k]);
+    }
+
+    Vector words = new Vector(postings.keySet());
+    Collections.sort(words);      // same file for same index
+    output.writeInt(words.size()); // may include words with no documents
+    for (int i = 0; i < words.size(); i ++)
+    {
+      String word = (String) words.get(i);
+      int[] old = (int[]) postings.get(word);
+      int live = 0;
+      for (int k = 1; k <= old[0]; k ++)
+        if (renumber[old[k]] >= 0)
+          live ++;
+      output.writeUTF(word);
+      output.writeInt(live);
+      for (int k = 1; k <= old[0]; k ++)
+        if (renumber[old[k]] >= 0)
+          output.writeInt(renumber[old[k]]);
+    }
+    output.close();
+
+    file.delete();                // some systems won't rename over a file
+    if (newFile.renameTo(file) == false)
+      throw new IOException("can't rename " + newFile.getPath());
+  }
+
+  /* true if the path is new or changed, and must be added again */
+
+  public synchronized boolean needs(String path, String stamp)
+  {
+    seen.add(path);
+    Vector list = (Vector) paths.get(path);
+    if (list == null)
+      return(true);
+    String[] doc = (String[]) docs.get(((Integer) list.get(0)).intValue());
+    return(stamp.equals(doc[1]) == false);
+  }
+
+  /* replace documents for a path with the given name records */
+
+  public synchronized void put(String path, String stamp, Vector records)
+  {
+    remove(path);
+    for (int i = 0; i < records.size(); i ++)
+    {
+      FontNames3Record record = (FontNames3Record) records.get(i);
+      String[] doc = new String[3 + FIELDS.length];
+      doc[0] = path;
+      doc[1] = stamp;
+      doc[2] = (record.fonts > 1) ? (record.font + " of " + record.fonts) : "";
+
+      /* Collect the text for each field, without repeating text that is the
+      same in more than one language or platform. */
+
+      int field = 0;
+      StringBuffer buffer = new StringBuffer();
+      for (int k = 0; k <= FIELD_IDS.length; k ++)
+      {
+        if ((k == FIELD_IDS.length) || (FIELD_IDS[k] < 0)) // end of field?
+        {
+          doc[3 + field] = (buffer.length() > MAX_TEXT)
+            ? buffer.substring(0, MAX_TEXT) : buffer.toString();
+          buffer.setLength(0);
+          field ++;
+          continue;
+        }
+        for (int n = 0; n <= record.count; n ++)
+        {
+          String text;
+          if (n == record.count)  // OS/2 vendor goes after names
+            text = (FIELD_IDS[k] != 22) ? null : ((record.vendorID == null)
+              ? null : (record.vendorID + " " + record.vendorName).trim());
+          else
+            text = (record.codes[(4 * n) + 3] != FIELD_IDS[k]) ? null
+              : record.texts[n].trim();
+          if ((text != null) && (text.length() > 0)
+            && (("\n" + buffer + "\n").indexOf("\n" + text + "\n") < 0))
+          {
+            if (buffer.length() > 0)
+              buffer.append('\n');
+            buffer.append(text);
+          }
+        }
+      }
+
+      int number = docs.size();   // new document goes at the end
+      docs.add(doc);
+      addPath(path, number);
+      for (int k = 3; k < doc.length; k ++)
+      {
+        Vector words = tokenize(doc[k]);
+        for (int n = 0; n < words.size(); n ++)
+          addPosting((String) words.get(n), number);
+      }
+    }
+    added ++;
+  }
+
+  /* find documents for a query; return sorted lines to print */
+
+  public Vector query(String text)
+  {
+    int[] found = null;           // document numbers found so far, or null
+    String[] terms = text.trim().split("\\s+");
+
+    for (int i = 0; i < terms.length; i ++)
+    {
+      if (terms[i].length() == 0)
+        continue;
+
+      /* Each term is a word, or a field name and a word, with an optional "*"
+      at the end for words that start with the given letters.  A term may be
+      more than one word, such as "bitstream.com" for "bitstream" and "com". */
+
+      int field = -1;             // any field
+      String term = terms[i];
+      int colon = term.indexOf(':');
+      if (colon > 0)
+      {
+        for (int k = 0; k < FIELDS.length; k ++)
+          if (FIELDS[k].equalsIgnoreCase(term.substring(0, colon)))
+            field = k;
+        if (field >= 0)
+          term = term.substring(colon + 1);
+      }
+      boolean prefix = term.endsWith("*");
+      Vector words = tokenize(term);
+
+      for (int k = 0; k < words.size(); k ++)
+      {
+        String word = (String) words.get(k);
+        int[] list;
+        if (prefix && (k == (words.size() - 1))) // any word starting with this
+        {
+          TreeSet union = new TreeSet();
+          Iterator keys = postings.keySet().iterator();
+          while (keys.hasNext())
+          {
+            String key = (String) keys.next();
+            if (key.startsWith(word))
+            {
+              int[] next = (int[]) postings.get(key);
+              for (int n = 1; n <= next[0]; n ++)
+                union.add(new Integer(next[n]));
+            }
+          }
+          list = new int[union.size() + 1];
+          list[0] = union.size();
+          Iterator values = union.iterator();
+          for (int n = 1; n < list.length; n ++)
+            list[n] = ((Integer) values.next()).intValue();
+        }
+        else
+        {
+          list = (int[]) postings.get(word);
+          if (list == null)
+            list = new int[1];    // no documents
+        }
+        found = (found == null) ? list.clone()
+          : intersect(found, list); // first list is changed below
+      }
+
+      /* Keep only documents that still exist, with the words in the field. */
+
+      if (found != null)
+      {
+        int count = 0;
+        for (int k = 1; k <= found[0]; k ++)
+          if (check(found[k], field, words, prefix))
+            found[++ count] = found[k];
+        found[0] = count;
+      }
+    }
+
+    Vector result = new Vector();
+    if (found == null)            // empty query finds nothing
+      return(result);
+    for (int k = 1; k <= found[0]; k ++)
+    {
+      String[] doc = (String[]) docs.get(found[k]);
+      String family = doc[3];
+      if (family.indexOf('\n') >= 0) // first family name only
+        family = family.substring(0, family.indexOf('\n'));
+      result.add(doc[0] + ((doc[2].length() > 0) ? (" (font " + doc[2] + ")")
+        : "") + ": " + family);
+    }
+    Collections.sort(result);     // order doesn't depend upon threads
+    return(result);
+  }
+
+  /* document numbers in both sorted lists (first element is count) */
+
+  static int[] intersect(int[] one, int[] two)
+  {
+    int[] result = new int[Math.min(one[0], two[0]) + 1];
+    int i = 1, k = 1;
+    while ((i <= one[0]) && (k <= two[0]))
+    {
+      if (one[i] < two[k]) i ++;
+      else if (one[i] > two[k]) k ++;
+      else { result[++ result[0]] = one[i]; i ++; k ++; }
+    }
+    return(result);
+  }
+
+  /* mark documents for a path as deleted */
+
+  void remove(String path)
+  {
+    Vector list = (Vector) paths.remove(path);
+    if (list != null)
+      for (int i = 0; i < list.size(); i ++)
+        docs.set(((Integer) list.get(i)).intValue(), null);
+  }
+
+  /* break text into lowercase words; each Chinese or Japanese character is a
+  word by itself, because those languages don't put spaces between words */
+
+  static Vector tokenize(String text)
+  {
+    StringBuffer buffer = new StringBuffer();
+    Vector result = new Vector();
+    int i = 0;
+    while (i <= text.length())
+    {
+      int ch = (i < text.length()) ? text.codePointAt(i) : ' ';
+      i += (i < text.length()) ? Character.charCount(ch) : 1;
+      Character.UnicodeScript script = Character.isLetterOrDigit(ch)
+        ? Character.UnicodeScript.of(ch) : null;
+      if ((script != null) && (script != Character.UnicodeScript.HAN)
+        && (script != Character.UnicodeScript.HIRAGANA)
+        && (script != Character.UnicodeScript.KATAKANA))
+      {
+        buffer.appendCodePoint(Character.toLowerCase(ch));
+        continue;
+      }
+      if (buffer.length() > 0)    // end of a word
+      {
+        result.add(buffer.toString());
+        buffer.setLength(0);
+      }
+      if (script != null)         // Chinese or Japanese character
+        result.add(new String(Character.toChars(ch)));
+    }
+    return(result);
+  }
+
+} // end of FontNames3Index class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Input class
+
+  This class reads a font from a file or from memory, with the same methods as
+  RandomAccessFile, so that readFontData() doesn't care where the font is.
+  Fonts inside ZIP archives are inflated into memory, because their tables can
+  be in any order and a compressed entry can only be read forward.  Reading
+  past the end of the bytes in memory throws the same EOFException as reading
+  past the end of a file.
+*/
+
+class FontNames3Input
+{
+  byte[] bytes;                   // font in memory, or null for file
+  RandomAccessFile file;          // font file opened for reading, or null
+  int position;                   // current position in <bytes>
+
+  public FontNames3Input(File givenFile) throws IOException
+  {
+    bytes = null;
+    file = new RandomAccessFile(givenFile, "r");
+    position = 0;
+  }
+
+  public FontNames3Input(byte[] givenBytes)
+  {
+    bytes = givenBytes;
+    file = null;
+    position = 0;
+  }
+
+  /* close file, if any */
+
+  public void close() throws IOException
+  {
+    if (file != null)
+      file.close();
+  }
+
+  /* read exactly enough bytes to fill caller's array */
+
+  public void readFully(byte[] buffer) throws IOException
+  {
+    readFully(buffer, 0, buffer.length);
+  }
+
+  public void readFully(byte[] buffer, int offset, int length)
+    throws IOException
+  {
+    if (file != null)
+      file.readFully(buffer, offset, length);
+    else if ((bytes.length - position) < length)
+      throw new EOFException();
+    else
+    {
+      System.arraycopy(bytes, position, buffer, offset, length);
+      position += length;
+    }
+  }
 
-  } // end of showHelp() method
+  /* read a big-endian integer */
 
+  public int readInt() throws IOException
+  {
+    if (file != null)
+      return(file.readInt());
+    return((readUnsignedShort() << 16) | readUnsignedShort());
+  }
 
-/*
-  sortFileList() method
+  /* read a big-endian unsigned short integer */
 
-  When we ask for a list of files or subfolders in a directory, the list is not
-  likely to be in our preferred order.  Java does not guarantee any particular
-  order, and the observed order is whatever is supplied by the underlying file
-  system (which can be very jumbled for FAT16/FAT32).  We would like the file
-  names to be sorted, and since we recurse on subfolders, we also want the
-  subfolders to appear in order.
+  public int readUnsignedShort() throws IOException
+  {
+    if (file != null)
+      return(file.readUnsignedShort());
+    if ((bytes.length - position) < 2)
+      throw new EOFException();
+    position += 2;
+    return(((bytes[position - 2] & 0xFF) << 8) | (bytes[position - 1] & 0xFF));
+  }
 
-  The caller's parameter may be <null> and this may happen if the caller asks
-  File.listFiles() for the contents of a protected system directory.  All calls
-  to listFiles() in this program are wrapped inside a call to us, so we replace
-  a null parameter with an empty array as our result.
+  /* set position for next read */
+
+  public void seek(long offset) throws IOException
+  {
+    if (file != null)
+      file.seek(offset);
+    else
+      position = (int) Math.min(offset, bytes.length); // reads will fail
+  }
+
+  /* skip bytes, but not past the end */
+
+  public int skipBytes(int count) throws IOException
+  {
+    if (file != null)
+      return(file.skipBytes(count));
+    count = Math.min(count, (bytes.length - position));
+    position += count;
+    return(count);
+  }
+
+} // end of FontNames3Input class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Job class
+
+  This class holds one font file while it moves from a parsing thread to the
+  committer thread, along with any output that has been held back.  A job
+  without a file carries only messages.
 */
-  static File[] sortFileList(File[] input)
+
+class FontNames3Job implements Runnable
+{
+  boolean done;                   // true when parsing has finished
+  boolean error;                  // true if file counts as an error
+  int fileNumber;                 // caller's count of files, for the report
+  byte[] givenBytes;              // archive entry in memory, or null for file
+  File givenFile;                 // caller's Java File object (may be valid)
+  String givenName;               // caller's name for file, or empty, or null
+  boolean last;                   // true if committer stops after this job
+  Vector messages;                // output and records held back for committer
+
+  public FontNames3Job(File givenFile, String givenName, int fileNumber)
   {
-    String fileName;              // file name without the path
-    int i;                        // index variable
-    TreeMap list;                 // our list of files
-    File[] result;                // our result
-    StringBuffer sortKey;         // created sorting key for each file
+    this.done = false;            // not parsed yet
+    this.error = false;
+    this.fileNumber = fileNumber;
+    this.givenBytes = null;       // by default, read font from file
+    this.givenFile = givenFile;
+    this.givenName = givenName;
+    this.last = false;            // assume more jobs will follow
+    this.messages = new Vector(); // hold back output from parsing thread
+  }
 
-    if (input == null)            // were we given a null pointer?
-      result = new File[0];       // yes, replace with an empty array
-    else if (input.length < 2)    // don't sort lists with zero or one element
-      result = input;             // just copy input array as result array
-    else
-    {
-      /* First, create a sorted list with our choice of index keys and the File
-      objects as data.  Names are sorted as files or folders, then in lowercase
-      to ignore differences in uppercase versus lowercase, then in the original
-      form for systems where case is distinct. */
+  /* separate thread from the parsing pool */
 
-      list = new TreeMap();       // create empty sorted list with keys
-      sortKey = new StringBuffer(); // allocate empty string buffer for keys
-      for (i = 0; i < input.length; i ++)
-      {
-        sortKey.setLength(0);     // empty any previous contents of buffer
-        if (input[i].isDirectory()) // is this "file" actually a folder?
-          sortKey.append("2 ");   // yes, put subfolders after files
-        else                      // must be a file or an unknown object
-          sortKey.append("1 ");   // put files before subfolders
+  public void run()
+  {
+    FontNames3.doParseRunner(this);
+  }
 
-        fileName = input[i].getName(); // get the file name without the path
-        sortKey.append(fileName.toLowerCase()); // start by ignoring case
-        sortKey.append(" ");      // separate lowercase from original case
-        sortKey.append(fileName); // then sort file name on original case
-        list.put(sortKey.toString(), input[i]); // put file into sorted list
-      }
+  /* tell committer thread that parsing has finished */
 
-      /* Second, now that the TreeMap object has done all the hard work of
-      sorting, pull the File objects from the list in order as determined by
-      the sort keys that we created. */
+  public synchronized void setDone()
+  {
+    done = true;
+    notifyAll();
+  }
 
-      result = (File[]) list.values().toArray(new File[0]);
+  /* committer thread waits here until parsing has finished */
+
+  public synchronized void waitDone()
+  {
+    while (done == false)
+    {
+      try { wait(); }
+      catch (InterruptedException ie) { /* keep waiting */ }
     }
-    return(result);               // give caller whatever we could find
+  }
 
-  } // end of sortFileList() method
+} // end of FontNames3Job class
 
+// ------------------------------------------------------------------------- //
 
 /*
-  userButton() method
+  FontNames3Record class
 
-  This method is called by our action listener actionPerformed() to process
-  buttons, in the context of the main FontNames3 class.
+  This class holds the structured output for one internal font: every entry
+  from the name table, plus the OS/2 vendor ID.  The reading thread fills in a
+  record and gives it to FontNames3Writer, which calls our format methods on
+  its own thread.  A record with a null path is only a marker for flushing.
 */
-  static void userButton(ActionEvent event)
+
+class FontNames3Record
+{
+  int[] codes;                    // platform, encoding, language, name ID
+  int count;                      // number of name entries saved so far
+  boolean done;                   // for markers: true when writer catches up
+  String error;                   // why file couldn't be read, or null
+  int font;                       // internal font number from 1, 0 for error
+  int fonts;                      // number of internal fonts in this file
+  String path;                    // file path, or null if a flush marker
+  long size;                      // size of file in bytes
+  String[] texts;                 // converted text for each name entry
+  String vendorID;                // OS/2 vendor ID, or null if not found
+  String vendorName;              // our name for <vendorID>, or empty string
+
+  public FontNames3Record(
+    String path,                  // file path, or null if a flush marker
+    long size,                    // size of file in bytes
+    int font,                     // internal font number, or 0 for error
+    int fonts,                    // number of internal fonts in this file
+    int names)                    // number of entries in name table
   {
-    Object source = event.getSource(); // where the event came from
-    if (source == cancelButton)   // "Cancel" button
+    this.codes = new int[4 * names];
+    this.count = 0;
+    this.done = false;
+    this.error = null;
+    this.font = font;
+    this.fonts = fonts;
+    this.path = path;
+    this.size = size;
+    this.texts = new String[names];
+    this.vendorID = null;
+    this.vendorName = "";
+  }
+
+  /* save one name table entry */
+
+  public void addName(
+    int platform,                 // platform ID
+    int encoding,                 // platform-specific encoding ID
+    int language,                 // language ID
+    int nameID,                   // name ID
+    String text)                  // converted string, may be hexadecimal
+  {
+    codes[(4 * count) + 0] = platform;
+    codes[(4 * count) + 1] = encoding;
+    codes[(4 * count) + 2] = language;
+    codes[(4 * count) + 3] = nameID;
+    texts[count ++] = text;
+  }
+
+  /* copy name entries decoded for another font with the same name table */
+
+  public void copyNames(FontNames3Record other)
+  {
+    System.arraycopy(other.codes, 0, codes, 0, (4 * other.count));
+    System.arraycopy(other.texts, 0, texts, 0, other.count);
+    count = other.count;
+  }
+
+  /* append one CSV field, quoted only if necessary */
+
+  static void csvField(StringBuffer buffer, String text)
+  {
+    if ((text.indexOf(',') < 0) && (text.indexOf('"') < 0)
+      && (text.indexOf('\n') < 0) && (text.indexOf('\r') < 0))
     {
-      doCancelButton();           // stop opening files or folders
+      buffer.append(text);        // plain text needs no quotes
     }
-    else if (source == exitButton) // "Exit" button
+    else
     {
-      System.exit(0);             // always exit with zero status from GUI
+      buffer.append('"');
+      for (int i = 0; i < text.length(); i ++)
+      {
+        char ch = text.charAt(i);
+        if (ch == '"') buffer.append('"'); // double any quotes
+        buffer.append(ch);
+      }
+      buffer.append('"');
     }
-    else if (source == fontNameDialog) // font name for output text area
+  }
+
+  /* format as CSV: one row per name entry, or one row if no entries */
+
+  public void formatCsv(StringBuffer buffer)
+  {
+    int i = 0;                    // index of name entry
+    do                            // at least one row, even for errors
     {
-      /* We can safely assume that the font name is valid, because we obtained
-      the names from getAvailableFontFamilyNames(), and the user can't edit
-      this dialog field. */
+      csvField(buffer, path);
+      buffer.append(',');
+      buffer.append(size);
+      buffer.append(',');
+      if (font > 0) buffer.append(font);
+      buffer.append(',');
+      if (fonts > 0) buffer.append(fonts);
+      buffer.append(',');
+      if (vendorID != null) csvField(buffer, vendorID);
+      buffer.append(',');
+      csvField(buffer, vendorName);
+      if (i < count)              // is there a name entry for this row?
+      {
+        for (int j = 0; j < 4; j ++)
+        {
+          buffer.append(',');
+          buffer.append(codes[(4 * i) + j]);
+        }
+        buffer.append(',');
+        csvField(buffer, texts[i]);
+      }
+      else
+        buffer.append(",,,,,");   // empty platform, encoding, ..., text
+      buffer.append(',');
+      if (error != null) csvField(buffer, error);
+      buffer.append("\r\n");      // RFC 4180 says CR/LF between rows
+      i ++;
+    } while (i < count);
+  }
 
-      fontName = (String) fontNameDialog.getSelectedItem();
-      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+  /* format as one line of JSON */
+
+  public void formatJson(StringBuffer buffer)
+  {
+    buffer.append("{\"path\":");
+    jsonString(buffer, path);
+    buffer.append(",\"size\":");
+    buffer.append(size);
+    if (font > 0)
+    {
+      buffer.append(",\"font\":");
+      buffer.append(font);
     }
-    else if (source == fontSizeDialog) // point size for output text area
+    if (fonts > 0)
     {
-      /* We can safely parse the point size as an integer, because we supply
-      the only choices allowed, and the user can't edit this dialog field. */
-
-      fontSize = Integer.parseInt((String) fontSizeDialog.getSelectedItem());
-      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+      buffer.append(",\"fonts\":");
+      buffer.append(fonts);
     }
-    else if (source == hexCheckbox) // report all name fields in hexadecimal
+    if (error != null)
     {
-      hexFlag = hexCheckbox.isSelected();
+      buffer.append(",\"error\":");
+      jsonString(buffer, error);
     }
-    else if (source == menuButton) // button for selecting name IDs to report
+    else
     {
-      menuPopup.show(menuButton, 0, menuButton.getHeight());
+      if (vendorID != null)
+      {
+        buffer.append(",\"vendor_id\":");
+        jsonString(buffer, vendorID);
+        if (vendorName.length() > 0)
+        {
+          buffer.append(",\"vendor_name\":");
+          jsonString(buffer, vendorName);
+        }
+      }
+      buffer.append(",\"names\":[");
+      for (int i = 0; i < count; i ++)
+      {
+        if (i > 0) buffer.append(',');
+        buffer.append("{\"platform\":");
+        buffer.append(codes[(4 * i) + 0]);
+        buffer.append(",\"encoding\":");
+        buffer.append(codes[(4 * i) + 1]);
+        buffer.append(",\"language\":");
+        buffer.append(codes[(4 * i) + 2]);
+        buffer.append(",\"name_id\":");
+        buffer.append(codes[(4 * i) + 3]);
+        buffer.append(",\"text\":");
+        jsonString(buffer, texts[i]);
+        buffer.append('}');
+      }
+      buffer.append(']');
     }
+    buffer.append("}\n");
+  }
 
-    /* The following are called when individual checkbox items are changed in
-    the menu to select name IDs.  They are not called, directly or indirectly,
-    when the "all" or "none" groups are chosen below. */
+  /* append a quoted JSON string with escapes */
 
-    else if (source == menuField00) // identical processing for numbered fields
-      fieldFlags[ 0] = menuField00.isSelected();
-    else if (source == menuField01)
-      fieldFlags[ 1] = menuField01.isSelected(); // font family name (ID #1)
-    else if (source == menuField02)
-      fieldFlags[ 2] = menuField02.isSelected();
-    else if (source == menuField03)
-      fieldFlags[ 3] = menuField03.isSelected();
-    else if (source == menuField04)
-      fieldFlags[ 4] = menuField04.isSelected(); // font full name (name ID #4)
-    else if (source == menuField05)
-      fieldFlags[ 5] = menuField05.isSelected();
-    else if (source == menuField06)
-      fieldFlags[ 6] = menuField06.isSelected();
-    else if (source == menuField07)
-      fieldFlags[ 7] = menuField07.isSelected();
-    else if (source == menuField08)
-      fieldFlags[ 8] = menuField08.isSelected();
-    else if (source == menuField09)
-      fieldFlags[ 9] = menuField09.isSelected();
-    else if (source == menuField10)
-      fieldFlags[10] = menuField10.isSelected();
-    else if (source == menuField11)
-      fieldFlags[11] = menuField11.isSelected();
-    else if (source == menuField12)
-      fieldFlags[12] = menuField12.isSelected();
-    else if (source == menuField13)
-      fieldFlags[13] = menuField13.isSelected();
-    else if (source == menuField14)
-      fieldFlags[14] = menuField14.isSelected();
-//  else if (source == menuField15)
-//    fieldFlags[15] = menuField15.isSelected(); // reserved (name ID #15)
-    else if (source == menuField16)
-      fieldFlags[16] = menuField16.isSelected();
-    else if (source == menuField17)
-      fieldFlags[17] = menuField17.isSelected();
-    else if (source == menuField18)
-      fieldFlags[18] = menuField18.isSelected();
-    else if (source == menuField19)
-      fieldFlags[19] = menuField19.isSelected();
-    else if (source == menuField20)
-      fieldFlags[20] = menuField20.isSelected();
-    else if (source == menuFieldOs2ID)
-      fieldFlags[fieldOs2ID] = menuFieldOs2ID.isSelected();
-    else if (source == menuFieldUnknown)
+  static void jsonString(StringBuffer buffer, String text)
+  {
+    buffer.append('"');
+    for (int i = 0; i < text.length(); i ++)
     {
-      fieldFlags[fieldUnknown] = menuFieldUnknown.isSelected();
+      char ch = text.charAt(i);
+      if ((ch == '"') || (ch == '\\')) // quote or backslash
+      {
+        buffer.append('\\');
+        buffer.append(ch);
+      }
+      else if (ch == '\n') buffer.append("\\n");
+      else if (ch == '\r') buffer.append("\\r");
+      else if (ch == '\t') buffer.append("\\t");
+      else if ((ch < 0x20) || (ch == 0x7F)) // other control characters
+      {
+        String hex = Integer.toHexString(ch);
+        buffer.append("\\u0000".substring(0, (6 - hex.length())));
+        buffer.append(hex);
+      }
+      else
+        buffer.append(ch);        // everything else is written as UTF-8
     }
+    buffer.append('"');
+  }
 
-    /* The following are called when group items ("all" or "none") are chosen
-    in the menu to select name IDs.  Note that our calling setSelected() here
-    does *not* invoke the action listener, and hence the individual check boxes
-    above do not get called twice. */
+} // end of FontNames3Record class
 
-    else if (source == menuLegalAll) // enable all "legal" name IDs
-    {
-      fieldFlags[ 0] = true; menuField00.setSelected(true);
-      fieldFlags[ 7] = true; menuField07.setSelected(true);
-      fieldFlags[13] = true; menuField13.setSelected(true);
-      fieldFlags[14] = true; menuField14.setSelected(true);
-    }
-    else if (source == menuLegalNone) // disable all "legal" name IDs
-    {
-      fieldFlags[ 0] = false; menuField00.setSelected(false);
-      fieldFlags[ 7] = false; menuField07.setSelected(false);
-      fieldFlags[13] = false; menuField13.setSelected(false);
-      fieldFlags[14] = false; menuField14.setSelected(false);
-    }
-    else if (source == menuMakerAll) // enable all designer/vendor name IDs
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3User class
+
+  This class listens to input from the user and passes back event parameters to
+  a static method in the main class.
+*/
+
+class FontNames3User implements ActionListener, Runnable
+{
+  /* empty constructor */
+
+  public FontNames3User() { }
+
+  /* button listener, dialog boxes, etc */
+
+  public void actionPerformed(ActionEvent event)
+  {
+    FontNames3.userButton(event);
+  }
+
+  /* separate heavy-duty processing thread */
+
+  public void run()
+  {
+    FontNames3.doOpenRunner();
+  }
+
+} // end of FontNames3User class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Vendors class
+
+  This class maps OS/2 vendor IDs to vendor names.  A vendor ID has exactly four
+  printable ASCII bytes, so we pack it into an <int> and use that as the key in
+  an open hash table with linear probing.  No key can be zero (four nulls are
+  converted to spaces before we get them), so zero marks an empty slot.
+*/
+
+class FontNames3Vendors
+{
+  int count;                      // number of vendor IDs in table
+  int[] keys;                     // packed vendor IDs, or zero if empty slot
+  String[] names;                 // vendor name for each slot in <keys>
+
+  public FontNames3Vendors()
+  {
+    count = 0;
+    keys = new int[1024];         // power of two, big enough for most lists
+    names = new String[keys.length];
+  }
+
+  /* look up a vendor ID, return name or null */
+
+  public String get(String id)
+  {
+    int key = tagFor(id);
+    if (key == 0) return(null);   // can't be in our table
+    return(names[slotFor(key)]);  // null if slot is empty
+  }
+
+  /* add or replace a vendor ID; ignore IDs that aren't valid */
+
+  public void put(String id, String name)
+  {
+    int key = tagFor(id);
+    if (key == 0) return;         // not four printable ASCII characters
+    if ((2 * (count + 1)) > keys.length) // keep table at most half full
     {
-      fieldFlags[ 8] = true; menuField08.setSelected(true);
-      fieldFlags[ 9] = true; menuField09.setSelected(true);
-      fieldFlags[11] = true; menuField11.setSelected(true);
-      fieldFlags[12] = true; menuField12.setSelected(true);
-      fieldFlags[fieldOs2ID] = true; menuFieldOs2ID.setSelected(true);
+      int[] oldKeys = keys;
+      String[] oldNames = names;
+      keys = new int[2 * oldKeys.length];
+      names = new String[keys.length];
+      for (int i = 0; i < oldKeys.length; i ++)
+      {
+        if (oldKeys[i] != 0)
+        {
+          int slot = slotFor(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          names[slot] = oldNames[i];
+        }
+      }
     }
-    else if (source == menuMakerNone) // disable all designer/vendor name IDs
+    int slot = slotFor(key);
+    if (keys[slot] == 0)          // new ID, not a replacement
     {
-      fieldFlags[ 8] = false; menuField08.setSelected(false);
-      fieldFlags[ 9] = false; menuField09.setSelected(false);
-      fieldFlags[11] = false; menuField11.setSelected(false);
-      fieldFlags[12] = false; menuField12.setSelected(false);
-      fieldFlags[fieldOs2ID] = false; menuFieldOs2ID.setSelected(false);
+      keys[slot] = key;
+      count ++;
     }
-    else if (source == menuNamesAll) // enable all detailed name IDs
+    names[slot] = name;
+  }
+
+  /* find slot holding <key>, or the empty slot where it would go */
+
+  int slotFor(int key)
+  {
+    int mask = keys.length - 1;   // length is always a power of two
+    int slot = ((key * 0x9E3779B9) >>> 16) & mask; // mix bits of all 4 bytes
+    while ((keys[slot] != 0) && (keys[slot] != key))
+      slot = (slot + 1) & mask;   // linear probing
+    return(slot);
+  }
+
+  /* pack a vendor ID into an int, padding with spaces; zero if not valid */
+
+  static int tagFor(String id)
+  {
+    if ((id == null) || (id.length() < 1) || (id.length() > 4))
+      return(0);                  // hex dumps and other long strings
+    int key = 0;
+    for (int i = 0; i < 4; i ++)
     {
-//    fieldFlags[ 1] = true; menuField01.setSelected(true); // font family name
-      fieldFlags[ 2] = true; menuField02.setSelected(true);
-      fieldFlags[ 3] = true; menuField03.setSelected(true);
-      fieldFlags[ 4] = true; menuField04.setSelected(true); // font full name
-      fieldFlags[ 6] = true; menuField06.setSelected(true);
-      fieldFlags[16] = true; menuField16.setSelected(true);
-      fieldFlags[17] = true; menuField17.setSelected(true);
-      fieldFlags[18] = true; menuField18.setSelected(true);
-      fieldFlags[20] = true; menuField20.setSelected(true);
+      char ch = (i < id.length()) ? id.charAt(i) : ' ';
+      if ((ch < 0x20) || (ch > 0x7E)) // printable ASCII only
+        return(0);
+      key = (key << 8) | ch;
     }
-    else if (source == menuNamesNone) // disable all detailed name IDs
+    return(key);
+  }
+
+} // end of FontNames3Vendors class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontNames3Woff class
+
+  WOFF and WOFF2 files are OpenType or TrueType fonts compressed for web pages.
+  Both have a table directory at the start of the file, so we can find the
+  tables we want without expanding the whole font.  WOFF compresses each table
+  separately with "zlib", and we inflate only the tables we want.  WOFF2
+  compresses all tables together as one Brotli stream, which we decode only as
+  far as the end of the last table we want.  Java doesn't have a Brotli decoder
+  built in, so WOFF2 files can only be read if the "org.brotli.dec" package
+  (the decoder published by Google) is on the class path.
+
+  The result is a small font file in memory: an Offset Table with the same
+  entries as the original, but only the tables we asked for have any data.
+  (The others have zero length.)  A WOFF2 collection becomes a TrueType
+  collection.  Checksums are not calculated.  We return null if the file is
+  not a well-formed WOFF or WOFF2 file, and throw an exception only for I/O
+  errors.
+
+  Each program is one self-contained source file, so this class is also
+  copied into FontRedate3.java (as FontRedate3Woff) and FontRename4.java (as
+  FontRename4Woff).  Apart from the program name in class names, the three
+  copies are identical: a change here must be made in all of them.
+*/
+
+class FontNames3Woff
+{
+  /* constants */
+
+  static final String BROTLI_CLASS = "org.brotli.dec.BrotliInputStream";
+                                  // optional decoder for WOFF2 files
+  static final String[] KNOWN_TAGS = {"cmap", "head", "hhea", "hmtx", "maxp",
+    "name", "OS/2", "post", "cvt ", "fpgm", "glyf", "loca", "prep", "CFF ",
+    "VORG", "EBDT", "EBLC", "gasp", "hdmx", "kern", "LTSH", "PCLT", "VDMX",
+    "vhea", "vmtx", "BASE", "GDEF", "GPOS", "GSUB", "EBSC", "JSTF", "MATH",
+    "CBDT", "CBLC", "COLR", "CPAL", "SVG ", "sbix", "acnt", "avar", "bdat",
+    "bloc", "bsln", "cvar", "fdsc", "feat", "fmtx", "fvar", "gvar", "hsty",
+    "just", "lcar", "mort", "morx", "opbd", "prop", "trak", "Zapf", "Silf",
+    "Glat", "Gloc", "Feat", "Sill"}; // WOFF2 table tags by number, 0 to 62
+  static final int MAX_TABLE = 0x1000000; // largest table we expand (16 MB)
+  static final int MAX_WOFF2 = 0x4000000; // largest WOFF2 file we read (64 MB)
+  static final long WOFF = 0x774F4646L; // "wOFF" signature for WOFF files
+  static final long WOFF2 = 0x774F4632L; // "wOF2" signature for WOFF2 files
+
+  /* is there a Brotli decoder for WOFF2 files? */
+
+  static boolean brotliAvailable()
+  {
+    try
     {
-//    fieldFlags[ 1] = false; menuField01.setSelected(false); // font family name
-      fieldFlags[ 2] = false; menuField02.setSelected(false);
-      fieldFlags[ 3] = false; menuField03.setSelected(false);
-      fieldFlags[ 4] = false; menuField04.setSelected(false); // font full name
-      fieldFlags[ 6] = false; menuField06.setSelected(false);
-      fieldFlags[16] = false; menuField16.setSelected(false);
-      fieldFlags[17] = false; menuField17.setSelected(false);
-      fieldFlags[18] = false; menuField18.setSelected(false);
-      fieldFlags[20] = false; menuField20.setSelected(false);
+      Class.forName(BROTLI_CLASS);
+      return(true);
     }
-    else if (source == menuOtherAll) // enable all miscellaneous name IDs
+    catch (ClassNotFoundException cnfe) { return(false); }
+    catch (LinkageError le) { return(false); }
+  }
+
+  /* build a font file in memory from the tables that we expanded */
+
+  static byte[] build(
+    long[] flavors,               // signature for each font's Offset Table
+    int[][] fonts,                // table numbers used by each font
+    String[] tags,                // tag for each table in WOFF directory
+    byte[][] tables,              // expanded data for each table, or null
+    boolean collection)           // true if we build a TrueType collection
+    throws IOException
+  {
+    int f, i, size;               // index variables, size of result
+    int[] where;                  // offset of each table in result
+
+    size = collection ? (12 + (4 * fonts.length)) : 0; // TTC header
+    for (f = 0; f < fonts.length; f ++)
+      size += 12 + (16 * fonts[f].length); // each Offset Table
+    where = new int[tables.length];
+    for (i = 0; i < tables.length; i ++)
     {
-      fieldFlags[ 5] = true; menuField05.setSelected(true);
-      fieldFlags[10] = true; menuField10.setSelected(true);
-      fieldFlags[19] = true; menuField19.setSelected(true);
-      fieldFlags[fieldUnknown] = true; menuFieldUnknown.setSelected(true);
+      where[i] = size;            // tables follow the Offset Tables
+      if (tables[i] != null)      // and are aligned on four bytes
+        size += (tables[i].length + 3) & ~3;
     }
-    else if (source == menuOtherNone) // disable all miscellaneous name IDs
+
+    ByteBuffer result = ByteBuffer.allocate(size); // big-endian by default
+    if (collection)
     {
-      fieldFlags[ 5] = false; menuField05.setSelected(false);
-      fieldFlags[10] = false; menuField10.setSelected(false);
-      fieldFlags[19] = false; menuField19.setSelected(false);
-      fieldFlags[fieldUnknown] = false; menuFieldUnknown.setSelected(false);
+      result.putInt(0x74746366);  // "ttcf" for TrueType collection
+      result.putInt(0x00010000);  // version 1.0, no digital signature
+      result.putInt(fonts.length);
+      result.position(12 + (4 * fonts.length)); // offsets filled in below
     }
-    else if (source == menuPopupAll) // enable all name IDs available to user
+    for (f = 0; f < fonts.length; f ++)
     {
-      fieldFlags[ 0] = true; menuField00.setSelected(true);
-//    fieldFlags[ 1] = true; menuField01.setSelected(true); // font family name
-      fieldFlags[ 2] = true; menuField02.setSelected(true);
-      fieldFlags[ 3] = true; menuField03.setSelected(true);
-      fieldFlags[ 4] = true; menuField04.setSelected(true); // font full name
-      fieldFlags[ 5] = true; menuField05.setSelected(true);
-      fieldFlags[ 6] = true; menuField06.setSelected(true);
-      fieldFlags[ 7] = true; menuField07.setSelected(true);
-      fieldFlags[ 8] = true; menuField08.setSelected(true);
-      fieldFlags[ 9] = true; menuField09.setSelected(true);
-      fieldFlags[10] = true; menuField10.setSelected(true);
-      fieldFlags[11] = true; menuField11.setSelected(true);
-      fieldFlags[12] = true; menuField12.setSelected(true);
-      fieldFlags[13] = true; menuField13.setSelected(true);
-      fieldFlags[14] = true; menuField14.setSelected(true);
-//    fieldFlags[15] = true; menuField15.setSelected(true); // reserved (#15)
-      fieldFlags[16] = true; menuField16.setSelected(true);
-      fieldFlags[17] = true; menuField17.setSelected(true);
-      fieldFlags[18] = true; menuField18.setSelected(true);
-      fieldFlags[19] = true; menuField19.setSelected(true);
-      fieldFlags[20] = true; menuField20.setSelected(true);
-      fieldFlags[fieldOs2ID] = true; menuFieldOs2ID.setSelected(true);
-      fieldFlags[fieldUnknown] = true; menuFieldUnknown.setSelected(true);
+      if (collection)             // location of this font's Offset Table
+        result.putInt((12 + (4 * f)), result.position());
+      result.putInt((int) flavors[f]);
+      result.putShort((short) fonts[f].length);
+      result.putShort((short) 0).putShort((short) 0).putShort((short) 0);
+                                  // search ranges aren't used by us
+      for (i = 0; i < fonts[f].length; i ++)
+      {
+        int table = fonts[f][i];  // table number in WOFF directory
+        result.put(tags[table].getBytes("ISO-8859-1"));
+        result.putInt(0);         // no checksum
+        result.putInt((tables[table] == null) ? 0 : where[table]);
+        result.putInt((tables[table] == null) ? 0 : tables[table].length);
+      }
     }
-    else if (source == menuPopupNone) // disable all name IDs available to user
+    for (i = 0; i < tables.length; i ++)
     {
-      fieldFlags[ 0] = false; menuField00.setSelected(false);
-//    fieldFlags[ 1] = false; menuField01.setSelected(false); // font family name
-      fieldFlags[ 2] = false; menuField02.setSelected(false);
-      fieldFlags[ 3] = false; menuField03.setSelected(false);
-      fieldFlags[ 4] = false; menuField04.setSelected(false); // font full name
-      fieldFlags[ 5] = false; menuField05.setSelected(false);
-      fieldFlags[ 6] = false; menuField06.setSelected(false);
-      fieldFlags[ 7] = false; menuField07.setSelected(false);
-      fieldFlags[ 8] = false; menuField08.setSelected(false);
-      fieldFlags[ 9] = false; menuField09.setSelected(false);
-      fieldFlags[10] = false; menuField10.setSelected(false);
-      fieldFlags[11] = false; menuField11.setSelected(false);
-      fieldFlags[12] = false; menuField12.setSelected(false);
-      fieldFlags[13] = false; menuField13.setSelected(false);
-      fieldFlags[14] = false; menuField14.setSelected(false);
-//    fieldFlags[15] = false; menuField15.setSelected(false); // reserved (#15)
-      fieldFlags[16] = false; menuField16.setSelected(false);
-      fieldFlags[17] = false; menuField17.setSelected(false);
-      fieldFlags[18] = false; menuField18.setSelected(false);
-      fieldFlags[19] = false; menuField19.setSelected(false);
-      fieldFlags[20] = false; menuField20.setSelected(false);
-      fieldFlags[fieldOs2ID] = false; menuFieldOs2ID.setSelected(false);
-      fieldFlags[fieldUnknown] = false; menuFieldUnknown.setSelected(false);
+      if (tables[i] != null)
+      {
+        result.position(where[i]);
+        result.put(tables[i]);
+      }
     }
+    return(result.array());
+  }
 
-    /* Continue with non-menu items in alphabetical order. */
+  /* expand the wanted tables from a WOFF or WOFF2 file */
 
-    else if (source == openButton) // "Open" button for files or folders
+  static byte[] extract(
+    FontNames3Input input,        // WOFF or WOFF2 file opened for reading
+    long fileSize,                // size of file in bytes
+    String[] wanted)              // tags of tables that caller wants
+    throws IOException
+  {
+    try
     {
-      doOpenButton();             // open font files or folders
+      if (fileSize < 48)          // need this many bytes for either header
+        return(null);
+      ByteBuffer header = ByteBuffer.wrap(readAt(input, 0, 48));
+      if ((((long) header.getInt(0)) & 0xFFFFFFFFL) == WOFF)
+        return(extractWoff(input, fileSize, header, wanted));
+      else if (fileSize > MAX_WOFF2) // don't run out of memory for one font
+        return(null);
+      else
+        return(extractWoff2(readAt(input, 0, (int) fileSize), wanted));
     }
-    else if (source == recurseCheckbox) // recursion for folders, subfolders
+    catch (BufferUnderflowException bue) { return(null); }
+    catch (DataFormatException dfe) { return(null); }
+  }
+
+  /* WOFF: inflate each wanted table separately */
+
+  static byte[] extractWoff(
+    FontNames3Input input,        // WOFF file opened for reading
+    long fileSize,                // size of file in bytes
+    ByteBuffer header,            // first 48 bytes of file
+    String[] wanted)              // tags of tables that caller wants
+    throws DataFormatException, IOException
+  {
+    int numTables = header.getShort(12) & 0xFFFF; // entries in directory
+    if ((numTables < 1) || (fileSize < (44 + (20 * numTables))))
+      return(null);
+    ByteBuffer directory = ByteBuffer.wrap(readAt(input, 44,
+      (20 * numTables)));
+    int[] font = new int[numTables]; // one font using every table
+    String[] tags = new String[numTables];
+    byte[][] tables = new byte[numTables][];
+    for (int i = 0; i < numTables; i ++)
     {
-      recurseFlag = recurseCheckbox.isSelected();
+      font[i] = i;
+      tags[i] = tagText(directory.getInt(20 * i));
+      if (wants(wanted, tags[i]) == false)
+        continue;                 // don't expand tables we don't want
+      long offset = ((long) directory.getInt((20 * i) + 4)) & 0xFFFFFFFFL;
+      long compLength = ((long) directory.getInt((20 * i) + 8)) & 0xFFFFFFFFL;
+      long origLength = ((long) directory.getInt((20 * i) + 12))
+        & 0xFFFFFFFFL;
+      if ((origLength > MAX_TABLE) || (compLength > origLength)
+        || ((offset + compLength) > fileSize))
+      {
+        return(null);             // table directory is damaged
+      }
+      tables[i] = readAt(input, offset, (int) compLength);
+      if (compLength < origLength) // same length means not compressed
+      {
+        Inflater inflater = new Inflater(); // "zlib" format with header
+        inflater.setInput(tables[i]);
+        tables[i] = new byte[(int) origLength];
+        int length = inflater.inflate(tables[i]);
+        inflater.end();
+        if (length != origLength) // did we get exactly the original size?
+          return(null);
+      }
     }
-    else if (source == saveButton) // "Save Output" button
+    return(build(new long[] {((long) header.getInt(4)) & 0xFFFFFFFFL},
+      new int[][] {font}, tags, tables, false));
+  }
+
+  /* WOFF2: decode the Brotli stream as far as the last wanted table */
+
+  static byte[] extractWoff2(
+    byte[] file,                  // entire WOFF2 file in memory
+    String[] wanted)              // tags of tables that caller wants
+    throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(file); // big-endian by default
+    long flavor = ((long) buffer.getInt(4)) & 0xFFFFFFFFL;
+    int numTables = buffer.getShort(12) & 0xFFFF; // entries in directory
+    long compressed = ((long) buffer.getInt(20)) & 0xFFFFFFFFL;
+    if (numTables < 1)
+      return(null);
+
+    /* Table directory: one flag byte, maybe a tag, then variable-length
+    numbers for the original length and (if transformed) the stored length.
+    Tables are stored in directory order, with no padding.  Transformed tables
+    ("glyf", "loca", "hmtx") are never tables that we want. */
+
+    buffer.position(48);          // directory follows header
+    int last = -1;                // index of last table we want
+    long[] lengths = new long[numTables]; // bytes in decoded stream
+    String[] tags = new String[numTables];
+    boolean[] wantFlags = new boolean[numTables];
+    for (int i = 0; i < numTables; i ++)
     {
-      doSaveButton();             // write output text area to a file
+      int flags = buffer.get() & 0xFF;
+      tags[i] = ((flags & 0x3F) == 0x3F) ? tagText(buffer.getInt())
+        : KNOWN_TAGS[flags & 0x3F];
+      long origLength = readBase128(buffer);
+      int version = flags >> 6;   // transformation version
+      boolean transformed = (tags[i].equals("glyf") || tags[i].equals("loca"))
+        ? (version != 3) : (version != 0);
+      lengths[i] = transformed ? readBase128(buffer) : origLength;
+      if ((origLength < 0) || (lengths[i] < 0))
+        return(null);             // bad variable-length number
+      wantFlags[i] = (transformed == false) && wants(wanted, tags[i])
+        && (origLength <= MAX_TABLE);
+      if (wantFlags[i])
+        last = i;
     }
-    else if (source == statusTimer) // update timer for status message text
+
+    /* Collection directory, if any: table numbers used by each font. */
+
+    int[][] fonts;                // table numbers used by each font
+    long[] flavors;               // signature for each font
+    if (flavor == 0x74746366L)    // "ttcf" for TrueType collection
     {
-      if (statusPending.equals(statusDialog.getText()) == false)
-        statusDialog.setText(statusPending); // new message, update the display
+      buffer.getInt();            // skip TTC version
+      fonts = new int[read255UShort(buffer)][];
+      flavors = new long[fonts.length];
+      for (int f = 0; f < fonts.length; f ++)
+      {
+        fonts[f] = new int[read255UShort(buffer)];
+        flavors[f] = ((long) buffer.getInt()) & 0xFFFFFFFFL;
+        for (int i = 0; i < fonts[f].length; i ++)
+        {
+          fonts[f][i] = read255UShort(buffer);
+          if (fonts[f][i] >= numTables)
+            return(null);         // table number is out of range
+        }
+      }
     }
-    else                          // fault in program logic, not by user
+    else                          // one font using every table
     {
-      System.err.println("Error in userButton(): unknown ActionEvent: "
-        + event);                 // should never happen, so write on console
+      fonts = new int[1][numTables];
+      flavors = new long[] {flavor};
+      for (int i = 0; i < numTables; i ++)
+        fonts[0][i] = i;
     }
-  } // end of userButton() method
+    if ((buffer.position() + compressed) > file.length)
+      return(null);               // compressed data goes past end of file
 
-} // end of FontNames3 class
+    /* Decode only as far as the end of the last table that we want. */
 
-// ------------------------------------------------------------------------- //
+    byte[][] tables = new byte[numTables][];
+    if (last >= 0)                // is there anything to decode?
+    {
+      InputStream stream;         // Brotli decoder for compressed data
+      try
+      {
+        stream = (InputStream) Class.forName(BROTLI_CLASS).getConstructor(
+          new Class[] {InputStream.class}).newInstance(new Object[] {
+          new ByteArrayInputStream(file, buffer.position(),
+          (int) compressed)});
+      }
+      catch (Exception e) { return(null); } // no decoder, or bad stream
+      DataInputStream data = new DataInputStream(stream);
+      try
+      {
+        for (int i = 0; i <= last; i ++)
+        {
+          if (wantFlags[i])       // read tables we want
+          {
+            tables[i] = new byte[(int) lengths[i]];
+            data.readFully(tables[i]);
+          }
+          else                    // skip tables we don't want
+          {
+            for (long skip = lengths[i]; skip > 0; )
+            {
+              int count = data.skipBytes((int) Math.min(skip, 0x10000));
+              if (count <= 0)     // end of stream before end of table
+                throw new EOFException();
+              skip -= count;
+            }
+          }
+        }
+      }
+      catch (IOException ioe) { return(null); } // bad compressed data
+      finally { data.close(); }
+    }
+    return(build(flavors, fonts, tags, tables, (flavor == 0x74746366L)));
+  }
 
-/*
-  FontNames3Filter class
+  /* read a 255UInt16 number from WOFF2 collection directory */
 
-  This class limits the files shown in the file open dialog box to font files.
-*/
+  static int read255UShort(ByteBuffer buffer)
+  {
+    int code = buffer.get() & 0xFF;
+    if (code == 253)              // next two bytes are the value
+      return(buffer.getShort() & 0xFFFF);
+    else if (code == 254)         // second group of 253 values
+      return((buffer.get() & 0xFF) + 506);
+    else if (code == 255)         // first group of 253 values
+      return((buffer.get() & 0xFF) + 253);
+    return(code);                 // small values are only one byte
+  }
 
-class FontNames3Filter extends javax.swing.filechooser.FileFilter
-                implements java.io.FileFilter // not the same as filechooser.*
-{
-  /* empty constructor */
+  /* read bytes from any location in the file */
 
-  public FontNames3Filter() { }
+  static byte[] readAt(
+    FontNames3Input input,        // file or memory opened for reading
+    long offset,                  // starting byte position in file
+    int length)                   // number of bytes to read
+    throws IOException
+  {
+    byte[] result = new byte[length];
+    input.seek(offset);
+    input.readFully(result);
+    return(result);
+  }
 
-  /* file filter: accept files of given types */
+  /* read a UIntBase128 number from WOFF2 table directory, or -1 if bad */
 
-  public boolean accept(File givenFile)
+  static long readBase128(ByteBuffer buffer)
   {
-    String name = givenFile.getName().toLowerCase(); // get name of file
-    if (givenFile.isDirectory()   // allow user to navigate directories
-      || name.endsWith(".otf")    // accept this list of file types
-      || name.endsWith(".ttc")
-      || name.endsWith(".ttf"))
+    long result = 0;
+    for (int i = 0; i < 5; i ++)  // at most five bytes for 32 bits
     {
-      return(true);               // accept directories and most font files
+      int digit = buffer.get() & 0xFF;
+      if ((i == 0) && (digit == 0x80)) // leading zeros aren't allowed
+        return(-1);
+      result = (result << 7) | (digit & 0x7F);
+      if ((digit & 0x80) == 0)    // high bit clear on last byte
+        return((result > 0xFFFFFFFFL) ? -1 : result);
     }
-    return(false);                // reject anything else
+    return(-1);                   // more than five bytes
   }
 
-  /* file filter: return description of files that we accept */
+  /* convert a four-byte tag to a string */
 
-  public String getDescription()
+  static String tagText(int tag)
   {
-    return("OpenType and TrueType font files");
+    char[] result = new char[4];
+    for (int i = 0; i < 4; i ++)
+      result[i] = (char) ((tag >> (24 - (8 * i))) & 0xFF);
+    return(new String(result));
   }
 
-} // end of FontNames3Filter class
+  /* is this tag in the caller's list? */
+
+  static boolean wants(String[] wanted, String tag)
+  {
+    for (int i = 0; i < wanted.length; i ++)
+      if (wanted[i].equals(tag))
+        return(true);
+    return(false);
+  }
+
+} // end of FontNames3Woff class
 
 // ------------------------------------------------------------------------- //
 
 /*
-  FontNames3User class
-
-  This class listens to input from the user and passes back event parameters to
-  a static method in the main class.
+  FontNames3Writer class
+
+  This class writes structured output records (CSV or JSON Lines) on its own
+  thread.  The thread that reads font files only fills in a FontNames3Record
+  and puts it in a queue.  Escaping, formatting, UTF-8 encoding, and disk I/O
+  all happen here, through a large buffer.  The queue is bounded so that a slow
+  disk can't use up all memory, but it is big enough that the reading thread
+  almost never waits.
 */
 
-class FontNames3User implements ActionListener, Runnable
+class FontNames3Writer implements Runnable
 {
-  /* empty constructor */
+  static final int BUFFER_SIZE = 0x100000; // characters in output buffer
+  static final int QUEUE_SIZE = 10000; // records waiting to be written
+
+  boolean closeFlag;              // true if next marker closes the output
+  boolean csvFlag;                // true for CSV, false for JSON Lines
+  IOException error;              // first error while writing, or null
+  Writer output;                  // buffered UTF-8 file or standard output
+  BlockingQueue queue;            // records from checkFile() to be written
+  boolean stdoutFlag;             // true if writing on standard output
+  Thread thread;                  // our writer thread
+
+  public FontNames3Writer(
+    File file,                    // output file, or null for standard output
+    boolean csvFlag)              // true for CSV, false for JSON Lines
+    throws IOException
+  {
+    this.closeFlag = false;
+    this.csvFlag = csvFlag;
+    this.error = null;
+    this.stdoutFlag = (file == null);
+    this.output = new BufferedWriter(new OutputStreamWriter((stdoutFlag
+      ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(file)),
+      "UTF-8"), BUFFER_SIZE);
+    this.queue = new ArrayBlockingQueue(QUEUE_SIZE);
+    if (csvFlag)                  // CSV starts with a row of column names
+      output.write("path,size,font,fonts,vendor_id,vendor_name,platform,"
+        + "encoding,language,name_id,text,error\r\n");
+
+    this.thread = new Thread(this, "FontNames3Writer");
+    this.thread.setDaemon(true);  // don't keep GUI alive after "Exit"
+    this.thread.start();
+  }
 
-  public FontNames3User() { }
+  /* wait until all records are written, then close the output */
 
-  /* button listener, dialog boxes, etc */
+  public void close() throws IOException
+  {
+    closeFlag = true;             // writer thread checks this at next marker
+    flush();
+  }
 
-  public void actionPerformed(ActionEvent event)
+  /* wait until all records so far are written and flushed */
+
+  public void flush() throws IOException
   {
-    FontNames3.userButton(event);
+    FontNames3Record marker = new FontNames3Record(null, 0, 0, 0, 0);
+    put(marker);
+    synchronized (marker)
+    {
+      while (marker.done == false)
+      {
+        try { marker.wait(); }
+        catch (InterruptedException ie) { break; }
+      }
+    }
+    if (error != null)            // did writer thread have a problem?
+      throw error;
   }
 
-  /* separate heavy-duty processing thread */
+  /* queue a record for writing; waits only if the queue is full */
+
+  public void put(FontNames3Record record)
+  {
+    try { queue.put(record); }
+    catch (InterruptedException ie) { /* nobody interrupts our threads */ }
+  }
+
+  /* writer thread: format and write records until closed */
 
   public void run()
   {
-    FontNames3.doOpenRunner();
+    StringBuffer buffer;          // one formatted record
+    boolean closing;              // true if this marker closes the output
+    FontNames3Record record;      // next record from the queue
+
+    buffer = new StringBuffer(4096);
+    while (true)
+    {
+      try { record = (FontNames3Record) queue.take(); }
+      catch (InterruptedException ie) { return; }
+
+      if (record.path == null)    // marker from flush() or close()
+      {
+        closing = closeFlag;
+        try
+        {
+          output.flush();
+          if (closing && !stdoutFlag) // never close standard output
+            output.close();
+        }
+        catch (IOException ioe)
+        {
+          if (error == null) error = ioe;
+        }
+        synchronized (record)
+        {
+          record.done = true;
+          record.notifyAll();     // let flush() return
+        }
+        if (closing) return;      // nothing more will be written
+      }
+      else if (error == null)     // drop records after the first error
+      {
+        buffer.setLength(0);
+        if (csvFlag)
+          record.formatCsv(buffer);
+        else
+          record.formatJson(buffer);
+        try { output.write(buffer.toString()); }
+        catch (IOException ioe) { error = ioe; }
+      }
+    }
   }
 
-} // end of FontNames3User class
+} // end of FontNames3Writer class
 
 /* Copyright (c) 2007 by Keith Fenske.  Released under GNU Public License. */
@@ -26,6 +26,23 @@
   naming convention does not apply to font files on an Apple Macintosh, so use
   caution with Mac fonts!
 
+  WOFF and WOFF2 web fonts (*.WOFF, *.WOFF2) are compressed OpenType or TrueType
+  fonts.  Only the "head" table with the dates is expanded.  WOFF2 files need a
+  Brotli decoder, which Java doesn't have; put the "org.brotli.dec" package
+  (published by Google) on the class path to change their dates.
+
+  The -o option sets the date for each folder to the newest font date found in
+  the folder or its subfolders, using the dates already found for the fonts.
+  Folders are changed after all fonts, starting with the deepest subfolders.
+
+  Checking thousands of fonts takes time, even when most of them already have
+  the correct dates from an earlier run.  The -d option names a catalog file
+  that keeps the size and date of each file that was checked.  Later runs don't
+  open files whose size and date are still the same, and the catalog is thrown
+  away if the -f, -g, or -t options change:
+
+      java  FontRedate3  -s  -dfonts.cat  d:\fonts
+
   For more information on the internal format of font files, start with the
   following on-line references:
 
@@ -49,6 +66,11 @@
   because the date is a text field with an arbitrary format.  The expected
   format is the UNIX style of "Fri Mar 28 22:03:48 1997" as used by Adobe and
   most major font foundries.  Other numeric styles will also be accepted.
+  When the order of the day, month, and year isn't clear, such as "03/04/97",
+  the graphical interface (with -p1) asks once at the end for each pattern of
+  date string, after all other files are done.  Console runs can use the -a
+  option to give a rules file, with lines such as "mdy 9/9/9" for month-day-year
+  dates that look like 12/31/97.  See the loadAmbiguousRules() method.
 
   GNU General Public License (GPL)
   --------------------------------
@@ -113,15 +135,26 @@
 import java.awt.*;                // older Java GUI support
 import java.awt.event.*;          // older Java GUI event support
 import java.io.*;                 // standard I/O
+import java.nio.*;                // byte buffers for WOFF tables
+import java.nio.file.*;           // file attributes and dates
+import java.nio.file.attribute.*; // size and date from directory walk
 import java.text.*;               // number formatting
 import java.util.*;               // calendars, dates, lists, maps, vectors
 import java.util.regex.*;         // regular expressions
+import java.util.zip.*;           // compressed WOFF tables
 import javax.swing.*;             // newer Java GUI support
 
 public class FontRedate3
 {
   /* constants */
 
+  static final String[] AMBIG_ORDERS = {"dmy", "mdy", "ymd"};
+                                  // day/month/year orders in rules file
+  static final long AMBIGUOUS_DATE = -2; // PostScript date waiting for user
+  static final String CATALOG_HEADER = "FontRedate3 catalog 2";
+                                  // first line of catalog file, with version
+  static final String CATALOG_TYPE = "FontRedate3 catalog ";
+                                  // first line of catalog, any version
   static final String COPYRIGHT_NOTICE =
     "Copyright (c) 2007 by Keith Fenske.  Released under GNU Public License.";
   static final long DATE_MASK = 0x00000001FFFFFFFFL;
@@ -161,6 +194,14 @@ public class FontRedate3
 
   static final long NO_DATE = -1; // no font file has this internal Java date
 
+  /* The date in a PostScript font is a comment in the cleartext header, before
+  the encrypted "eexec" section.  We read at most this many bytes looking for
+  the end of the header, so that a damaged or unusual file can't make us scan
+  megabytes of binary data. */
+
+  static final int PS_HEADER_MAX = 0x100000; // largest header we search (1 MB)
+  static final int PS_HEADER_READ = 0x2000; // bytes per read for PFA files
+
   /* PostScript fonts have multiple files, generally two or three for each
   font.  Once you find the date in a PFA/PFB file, you need to redate files
   with the same root name and different suffixes (extensions or "file types").
@@ -176,13 +217,14 @@ public class FontRedate3
 
   /* class variables */
 
-  static JLabel ambigDate;        // extracted date from font file
-  static JLabel ambigName;        // name of font file and descriptive text
-  static JRadioButton[] ambigOptions; // choices for ambiguous date format
-  static Box ambigPanel;          // contents of dialog box for ambiguous dates
-  static int ambigPrevious;       // previously selected <ambigOptions> index
+  static TreeMap ambigQueue;      // ambiguous dates to ask about, by pattern
+  static HashMap ambigRules;      // pattern -> day/month/year order, or null
   static JButton cancelButton;    // graphical button for <cancelFlag>
   static boolean cancelFlag;      // our signal from user to stop processing
+  static boolean catalogChanged;  // true if catalog must be written again
+  static String catalogFile;      // file name for catalog, or null
+  static HashMap catalogMap;      // path -> size, file date, font date
+  static String catalogSettings;  // options that affect dates in catalog
   static int changeCount;         // number of file dates changed
   static boolean consoleFlag;     // true if running as a console application
   static Pattern datePattern1, datePattern2; // pre-compiled for parsing dates
@@ -191,6 +233,9 @@ public class FontRedate3
   static JFileChooser fileChooser; // asks for input and output file names
   static int fileCount;           // number of files found (any file type)
   static int folderCount;         // number of folders found
+  static boolean folderFlag;      // true if we set folder dates from fonts
+  static HashMap folderNewest;    // folder path -> newest font date inside
+  static Vector folderOrder;      // folders found, subfolders before parents
   static javax.swing.filechooser.FileFilter fontFilter;
                                   // our shared file filter for fonts
   static String fontName;         // font name for text in output text area
@@ -225,6 +270,7 @@ public class FontRedate3
   static JLabel statusDialog;     // status message during extended processing
   static String statusPending;    // will become <statusDialog> after delay
   static javax.swing.Timer statusTimer; // timer for updating status message
+  static int skipCount;           // number of unchanged files not opened
   static TimeZone timeZone;       // for setting times as local or as GMT
   static long truetypeOffset;     // millisecond offset from 1904 to 1970
 
@@ -246,13 +292,19 @@ public class FontRedate3
 
     /* Initialize variables used by both console and GUI applications. */
 
-    ambigPrevious = -1;           // no previous index for ambiguous dates
+    ambigQueue = new TreeMap();   // no ambiguous PostScript dates yet
+    ambigRules = null;            // no rules for ambiguous dates
     buttonFont = null;            // by default, don't use customized font
     cancelFlag = false;           // don't cancel unless user complains
-    changeCount = fileCount = folderCount = 0; // no files or folders found yet
+    catalogFile = null;           // by default, no catalog
+    catalogMap = null;            // open catalog before first font file
+    changeCount = fileCount = folderCount = skipCount = 0; // nothing found yet
     consoleFlag = false;          // assume no files or folders on command line
     datePattern1 = datePattern2 = null; // compile later for parsing dates
     defaultDateMillis = NO_DATE;  // no default Java date/time in milliseconds
+    folderFlag = false;           // by default, don't change folder dates
+    folderNewest = new HashMap(); // no font dates for folders yet
+    folderOrder = new Vector();   // no folders found yet
     fontFilter = new FontRedate3Filter(); // create our shared file filter
     fontName = "Verdana";         // preferred font name for output text area
     fontSize = 16;                // default point size for output text area
@@ -326,6 +378,30 @@ public class FontRedate3
         System.exit(0);           // exit application after printing help
       }
 
+      else if (word.startsWith("-a") || (mswinFlag && word.startsWith("/a")))
+      {
+        /* This option is followed by a file name with rules for ambiguous
+        PostScript dates.  Read the file now, so that mistakes are reported
+        before any font files are changed. */
+
+        if (loadAmbiguousRules(args[i].substring(2)) == false)
+        {
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
+      else if (word.startsWith("-d") || (mswinFlag && word.startsWith("/d")))
+      {
+        /* This option is followed by a file name for the catalog, which keeps
+        the size and date of files already checked, so that files which
+        haven't changed since are not opened again. */
+
+        catalogFile = args[i].substring(2); // original case for file name
+        if (catalogFile.length() == 0) // empty name means no catalog
+          catalogFile = null;
+      }
+
       else if (word.startsWith("-f") || (mswinFlag && word.startsWith("/f")))
       {
         /* This is an undocumented option to supply a default date and time,
@@ -343,7 +419,7 @@ public class FontRedate3
             - truetypeOffset;     // hex 1904 seconds to Java 1970 millis
         else                      // not TrueType hex, must be PostScript text
           defaultDateMillis = parsePostscriptDate("Default Date",
-            "Default Date", args[i].substring(2)); // PostScript to Java date
+            "Default Date", args[i].substring(2), -1); // PostScript to Java
 
         if ((defaultDateMillis == NO_DATE) // is this a valid date/time?
           || (defaultDateMillis < minimumJavaDate)
@@ -401,6 +477,14 @@ public class FontRedate3
         }
       }
 
+      else if (word.equals("-o") || (mswinFlag && word.equals("/o"))
+        || word.equals("-o1") || (mswinFlag && word.equals("/o1")))
+      {
+        folderFlag = true;        // set folder dates to newest font date
+      }
+      else if (word.equals("-o0") || (mswinFlag && word.equals("/o0")))
+        folderFlag = false;       // don't change folder dates
+
       else if (word.equals("-p") || (mswinFlag && word.equals("/p"))
         || word.equals("-p1") || (mswinFlag && word.equals("/p1")))
       {
@@ -524,6 +608,8 @@ public class FontRedate3
         or folder name.  We ignore <cancelFlag> because the user has no way of
         interrupting us at this point (no graphical interface). */
 
+        if (consoleFlag == false) // open catalog, if any, only once
+          openCatalog();
         consoleFlag = true;       // don't allow GUI methods to be called
         processFileOrFolder(new File(args[i]));
       }
@@ -535,6 +621,9 @@ public class FontRedate3
 
     if (consoleFlag)              // was at least one file/folder given?
     {
+      resolveAmbiguous();         // nothing queued without GUI, but be safe
+      closeCatalog();             // write catalog, if any
+      changeFolderDates();        // after all font dates are known
       printAlways("Found " + prettyPlural(fileCount, "file") + " and "
         + prettyPlural(folderCount, "folder") + " with "
         + prettyPlural(changeCount, "change") + ".");
@@ -701,7 +790,7 @@ public class FontRedate3
     promptCheckbox = new JCheckBox("enable annoying pop-up", promptFlag);
     if (buttonFont != null) promptCheckbox.setFont(buttonFont);
     promptCheckbox.setToolTipText(
-      "Select to prompt about ambiguous PostScript dates.");
+      "Select to ask about ambiguous PostScript dates after other files.");
     promptCheckbox.addActionListener(action); // do last so don't fire early
     panel5.add(promptCheckbox, BorderLayout.EAST);
 
@@ -734,88 +823,96 @@ public class FontRedate3
     mainFrame.validate();         // recheck application window layout
     mainFrame.setVisible(true);   // and then show application window
 
-    /* Create the contents of a dialog box that we may use later to prompt the
-    user about ambiguous PostScript dates.  We don't display the dialog now. */
-
-    ambigOptions = new JRadioButton[3]; // allocate space for radio buttons
-    ambigOptions[0] = new JRadioButton("day-month-year (30 September 1999)");
-    if (buttonFont != null) ambigOptions[0].setFont(buttonFont);
-    ambigOptions[0].setMnemonic(KeyEvent.VK_D);
-    ambigOptions[1] = new JRadioButton("month-day-year (30 September 1999)");
-    if (buttonFont != null) ambigOptions[1].setFont(buttonFont);
-    ambigOptions[1].setMnemonic(KeyEvent.VK_M);
-    ambigOptions[2] = new JRadioButton("year-month-day (30 September 1999)");
-    if (buttonFont != null) ambigOptions[2].setFont(buttonFont);
-    ambigOptions[2].setMnemonic(KeyEvent.VK_E); // VK_Y is used by "Yes" button
-
-    ButtonGroup group1 = new ButtonGroup(); // allow only one radio button
-    group1.add(ambigOptions[0]);
-    group1.add(ambigOptions[1]);
-    group1.add(ambigOptions[2]);
-
-    JPanel panel8 = new JPanel();
-    panel8.setLayout(new BoxLayout(panel8, BoxLayout.Y_AXIS));
-    panel8.add(Box.createVerticalStrut(10)); // extra space at panel top
-    ambigName = new JLabel("insert PostScript file name here");
-    if (buttonFont != null) ambigName.setFont(buttonFont);
-    panel8.add(ambigName);
-    panel8.add(Box.createVerticalStrut(10));
-    ambigDate = new JLabel("insert extracted PostScript date here");
-    if (buttonFont != null) ambigDate.setFont(buttonFont);
-    panel8.add(ambigDate);
-    panel8.add(Box.createVerticalStrut(10));
-    JLabel label1 = new JLabel("Please choose the correct date format:");
-    if (buttonFont != null) label1.setFont(buttonFont);
-    panel8.add(label1);
-    panel8.add(Box.createVerticalStrut(10));
-    panel8.add(ambigOptions[0]);
-    panel8.add(ambigOptions[1]);
-    panel8.add(ambigOptions[2]);
-    panel8.add(Box.createVerticalStrut(10));
-    JLabel label2 = new JLabel("Do you want to change the date for this file?");
-    if (buttonFont != null) label2.setFont(buttonFont);
-    panel8.add(label2);
-    panel8.add(Box.createVerticalStrut(10));
-    ambigPanel = new Box(BoxLayout.X_AXIS);
-    ambigPanel.add(Box.createHorizontalStrut(10)); // extra space on left
-    ambigPanel.add(panel8);
-    ambigPanel.add(Box.createHorizontalStrut(10)); // extra space on right
-
     /* Let the graphical interface run the application now. */
 
   } // end of main() method
 
 // ------------------------------------------------------------------------- //
 
+/*
+  ambiguousPattern() method
+
+  Return the pattern for a numeric date string, with each group of digits
+  replaced by the digit "9" and spaces made uniform.  Fonts from the same
+  source usually have dates with the same pattern and the same order of day,
+  month, and year, so we ask (or look for rules) once for each pattern.
+*/
+  static String ambiguousPattern(String text)
+  {
+    return(text.trim().replaceAll("\\d+", "9").replaceAll("\\s+", " "));
+  }
+
+
+/*
+  catalogFamily() method
+
+  Return true if the caller's file is not a PostScript *.PFA or *.PFB font, or
+  if every file in its PostScript family still has the same size and date as
+  in the catalog.  The AFM, INF, PFM, etc files are only redated through their
+  PFA/PFB file, so we can't skip that file when any one of them has changed.
+*/
+  static boolean catalogFamily(
+    File givenFile,               // original File object
+    HashMap families)             // from groupPostscript()
+  {
+    BasicFileAttributes attrib;   // size and date of one family member
+    File[] family;                // files with the same root name
+    String fileName;              // name of caller's file, without path
+    String fileRoot;              // only the part before the last period (dot)
+    String fileType;              // only the part after the last period (dot)
+    int i;                        // index variable
+    long[] stamp;                 // size and date from catalog, or null
+
+    fileName = givenFile.getName(); // get name of caller's file, no path
+    i = fileName.lastIndexOf('.'); // index of last period (dot), or else -1
+    if (i < 0) return(true);      // PostScript files always have a type
+    fileRoot = fileName.substring(0, i); // root is part before period (dot)
+    fileType = fileName.substring(i + 1).toLowerCase(); // type is after dot
+    if ((fileType.equals("pfa") || fileType.equals("pfb")) == false)
+      return(true);               // not the font file of a PostScript family
+
+    family = (File[]) families.get(mswinFlag ? fileRoot.toLowerCase()
+      : fileRoot);                // same key as groupPostscript() uses
+    if (family == null) return(true); // shouldn't happen, but be safe
+    for (i = 0; i < family.length; i ++)
+    {
+      try { attrib = Files.readAttributes(family[i].toPath(),
+        BasicFileAttributes.class); }
+      catch (IOException ioe) { return(false); } // deleted since listing, etc
+      stamp = (long[]) catalogMap.get(family[i].getAbsolutePath());
+      if ((stamp == null) || (stamp[0] != attrib.size())
+        || (stamp[1] != attrib.lastModifiedTime().toMillis()))
+      {
+        return(false);            // new or changed member, do whole family
+      }
+    }
+    return(true);                 // entire family unchanged since last run
+  } // end of catalogFamily() method
+
+
 /*
   changeDate() method
 
   Change the last-modified date and time for a given file, if it does not
-  already match the caller's date/time stamp.  If the <rootName> parameter is
-  not null, then we actually change all files in the same folder that have the
-  root file name plus one of the file types in <suffixList>.
+  already match the caller's date/time stamp.  If the <family> parameter is
+  not null, then we actually change all files in that list, which are the files
+  in the same folder that have the same root file name as a PostScript font.
 */
   static void changeDate(
     File givenFile,               // original File object
     long newStamp,                // new Java date/time in GMT milliseconds
-    String rootName,              // root file name or <null>
-    String[] suffixList)          // list of file types or <null>
+    File[] family)                // PostScript files with same root, or null
   {
-    long delta;                   // millisecond difference between old and new
     String filePath;              // name of caller's file, including path
     int i;                        // index variable
-    long newMillis;               // value of <newStamp> after DST correction
-    long oldMillis;               // value of <oldStamp> after DST correction
-    long oldStamp;                // old date/time stamp from file directory
-    File parent;                  // parent folder of <givenFile>
 
     /* Print a debugging trace if the user wants detailed information. */
 
     if (cancelFlag) return;       // stop if user hit the panic button
     filePath = givenFile.getPath(); // get name of caller's file, with path
     printDebug(filePath + " - changeDate called, newStamp = " + newStamp
-      + ", rootName = " + ((rootName == null) ? "null" : ("<" + rootName
-      + ">")));
+      + ", family = " + ((family == null) ? "null" : (family.length
+      + " files")));
 
     /* Figure out if the new date and time are meaningful, and if the file
     directory really needs to be changed.  Java isn't completely consistent
@@ -836,65 +933,190 @@ public class FontRedate3
       printFailure(filePath + " - internal font date out of range: "
         + formatMilliUser(newStamp));
     }
-    else if (rootName == null)    // if this is a single file to be changed
+    else if (family == null)      // if this is a single file to be changed
+    {
+      if (changeOneDate(givenFile, newStamp)) // is the date now correct?
+      {
+        putCatalog(givenFile, newStamp); // don't open this file next time
+        putFolderDate(givenFile, newStamp); // may be newest date for folder
+      }
+    }
+    else                          // do all files with same root file name
+    {
+      printSummary(filePath + " - checking alternate file types");
+      for (i = 0; i < family.length; i ++) // for each file in the family
+      {
+        if (cancelFlag) return;   // stop if user hit the panic button
+        changeDate(family[i], newStamp, null); // call ourself for each file
+      }
+    }
+  } // end of changeDate() method
+
+
+/*
+  changeFolderDates() method
+
+  Set the date for each folder to the newest font date found inside the folder
+  or its subfolders.  Dates were collected by putFolderDate() during the walk,
+  and folders were listed in post-order (subfolders before their parent), so
+  one pass can pass each folder's date up to its parent before the parent is
+  changed.  Changing a folder's date doesn't change the date of its parent.
+*/
+  static void changeFolderDates()
+  {
+    Long folderDate;              // newest font date for one folder
+    File givenFile;               // one folder from <folderOrder>
+    int i;                        // index variable
+
+    for (i = 0; i < folderOrder.size(); i ++) // subfolders before parents
     {
-      /* Microsoft Windows 2000/XP adjusts all file dates and times using the
-      current rules for daylight saving time, no matter which rules should be
-      applied at that actual date and time.  Correcting for this assumption is
-      almost impossible because both Java and Windows think they are in charge
-      of time zones and DST.  The following code is quite likely to break if
-      either the JRE or Windows changes.  DST offsets are always zero for the
-      GMT time zone, so adding or subtracting has no effect.  Hence, we ignore
-      the problem with Windows DST correction when using the GMT time zone. */
+      if (cancelFlag) break;      // stop if user hit the panic button
+      givenFile = (File) folderOrder.get(i);
+      folderDate = (Long) folderNewest.get(givenFile.getAbsolutePath());
+      if (folderDate == null)     // no fonts with good dates in this folder
+      {
+        printSummary(givenFile.getPath() + " - no font dates for folder");
+        continue;
+      }
+      setStatusMessage("Changing folder " + givenFile.getPath());
+      changeOneDate(givenFile, folderDate.longValue()); // may be no change
+      putFolderDate(givenFile, folderDate.longValue()); // and up to parent
+    }
+    folderNewest.clear();         // start again for next GUI run
+    folderOrder.clear();
+
+  } // end of changeFolderDates() method
+
+
+/*
+  changeOneDate() method
+
+  Change the last-modified date and time for one file or folder, if the
+  difference from the caller's date/time stamp is big enough.  Return true if
+  the date is correct when we're done, either because it was close enough, or
+  because we changed it.  The caller has already checked that the new date is
+  valid.
+*/
+  static boolean changeOneDate(
+    File givenFile,               // file or folder to be changed
+    long newStamp)                // new Java date/time in GMT milliseconds
+  {
+    long delta;                   // millisecond difference between old and new
+    String filePath;              // name of caller's file, including path
+    long newMillis;               // value of <newStamp> after DST correction
+    long oldMillis;               // value of <oldStamp> after DST correction
+    long oldStamp;                // old date/time stamp from file directory
+
+    filePath = givenFile.getPath(); // get name of caller's file, with path
 
-      newMillis = newStamp;       // assume caller needs no DST correction
-      oldStamp = givenFile.lastModified(); // get date/time from file directory
-      oldMillis = oldStamp;       // assume directory needs no DST correction
-      if (mswinFlag)              // only if running on Microsoft Windows
+    /* Microsoft Windows 2000/XP adjusts all file dates and times using the
+    current rules for daylight saving time, no matter which rules should be
+    applied at that actual date and time.  Correcting for this assumption is
+    almost impossible because both Java and Windows think they are in charge
+    of time zones and DST.  The following code is quite likely to break if
+    either the JRE or Windows changes.  DST offsets are always zero for the
+    GMT time zone, so adding or subtracting has no effect.  Hence, we ignore
+    the problem with Windows DST correction when using the GMT time zone. */
+
+    newMillis = newStamp;         // assume caller needs no DST correction
+    try { oldStamp = Files.getLastModifiedTime(givenFile.toPath())
+      .toMillis(); }              // get date/time from file directory
+    catch (IOException ioe) { oldStamp = 0; } // date older than any font
+    oldMillis = oldStamp;         // assume directory needs no DST correction
+    if (mswinFlag)                // only if running on Microsoft Windows
+    {
+      long today = timeZone.getOffset(System.currentTimeMillis());
+      newMillis += timeZone.getOffset(newMillis) - today; // to Windows
+      oldMillis -= timeZone.getOffset(oldMillis) - today; // from Windows
+    }
+    delta = Math.abs(newMillis - oldStamp); // difference in milliseconds
+    if (delta < ignoreMillis)     // is the change too small to effect?
+    {
+      printSummary(filePath + " - no change from "
+        + formatMilliUser(oldMillis) + ((delta > 0) ? (", difference is "
+        + (delta / 1000.0) + " seconds") : ""));
+      return(true);               // date is already correct
+    }
+    else                          // the difference is significant
+    {
+      if ((readonlyFlag == false) && (givenFile.canWrite() == false))
       {
-        long today = timeZone.getOffset(System.currentTimeMillis());
-        newMillis += timeZone.getOffset(newMillis) - today; // to Windows
-        oldMillis -= timeZone.getOffset(oldMillis) - today; // from Windows
+        printFailure(filePath + " - can't change read-only file to "
+          + formatMilliUser(newStamp));
       }
-      delta = Math.abs(newMillis - oldStamp); // difference in milliseconds
-      if (delta < ignoreMillis)   // is the change too small to effect?
+      else if (setFileDate(givenFile, newMillis)) // try to set new date
       {
-        printSummary(filePath + " - no change from "
-          + formatMilliUser(oldMillis) + ((delta > 0) ? (", difference is "
-          + (delta / 1000.0) + " seconds") : ""));
+        changeCount ++;           // count successful date/time changes
+        printChange(filePath + " - changed to " + formatMilliUser(newStamp)
+          + ", was " + formatMilliUser(oldMillis));
+        return(true);             // date is now correct
       }
-      else                        // the difference is significant
+      else                        // above attempt failed to set new date/time
       {
-        if ((readonlyFlag == false) && (givenFile.canWrite() == false))
-        {
-          printFailure(filePath + " - can't change read-only file to "
-            + formatMilliUser(newStamp));
-        }
-        else if (givenFile.setLastModified(newMillis)) // try to set new date
-        {
-          changeCount ++;         // count successful date/time changes
-          printChange(filePath + " - changed to " + formatMilliUser(newStamp)
-            + ", was " + formatMilliUser(oldMillis));
-        }
-        else                      // above attempt failed to set new date/time
-        {
-          printFailure(filePath + " - failed to change from "
-            + formatMilliUser(oldMillis) + " to " + formatMilliUser(newStamp));
-        }
+        printFailure(filePath + " - failed to change from "
+          + formatMilliUser(oldMillis) + " to " + formatMilliUser(newStamp));
       }
     }
-    else                          // do all files with same root file name
+    return(false);                // date is not correct
+
+  } // end of changeOneDate() method
+
+
+/*
+  closeCatalog() method
+
+  Write the catalog file given by the -d option, if there is one, and say how
+  much it helped.  The new catalog is written next to the old one and renamed
+  into place, so that a failure doesn't lose the old catalog.  Errors are
+  reported but are otherwise ignored, since the catalog only makes later runs
+  faster.  Call this before changeFolderDates(), because writing the catalog
+  changes the date of its own folder, which may be one that we are scanning.
+  For the same reason, an unchanged catalog is not written again.
+*/
+  static void closeCatalog()
+  {
+    Iterator iterator;            // for walking through <catalogMap>
+    Map.Entry mapEntry;           // one path and its size and date
+    PrintWriter output;           // writes new catalog file
+    long[] stamp;                 // size and dates from <catalogMap>
+    File tempFile;                // new catalog before it's renamed
+
+    if (catalogMap == null)       // do nothing if there is no catalog
+      return;
+    tempFile = new File(catalogFile + ".new"); // next to the old catalog
+    if (catalogChanged)           // don't touch catalog (or folder) if same
     {
-      printSummary(filePath + " - checking alternate file types");
-      parent = givenFile.getParentFile(); // get parent folder for given file
-      for (i = 0; i < suffixList.length; i ++) // for each known file type
+      try
       {
-        if (cancelFlag) return;   // stop if user hit the panic button
-        changeDate((new File(parent, (rootName + "." + suffixList[i]))),
-          newStamp, null, null);  // call ourself for each possibility
+        output = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+          new FileOutputStream(tempFile), "UTF-8")));
+        output.println(CATALOG_HEADER + "\t" + catalogSettings);
+        iterator = new TreeMap(catalogMap).entrySet().iterator(); // sorted
+        while (iterator.hasNext())
+        {
+          mapEntry = (Map.Entry) iterator.next();
+          stamp = (long[]) mapEntry.getValue();
+          output.println(stamp[0] + "\t" + stamp[1] + "\t" + stamp[2] + "\t"
+            + mapEntry.getKey());
+        }
+        output.close();
+        if (output.checkError())  // PrintWriter hides its exceptions
+          throw new IOException("error writing " + tempFile.getPath());
+        Files.move(tempFile.toPath(), (new File(catalogFile)).toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (IOException ioe)     // can't write new catalog or rename it
+      {
+        printAlways("Can't write catalog file " + catalogFile + ": "
+          + ioe.getMessage());
+        tempFile.delete();        // don't leave partial file behind
       }
     }
-  } // end of changeDate() method
+    if (skipCount > 0)            // only mention catalog if it helped
+      printAlways("Skipped " + prettyPlural(skipCount, "unchanged file")
+        + " from catalog.");
+    catalogMap = null;            // open again for next GUI run
+  }
 
 
 /*
@@ -975,7 +1197,10 @@ public class FontRedate3
 
     cancelButton.setEnabled(true); // enable button to cancel this processing
     cancelFlag = false;           // but don't cancel unless user complains
-    changeCount = fileCount = folderCount = 0; // no files or folders found yet
+    ambigQueue.clear();           // no ambiguous PostScript dates yet
+    folderNewest.clear();         // no font dates for folders yet
+    folderOrder.clear();          // no folders found yet
+    changeCount = fileCount = folderCount = skipCount = 0; // nothing found yet
     openButton.setEnabled(false); // suspend "Open" button until we are done
     outputText.setText("");       // clear output text area
     setStatusMessage(EMPTY_STATUS); // clear status message at bottom of window
@@ -1005,11 +1230,15 @@ public class FontRedate3
     /* Loop once for each file name selected.  Don't assume that these are all
     valid file names or even fonts. */
 
+    openCatalog();                // open catalog given by -d option, if any
     for (i = 0; i < openFileList.length; i ++)
     {
       if (cancelFlag) break;      // exit from <for> loop if user cancelled
       processFileOrFolder(openFileList[i]); // process this file or folder
     }
+    resolveAmbiguous();           // ask about ambiguous dates all at once
+    closeCatalog();               // keep what we learned, even if cancelled
+    changeFolderDates();          // after all font dates are known
 
     /* Print a summary and scroll the output, even if we were cancelled. */
 
@@ -1100,6 +1329,41 @@ public class FontRedate3
   } // end of doSaveButton() method
 
 
+/*
+  finishPostscript() method
+
+  Change the date(s) for a PostScript font, given the date from its PFA/PFB
+  file, or use the default date if that's not valid.  This is called when the
+  date is found, or later for ambiguous dates after the user has chosen.
+*/
+  static void finishPostscript(
+    File givenFile,               // original PFA/PFB file
+    long javaDate,                // parsed date, or NO_DATE
+    File[] family)                // files with same root name
+  {
+    String filePath;              // name of caller's file, including path
+
+    if (cancelFlag) return;       // stop if user hit the panic button
+    filePath = givenFile.getPath(); // get name of caller's file, with path
+    if ((javaDate != NO_DATE) && (javaDate >= minimumJavaDate)
+      && (javaDate <= maximumJavaDate)) // is this a valid date/time?
+    {
+      changeDate(givenFile, javaDate, family);
+    }
+    else if (defaultDateMillis != NO_DATE) // is there a default date/time?
+    {
+      javaDate = defaultDateMillis; // use default, no range checking here
+      printDebug(filePath + " - no date or out of range, using default "
+        + formatMilliUser(javaDate)); // display default in user's time zone
+      changeDate(givenFile, javaDate, family);
+    }
+    else                          // no date found in file, no default given
+    {
+      printFailure(filePath + " - can't find a valid date");
+    }
+  }
+
+
 /*
   formatMilliGmt(), formatMilliUser() methods
 
@@ -1117,24 +1381,223 @@ public class FontRedate3
   }
 
 
+/*
+  groupPostscript() method
+
+  Group the PostScript files in a folder listing by their root file names, so
+  that each PFA/PFB file knows which AFM, INF, PFM, etc files belong with it.
+  This uses only the names from the listing; we don't ask the file system
+  whether any other names exist.  The result maps a root name (lowercase on
+  Windows) to an array of files, in the same order as <postscriptTypes>.
+*/
+  static HashMap groupPostscript(File[] contents)
+  {
+    File[] family;                // files with the same root name
+    String fileName;              // name of one file, without path
+    String fileRoot;              // only the part before the last period (dot)
+    String fileType;              // only the part after the last period (dot)
+    int i, k;                     // index variables
+    Vector list;                  // existing files in one family
+    HashMap result;               // root name -> array of files
+
+    result = new HashMap();       // start with no families
+    for (i = 0; i < contents.length; i ++)
+    {
+      fileName = contents[i].getName(); // name of file, without path
+      k = fileName.lastIndexOf('.'); // index of last period (dot), or else -1
+      if (k < 0) continue;        // PostScript files always have a type
+      fileRoot = fileName.substring(0, k); // root is part before period (dot)
+      fileType = fileName.substring(k + 1); // type is after the period (dot)
+      if (mswinFlag)              // case doesn't matter on Windows
+      {
+        fileRoot = fileRoot.toLowerCase();
+        fileType = fileType.toLowerCase();
+      }
+      for (k = 0; k < postscriptTypes.length; k ++) // known PostScript type?
+      {
+        if (fileType.equals(postscriptTypes[k]))
+        {
+          family = (File[]) result.get(fileRoot);
+          if (family == null)     // first file with this root name?
+          {
+            family = new File[postscriptTypes.length];
+            result.put(fileRoot, family);
+          }
+          family[k] = contents[i]; // keep in order of file types
+          break;
+        }
+      }
+    }
+
+    /* Remove the empty slots, so that only files which exist remain. */
+
+    Iterator iterator = result.entrySet().iterator();
+    while (iterator.hasNext())
+    {
+      Map.Entry mapEntry = (Map.Entry) iterator.next();
+      family = (File[]) mapEntry.getValue();
+      list = new Vector();        // existing files, in order
+      for (k = 0; k < family.length; k ++)
+        if (family[k] != null)
+          list.add(family[k]);
+      mapEntry.setValue(list.toArray(new File[0]));
+    }
+    return(result);
+
+  } // end of groupPostscript() method
+
+
+/*
+  loadAmbiguousRules() method
+
+  Read a rules file for ambiguous PostScript dates, given by the -a option.
+  Each line has an order ("dmy" for day-month-year, "mdy" for month-day-year,
+  or "ymd" for year-month-day) followed by a date pattern, such as:
+
+      mdy  9/9/9 9:9:9
+
+  where each group of digits in the date is written as "9".  Blank lines and
+  lines starting with "#" are ignored.  Return false if the file can't be read
+  or has errors, after telling the user.
+*/
+  static boolean loadAmbiguousRules(String fileName)
+  {
+    int i;                        // index variable
+    BufferedReader input;         // reads rules file
+    String line;                  // one line from rules file
+    int lineNumber;               // line number for error messages
+    String[] parts;               // order and pattern from <line>
+
+    if (ambigRules == null)       // first -a option?
+      ambigRules = new HashMap(); // later files add to earlier ones
+    lineNumber = 0;               // no lines read yet
+    try
+    {
+      input = new BufferedReader(new FileReader(fileName));
+      while ((line = input.readLine()) != null)
+      {
+        lineNumber ++;            // one more line read
+        line = line.trim();       // ignore leading and trailing spaces
+        if ((line.length() == 0) || line.startsWith("#"))
+          continue;               // skip blank lines and comments
+        parts = line.split("\\s+", 2); // order, then pattern with spaces
+        for (i = 0; i < AMBIG_ORDERS.length; i ++)
+          if (parts[0].equalsIgnoreCase(AMBIG_ORDERS[i]))
+            break;                // found a known order
+        if ((parts.length < 2) || (i >= AMBIG_ORDERS.length))
+        {
+          System.err.println("Bad rule on line " + lineNumber + " of "
+            + fileName + ": " + line);
+          input.close();
+          return(false);
+        }
+        ambigRules.put(ambiguousPattern(parts[1]), new Integer(i));
+      }
+      input.close();
+    }
+    catch (IOException ioe)       // can't read rules file
+    {
+      System.err.println("Can't read rules file " + fileName + ": "
+        + ioe.getMessage());
+      return(false);
+    }
+    printDebug("Loaded rules for ambiguous dates from " + fileName + ".");
+    return(true);
+
+  } // end of loadAmbiguousRules() method
+
+
+/*
+  openCatalog() method
+
+  Read the catalog file given by the -d option, if any.  Each line has the size,
+  the file date and the font date in Java milliseconds, and the absolute path
+  of a file whose date was already correct (or was corrected) by an earlier
+  run.  The two dates differ by daylight saving time on Windows, or by up to
+  the time difference that we ignore.  The first line has the catalog version
+  and the options that affect which date is correct: time zone, default date,
+  and time difference to ignore.  If those have changed, then the old entries
+  are thrown away.  A missing catalog file is the same as an empty catalog.
+*/
+  static void openCatalog()
+  {
+    BufferedReader input;         // reads old catalog file
+    String line;                  // one line from catalog file
+    String[] parts;               // size, dates, and path from <line>
+
+    if (catalogFile == null)      // do nothing if there is no catalog
+      return;
+    catalogChanged = true;        // write unless old catalog is all good
+    catalogMap = new HashMap();   // start with an empty catalog
+    catalogSettings = timeZone.getID() + "\t" + defaultDateMillis + "\t"
+      + ignoreMillis;             // options that change file dates
+    if ((new File(catalogFile)).exists() == false) // first run with catalog?
+      return;
+    try
+    {
+      input = new BufferedReader(new InputStreamReader(new FileInputStream(
+        catalogFile), "UTF-8"));
+      line = input.readLine();    // header has catalog version and options
+      if ((line == null) || (line.startsWith(CATALOG_TYPE) == false))
+      {
+        input.close();
+        printAlways("Not a catalog file, won't be replaced: " + catalogFile);
+        catalogMap = null;        // continue without catalog
+        return;
+      }
+      if (line.equals(CATALOG_HEADER + "\t" + catalogSettings))
+      {
+        while ((line = input.readLine()) != null)
+        {
+          parts = line.split("\t", 4); // path may contain anything else
+          if (parts.length == 4)
+            catalogMap.put(parts[3], new long[] {Long.parseLong(parts[0]),
+              Long.parseLong(parts[1]), Long.parseLong(parts[2])});
+        }
+        catalogChanged = false;   // same as old catalog until something new
+      }
+      else
+        printDebug("Catalog was made with different version or options, "
+          + "not used: " + catalogFile);
+      input.close();
+    }
+    catch (IOException ioe)       // can't read catalog file
+    {
+      printAlways("Can't read catalog file " + catalogFile + ": "
+        + ioe.getMessage());
+      catalogMap.clear();         // start over with an empty catalog
+    }
+    catch (NumberFormatException nfe) // damaged line in catalog file
+    {
+      printAlways("Bad catalog file " + catalogFile + ", starting a new one.");
+      catalogMap.clear();         // start over with an empty catalog
+    }
+  } // end of openCatalog() method
+
+
 /*
   parsePostscriptDate() method
 
   Convert a PostScript date/time string into a long date/time stamp in the
   magic millisecond style beloved by Java.  If we can't parse the date/time,
-  print an error message and return <NO_DATE>.
+  print an error message and return <NO_DATE>.  If the order of the day, month,
+  and year isn't clear, and the caller didn't give us an order, and there is
+  no rule for this pattern, and pop-up dialogs are allowed, then return
+  <AMBIGUOUS_DATE> so that the caller can ask the user later.
 */
   static long parsePostscriptDate(
     String fileName,              // name of caller's file, without path
     String filePath,              // name of caller's file, including path
-    String text)                  // date and time string to be parsed
+    String text,                  // date and time string to be parsed
+    int order)                    // index into AMBIG_ORDERS, or -1 if unknown
   {
+    int choice;                   // day/month/year order for ambiguous date
     int date1, date2, date3;      // raw numbers obtained while parsing dates
     int day, month, year;         // numbers for known items in date string
     int hour, minute, second;     // numbers for known items in time string
     Matcher matcher;              // pattern matcher
-    int option;                   // option chosen by user in dialog box
     long result;                  // resulting date/time stamp in milliseconds
+    String shape;                 // date pattern for ambiguous dates
     String tag;                   // time tag, usually "AM" or "PM" or zone
 
     result = NO_DATE;             // assume failure, mark as invalid
@@ -1287,93 +1750,41 @@ public class FontRedate3
         }
       }
 
-      /* If the date is ambiguous, then ask the user for help, if allowed. */
+      /* If the date is ambiguous, then use the caller's order, or else a rule
+      for this pattern from the -a option.  Otherwise, if pop-up dialogs are
+      allowed, let the caller queue this file, so that we ask the user once for
+      all files with the same pattern, after all other files are done.  An
+      order is only used if it's possible for the given numbers. */
 
-      if (((year < 0) || (month < 0) || (day < 0)) && (mainFrame != null)
-        && (promptFlag == true))
+      shape = ambiguousPattern(text); // same for similar date strings
+      if ((year < 0) || (month < 0) || (day < 0))
       {
-        ambigName.setText("File <" + fileName
-          + "> has an ambiguous PostScript date:");
-        ambigDate.setText("     " + text);  // repeat date string given to us
-
-        /* Set up which date orders are possible, and hence have their radio
-        buttons enabled. */
-
-        if ((date1 >= 1) && (date1 <= 31) && (date2 >= 1) && (date2 <= 12))
-        {
-          ambigOptions[0].setEnabled(true);
-          ambigOptions[0].setSelected(ambigPrevious == 0);
-          ambigOptions[0].setText("day-month-year (" + date1 + " "
-            + MONTH_NAMES[date2 - 1] + " " + convertSmallYear(date3) + ")");
-        }
-        else
-        {
-          ambigOptions[0].setEnabled(false);
-          ambigOptions[0].setSelected(false);
-          ambigOptions[0].setText("day-month-year order not possible");
-        }
-
-        if ((date1 >= 1) && (date1 <= 12) && (date2 >= 1) && (date2 <= 31))
-        {
-          ambigOptions[1].setEnabled(true);
-          ambigOptions[1].setSelected(ambigPrevious == 1);
-          ambigOptions[1].setText("month-day-year (" + date2 + " "
-            + MONTH_NAMES[date1 - 1] + " " + convertSmallYear(date3) + ")");
-        }
-        else
+        choice = order;           // caller's order, if any
+        if ((choice < 0) && (ambigRules != null)
+          && ambigRules.containsKey(shape)) // is there a rule for this?
         {
-          ambigOptions[1].setEnabled(false);
-          ambigOptions[1].setSelected(false);
-          ambigOptions[1].setText("month-day-year order not possible");
+          choice = ((Integer) ambigRules.get(shape)).intValue();
         }
-
-        if ((date2 >= 1) && (date2 <= 12) && (date3 >= 1) && (date3 <= 31))
+        if ((choice == 0) && (date1 >= 1) && (date1 <= 31) && (date2 >= 1)
+          && (date2 <= 12))
         {
-          ambigOptions[2].setEnabled(true);
-          ambigOptions[2].setSelected(ambigPrevious == 2);
-          ambigOptions[2].setText("year-month-day (" + date3 + " "
-            + MONTH_NAMES[date2 - 1] + " " + convertSmallYear(date1) + ")");
+          day = date1; month = date2; year = date3; // day-month-year
         }
-        else
+        else if ((choice == 1) && (date1 >= 1) && (date1 <= 12)
+          && (date2 >= 1) && (date2 <= 31))
         {
-          ambigOptions[2].setEnabled(false);
-          ambigOptions[2].setSelected(false);
-          ambigOptions[2].setText("year-month-day order not possible");
+          day = date2; month = date1; year = date3; // month-day-year
         }
-
-        /* Ask the user what he/she thinks.  Note that the user may close the
-        dialog box without selecting anything. */
-
-        option = JOptionPane.showConfirmDialog(mainFrame, ambigPanel,
-          "Ambiguous PostScript Date Found", JOptionPane.YES_NO_CANCEL_OPTION);
-        if (option == JOptionPane.CANCEL_OPTION) // user click dialog "Cancel"?
+        else if ((choice == 2) && (date2 >= 1) && (date2 <= 12)
+          && (date3 >= 1) && (date3 <= 31))
         {
-          cancelFlag = true;      // act as if user clicked *our* Cancel button
-          printAlways("Cancelled by user at ambiguous dialog.", true);
-          return(result);         // return with default result (failure)
+          day = date3; month = date2; year = date1; // year-month-day
         }
-        else if (option == JOptionPane.YES_OPTION)
+        else if ((choice < 0) && (mainFrame != null) && promptFlag)
         {
-          /* The user clicked the "Yes" button, but did he/she select one of
-          the options?  This program does not force any of the enabled options
-          to be selected, because we try to keep the previous selection as the
-          default, even if the previous option is not currently enabled. */
-
-          if (ambigOptions[0].isEnabled() && ambigOptions[0].isSelected())
-          {
-            day = date1; month = date2; year = date3; // day-month-year
-            ambigPrevious = 0;    // remember as default option for next time
-          }
-          else if (ambigOptions[1].isEnabled() && ambigOptions[1].isSelected())
-          {
-            day = date2; month = date1; year = date3; // month-day-year
-            ambigPrevious = 1;    // remember as default option for next time
-          }
-          else if (ambigOptions[2].isEnabled() && ambigOptions[2].isSelected())
-          {
-            day = date3; month = date2; year = date1; // year-month-day
-            ambigPrevious = 2;    // remember as default option for next time
-          }
+          printDebug(filePath + " - ambiguous year-month-day <" + text
+            + ">, will ask later");
+          return(AMBIGUOUS_DATE); // caller puts this file in the queue
         }
       }
 
@@ -1382,7 +1793,8 @@ public class FontRedate3
 
       if ((year < 0) || (month < 0) || (day < 0))
       {
-        printDebug(filePath + " - ambiguous year-month-day <" + text + ">");
+        printDebug(filePath + " - ambiguous year-month-day <" + text
+          + ">, pattern <" + shape + ">");
         return(result);           // return with default result (failure)
       }
 
@@ -1562,9 +1974,12 @@ public class FontRedate3
 */
   static void processFileOrFolder(File givenFile)
   {
+    BasicFileAttributes attrib;   // size, date, and type of <next>
     File[] contents;              // contents if <givenFile> is a folder
+    HashMap families;             // PostScript files grouped by root name
     int i;                        // index variable
     File next;                    // next File object from <contents>
+    long[] stamp;                 // size and date from catalog, or null
 
     if (cancelFlag) return;       // stop if user hit the panic button
 
@@ -1576,15 +1991,39 @@ public class FontRedate3
       folderCount ++;             // found one more folder, contents unknown
       setStatusMessage("Searching folder " + givenFile.getPath());
       contents = sortFileList(givenFile.listFiles()); // no filter, but sorted
+      families = groupPostscript(contents); // from names only, no file I/O
       for (i = 0; i < contents.length; i ++) // for each file in order
       {
         if (cancelFlag) return;   // stop if user hit the panic button
         next = contents[i];       // get next File object from <contents>
+        try { attrib = Files.readAttributes(next.toPath(),
+          BasicFileAttributes.class); } // one call for size, date, and type
+        catch (IOException ioe) { attrib = null; } // broken link, etc
+        stamp = ((catalogMap == null) || (attrib == null)) ? null
+          : (long[]) catalogMap.get(next.getAbsolutePath());
         if ((hiddenFlag == false) && next.isHidden()) // hidden file or folder?
         {
           printSummary(next.getPath() + " - ignoring hidden file or folder");
         }
-        else if (next.isDirectory()) // a subfolder inside caller's folder?
+        else if (attrib == null)  // can't get information about this entry
+        {
+          printSummary(next.getPath() + " - not a file or folder");
+        }
+        else if ((stamp != null) && attrib.isRegularFile()
+          && (stamp[0] == attrib.size())
+          && (stamp[1] == attrib.lastModifiedTime().toMillis())
+          && catalogFamily(next, families))
+        {
+          /* This file was checked on an earlier run, and its size and date
+          haven't changed since (nor have any PostScript siblings).  Don't open
+          it again. */
+
+          fileCount ++;           // found one more file, already done
+          skipCount ++;           // and didn't need to read it
+          printSummary(next.getPath() + " - unchanged since last run");
+          putFolderDate(next, stamp[2]); // font date from earlier run
+        }
+        else if (attrib.isDirectory()) // a subfolder inside caller's folder?
         {
           if (recurseFlag)        // do subfolders only if option selected
           {
@@ -1594,19 +2033,21 @@ public class FontRedate3
           else
             printSummary(next.getPath() + " - ignoring subfolder");
         }
-        else if (next.isFile())   // we do want to look at normal files
+        else if (attrib.isRegularFile()) // we do want to look at normal files
         {
-          processUnknownFile(next); // figure out what to do with this file
+          processUnknownFile(next, families); // what to do with this file
         }
         else                      // file directory has an invalid entry
         {
           printSummary(next.getPath() + " - not a file or folder");
         }
       }
+      if (folderFlag)             // after subfolders, so in post-order
+        folderOrder.add(givenFile);
     }
     else if (givenFile.isFile())  // we do want to look at normal files
     {
-      processUnknownFile(givenFile); // figure out what to do with this file
+      processUnknownFile(givenFile, null); // what to do with this file
     }
     else                          // user gave bad file or folder name
     {
@@ -1620,16 +2061,23 @@ public class FontRedate3
 
   The caller gives us a Java File object that should be a PostScript *.PFA
   (ASCII) or *.PFB (binary) font file.  The part we want ("CreationDate") is
-  in plain text for both file types.
+  in plain text for both file types, in the header before the encrypted data.
+  When the caller found the file in a folder listing, it also gives us the
+  other files in the same family (same root name, PostScript file types).
+  Otherwise, we construct names for all possible file types, and changeDate()
+  quietly ignores the ones that don't exist.
 */
   static void processPostScript(
     File givenFile,               // original File object
-    String rootName)              // root file name
+    String rootName,              // root file name
+    File[] givenFamily)           // files with same root name, or null
   {
-    int bufChar;                  // input character from <bufFile> or -1
-    BufferedReader bufFile;       // file stream for reading font file
+    int bufChar;                  // input byte from <header> or -1
+    File[] family;                // files to change with the same root name
     String fileName;              // name of caller's file, without path
     String filePath;              // name of caller's file, including path
+    byte[] header;                // cleartext header from font file
+    int i;                        // index variable
     long javaDate;                // milliseconds since midnight 1 January 1970
     String postscriptDate;        // date string found in font file
     final char[] searchChars = {'%', '%', 'C', 'r', 'e', 'a', 't', 'i', 'o',
@@ -1637,29 +2085,44 @@ public class FontRedate3
                                   // ... with all spaces and tabs removed
     int searchIndex;              // current index into <searchChars>
 
-    /* Open the file, look for a creation date, parse the date. */
+    /* Read the cleartext header, look for a creation date, parse the date. */
 
     if (cancelFlag) return;       // stop if user hit the panic button
     fileName = givenFile.getName(); // get name of caller's file, no path
     filePath = givenFile.getPath(); // get name of caller's file, with path
     printDebug(filePath + " - processPostScript called, rootName = <"
       + rootName + ">");
+    family = givenFamily;         // use caller's list if there is one
+    if (family == null)           // otherwise try every known file type
+    {
+      family = new File[postscriptTypes.length];
+      for (i = 0; i < postscriptTypes.length; i ++)
+        family[i] = new File(givenFile.getParentFile(), (rootName + "."
+          + postscriptTypes[i]));
+    }
 
     try                           // catch file I/O errors
     {
-      bufFile = new BufferedReader(new FileReader(givenFile));
+      header = readPostscriptHeader(givenFile, filePath);
+      if (cancelFlag) return;     // stop if user hit the panic button
 
-      /* Rather than parsing the whole file as proper PostScript, we search for
-      a specific string and extract all following text until the next newline
-      character or control code.  Crude but fast and effective. */
+      /* Rather than parsing the whole header as proper PostScript, we search
+      for a specific string and extract all following text until the next
+      newline character or control code.  Crude but fast and effective.  Most
+      bytes aren't a percent sign (%), so skip those without other tests. */
 
       postscriptDate = null;      // assume failure, mark as invalid
+      bufChar = -1;               // in case header is empty
+      i = 0;                      // start from beginning of header
       searchIndex = 0;            // start from beginning of search string
-      do
+      while ((i < header.length) && (searchIndex < searchChars.length))
       {
-        bufChar = bufFile.read(); // get one character or -1 for end-of-file
-        if (bufChar < 0)          // have we reached end of file?
-          { /* do nothing */ }
+        bufChar = header[i ++] & 0xFF; // get one byte as unsigned character
+        if (searchIndex == 0)     // looking for the first character?
+        {
+          if (bufChar == searchChars[0])
+            searchIndex = 1;      // found start of search string
+        }
         else if ((bufChar == ' ') || (bufChar == '\t')) // ignore spaces
           { /* do nothing */ }
         else if (bufChar == searchChars[searchIndex])
@@ -1668,12 +2131,9 @@ public class FontRedate3
           searchIndex = 1;        // mismatch, but can restart successfully
         else
           searchIndex = 0;        // mismatch, start again with nothing found
-      } while ((cancelFlag == false) && (bufChar >= 0)
-        && (searchIndex < searchChars.length));
+      }
 
-      if (cancelFlag)             // continue only if no errors so far
-        { /* do nothing */ }
-      else if (bufChar < 0)       // end-of-file means search failed
+      if (searchIndex < searchChars.length) // end of header, search failed
       {
         printDebug(filePath + " - no PostScript "
           + (String.valueOf(searchChars)) + " found");
@@ -1681,42 +2141,41 @@ public class FontRedate3
       else                        // grab all text until end-of-line
       {
         StringBuffer buffer = new StringBuffer(); // empty string result
-        while (((bufChar = bufFile.read()) >= ' ') && (bufChar < 0x7F))
+        while ((i < header.length) && ((bufChar = header[i ++] & 0xFF) >= ' ')
+          && (bufChar < 0x7F))
+        {
           buffer.append((char) bufChar); // append character to date string
+        }
         postscriptDate = buffer.toString().trim(); // remove extra spaces
         printDebug(filePath + " - PostScript date is <" + postscriptDate
           + ">");
       }
 
-      /* Close the input font file before trying to change the date. */
-
-      bufFile.close();            // try to close input file
-      if (cancelFlag) return;     // stop if user hit the panic button
-
-      /* Parse the extracted date string and change the file date(s). */
+      /* Parse the extracted date string and change the file date(s).  Files
+      with ambiguous dates are put in a queue by date pattern, and are done
+      later by resolveAmbiguous(). */
 
       if (postscriptDate != null) // did we find a date string?
-        javaDate = parsePostscriptDate(fileName, filePath, postscriptDate);
+        javaDate = parsePostscriptDate(fileName, filePath, postscriptDate, -1);
       else                        // there was no date string in file
         javaDate = NO_DATE;       // use same value as if parsing failed
       if (cancelFlag) return;     // stop if user hit the panic button
 
-      if ((javaDate != NO_DATE) && (javaDate >= minimumJavaDate)
-        && (javaDate <= maximumJavaDate)) // is this a valid date/time?
+      if (javaDate == AMBIGUOUS_DATE) // ask the user later?
       {
-        changeDate(givenFile, javaDate, rootName, postscriptTypes);
-      }
-      else if (defaultDateMillis != NO_DATE) // is there a default date/time?
-      {
-        javaDate = defaultDateMillis; // use default, no range checking here
-        printDebug(filePath + " - no date or out of range, using default "
-          + formatMilliUser(javaDate)); // display default in user's time zone
-        changeDate(givenFile, javaDate, rootName, postscriptTypes);
-      }
-      else                        // no date found in file, no default given
-      {
-        printFailure(filePath + " - can't find a valid date");
+        String shape = ambiguousPattern(postscriptDate);
+        Vector list = (Vector) ambigQueue.get(shape);
+        if (list == null)         // first file with this date pattern?
+        {
+          list = new Vector();
+          ambigQueue.put(shape, list);
+        }
+        list.add(new Object[] {givenFile, family, postscriptDate});
+        printSummary(filePath + " - ambiguous date <" + postscriptDate
+          + ">, will ask after other files");
       }
+      else
+        finishPostscript(givenFile, javaDate, family);
     }
 
     /* Catch any file I/O errors, here or in called methods. */
@@ -1740,15 +2199,15 @@ public class FontRedate3
   {
     String filePath;              // name of caller's file, including path
     long fileSize;                // size of the file in bytes
-    long headTable;               // location of "head" table in file
-    int i;                        // index variable
     long javaDate;                // milliseconds since midnight 1 January 1970
-    int numTables;                // number of table directory entries
-    long offsetTable;             // location of (first) Offset Table in file
-    RandomAccessFile ramFile;     // file stream for reading font file
+    int member;                   // index of current internal font
+    long numFonts;                // number of internal fonts in file
+    long offsetTable;             // location of current Offset Table in file
+    FontRedate3Input ramFile;     // file or memory for reading font data
+    HashSet searched;             // Long locations of "head" tables searched
     long signature;               // signature bytes from beginning of file
-    long truetypeCreated, truetypeModified; // raw 64-bit binary font dates
     long truetypeDate;            // seconds since midnight on 1 January 1904
+    byte[] woffBytes;             // tables expanded from WOFF file, or null
 
     /* Open the file, index through the tables, and extract the binary date. */
 
@@ -1759,11 +2218,14 @@ public class FontRedate3
 
     try                           // catch file I/O errors
     {
-      ramFile = new RandomAccessFile(givenFile, "r"); // open file for reading
+      ramFile = new FontRedate3Input(givenFile); // open file for reading
 
       /* Figure out what type of file this is, if it's even a font file! */
 
+      numFonts = 0;               // assume failure, no internal fonts
       offsetTable = -1;           // assume failure, mark as invalid
+      signature = -1;             // no signature bytes read yet
+      woffBytes = null;           // not a WOFF or WOFF2 file yet
       if (fileSize < 16)          // need this many bytes for signature
       {
         printDebug(filePath + " - file too small for OTF/TTC/TTF signature");
@@ -1772,22 +2234,60 @@ public class FontRedate3
       {
         signature = ((long) ramFile.readInt()) & INT_MASK;
                                   // read four signature bytes
-        if ((signature == 0x00010000L) // binary version 1.0 for TrueType
+        if ((signature == FontRedate3Woff.WOFF)
+          || (signature == FontRedate3Woff.WOFF2))
+        {
+          /* This is a WOFF or WOFF2 web font.  Expand only the "head" table
+          into a small font in memory, and read that instead.  Without a
+          decoder for WOFF2, we can't say anything about the date, not even
+          that there isn't one. */
+
+          if ((signature == FontRedate3Woff.WOFF2)
+            && (FontRedate3Woff.brotliAvailable() == false))
+          {
+            printFailure(filePath + " - WOFF2 file needs a Brotli decoder ("
+              + FontRedate3Woff.BROTLI_CLASS + ")");
+            ramFile.close();      // try to close input file
+            return;               // don't use default date either
+          }
+          woffBytes = FontRedate3Woff.extract(ramFile, fileSize,
+            new String[] {"head"}); // expanded tables, or null
+          if (woffBytes != null)  // was the WOFF file good enough?
+          {
+            ramFile.close();      // done with original file
+            ramFile = new FontRedate3Input(woffBytes);
+            fileSize = woffBytes.length; // only for checking offsets
+            signature = ((long) ramFile.readInt()) & INT_MASK;
+          }
+          else
+            printDebug(filePath + " - bad table directory or compressed data"
+              + " in WOFF file");
+        }
+
+        if (((signature == FontRedate3Woff.WOFF)
+          || (signature == FontRedate3Woff.WOFF2)) && (woffBytes == null))
+        {
+          /* Do nothing more with a damaged WOFF or WOFF2 file. */
+        }
+        else if ((signature == 0x00010000L) // binary version 1.0 for TrueType
           || (signature == 0x4F54544FL) // "OTTO" for OpenType
           || (signature == 0x74727565L)) // "true" for Macintosh TrueType
         {
           /* This is an OpenType or TrueType file containing a single font. */
 
+          numFonts = 1;           // there is only one font in this file
           offsetTable = 0;        // conveniently located at start of file
         }
         else if (signature == 0x74746366L) // "ttcf" for TrueType collection
         {
-          /* This is a TrueType collection containing at least one font.  Well,
-          we assume that there is at least one internal font! */
-
-          ramFile.skipBytes(8);   // skip TTC version, number of internal fonts
-          offsetTable = ((long) ramFile.readInt()) & INT_MASK;
-                                  // location of Offset Table for first font
+          /* This is a TrueType collection containing any number of fonts.
+          The location of each Offset Table is read only when needed. */
+
+          ramFile.skipBytes(4);   // skip TTC version number
+          numFonts = ((long) ramFile.readInt()) & INT_MASK;
+                                  // number of internal fonts claimed by file
+          printDebug(filePath + " - TrueType collection with "
+            + prettyPlural(numFonts, "internal font"));
         }
         else                      // unknown signature, not known font type
         {
@@ -1797,148 +2297,31 @@ public class FontRedate3
         }
       }
 
-      /* Find the "head" table, if any. */
-
-      headTable = -1;             // assume failure, mark as invalid
-      if ((cancelFlag == false) && (offsetTable >= 0)) // if no errors so far
-      {
-        printDebug(filePath + " - Offset Table is at 0x"
-          + Long.toHexString(offsetTable));
-
-        if (fileSize < (offsetTable + 12)) // file big enough for Offset Table?
-        {
-          printDebug(filePath + " - file too small for Offset Table header");
-        }
-        else
-        {
-          ramFile.seek(offsetTable + 4); // location of "number of tables"
-          numTables = ramFile.readUnsignedShort(); // get entries in table
-          if ((numTables < 1) || (numTables > 299)) // check arbitrary limits
-          {
-            printDebug(filePath + " - too many entries in Offset Table ("
-              + numTables + ")");
-          }
-          else if (fileSize < (offsetTable + 12 + (16 * numTables)))
-          {
-            printDebug(filePath
-              + " - file too small for Offset Table entries");
-          }
-          else
-          {
-            ramFile.skipBytes(6); // skip search ranges
-            for (i = 0; i < numTables; i ++)
-            {
-              if ((((long) ramFile.readInt()) & INT_MASK) == 0x68656164L)
-                                  // is this entry for the "head" table?
-              {
-                ramFile.skipBytes(4); // skip checksum
-                headTable = ((long) ramFile.readInt()) & INT_MASK;
-                break;            // exit early from <for> loop
-              }
-              else                // no, continue looking
-                ramFile.skipBytes(12); // skip remainder of table entry
-            }
-
-            if (headTable > 0)    // did we find the "head" table?
-            {
-              printDebug(filePath + " - \"head\" table is at 0x"
-                + Long.toHexString(headTable));
-            }
-            else
-            {
-              printDebug(filePath + " - \"head\" table not found");
-            }
-          }
-        }
-      }
-
-      /* Get the "created" and "modified" dates/times from the "head" table,
-      which are 64-bit integers with the number of seconds since 00:00:00 on
-      1st January 1904, with no specified time zone except maybe GMT.  Only the
-      low-order 32 bits are used for dates from 1904 to 2040, and some old font
-      editors are (were) known for leaving garbage or "flags" in the high-order
-      32 bits.  Letraset put 32-bit dates in the high-order half, and with zero
-      in the low-order half. */
+      /* Look for a usable date in each internal font.  For a single font,
+      that's the only Offset Table.  For a collection, we read the location of
+      each Offset Table only when we need it, and stop at the first internal
+      font with a usable date, which is almost always the first font.  A "head"
+      table shared by several fonts is searched once. */
 
       truetypeDate = NO_DATE;     // assume failure, mark as invalid
-      if ((cancelFlag == false) && (headTable > 0)) // only if no errors so far
+      searched = new HashSet();   // no "head" tables searched yet
+      for (member = 0; (member < numFonts) && (cancelFlag == false)
+        && (truetypeDate == NO_DATE); member ++)
       {
-        if (fileSize < (headTable + 36)) // file big enough for "head" table?
-        {
-          printDebug(filePath + " - file too small for \"head\" table");
-        }
-        else
+        if (signature == 0x74746366L) // is this a TrueType collection?
         {
-          /* Get the raw binary dates/times as 64-bit integers. */
-
-          ramFile.seek(headTable + 20); // location of "created" date/time
-          truetypeCreated = ramFile.readLong(); // get 64-bit created seconds
-          truetypeModified = ramFile.readLong(); // get 64-bit modified seconds
-          printDebug(filePath + " - created 0x"
-            + Long.toHexString(truetypeCreated) + ", modified 0x"
-            + Long.toHexString(truetypeModified));
-
-          /* Hopefully, the modified date is good.  Repair as necessary. */
-
-          if (truetypeModified != 0) // prefer modified date over created date
-          {
-            if (truetypeModified == (truetypeModified & DATE_MASK))
-            {
-              truetypeDate = truetypeModified; // normal and correct case
-            }
-            else if ((truetypeModified < 0)
-              && ((truetypeModified & INT_MASK) == 0))
-            {
-              /* Letraset mistake of putting a 32-bit date in the high-order
-              end instead of the low-order.  Starting in 1972, such a 32-bit
-              date will force a 64-bit signed integer to be negative. */
-
-              truetypeDate = truetypeModified >>> 32;
-              printDebug(filePath + " - shifting right as 0x"
-                + Long.toHexString(truetypeDate));
-            }
-            else if (((truetypeModified & INT_MASK) != 0) // low-order non-zero
-              && ((truetypeCreated & INT_MASK) == (truetypeModified & INT_MASK)))
-            {
-              /* Altsys Fontographer mistake of leaving random garbage in the
-              high-order 32 bits, while putting a valid date in the low-order.
-              To be safe, we require that both dates have the same 32-bit
-              non-zero value in the low-order portion. */
-
-              truetypeDate = truetypeModified & INT_MASK; // remove high-order
-              printDebug(filePath + " - truncating date to 0x"
-                + Long.toHexString(truetypeDate));
-            }
-            else
-            {
-              printDebug(filePath + " - can't repair modified date");
-            }
-          }
-          else if (truetypeCreated != 0) // already know truetypeModified = 0
+          if (fileSize < (16 + (4L * member))) // big enough for offset?
           {
-            printDebug(filePath + " - no modified date, using created date");
-            if (truetypeCreated == (truetypeCreated & DATE_MASK))
-            {
-              truetypeDate = truetypeCreated; // accept created if no modified
-            }
-            else if ((truetypeCreated < 0) // the Letraset mistake
-              && ((truetypeCreated & INT_MASK) == 0))
-            {
-              truetypeDate = truetypeCreated >>> 32;
-              printDebug(filePath + " - shifting right as 0x"
-                + Long.toHexString(truetypeDate));
-            }
-            /* Can't do Altsys Fontographer check since modified is zero. */
-            else
-            {
-              printDebug(filePath + " - can't repair created date");
-            }
-          }
-          else                    // truetypeCreated = truetypeModified = 0
-          {
-            printDebug(filePath + " - created and modified dates are zero");
+            printDebug(filePath + " - file too small for TTC offset #"
+              + (member + 1));
+            break;                // exit early from <for> loop
           }
+          ramFile.seek(12 + (4L * member)); // location of offset for font
+          offsetTable = ((long) ramFile.readInt()) & INT_MASK;
+                                  // location of Offset Table for this font
         }
+        truetypeDate = readTruetypeDate(filePath, fileSize, ramFile,
+          offsetTable, searched); // date from this font, or NO_DATE
       }
 
       /* Close the input font file before trying to change the date. */
@@ -1982,21 +2365,21 @@ public class FontRedate3
         printDebug(filePath + " - corrected date is "
           + formatMilliGmt(javaDate)); // display binary date as correct GMT
         javaDate -= timeZone.getOffset(javaDate); // reverse time zone effect
-        changeDate(givenFile, javaDate, null, null); // compare, maybe change
+        changeDate(givenFile, javaDate, null); // compare, maybe change
       }
       else if ((truetypeDate != NO_DATE) && (truetypeDate >= minimumTruetype)
         && (truetypeDate <= maximumTruetype)) // is this a valid date/time?
       {
         javaDate = (truetypeDate * 1000) - truetypeOffset; // both in GMT zone
         javaDate -= timeZone.getOffset(javaDate); // reverse time zone effect
-        changeDate(givenFile, javaDate, null, null); // compare, maybe change
+        changeDate(givenFile, javaDate, null); // compare, maybe change
       }
       else if (defaultDateMillis != NO_DATE) // is there a default date/time?
       {
         javaDate = defaultDateMillis; // use default, no range checking here
         printDebug(filePath + " - no date or out of range, using default "
           + formatMilliUser(javaDate)); // display default in user's time zone
-        changeDate(givenFile, javaDate, null, null); // compare, maybe change
+        changeDate(givenFile, javaDate, null); // compare, maybe change
       }
       else                        // no date found in file, no default given
       {
@@ -2019,9 +2402,12 @@ public class FontRedate3
   The caller gives us a Java File object that is known to be a file, not a
   directory.  Get the file extension (file type) from the end of the file name,
   and use that to decide what type of font this is, or if the file is not a
-  font and should simply be ignored.
+  font and should simply be ignored.  The caller may also give us PostScript
+  families found in the same folder, or null.
 */
-  static void processUnknownFile(File givenFile)
+  static void processUnknownFile(
+    File givenFile,               // original File object
+    HashMap families)             // from groupPostscript(), or null
   {
     String fileName;              // name of caller's file (root + dot + type)
     String filePath;              // name of caller's file, including path
@@ -2059,13 +2445,17 @@ public class FontRedate3
 
     if (fileType.equals("otf")    // OpenType single font
       || fileType.equals("ttc")   // TrueType collection
-      || fileType.equals("ttf"))  // TrueType single font
+      || fileType.equals("ttf")   // TrueType single font
+      || fileType.equals("woff")  // web fonts
+      || fileType.equals("woff2"))
     {
       processTrueType(givenFile); // handle as generic OpenType or TrueType
     }
     else if (fileType.equals("pfa") || fileType.equals("pfb"))
     {
-      processPostScript(givenFile, fileRoot); // PostScript ASCII or binary
+      processPostScript(givenFile, fileRoot, ((families == null) ? null
+        : (File[]) families.get(mswinFlag ? fileRoot.toLowerCase()
+        : fileRoot)));            // PostScript ASCII or binary
     }
     else if (fileType.equals("afm") // can't be processed until PFA/PFB found
       || fileType.equals("cfg")
@@ -2083,6 +2473,492 @@ public class FontRedate3
   } // end of processUnknownFile() method
 
 
+/*
+  putCatalog() method
+
+  Remember the size and date of a file whose date is now correct, so that the
+  next run with the same catalog doesn't need to open it.  We also keep the
+  font date, which the next run needs for folder dates (-o option), because
+  the file date may not be exactly the same.
+*/
+  static void putCatalog(
+    File givenFile,               // file with correct date
+    long fontDate)                // date found inside font, in GMT millis
+  {
+    BasicFileAttributes attrib;   // size and date after any change
+    long[] stamp;                 // new size and dates for this file
+
+    if (catalogMap == null)       // do nothing if there is no catalog
+      return;
+    try
+    {
+      attrib = Files.readAttributes(givenFile.toPath(),
+        BasicFileAttributes.class); // file system may round the date
+      stamp = new long[] {attrib.size(), attrib.lastModifiedTime().toMillis(),
+        fontDate};
+      if (Arrays.equals(stamp, (long[]) catalogMap.put(
+        givenFile.getAbsolutePath(), stamp)) == false)
+      {
+        catalogChanged = true;    // new or different entry
+      }
+    }
+    catch (IOException ioe) { /* do nothing, file will be read next time */ }
+  }
+
+
+/*
+  putFolderDate() method
+
+  Remember a font date for the folder that contains a given file or folder, if
+  it's newer than any date already found for that folder.  This does nothing
+  unless the -o option asked us to change folder dates.
+*/
+  static void putFolderDate(File givenFile, long javaDate)
+  {
+    Long folderDate;              // newest date so far for parent folder
+    File parent;                  // folder that contains <givenFile>
+    String parentPath;            // absolute path name for <parent>
+
+    if (folderFlag == false)      // do nothing unless changing folder dates
+      return;
+    parent = givenFile.getAbsoluteFile().getParentFile();
+    if (parent == null)           // root folder has no parent
+      return;
+    parentPath = parent.getPath(); // already absolute
+    folderDate = (Long) folderNewest.get(parentPath);
+    if ((folderDate == null) || (folderDate.longValue() < javaDate))
+      folderNewest.put(parentPath, new Long(javaDate));
+  }
+
+
+/*
+  readBlock() method
+
+  Fill as much of the caller's byte array as possible from an input stream,
+  and return the number of bytes read.  This is less than the array size only
+  at end-of-file.
+*/
+  static int readBlock(InputStream input, byte[] array) throws IOException
+  {
+    int count;                    // number of bytes from one read
+    int total;                    // total number of bytes read
+
+    total = 0;
+    while ((total < array.length)
+      && ((count = input.read(array, total, (array.length - total))) > 0))
+    {
+      total += count;
+    }
+    return(total);
+  }
+
+
+/*
+  readPostscriptHeader() method
+
+  Return the cleartext header of a PostScript font file, which is where the
+  "CreationDate" comment is found.  A binary *.PFB file is divided into
+  segments, each starting with 0x80, a segment type (1 = ASCII, 2 = binary, 3
+  = end-of-file), and a four-byte length in little-endian order.  We read the
+  ASCII segments up to the first binary segment.  An ASCII *.PFA file (or a
+  *.PFB file without segments) is read in blocks until we find the "eexec"
+  operator that starts the encrypted part.  Either way, we never read more than
+  PS_HEADER_MAX bytes, and we never look at the encrypted data.
+*/
+  static byte[] readPostscriptHeader(
+    File givenFile,               // original File object
+    String filePath)              // name of caller's file, including path
+    throws IOException
+  {
+    ByteArrayOutputStream buffer; // accumulated header bytes
+    byte[] chunk;                 // bytes read from file
+    int found;                    // index of "eexec" in <buffer>, or -1
+    int i;                        // index variable
+    FileInputStream inStream;     // file stream for reading font file
+    int length;                   // number of bytes in segment or chunk
+    int lead;                     // first byte in file or segment
+    int used;                     // number of bytes read for PFA file
+
+    buffer = new ByteArrayOutputStream(); // start with an empty header
+    inStream = new FileInputStream(givenFile);
+    lead = inStream.read();       // first byte tells us PFB or PFA format
+
+    if (lead == 0x80)             // binary PFB file with segment headers
+    {
+      while ((cancelFlag == false) && (lead == 0x80)
+        && (inStream.read() == 1)) // ASCII segment type
+      {
+        length = 0;               // segment length is little-endian
+        for (i = 0; i < 4; i ++)
+          length |= (inStream.read() & 0xFF) << (8 * i);
+        if ((length < 0) || ((buffer.size() + length) > PS_HEADER_MAX))
+        {
+          printDebug(filePath + " - PostScript header segment too long ("
+            + length + " bytes), truncated");
+          length = PS_HEADER_MAX - buffer.size(); // read only what we allow
+          lead = -1;              // and stop after this segment
+        }
+        else
+          lead = 0;               // read next segment header after this one
+        chunk = new byte[length];
+        length = readBlock(inStream, chunk); // may be short at end-of-file
+        buffer.write(chunk, 0, length);
+        if (lead == 0)            // still expecting another segment?
+          lead = inStream.read(); // 0x80 if another segment follows
+      }
+      printDebug(filePath + " - PostScript PFB header is " + buffer.size()
+        + " bytes");
+    }
+    else if (lead >= 0)           // ASCII PFA file, or unknown format
+    {
+      chunk = new byte[PS_HEADER_READ]; // grows as needed
+      chunk[0] = (byte) lead;     // keep the first byte
+      found = -1;                 // haven't found "eexec" yet
+      used = 1;                   // number of bytes in <chunk>
+      while ((cancelFlag == false) && (found < 0) && (used < PS_HEADER_MAX))
+      {
+        if (used == chunk.length) // is the array full?
+        {
+          byte[] bigger = new byte[Math.min((2 * used), PS_HEADER_MAX)];
+          System.arraycopy(chunk, 0, bigger, 0, used);
+          chunk = bigger;
+        }
+        length = inStream.read(chunk, used, (chunk.length - used));
+        if (length <= 0)          // have we reached end of file?
+          break;                  // yes, header is the whole file
+        i = Math.max(0, (used - 4)); // "eexec" may cross two reads
+        used += length;           // now have more bytes
+        found = searchBytes(chunk, i, used, "eexec");
+      }
+      buffer.write(chunk, 0, used);
+      printDebug(filePath + " - PostScript " + ((found < 0) ? "file" : "header")
+        + " searched is " + used + " bytes");
+    }
+    inStream.close();             // try to close input file
+    return(buffer.toByteArray());
+
+  } // end of readPostscriptHeader() method
+
+
+/*
+  readTruetypeDate() method
+
+  Find the "head" table for one internal font, given the location of its Offset
+  Table, and return the date/time in seconds since 1904, or NO_DATE if there is
+  no usable date.  This is called once for a single font, and as often as
+  needed for the fonts in a TrueType collection.  Collections often have many
+  internal fonts that point to the same "head" table, so the caller keeps a set
+  of tables that were already searched, and we don't search them again.  See
+  processTrueType().
+*/
+  static long readTruetypeDate(
+    String filePath,              // name of caller's file, including path
+    long fileSize,                // size of the file in bytes
+    FontRedate3Input ramFile,     // file or memory for reading font data
+    long offsetTable,             // location of Offset Table in file
+    HashSet searched)             // Long locations of "head" tables searched
+    throws IOException
+  {
+    long headTable;               // location of "head" table in file
+    int i;                        // index variable
+    int numTables;                // number of table directory entries
+    long truetypeCreated, truetypeModified; // raw 64-bit binary font dates
+    long truetypeDate;            // seconds since midnight on 1 January 1904
+
+    printDebug(filePath + " - Offset Table is at 0x"
+      + Long.toHexString(offsetTable));
+
+    /* Find the "head" table, if any. */
+
+    headTable = -1;               // assume failure, mark as invalid
+    if (fileSize < (offsetTable + 12)) // file big enough for Offset Table?
+    {
+      printDebug(filePath + " - file too small for Offset Table header");
+    }
+    else
+    {
+      ramFile.seek(offsetTable + 4); // location of "number of tables"
+      numTables = ramFile.readUnsignedShort(); // get entries in table
+      if ((numTables < 1) || (numTables > 299)) // check arbitrary limits
+      {
+        printDebug(filePath + " - too many entries in Offset Table ("
+          + numTables + ")");
+      }
+      else if (fileSize < (offsetTable + 12 + (16 * numTables)))
+      {
+        printDebug(filePath + " - file too small for Offset Table entries");
+      }
+      else
+      {
+        ramFile.skipBytes(6);     // skip search ranges
+        for (i = 0; i < numTables; i ++)
+        {
+          if ((((long) ramFile.readInt()) & INT_MASK) == 0x68656164L)
+                                  // is this entry for the "head" table?
+          {
+            ramFile.skipBytes(4); // skip checksum
+            headTable = ((long) ramFile.readInt()) & INT_MASK;
+            break;                // exit early from <for> loop
+          }
+          else                    // no, continue looking
+            ramFile.skipBytes(12); // skip remainder of table entry
+        }
+
+        if (headTable > 0)        // did we find the "head" table?
+        {
+          printDebug(filePath + " - \"head\" table is at 0x"
+            + Long.toHexString(headTable));
+        }
+        else
+        {
+          printDebug(filePath + " - \"head\" table not found");
+        }
+      }
+    }
+
+    /* Get the "created" and "modified" dates/times from the "head" table,
+    which are 64-bit integers with the number of seconds since 00:00:00 on
+    1st January 1904, with no specified time zone except maybe GMT.  Only the
+    low-order 32 bits are used for dates from 1904 to 2040, and some old font
+    editors are (were) known for leaving garbage or "flags" in the high-order
+    32 bits.  Letraset put 32-bit dates in the high-order half, and with zero
+    in the low-order half. */
+
+    truetypeDate = NO_DATE;       // assume failure, mark as invalid
+    if (headTable <= 0)           // did we find the "head" table?
+    {
+      /* Do nothing if there is no "head" table. */
+    }
+    else if (searched.add(new Long(headTable)) == false) // seen it before?
+    {
+      printDebug(filePath + " - \"head\" table at 0x"
+        + Long.toHexString(headTable) + " was already searched");
+    }
+    else
+    {
+      if (fileSize < (headTable + 36)) // file big enough for "head" table?
+      {
+        printDebug(filePath + " - file too small for \"head\" table");
+      }
+      else
+      {
+        /* Get the raw binary dates/times as 64-bit integers. */
+
+        ramFile.seek(headTable + 20); // location of "created" date/time
+        truetypeCreated = ramFile.readLong(); // get 64-bit created seconds
+        truetypeModified = ramFile.readLong(); // get 64-bit modified seconds
+        printDebug(filePath + " - created 0x"
+          + Long.toHexString(truetypeCreated) + ", modified 0x"
+          + Long.toHexString(truetypeModified));
+
+        /* Hopefully, the modified date is good.  Repair as necessary. */
+
+        if (truetypeModified != 0) // prefer modified date over created date
+        {
+          if (truetypeModified == (truetypeModified & DATE_MASK))
+          {
+            truetypeDate = truetypeModified; // normal and correct case
+          }
+          else if ((truetypeModified < 0)
+            && ((truetypeModified & INT_MASK) == 0))
+          {
+            /* Letraset mistake of putting a 32-bit date in the high-order
+            end instead of the low-order.  Starting in 1972, such a 32-bit
+            date will force a 64-bit signed integer to be negative. */
+
+            truetypeDate = truetypeModified >>> 32;
+            printDebug(filePath + " - shifting right as 0x"
+              + Long.toHexString(truetypeDate));
+          }
+          else if (((truetypeModified & INT_MASK) != 0) // low-order non-zero
+            && ((truetypeCreated & INT_MASK) == (truetypeModified & INT_MASK)))
+          {
+            /* Altsys Fontographer mistake of leaving random garbage in the
+            high-order 32 bits, while putting a valid date in the low-order.
+            To be safe, we require that both dates have the same 32-bit
+            non-zero value in the low-order portion. */
+
+            truetypeDate = truetypeModified & INT_MASK; // remove high-order
+            printDebug(filePath + " - truncating date to 0x"
+              + Long.toHexString(truetypeDate));
+          }
+          else
+          {
+            printDebug(filePath + " - can't repair modified date");
+          }
+        }
+        else if (truetypeCreated != 0) // already know truetypeModified = 0
+        {
+          printDebug(filePath + " - no modified date, using created date");
+          if (truetypeCreated == (truetypeCreated & DATE_MASK))
+          {
+            truetypeDate = truetypeCreated; // accept created if no modified
+          }
+          else if ((truetypeCreated < 0) // the Letraset mistake
+            && ((truetypeCreated & INT_MASK) == 0))
+          {
+            truetypeDate = truetypeCreated >>> 32;
+            printDebug(filePath + " - shifting right as 0x"
+              + Long.toHexString(truetypeDate));
+          }
+          /* Can't do Altsys Fontographer check since modified is zero. */
+          else
+          {
+            printDebug(filePath + " - can't repair created date");
+          }
+        }
+        else                      // truetypeCreated = truetypeModified = 0
+        {
+          printDebug(filePath + " - created and modified dates are zero");
+        }
+      }
+    }
+
+    return(truetypeDate);         // give caller whatever we found
+
+  } // end of readTruetypeDate() method
+
+
+/*
+  resolveAmbiguous() method
+
+  Ask the user how to read all of the ambiguous PostScript dates that were put
+  in the queue while files were being processed.  There is one dialog, with a
+  choice for each date pattern, so the user only needs to answer once and the
+  scan never waits for an answer.  Files with a pattern that the user doesn't
+  choose an order for are treated as having no date.
+*/
+  static void resolveAmbiguous()
+  {
+    JComboBox[] choices;          // one order for each date pattern
+    Font dialogFont;              // same font as buttons and options
+    Object[] entry;               // file, family, and date string
+    int i, k;                     // index variables
+    long javaDate;                // milliseconds since midnight 1 January 1970
+    Vector list;                  // files with one date pattern
+    int option;                   // button clicked by user in dialog box
+    String[] patterns;            // date patterns in queue, sorted
+
+    if (cancelFlag || ambigQueue.isEmpty() || (mainFrame == null))
+    {
+      ambigQueue.clear();         // nothing to do, or not allowed to ask
+      return;
+    }
+    patterns = (String[]) ambigQueue.keySet().toArray(new String[0]);
+    setStatusMessage("Asking about " + prettyPlural(patterns.length,
+      "ambiguous date pattern"));
+
+    /* Create a dialog with one line for each date pattern: how many files have
+    it, one example, and a list of choices. */
+
+    dialogFont = promptCheckbox.getFont(); // set by -u option, if given
+    JPanel panel1 = new JPanel(new GridLayout(0, 2, 10, 5));
+    choices = new JComboBox[patterns.length];
+    for (i = 0; i < patterns.length; i ++)
+    {
+      list = (Vector) ambigQueue.get(patterns[i]);
+      entry = (Object[]) list.get(0); // first file is the example
+      JLabel label = new JLabel(prettyPlural(list.size(), "file") + " like <"
+        + entry[2] + ">");
+      label.setFont(dialogFont);
+      label.setToolTipText("Pattern " + patterns[i] + ", first file "
+        + ((File) entry[0]).getPath());
+      panel1.add(label);
+      choices[i] = new JComboBox(new String[] {"don't change",
+        "day-month-year", "month-day-year", "year-month-day"});
+      choices[i].setFont(dialogFont);
+      choices[i].setEditable(false); // user must select one of our choices
+      panel1.add(choices[i]);
+    }
+    JPanel panel2 = new JPanel(new BorderLayout(0, 10));
+    JLabel label1 = new JLabel("Please choose the date format for each group"
+      + " of PostScript fonts:");
+    label1.setFont(dialogFont);
+    panel2.add(label1, BorderLayout.NORTH);
+    panel2.add(new JScrollPane(panel1), BorderLayout.CENTER);
+
+    option = JOptionPane.showConfirmDialog(mainFrame, panel2,
+      "Ambiguous PostScript Dates Found", JOptionPane.OK_CANCEL_OPTION);
+    if (option != JOptionPane.OK_OPTION) // user cancelled or closed dialog?
+    {
+      cancelFlag = true;          // act as if user clicked *our* Cancel button
+      printAlways("Cancelled by user at ambiguous dialog.", true);
+      ambigQueue.clear();         // files in queue are not changed
+      return;
+    }
+
+    /* Parse each date again with the chosen order, and change file dates. */
+
+    for (i = 0; i < patterns.length; i ++)
+    {
+      list = (Vector) ambigQueue.get(patterns[i]);
+      for (k = 0; k < list.size(); k ++)
+      {
+        if (cancelFlag) break;    // stop if user hit the panic button
+        entry = (Object[]) list.get(k);
+        if (choices[i].getSelectedIndex() > 0) // did user choose an order?
+          javaDate = parsePostscriptDate(((File) entry[0]).getName(),
+            ((File) entry[0]).getPath(), (String) entry[2],
+            (choices[i].getSelectedIndex() - 1));
+        else                      // user didn't choose an order
+          javaDate = NO_DATE;     // same as if parsing failed
+        if (javaDate == AMBIGUOUS_DATE) // chosen order wasn't possible
+          javaDate = NO_DATE;
+        finishPostscript((File) entry[0], javaDate, (File[]) entry[1]);
+      }
+    }
+    ambigQueue.clear();           // all files in queue are done
+
+  } // end of resolveAmbiguous() method
+
+
+/*
+  searchBytes() method
+
+  Return the index of some plain ASCII text in a byte array, looking only from
+  <start> up to <end>, or -1 if the text isn't found.
+*/
+  static int searchBytes(byte[] array, int start, int end, String text)
+  {
+    int i, k;                     // index variables
+    int length;                   // number of characters in <text>
+
+    length = text.length();
+    for (i = start; i <= (end - length); i ++)
+    {
+      for (k = 0; k < length; k ++)
+        if (array[i + k] != (byte) text.charAt(k))
+          break;                  // mismatch, try next position
+      if (k == length)            // did all characters match?
+        return(i);
+    }
+    return(-1);                   // text not found
+  }
+
+
+/*
+  setFileDate() method
+
+  Set the last-modified date and time for a file, and return true if that
+  worked.  We use the newer Java file system calls, which report errors
+  instead of quietly ignoring them.
+*/
+  static boolean setFileDate(File givenFile, long newMillis)
+  {
+    try
+    {
+      Files.setLastModifiedTime(givenFile.toPath(),
+        FileTime.fromMillis(newMillis));
+      return(true);
+    }
+    catch (IOException ioe)
+    {
+      printDebug(givenFile.getPath() + " - " + ioe.getMessage());
+      return(false);
+    }
+  }
+
+
 /*
   setStatusMessage() method
 
@@ -2123,6 +2999,8 @@ public class FontRedate3
     System.err.println();
     System.err.println("Options:");
     System.err.println("  -? = -help = show summary of command-line syntax");
+    System.err.println("  -a# = rules file for ambiguous PostScript dates; example: -adates.txt");
+    System.err.println("  -d# = catalog file with files already checked; example: -dfonts.cat");
     System.err.println("  -g0 = convert/display dates in the local time zone (default)");
     System.err.println("  -g1 = -g = convert/display dates in standard GMT time zone");
     System.err.println("  -h0 = ignore hidden files or folders (default)");
@@ -2132,6 +3010,8 @@ public class FontRedate3
     System.err.println("  -m2 = show only files that couldn't be changed");
     System.err.println("  -m3 = show all files, with summary for each file");
     System.err.println("  -m4 = show all files, with details for each file");
+    System.err.println("  -o0 = don't change folder dates (default)");
+    System.err.println("  -o1 = -o = set folder dates to newest font date inside each folder");
     System.err.println("  -p0 = don't prompt about ambiguous PostScript dates (default)");
     System.err.println("  -p1 = -p = allow pop-up dialog for ambiguous PostScript dates");
     System.err.println("  -r0 = don't try to change read-only files (default)");
@@ -2310,7 +3190,9 @@ class FontRedate3Filter extends javax.swing.filechooser.FileFilter
       || name.endsWith(".pfa")
       || name.endsWith(".pfb")
       || name.endsWith(".ttc")
-      || name.endsWith(".ttf"))
+      || name.endsWith(".ttf")
+      || name.endsWith(".woff")
+      || name.endsWith(".woff2"))
     {
       return(true);               // accept directories and most font files
     }
@@ -2321,7 +3203,7 @@ class FontRedate3Filter extends javax.swing.filechooser.FileFilter
 
   public String getDescription()
   {
-    return("OpenType, PostScript, TrueType font files");
+    return("OpenType, PostScript, TrueType, WOFF font files");
   }
 
 } // end of FontRedate3Filter class
@@ -2357,4 +3239,485 @@ class FontRedate3User implements ActionListener, Runnable
 
 } // end of FontRedate3User class
 
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRedate3Input class
+
+  This class reads a font from a file or from memory, with the same methods as
+  RandomAccessFile, so that processTrueType() doesn't care where the font is.
+  WOFF and WOFF2 web fonts are expanded into memory, but only the tables that
+  we need.  Reading past the end of the bytes in memory throws the same
+  EOFException as reading past the end of a file.
+*/
+
+class FontRedate3Input
+{
+  byte[] bytes;                   // font in memory, or null for file
+  RandomAccessFile file;          // font file opened for reading, or null
+  int position;                   // current position in <bytes>
+
+  public FontRedate3Input(File givenFile) throws IOException
+  {
+    bytes = null;
+    file = new RandomAccessFile(givenFile, "r");
+    position = 0;
+  }
+
+  public FontRedate3Input(byte[] givenBytes)
+  {
+    bytes = givenBytes;
+    file = null;
+    position = 0;
+  }
+
+  /* close file, if any */
+
+  public void close() throws IOException
+  {
+    if (file != null)
+      file.close();
+  }
+
+  /* read exactly enough bytes to fill caller's array */
+
+  public void readFully(byte[] buffer) throws IOException
+  {
+    if (file != null)
+      file.readFully(buffer);
+    else if ((bytes.length - position) < buffer.length)
+      throw new EOFException();
+    else
+    {
+      System.arraycopy(bytes, position, buffer, 0, buffer.length);
+      position += buffer.length;
+    }
+  }
+
+  /* read a big-endian integer */
+
+  public int readInt() throws IOException
+  {
+    if (file != null)
+      return(file.readInt());
+    return((readUnsignedShort() << 16) | readUnsignedShort());
+  }
+
+  /* read a big-endian long integer */
+
+  public long readLong() throws IOException
+  {
+    if (file != null)
+      return(file.readLong());
+    return((((long) readInt()) << 32) | (((long) readInt()) & 0xFFFFFFFFL));
+  }
+
+  /* read a big-endian unsigned short integer */
+
+  public int readUnsignedShort() throws IOException
+  {
+    if (file != null)
+      return(file.readUnsignedShort());
+    if ((bytes.length - position) < 2)
+      throw new EOFException();
+    position += 2;
+    return(((bytes[position - 2] & 0xFF) << 8) | (bytes[position - 1] & 0xFF));
+  }
+
+  /* set position for next read */
+
+  public void seek(long offset) throws IOException
+  {
+    if (file != null)
+      file.seek(offset);
+    else
+      position = (int) Math.min(offset, bytes.length); // reads will fail
+  }
+
+  /* skip bytes, but not past the end */
+
+  public int skipBytes(int count) throws IOException
+  {
+    if (file != null)
+      return(file.skipBytes(count));
+    count = Math.min(count, (bytes.length - position));
+    position += count;
+    return(count);
+  }
+
+} // end of FontRedate3Input class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRedate3Woff class
+
+  WOFF and WOFF2 files are OpenType or TrueType fonts compressed for web pages.
+  Both have a table directory at the start of the file, so we can find the
+  tables we want without expanding the whole font.  WOFF compresses each table
+  separately with "zlib", and we inflate only the tables we want.  WOFF2
+  compresses all tables together as one Brotli stream, which we decode only as
+  far as the end of the last table we want.  Java doesn't have a Brotli decoder
+  built in, so WOFF2 files can only be read if the "org.brotli.dec" package
+  (the decoder published by Google) is on the class path.
+
+  The result is a small font file in memory: an Offset Table with the same
+  entries as the original, but only the tables we asked for have any data.
+  (The others have zero length.)  A WOFF2 collection becomes a TrueType
+  collection.  Checksums are not calculated.  We return null if the file is
+  not a well-formed WOFF or WOFF2 file, and throw an exception only for I/O
+  errors.
+
+  Each program is one self-contained source file, so this class is also
+  copied into FontNames3.java (as FontNames3Woff) and FontRename4.java (as
+  FontRename4Woff).  Apart from the program name in class names, the three
+  copies are identical: a change here must be made in all of them.
+*/
+
+class FontRedate3Woff
+{
+  /* constants */
+
+  static final String BROTLI_CLASS = "org.brotli.dec.BrotliInputStream";
+                                  // optional decoder for WOFF2 files
+  static final String[] KNOWN_TAGS = {"cmap", "head", "hhea", "hmtx", "maxp",
+    "name", "OS/2", "post", "cvt ", "fpgm", "glyf", "loca", "prep", "CFF ",
+    "VORG", "EBDT", "EBLC", "gasp", "hdmx", "kern", "LTSH", "PCLT", "VDMX",
+    "vhea", "vmtx", "BASE", "GDEF", "GPOS", "GSUB", "EBSC", "JSTF", "MATH",
+    "CBDT", "CBLC", "COLR", "CPAL", "SVG ", "sbix", "acnt", "avar", "bdat",
+    "bloc", "bsln", "cvar", "fdsc", "feat", "fmtx", "fvar", "gvar", "hsty",
+    "just", "lcar", "mort", "morx", "opbd", "prop", "trak", "Zapf", "Silf",
+    "Glat", "Gloc", "Feat", "Sill"}; // WOFF2 table tags by number, 0 to 62
+  static final int MAX_TABLE = 0x1000000; // largest table we expand (16 MB)
+  static final int MAX_WOFF2 = 0x4000000; // largest WOFF2 file we read (64 MB)
+  static final long WOFF = 0x774F4646L; // "wOFF" signature for WOFF files
+  static final long WOFF2 = 0x774F4632L; // "wOF2" signature for WOFF2 files
+
+  /* is there a Brotli decoder for WOFF2 files? */
+
+  static boolean brotliAvailable()
+  {
+    try
+    {
+      Class.forName(BROTLI_CLASS);
+      return(true);
+    }
+    catch (ClassNotFoundException cnfe) { return(false); }
+    catch (LinkageError le) { return(false); }
+  }
+
+  /* build a font file in memory from the tables that we expanded */
+
+  static byte[] build(
+    long[] flavors,               // signature for each font's Offset Table
+    int[][] fonts,                // table numbers used by each font
+    String[] tags,                // tag for each table in WOFF directory
+    byte[][] tables,              // expanded data for each table, or null
+    boolean collection)           // true if we build a TrueType collection
+    throws IOException
+  {
+    int f, i, size;               // index variables, size of result
+    int[] where;                  // offset of each table in result
+
+    size = collection ? (12 + (4 * fonts.length)) : 0; // TTC header
+    for (f = 0; f < fonts.length; f ++)
+      size += 12 + (16 * fonts[f].length); // each Offset Table
+    where = new int[tables.length];
+    for (i = 0; i < tables.length; i ++)
+    {
+      where[i] = size;            // tables follow the Offset Tables
+      if (tables[i] != null)      // and are aligned on four bytes
+        size += (tables[i].length + 3) & ~3;
+    }
+
+    ByteBuffer result = ByteBuffer.allocate(size); // big-endian by default
+    if (collection)
+    {
+      result.putInt(0x74746366);  // "ttcf" for TrueType collection
+      result.putInt(0x00010000);  // version 1.0, no digital signature
+      result.putInt(fonts.length);
+      result.position(12 + (4 * fonts.length)); // offsets filled in below
+    }
+    for (f = 0; f < fonts.length; f ++)
+    {
+      if (collection)             // location of this font's Offset Table
+        result.putInt((12 + (4 * f)), result.position());
+      result.putInt((int) flavors[f]);
+      result.putShort((short) fonts[f].length);
+      result.putShort((short) 0).putShort((short) 0).putShort((short) 0);
+                                  // search ranges aren't used by us
+      for (i = 0; i < fonts[f].length; i ++)
+      {
+        int table = fonts[f][i];  // table number in WOFF directory
+        result.put(tags[table].getBytes("ISO-8859-1"));
+        result.putInt(0);         // no checksum
+        result.putInt((tables[table] == null) ? 0 : where[table]);
+        result.putInt((tables[table] == null) ? 0 : tables[table].length);
+      }
+    }
+    for (i = 0; i < tables.length; i ++)
+    {
+      if (tables[i] != null)
+      {
+        result.position(where[i]);
+        result.put(tables[i]);
+      }
+    }
+    return(result.array());
+  }
+
+  /* expand the wanted tables from a WOFF or WOFF2 file */
+
+  static byte[] extract(
+    FontRedate3Input input,       // WOFF or WOFF2 file opened for reading
+    long fileSize,                // size of file in bytes
+    String[] wanted)              // tags of tables that caller wants
+    throws IOException
+  {
+    try
+    {
+      if (fileSize < 48)          // need this many bytes for either header
+        return(null);
+      ByteBuffer header = ByteBuffer.wrap(readAt(input, 0, 48));
+      if ((((long) header.getInt(0)) & 0xFFFFFFFFL) == WOFF)
+        return(extractWoff(input, fileSize, header, wanted));
+      else if (fileSize > MAX_WOFF2) // don't run out of memory for one font
+        return(null);
+      else
+        return(extractWoff2(readAt(input, 0, (int) fileSize), wanted));
+    }
+    catch (BufferUnderflowException bue) { return(null); }
+    catch (DataFormatException dfe) { return(null); }
+  }
+
+  /* WOFF: inflate each wanted table separately */
+
+  static byte[] extractWoff(
+    FontRedate3Input input,       // WOFF file opened for reading
+    long fileSize,                // size of file in bytes
+    ByteBuffer header,            // first 48 bytes of file
+    String[] wanted)              // tags of tables that caller wants
+    throws DataFormatException, IOException
+  {
+    int numTables = header.getShort(12) & 0xFFFF; // entries in directory
+    if ((numTables < 1) || (fileSize < (44 + (20 * numTables))))
+      return(null);
+    ByteBuffer directory = ByteBuffer.wrap(readAt(input, 44,
+      (20 * numTables)));
+    int[] font = new int[numTables]; // one font using every table
+    String[] tags = new String[numTables];
+    byte[][] tables = new byte[numTables][];
+    for (int i = 0; i < numTables; i ++)
+    {
+      font[i] = i;
+      tags[i] = tagText(directory.getInt(20 * i));
+      if (wants(wanted, tags[i]) == false)
+        continue;                 // don't expand tables we don't want
+      long offset = ((long) directory.getInt((20 * i) + 4)) & 0xFFFFFFFFL;
+      long compLength = ((long) directory.getInt((20 * i) + 8)) & 0xFFFFFFFFL;
+      long origLength = ((long) directory.getInt((20 * i) + 12))
+        & 0xFFFFFFFFL;
+      if ((origLength > MAX_TABLE) || (compLength > origLength)
+        || ((offset + compLength) > fileSize))
+      {
+        return(null);             // table directory is damaged
+      }
+      tables[i] = readAt(input, offset, (int) compLength);
+      if (compLength < origLength) // same length means not compressed
+      {
+        Inflater inflater = new Inflater(); // "zlib" format with header
+        inflater.setInput(tables[i]);
+        tables[i] = new byte[(int) origLength];
+        int length = inflater.inflate(tables[i]);
+        inflater.end();
+        if (length != origLength) // did we get exactly the original size?
+          return(null);
+      }
+    }
+    return(build(new long[] {((long) header.getInt(4)) & 0xFFFFFFFFL},
+      new int[][] {font}, tags, tables, false));
+  }
+
+  /* WOFF2: decode the Brotli stream as far as the last wanted table */
+
+  static byte[] extractWoff2(
+    byte[] file,                  // entire WOFF2 file in memory
+    String[] wanted)              // tags of tables that caller wants
+    throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(file); // big-endian by default
+    long flavor = ((long) buffer.getInt(4)) & 0xFFFFFFFFL;
+    int numTables = buffer.getShort(12) & 0xFFFF; // entries in directory
+    long compressed = ((long) buffer.getInt(20)) & 0xFFFFFFFFL;
+    if (numTables < 1)
+      return(null);
+
+    /* Table directory: one flag byte, maybe a tag, then variable-length
+    numbers for the original length and (if transformed) the stored length.
+    Tables are stored in directory order, with no padding.  Transformed tables
+    ("glyf", "loca", "hmtx") are never tables that we want. */
+
+    buffer.position(48);          // directory follows header
+    int last = -1;                // index of last table we want
+    long[] lengths = new long[numTables]; // bytes in decoded stream
+    String[] tags = new String[numTables];
+    boolean[] wantFlags = new boolean[numTables];
+    for (int i = 0; i < numTables; i ++)
+    {
+      int flags = buffer.get() & 0xFF;
+      tags[i] = ((flags & 0x3F) == 0x3F) ? tagText(buffer.getInt())
+        : KNOWN_TAGS[flags & 0x3F];
+      long origLength = readBase128(buffer);
+      int version = flags >> 6;   // transformation version
+      boolean transformed = (tags[i].equals("glyf") || tags[i].equals("loca"))
+        ? (version != 3) : (version != 0);
+      lengths[i] = transformed ? readBase128(buffer) : origLength;
+      if ((origLength < 0) || (lengths[i] < 0))
+        return(null);             // bad variable-length number
+      wantFlags[i] = (transformed == false) && wants(wanted, tags[i])
+        && (origLength <= MAX_TABLE);
+      if (wantFlags[i])
+        last = i;
+    }
+
+    /* Collection directory, if any: table numbers used by each font. */
+
+    int[][] fonts;                // table numbers used by each font
+    long[] flavors;               // signature for each font
+    if (flavor == 0x74746366L)    // "ttcf" for TrueType collection
+    {
+      buffer.getInt();            // skip TTC version
+      fonts = new int[read255UShort(buffer)][];
+      flavors = new long[fonts.length];
+      for (int f = 0; f < fonts.length; f ++)
+      {
+        fonts[f] = new int[read255UShort(buffer)];
+        flavors[f] = ((long) buffer.getInt()) & 0xFFFFFFFFL;
+        for (int i = 0; i < fonts[f].length; i ++)
+        {
+          fonts[f][i] = read255UShort(buffer);
+          if (fonts[f][i] >= numTables)
+            return(null);         // table number is out of range
+        }
+      }
+    }
+    else                          // one font using every table
+    {
+      fonts = new int[1][numTables];
+      flavors = new long[] {flavor};
+      for (int i = 0; i < numTables; i ++)
+        fonts[0][i] = i;
+    }
+    if ((buffer.position() + compressed) > file.length)
+      return(null);               // compressed data goes past end of file
+
+    /* Decode only as far as the end of the last table that we want. */
+
+    byte[][] tables = new byte[numTables][];
+    if (last >= 0)                // is there anything to decode?
+    {
+      InputStream stream;         // Brotli decoder for compressed data
+      try
+      {
+        stream = (InputStream) Class.forName(BROTLI_CLASS).getConstructor(
+          new Class[] {InputStream.class}).newInstance(new Object[] {
+          new ByteArrayInputStream(file, buffer.position(),
+          (int) compressed)});
+      }
+      catch (Exception e) { return(null); } // no decoder, or bad stream
+      DataInputStream data = new DataInputStream(stream);
+      try
+      {
+        for (int i = 0; i <= last; i ++)
+        {
+          if (wantFlags[i])       // read tables we want
+          {
+            tables[i] = new byte[(int) lengths[i]];
+            data.readFully(tables[i]);
+          }
+          else                    // skip tables we don't want
+          {
+            for (long skip = lengths[i]; skip > 0; )
+            {
+              int count = data.skipBytes((int) Math.min(skip, 0x10000));
+              if (count <= 0)     // end of stream before end of table
+                throw new EOFException();
+              skip -= count;
+            }
+          }
+        }
+      }
+      catch (IOException ioe) { return(null); } // bad compressed data
+      finally { data.close(); }
+    }
+    return(build(flavors, fonts, tags, tables, (flavor == 0x74746366L)));
+  }
+
+  /* read a 255UInt16 number from WOFF2 collection directory */
+
+  static int read255UShort(ByteBuffer buffer)
+  {
+    int code = buffer.get() & 0xFF;
+    if (code == 253)              // next two bytes are the value
+      return(buffer.getShort() & 0xFFFF);
+    else if (code == 254)         // second group of 253 values
+      return((buffer.get() & 0xFF) + 506);
+    else if (code == 255)         // first group of 253 values
+      return((buffer.get() & 0xFF) + 253);
+    return(code);                 // small values are only one byte
+  }
+
+  /* read bytes from any location in the file */
+
+  static byte[] readAt(
+    FontRedate3Input input,       // file or memory opened for reading
+    long offset,                  // starting byte position in file
+    int length)                   // number of bytes to read
+    throws IOException
+  {
+    byte[] result = new byte[length];
+    input.seek(offset);
+    input.readFully(result);
+    return(result);
+  }
+
+  /* read a UIntBase128 number from WOFF2 table directory, or -1 if bad */
+
+  static long readBase128(ByteBuffer buffer)
+  {
+    long result = 0;
+    for (int i = 0; i < 5; i ++)  // at most five bytes for 32 bits
+    {
+      int digit = buffer.get() & 0xFF;
+      if ((i == 0) && (digit == 0x80)) // leading zeros aren't allowed
+        return(-1);
+      result = (result << 7) | (digit & 0x7F);
+      if ((digit & 0x80) == 0)    // high bit clear on last byte
+        return((result > 0xFFFFFFFFL) ? -1 : result);
+    }
+    return(-1);                   // more than five bytes
+  }
+
+  /* convert a four-byte tag to a string */
+
+  static String tagText(int tag)
+  {
+    char[] result = new char[4];
+    for (int i = 0; i < 4; i ++)
+      result[i] = (char) ((tag >> (24 - (8 * i))) & 0xFF);
+    return(new String(result));
+  }
+
+  /* is this tag in the caller's list? */
+
+  static boolean wants(String[] wanted, String tag)
+  {
+    for (int i = 0; i < wanted.length; i ++)
+      if (wanted[i].equals(tag))
+        return(true);
+    return(false);
+  }
+
+} // end of FontRedate3Woff class
+
 /* Copyright (c) 2007 by Keith Fenske.  Released under GNU Public License. */
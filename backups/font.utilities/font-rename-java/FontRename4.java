@@ -82,6 +82,26 @@
   can be very slow when the output text area gets too big, which will happen if
   thousands of files are reported.
 
+  ZIP archives (*.ZIP files) are searched like folders, and the fonts inside
+  are read into memory without extracting the archive.  Files in an archive
+  can't be renamed, so the report only shows the names that they would get.
+
+  WOFF and WOFF2 web fonts (*.WOFF, *.WOFF2) keep their extensions when they
+  are renamed.  Only the "name" table is expanded, so a web font is read almost
+  as quickly as a plain TTF file.  WOFF2 files need a Brotli decoder, which
+  Java doesn't have; put the "org.brotli.dec" package (published by Google) on
+  the class path to rename them.
+
+  Large console runs can keep a journal of renamed files with the -j option.
+  Each file is written to the journal before and after it is renamed, so an
+  interrupted run can be continued with the -resume option (files already
+  renamed are not opened again), and any run can be reversed with the -undo
+  option, even if the program or the system stopped in the middle of a rename.
+  The journal has full path names, so -resume and -undo only work while the
+  fonts are in the same place: not after the folder is moved, renamed, or
+  mounted somewhere else.  An existing file that isn't a journal is never
+  changed by the -j or -resume options.
+
   Restrictions and Limitations
   ----------------------------
   A plain text file called "FontRename4.txt" is expected to be in the current
@@ -90,6 +110,14 @@
   to convert characters before files are renamed.  Please read comments in the
   file for further instructions.
 
+  More than one configuration file can be given with the -p option, such as the
+  "FontRename4-eng.txt" and "FontRename4-jpn.txt" files, to compare names for
+  different languages.  Each font file is read only once, and a name is chosen
+  for each profile (configuration file).  With the -o option, nothing is
+  renamed; the names are written as a "plan" with one column per profile, in a
+  tab-separated text file.  Any one column can later be applied with the -e
+  option, without reading the font files again.
+
   Not all font files are correctly structured.  Before reporting an error in
   this program, make sure that the error isn't in the font file.  Select the
   highest message level for more detailed information about a particular file
@@ -103,15 +131,22 @@
       The 2-character Hiragana sequence "Ryo" in Japanese would otherwise
       appear as "RiYo" when converted one character at a time to plain text.
       See the PlainText Java application for similar code.  KF, 2008-06-20.
+      (Done: a "convert" command may now have a sequence of U+ characters on
+      the left side, and the longest matching sequence is replaced.)
 */
 
 import java.awt.*;                // older Java GUI support
 import java.awt.event.*;          // older Java GUI event support
 import java.io.*;                 // standard I/O
+import java.nio.*;                // byte buffers for font tables
+import java.nio.channels.*;       // file channels for checksums
+import java.nio.charset.*;        // character set decoders and encoders
+import java.nio.file.*;           // watching folders for new files
 import java.text.*;               // number formatting
 import java.util.*;               // calendars, dates, lists, maps, vectors
+import java.util.concurrent.*;    // thread pools for parsing font files
 import java.util.regex.*;         // regular expressions
-import java.util.zip.*;           // CRC32 checksums
+import java.util.zip.*;           // CRC32 checksums, ZIP archives, WOFF
 import javax.swing.*;             // newer Java GUI support
 
 public class FontRename4
@@ -120,6 +155,7 @@ public class FontRename4
 
   static final long BIG_FILE_SIZE = 5 * 1024 * 1024; // "big" means over 5 MB
   static final int BUFFER_SIZE = 0x10000; // input buffer size in bytes (64 KB)
+  static final int CHECKSUM_CHUNK = 0x100000; // checksum read buffer (1 MB)
   static final String COPYRIGHT_NOTICE =
     "Copyright (c) 2009 by Keith Fenske.  Released under GNU Public License.";
   static final int[][] DEFAULT_ACCEPT = { // default name table entries
@@ -138,7 +174,14 @@ public class FontRename4
     "30"};                        // point sizes for text in output text area
   static final long INT_MASK = 0x00000000FFFFFFFFL;
                                   // logical mask for one int as long value
+  static final int ARCHIVE_BUDGET = 0x8000000; // archive bytes queued (128 MB)
+  static final int MAX_ARCHIVE = 0x4000000; // largest font in ZIP (64 MB)
+  static final int MAX_DIRECTORY = 12 + (16 * 299);
+                                  // biggest Offset Table that we accept
+  static final int MAX_NAME_SPAN = 0xFFFF + 0xFFFF + 0xFF;
+                                  // farthest string from start of "name" table
   static final int MIN_FRAME = 200; // minimum window height or width in pixels
+  static final int PIPELINE_DEPTH = 8; // queued files per parsing thread
   static final String PROGRAM_TITLE =
     "Change File Names for OpenType and TrueType Fonts - by: Keith Fenske";
   static final char REPLACE_CHAR = '-'; // replace illegal file name characters
@@ -148,23 +191,26 @@ public class FontRename4
   static final String SYSTEM_FONT = "Dialog"; // this font is always available
   static final int TIMER_DELAY = 700; // 0.700 seconds between status updates
   static final String UNICODE_BMP = "UTF-16"; // Basic Multilingual Plane
+  static final int WATCH_DELAY = 1000; // 1.000 seconds between watch checks
+  static final int WATCH_SETTLE = 3000; // 3.000 seconds unchanged before open
 
   /* class variables */
 
-  static String[] acceptCharset;  // character set names for <acceptEntries>
-  static int[][] acceptEntries;   // preferred order for name table entries
   static boolean allTypesFlag;    // true if we check all file name extensions
   static JButton cancelButton;    // graphical button for <cancelFlag>
   static boolean cancelFlag;      // our signal from user to stop processing
   static int changeCount;         // number of file names changed
   static boolean checksumFlag;    // true if we append CRC32 checksums to names
+  static ExecutorService checksumPool; // checksum threads for console, or null
   static boolean consoleFlag;     // true if running as a console application
-  static TreeMap convertMap;      // conversion map for file name characters
   static String dataFile;         // text file with configuration data
   static JButton exitButton;      // "Exit" button for ending this application
   static JFileChooser fileChooser; // asks for input and output file names
   static int fileCount;           // number of files found (any file type)
   static int folderCount;         // number of folders found
+  static FontRename4Journal journal; // record of renamed files, or <null>
+  static ThreadLocal checksumBuffer; // direct ByteBuffer for each thread
+  static ThreadLocal messageSink; // output lines held for committer, or null
   static javax.swing.filechooser.FileFilter fontFilter;
                                   // our shared file filter for fonts
   static String fontName;         // font name for text in output text area
@@ -182,15 +228,29 @@ public class FontRename4
   static File[] openFileList;     // list of files selected by user
   static Thread openFilesThread;  // separate thread for doOpenButton() method
   static JTextArea outputText;    // generated report if running as GUI
+  static ExecutorService pipelinePool; // parsing threads for console, or null
+  static String planFile;         // write names to this plan file, or <null>
+  static Writer planWriter;       // open <planFile> after profiles are loaded
+  static Vector profileFiles;     // configuration files from -p options
+  static FontRename4Profile[] profiles; // first profile is used for renaming
+  static Semaphore archiveBudget; // bytes for archive entries being parsed
+  static BlockingQueue pipelineQueue; // parsed files in order, or null
   static boolean readonlyFlag;    // true if we try to rename read-only files
   static JCheckBox recurseCheckbox; // graphical option for <recurseFlag>
   static boolean recurseFlag;     // true if we process folders and subfolders
   static JComboBox reportDialog;  // graphical option for <reportIndex>
   static int reportIndex;         // user's selection from <REPORT_CHOICES>
+  static HashSet resumeSet;       // paths renamed by an earlier run, or <null>
   static JButton saveButton;      // "Save" button for writing output text
   static JLabel statusDialog;     // status message during extended processing
   static String statusPending;    // will become <statusDialog> after delay
   static javax.swing.Timer statusTimer; // timer for updating status message
+  static int threadCount;         // number of threads for parsing font files
+  static boolean watchFlag;       // true if we watch folders for new files
+  static HashMap watchKeys;       // folders being watched, by watch key
+  static Vector watchList;        // folders to watch after other options
+  static HashMap watchRenamed;    // files that we renamed while watching
+  static WatchService watchService; // notifies us of new or changed files
 
 /*
   main() method
@@ -210,15 +270,12 @@ public class FontRename4
 
     /* Initialize variables used by both console and GUI applications. */
 
-    acceptCharset = DEFAULT_CHARSET; // default character set names
-    acceptEntries = DEFAULT_ACCEPT; // default name table entries
     allTypesFlag = false;         // by default, check only known file types
     buttonFont = null;            // by default, don't use customized font
     cancelFlag = false;           // don't cancel unless user complains
     changeCount = fileCount = folderCount = 0; // no files or folders found yet
     checksumFlag = false;         // by default, don't append checksum to names
     consoleFlag = false;          // assume no files or folders on command line
-    convertMap = new TreeMap();   // empty mapping for file name characters
     dataFile = DEFAULT_FILE;      // default file name for configuration data
     fontFilter = new FontRename4Filter(); // create our shared file filter
     fontName = "Verdana";         // preferred font name for output text area
@@ -226,12 +283,25 @@ public class FontRename4
     forcedName = null;            // by default, use internal names from file
     genericName = null;           // by default, do nothing if name not found
     hiddenFlag = false;           // by default, don't process hidden files
+    journal = null;               // by default, don't record renamed files
     maximizeFlag = false;         // by default, don't maximize our main window
+    checksumBuffer = new ThreadLocal(); // allocated on first checksum
+    messageSink = new ThreadLocal(); // all threads print directly for now
     mswinFlag = System.getProperty("os.name").startsWith("Windows");
+    planFile = null;              // by default, rename files instead of plan
+    planWriter = null;
+    profileFiles = new Vector();  // by default, only the -d configuration
+    profiles = new FontRename4Profile[] {new FontRename4Profile(DEFAULT_FILE,
+      DEFAULT_CHARSET, DEFAULT_ACCEPT, new FontRename4Convert())};
     readonlyFlag = false;         // by default, don't rename read-only files
     recurseFlag = false;          // by default, don't process subfolders
     reportIndex = 1;              // by default, show only successful changes
+    resumeSet = null;             // by default, open all font files
     statusPending = EMPTY_STATUS; // begin with no text for <statusDialog>
+    threadCount = 1;              // by default, parse one file at a time
+    watchFlag = false;            // by default, process folders only once
+    watchList = new Vector();     // no folders to watch yet
+    watchRenamed = null;          // not watching folders yet
     windowHeight = DEFAULT_HEIGHT; // default window position and size
     windowLeft = DEFAULT_LEFT;
     windowTop = DEFAULT_TOP;
@@ -286,6 +356,31 @@ public class FontRename4
       else if (word.startsWith("-d") || (mswinFlag && word.startsWith("/d")))
         dataFile = args[i].substring(2); // accept anything for data file name
 
+      else if (word.startsWith("-e") || (mswinFlag && word.startsWith("/e")))
+      {
+        /* Rename files according to a plan written earlier with -o option.
+        Like a file or folder name, this makes us a console application.  The
+        plan is applied now, so a -p option that chooses the column must come
+        first; otherwise it would be quietly ignored for this plan. */
+
+        if (profileFiles.size() == 0) // no profile yet, is one coming later?
+        {
+          for (int k = i + 1; k < args.length; k ++)
+          {
+            String later = args[k].toLowerCase(); // same as <word>
+            if (later.startsWith("-p") || (mswinFlag && later.startsWith("/p")))
+            {
+              System.err.println("The -p option must come before -e option: "
+                + args[i]);
+              showHelp();         // show help summary
+              System.exit(-1);    // exit application after printing help
+            }
+          }
+        }
+        consoleFlag = true;       // don't allow GUI methods to be called
+        applyPlan(args[i].substring(2)); // rename from one column in plan
+      }
+
       else if (word.startsWith("-f") || (mswinFlag && word.startsWith("/f")))
       {
         /* The user wants to rename all files with a given string followed by
@@ -328,6 +423,9 @@ public class FontRename4
       else if (word.equals("-h0") || (mswinFlag && word.equals("/h0")))
         hiddenFlag = false;       // ignore hidden files or subfolders
 
+      else if (word.startsWith("-j") || (mswinFlag && word.startsWith("/j")))
+        openJournal(args[i].substring(2), false); // record renamed files
+
       else if (word.startsWith("-m") || (mswinFlag && word.startsWith("/m")))
       {
         /* This option is followed by an index into <REPORT_CHOICES> for the
@@ -350,6 +448,32 @@ public class FontRename4
         }
       }
 
+      else if (word.startsWith("-o") || (mswinFlag && word.startsWith("/o")))
+      {
+        /* Write a plan with the names chosen by each profile, instead of
+        renaming files.  The file is created when profiles are loaded. */
+
+        planFile = args[i].substring(2); // accept anything for plan file name
+        if (planFile.length() == 0) // did the user give us a file name?
+        {
+          System.err.println("Missing plan file name: " + args[i]);
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
+      else if (word.startsWith("-p") || (mswinFlag && word.startsWith("/p")))
+        profileFiles.add(args[i].substring(2)); // one more configuration file
+
+      else if (word.startsWith("-resume")
+        || (mswinFlag && word.startsWith("/resume")))
+      {
+        /* Continue an interrupted run.  Files already renamed according to the
+        journal are skipped, and new renames are added to the same journal. */
+
+        openJournal(args[i].substring(7), true); // read and append to journal
+      }
+
       else if (word.equals("-r") || (mswinFlag && word.equals("/r"))
         || word.equals("-r1") || (mswinFlag && word.equals("/r1")))
       {
@@ -366,6 +490,38 @@ public class FontRename4
       else if (word.equals("-s0") || (mswinFlag && word.equals("/s0")))
         recurseFlag = false;      // stop doing subfolders
 
+      else if (word.startsWith("-t") || (mswinFlag && word.startsWith("/t")))
+      {
+        /* This option is followed by the number of threads that parse font
+        files when running as a console application with subfolders. */
+
+        try                       // try to parse remainder as unsigned integer
+        {
+          threadCount = Integer.parseInt(word.substring(2));
+        }
+        catch (NumberFormatException nfe) // if not a number or bad syntax
+        {
+          threadCount = -1;       // set result to an illegal value
+        }
+        if ((threadCount < 1) || (threadCount > 99))
+        {
+          System.err.println("Number of threads must be from 1 to 99: "
+            + args[i]);           // notify user of our arbitrary limits
+          showHelp();             // show help summary
+          System.exit(-1);        // exit application after printing help
+        }
+      }
+
+      else if (word.startsWith("-undo")
+        || (mswinFlag && word.startsWith("/undo")))
+      {
+        /* Reverse the renames in a journal from an earlier run.  Like a file or
+        folder name, this makes us a console application. */
+
+        consoleFlag = true;       // don't allow GUI methods to be called
+        undoJournal(args[i].substring(5)); // rename files back, newest first
+      }
+
       else if (word.startsWith("-u") || (mswinFlag && word.startsWith("/u")))
       {
         /* This option is followed by a font point size that will be used for
@@ -392,6 +548,14 @@ public class FontRename4
         fontSize = size;          // use same point size for output text font
       }
 
+      else if (word.equals("-watch") || (mswinFlag && word.equals("/watch"))
+        || word.equals("-watch1") || (mswinFlag && word.equals("/watch1")))
+      {
+        watchFlag = true;         // watch later folders instead of processing
+      }
+      else if (word.equals("-watch0") || (mswinFlag && word.equals("/watch0")))
+        watchFlag = false;        // process later folders once, as usual
+
       else if (word.startsWith("-w") || (mswinFlag && word.startsWith("/w")))
       {
         /* This option is followed by a list of four numbers for the initial
@@ -437,7 +601,12 @@ public class FontRename4
           consoleFlag = true;     // don't allow GUI methods to be called
           loadConfig();           // load configuration data file if available
         }
-        processFileOrFolder(new File(args[i]));
+        if (watchFlag)            // watch this folder for new files?
+          watchList.add(new File(args[i])); // yes, after all other options
+        else if (recurseFlag && (threadCount > 1)) // parse files in parallel?
+          processPipeline(new File(args[i])); // yes, with multiple threads
+        else
+          processFileOrFolder(new File(args[i])); // no, one file at a time
       }
     }
 
@@ -445,11 +614,25 @@ public class FontRename4
     and/or changed.  Exit to the system with an integer status that has the
     number of files whose names were successfully changed. */
 
+    if (watchList.size() > 0)     // are there folders to watch?
+      watchFolders();             // returns only if no folders left to watch
+    if (planWriter != null)       // finish writing the plan file
+    {
+      try { planWriter.close(); }
+      catch (IOException ioe)
+      {
+        System.err.println("Can't write plan file: " + planFile + " ("
+          + ioe.getMessage() + ")");
+      }
+    }
+
     if (consoleFlag)              // was at least one file/folder given?
     {
       printAlways("Found " + prettyPlural(fileCount, "file") + " and "
         + prettyPlural(folderCount, "folder") + " with "
         + prettyPlural(changeCount, "change") + ".");
+      if (journal != null)        // force last records in journal to disk
+        journal.close();
       System.exit(changeCount);   // exit from application with status
     }
 
@@ -648,6 +831,99 @@ public class FontRename4
 
 // ------------------------------------------------------------------------- //
 
+/*
+  applyPlan() method
+
+  Rename files according to a plan file written earlier with the -o option.  We
+  use the column for the first profile given with a -p option, or else the first
+  column of names.  Font files are not opened again, so the plan should be used
+  soon after it was written.  Numeric suffixes for duplicate names are chosen
+  now, as files are renamed, and not when the plan was written.
+*/
+  static void applyPlan(String fileName)
+  {
+    int column;                   // index of chosen profile in each line
+    String[] fields;              // tab-separated fields from one line
+    File givenFile;               // file that we are to rename
+    int i;                        // index variable
+    BufferedReader inputFile;     // input character stream from plan file
+    FontRename4Job job;           // file with name from plan
+    String label;                 // column name for chosen profile
+    String newName;               // new name from plan, with file type
+    String text;                  // one input line from plan file
+
+    if (fileName.length() == 0)   // did the user give us a file name?
+    {
+      System.err.println("Missing plan file name after -e option");
+      showHelp();                 // show help summary
+      System.exit(-1);            // exit application after printing help
+    }
+
+    try                           // catch I/O errors in plan file
+    {
+      inputFile = new BufferedReader(new InputStreamReader(new
+        FileInputStream(fileName), "UTF-8")); // UTF-8 encoded text file
+      text = inputFile.readLine(); // header line with profile names
+      fields = (text == null) ? new String[0] : text.split("\t", -1);
+      column = (fields.length > 1) ? 1 : -1; // default is first profile
+      if (profileFiles.size() > 0) // did the user choose a profile?
+      {
+        label = FontRename4Profile.labelFor((String) profileFiles.get(0));
+        column = -1;              // assume failure, mark as invalid
+        for (i = 1; i < fields.length; i ++)
+        {
+          if (FontRename4Journal.unescape(fields[i]).equals(label))
+          {
+            column = i;           // found the profile's column
+            break;                // exit early from <for> loop
+          }
+        }
+      }
+      if (column < 0)             // is there a column that we can use?
+      {
+        inputFile.close();        // try to close input file
+        printAlways(fileName + " - no matching profile in plan file");
+        return;                   // nothing was renamed
+      }
+
+      while ((text = inputFile.readLine()) != null)
+      {
+        if (cancelFlag) break;    // stop if journal fails, etc
+        fields = text.split("\t", -1); // file, then one name per profile
+        if (fields.length <= column) // is this line complete?
+          continue;               // no, ignore it
+        fileCount ++;             // found one more file to rename
+        givenFile = new File(FontRename4Journal.unescape(fields[0]));
+        if (givenFile.isFile() == false) // is the file still there?
+        {
+          printFailure(givenFile.getPath() + " - not a file");
+          continue;               // next step in <while> loop
+        }
+
+        /* Let the same code rename the file as after parsing the file, with
+        the name and file type from the plan. */
+
+        job = new FontRename4Job(givenFile, givenFile.getName());
+        newName = FontRename4Journal.unescape(fields[column]);
+        i = newName.lastIndexOf('.'); // name and type are separated by a dot
+        if (i > 0)                // empty name means profile found no name
+        {
+          job.fileType = newName.substring(i + 1);
+          job.nameFound = newName.substring(0, i);
+        }
+        job.ready = true;         // safe to rename, or report failure
+        renameTrueType(job);      // rename file, print result, count
+      }
+      inputFile.close();          // try to close input file
+    }
+    catch (IOException ioe)       // file doesn't exist, permissions, etc
+    {
+      printAlways(fileName + " - can't read plan file (" + ioe.getMessage()
+        + ")");
+    }
+  } // end of applyPlan() method
+
+
 /*
   calculateChecksum() method
 
@@ -658,16 +934,20 @@ public class FontRename4
   Reading the input one byte at a time is a very slow way to calculate the
   checksum: about one second per megabyte on an Intel Pentium 4 at 3 GHz.
   Reading the input in a large byte buffer, and passing this buffer to the
-  message digest, is over 30 times faster.
+  message digest, is over 30 times faster.  Reading through the file channel
+  into a direct buffer saves one more copy, and each thread keeps its buffer
+  for the next file.  We don't map files into memory: Java unmaps only during
+  garbage collection, so mappings would pile up over a big folder tree, and
+  Windows won't rename a file while any part of it is still mapped.
 */
   static String calculateChecksum(File givenFile)
   {
-    byte[] buffer;                // input buffer for reading file
+    ByteBuffer buffer;            // next bytes read from file
+    FileChannel channel;          // input file channel
     CRC32 crcDigest;              // object for calculating CRC32 checksum
     String filePath;              // name of caller's file, including path
     long fileSize;                // size of caller's file in bytes
-    int i;                        // index variable
-    FileInputStream inStream;     // input file stream
+    FileInputStream inStream;     // input file stream, or <null>
     String result;                // our result (the checksum as a string)
     long sizeDone;                // how much of <fileSize> has been finished
     String sizeText;              // pre-formatted portion of size message
@@ -686,27 +966,39 @@ public class FontRename4
       setStatusMessage("Checksum " + formatComma.format(fileSize)
         + " bytes for " + filePath);
 
+    buffer = (ByteBuffer) checksumBuffer.get(); // same buffer for each file
+    if (buffer == null)           // first checksum in this thread?
+    {
+      buffer = ByteBuffer.allocateDirect(CHECKSUM_CHUNK);
+      checksumBuffer.set(buffer);
+    }
+    inStream = null;              // file isn't open yet
+
     try
     {
-      buffer = new byte[BUFFER_SIZE]; // allocate bigger, faster input buffer
       crcDigest = new CRC32();    // allocate, initialize CRC32 checksum object
       inStream = new FileInputStream(givenFile); // open file for reading bytes
-      while ((i = inStream.read(buffer, 0, BUFFER_SIZE)) > 0)
+      channel = inStream.getChannel(); // for reading into direct buffer
+      fileSize = channel.size();  // size may have changed since we asked
+      while (sizeDone < fileSize)
       {
         /* The user may cancel our processing if this is a very big file.  We
         must always return a String result, even when things go wrong. */
 
         if (cancelFlag)           // stop if user hit the panic button
         {
-          inStream.close();       // try to close input file early
           printDebug(filePath + " - CRC32 calculation cancelled by user");
           return(result);         // give caller default checksum
         }
 
-        /* Update the checksum calculation with the new data. */
+        /* Update the checksum calculation with the next chunk of data. */
 
-        crcDigest.update(buffer, 0, i); // update checksum with input bytes
-        sizeDone += i;            // add to number of bytes finished
+        buffer.clear();           // empty buffer from previous read or file
+        if (channel.read(buffer, sizeDone) <= 0) // file got shorter?
+          break;                  // exit early from <while> loop
+        buffer.flip();            // prepare to use what we just read
+        sizeDone += buffer.remaining(); // add to number of bytes finished
+        crcDigest.update(buffer); // update checksum with input bytes
 
         /* Update the GUI status if this is a big file. */
 
@@ -721,7 +1013,6 @@ public class FontRename4
           setStatusMessage("Checksum " + formatMegabytes(sizeDone) + sizeText);
         }
       }
-      inStream.close();           // try to close input file
       result = "00000000" + Long.toHexString(crcDigest.getValue());
       result = result.substring(result.length() - 8); // force 8 hex digits
     }
@@ -730,13 +1021,374 @@ public class FontRename4
       printDebug(filePath + " - file I/O error: " + ioe.getMessage());
       return(result);             // give caller default checksum
     }
+    finally                       // always close file before it's renamed
+    {
+      if (inStream != null)
+      {
+        try { inStream.close(); }
+        catch (IOException ioe) { /* do nothing */ }
+      }
+    }
 
-    printDebug(filePath + " - size " + formatComma.format(fileSize)
-      + " checksum " + result);
+    synchronized (formatComma)    // may be called from parsing threads
+    {
+      printDebug(filePath + " - size " + formatComma.format(fileSize)
+        + " checksum " + result);
+    }
     return(result);               // return calculated CRC32 checksum to caller
 
   } // end of calculateChecksum() method
 
+  static String calculateChecksum(byte[] data) // font from archive in memory
+  {
+    CRC32 crcDigest = new CRC32(); // allocate, initialize CRC32 checksum
+    crcDigest.update(data);       // all bytes are already in memory
+    String result = "00000000" + Long.toHexString(crcDigest.getValue());
+    return(result.substring(result.length() - 8)); // force 8 hex digits
+  }
+
+
+/*
+  chooseName() method
+
+  Search the "name" table of a font file for the best name, according to one
+  profile's "accept" list, and convert characters in the name according to the
+  same profile's "convert" commands.  The name table has already been buffered
+  and checked by parseTrueType().  Decoded name strings are kept in an array
+  from the caller, so that more than one profile can share the work of decoding
+  each name.  We return <null> if no acceptable name is found.
+*/
+  static String chooseName(
+    String filePath,              // name of caller's file, for messages only
+    long fileSize,                // size of caller's file in bytes
+    ByteBuffer names,             // buffered "name" table with all strings
+    long nameTable,               // location of "name" table in file
+    FontRename4Profile profile,   // "accept" and "convert" commands to use
+    String[] decoded,             // name strings, <null> if not decoded yet
+    boolean debug)                // true if we build debugging messages
+    throws IOException
+  {
+    String[] acceptCharset;       // character set names for <acceptEntries>
+    int[][] acceptEntries;        // preferred order for name table entries
+    int acceptIndex;              // current name table entry in "accept" list
+    int[] candidates;             // "accept" entries for one name table entry
+    int fileIndex;                // current name table entry from font file
+    int k;                        // index variable
+    String nameFound;             // our best choice for a name string
+    int numNames;                 // number of entries in "name" table
+    long stringOffset;            // start of strings, relative to <nameTable>
+
+    acceptCharset = profile.acceptCharset; // "accept" list for this profile
+    acceptEntries = profile.acceptEntries;
+    nameFound = null;             // assume failure, mark as invalid
+    numNames = names.getShort(2) & 0xFFFF; // already checked by caller
+    stringOffset = names.getShort(4) & 0xFFFF; // from <nameTable>
+
+    /* Initialize values for the best name table entry found so far,
+    where smaller index numbers are better.  The default "best" is one
+    more than the last legal index. */
+
+    int bestAccept = acceptEntries.length; // best is 0, then 1, etc
+    int bestEntryEncoding = -1;   // ID from name table entry
+    int bestEntryLanguage = -1;   // ID from name table entry
+    int bestEntryName = -1;       // ID from name table entry (usually 4)
+    int bestEntryPlatform = -1;   // ID from name table entry
+
+    /* Compare each name table entry with our desired names. */
+
+    for (fileIndex = 0; fileIndex < numNames; fileIndex ++)
+    {
+      /* Read the numbers for one name table entry.  All are unsigned
+      short integers, and have non-negative values. */
+
+      int record = 6 + (12 * fileIndex); // start of this entry
+      int entryPlatformID = names.getShort(record) & 0xFFFF;
+      int entryEncodingID = names.getShort(record + 2) & 0xFFFF;
+      int entryLanguageID = names.getShort(record + 4) & 0xFFFF;
+      int entryNameID = names.getShort(record + 6) & 0xFFFF;
+      int entryLength = names.getShort(record + 8) & 0xFFFF;
+      int entryOffset = names.getShort(record + 10) & 0xFFFF;
+
+      /* Check entries in our "accept" list until we find an entry that
+      matches, or we exhaust the list.  We limit our search to indexes
+      better (smaller) than our current best.  Instead of comparing
+      against the whole list, we look up only those entries with the
+      same platform ID and name ID, already in order. */
+
+      String name = decoded[fileIndex]; // null if not decoded yet
+      candidates = profile.acceptList.lookup(entryPlatformID, entryNameID);
+      for (k = 0; k < candidates.length; k ++)
+      {
+        acceptIndex = candidates[k]; // next "accept" entry in order
+        if (acceptIndex >= bestAccept) // is this better than our best?
+          break;                  // no, and nothing after this will be better
+
+        /* Do the ID numbers match for these name table entries?  The
+        platform and name IDs always match, from our lookup. */
+
+        if (((acceptEntries[acceptIndex][1] >= 0)
+          && (entryEncodingID != acceptEntries[acceptIndex][1]))
+        || ((acceptEntries[acceptIndex][2] >= 0)
+          && (entryLanguageID != acceptEntries[acceptIndex][2])))
+        {
+          continue;               // no, next step in <for acceptIndex> loop
+        }
+        if (debug)
+          printDebug(filePath + " - comparing (" + entryPlatformID
+            + ", " + entryEncodingID + ", " + entryLanguageID + ", "
+            + entryNameID + ") against table ("
+            + acceptEntries[acceptIndex][0] + ", "
+            + acceptEntries[acceptIndex][1] + ", "
+            + acceptEntries[acceptIndex][2] + ", "
+            + acceptEntries[acceptIndex][3]
+            + ((acceptCharset[acceptIndex] == null) ? ")" :
+              (") " + acceptCharset[acceptIndex])));
+
+        /* The entry IDs match, but the optional character set may not.
+        Only decode the name bytes once from the file. */
+
+        if (name == null)         // do we need to decode the name bytes?
+        {
+          decoded[fileIndex] = ""; // don't try again if this fails
+          /* For this name table entry, determine the character set. */
+
+          String charset = null;  // assume failure, mark as invalid
+
+          /* Generic Unicode platform.  Officially, this platform is
+          not to be used for name tables, but we have found a few fonts
+          that only have generic Unicode names (apparently an attempt
+          to prevent them from being used on some operating systems).
+          The encoding and language are completely unreliable and are
+          ignored. */
+
+          if (entryPlatformID == 0)
+          {
+            charset = UNICODE_BMP; // assume standard 16-bit Unicode
+          }
+
+          /* Apple Macintosh platform.  There are many more encodings
+          than for Windows, and some encodings may also depend on the
+          language.  We only do encodings where Java has a matching
+          conversion table.  There are enough badly-encoded Macintosh
+          font names without us guessing with incorrect tables! */
+
+          else if (entryPlatformID == 1)
+          {
+            switch (entryEncodingID)
+            {
+              case (0): charset = "MacRoman"; break; // Latin/Roman
+              case (1): charset = "Shift_JIS"; break; // Japanese
+              case (2): charset = "Big5"; break; // Trad. Chinese
+              case (3): charset = "EUC-KR"; break; // Korean
+              case (4): charset = "MacArabic"; break; // Arabic
+              case (5): charset = "MacHebrew"; break; // Hebrew
+              case (6): charset = "MacGreek"; break; // Greek
+              case (7): charset = "MacCyrillic"; break; // Russian
+//            case (8): charset = "unknown"; break; // RSymbol
+//            case (9): charset = "unknown"; break; // Devanagari
+//            case (10): charset = "unknown"; break; // Gurmukhi
+//            case (11): charset = "unknown"; break; // Gujarati
+//            case (12): charset = "unknown"; break; // Oriya
+//            case (13): charset = "unknown"; break; // Bengali
+//            case (14): charset = "unknown"; break; // Tamil
+//            case (15): charset = "unknown"; break; // Telugu
+//            case (16): charset = "unknown"; break; // Kannada
+//            case (17): charset = "unknown"; break; // Malayalam
+//            case (18): charset = "unknown"; break; // Sinhalese
+//            case (19): charset = "unknown"; break; // Burmese
+//            case (20): charset = "unknown"; break; // Khmer
+              case (21): charset = "MacThai"; break; // Thai
+//            case (22): charset = "unknown"; break; // Laotian
+//            case (23): charset = "unknown"; break; // Georgian
+//            case (24): charset = "unknown"; break; // Armenian
+              case (25): charset = "GBK"; break; // Simp. Chinese
+//            case (26): charset = "unknown"; break; // Tibetan
+//            case (27): charset = "unknown"; break; // Mongolian
+//            case (28): charset = "unknown"; break; // Geez
+//            case (29): charset = "unknown"; break; // Slavic
+//            case (30): charset = "unknown"; break; // Vietnamese
+//            case (31): charset = "unknown"; break; // Sindhi
+              default: /* do nothing */ break;
+            }
+          } // end of Macintosh platform ID
+
+          /* Microsoft Windows platform.  Almost all Microsoft fonts
+          have standard 16-bit Unicode name tables, but may also have
+          special encodings for Chinese, Japanese, or Korean.  Extended
+          Unicode (24-bit) names can't be properly handled by this Java
+          version 1.4. */
+
+          else if (entryPlatformID == 3)
+          {
+            switch (entryEncodingID)
+            {
+              case (0): charset = UNICODE_BMP; break; // symbol (16-bit Unicode)
+              case (1): charset = UNICODE_BMP; break; // regular 16-bit Unicode
+              case (2): charset = "Shift_JIS"; break; // Japanese Shift-JIS
+              case (3): charset = "GBK"; break; // Simplified Chinese (China)
+              case (4): charset = "Big5"; break; // Traditional Chinese (Taiwan)
+              case (5): charset = "EUC-KR"; break; // Korean Wansung
+              case (6): charset = "x-Johab"; break; // Korean Johab
+              case (10): charset = UNICODE_BMP; break; // extended Unicode
+              default: /* do nothing */ break;
+            }
+          } // end of Microsoft platform ID
+
+          /* Ignore all other platform IDs. */
+
+          /* Stop looking at this name table entry from the font file
+          if we don't know what the correct character set is. */
+
+          if (charset == null)    // is it safe to decode this name?
+          {
+            if (debug)
+              printDebug(filePath + " - no character set for entry ("
+                + entryPlatformID + ", " + entryEncodingID + ", "
+                + entryLanguageID + ", " + entryNameID + ")");
+            break;                // exit early from <for acceptIndex> loop
+          }
+
+          /* Can we can read file data for this name table entry? */
+
+          if ((entryLength < 1) || (entryLength > 255) || (fileSize
+            < (nameTable + stringOffset + entryOffset + entryLength)))
+          {
+            if (debug)
+              printDebug(filePath + " - bad length 0x"
+                + Integer.toHexString(entryLength) + " or offset 0x"
+                + Integer.toHexString(entryOffset) + " for entry ("
+                + entryPlatformID + ", " + entryEncodingID + ", "
+                + entryLanguageID + ", " + entryNameID + ")");
+            break;                // exit early from <for acceptIndex> loop
+          }
+
+          /* The raw (encoded) data bytes for the name string are
+          already in our buffer.  Show the name table entry with string
+          data in hex. */
+
+          int start = names.arrayOffset() + (int) stringOffset
+            + entryOffset;        // where name string begins in byte array
+          if (debug)
+            printDebug(filePath + " - name entry (" + entryPlatformID
+              + ", " + entryEncodingID + ", " + entryLanguageID + ", "
+              + entryNameID + ") " + charset + " 0x"
+              + formatHexBytes(names.array(), start, entryLength));
+
+          /* Philip L. Engel has observed that some East Asian font
+          vendors (Chinese, Japanese, Korean) insert extra null bytes
+          in name strings, perhaps to make each character 16 bits long,
+          whether it normally appears as a single byte or in a double-
+          byte shifting pair.  These are removed while decoding.  Then
+          decode the name string, if there's anything left. */
+
+          try                     // catch invalid character set names
+          {
+            name = FontRename4Charsets.decode(charset, names.array(),
+              start, entryLength, (charset.equals(UNICODE_BMP)
+              == false));         // remove nulls if not Unicode
+            decoded[fileIndex] = name; // for other profiles
+            if (debug)
+              printDebug(filePath + " - decoded font name is <" + name
+                + ">");
+          }
+          catch (UnsupportedEncodingException uee)
+          {
+            if (debug)
+              printDebug(filePath + " - encoding <" + charset
+                + "> not supported on this computer");
+          }
+        } // end of "name is null"
+
+        if ((name == null) || (name.length() == 0)) // any usable name?
+          break;                  // exit early from <for acceptIndex> loop
+
+        /* If the user gave us a character set name for this name table
+        entry, accept the name only it can be encoded correctly in that
+        character set.  Many Asian fonts have local names incorrectly
+        encoded as "MacRoman English" or "Windows 1033 English".  We
+        should be safe from <UnsupportedEncodingException> because we
+        previously checked all character set names when they were read
+        from the configuration file.  If not, they will be caught by
+        our general <IOException> handler. */
+
+        if (acceptCharset[acceptIndex] == null)
+        {
+          /* User didn't specify a character set.  Do nothing. */
+        }
+        else if (FontRename4Charsets.canEncode(acceptCharset
+          [acceptIndex], name))   // can name be written in charset?
+        {
+          if (debug)
+            printDebug(filePath + " - name matches character set <"
+              + acceptCharset[acceptIndex] + ">");
+        }
+        else
+        {
+          if (debug)
+            printDebug(filePath + " - name not in character set <"
+              + acceptCharset[acceptIndex] + ">");
+          continue;               // no, next step in <for acceptIndex> loop
+        }
+
+        /* Keep this name table entry if it is better than anything we
+        have found so far.  The comparison of <acceptIndex> less than
+        <bestAccept> is not strictly necessary, since we are inside a
+        <for> loop that says exactly the same thing.  However, this
+        allows us to change the <for> loop to search all entries all
+        the time, and to report detailed information during the search.
+        The <break> statements would also need to be disabled for this
+        to happen. */
+
+        if (acceptIndex < bestAccept)
+        {
+          bestAccept = acceptIndex;
+          bestEntryEncoding = entryEncodingID;
+          bestEntryLanguage = entryLanguageID;
+          bestEntryName = entryNameID;
+          bestEntryPlatform = entryPlatformID;
+          nameFound = name;
+        }
+        if (bestAccept == 0) break; // stop looking, can't find better
+
+      } // end of <for acceptIndex> loop
+
+      if (bestAccept == 0) break; // stop looking, can't find better
+
+    } // end of <for fileIndex> loop
+
+    /* If we found a name, we may also want to convert (translate) some
+    of the characters. */
+
+    if (nameFound != null)        // did we find a name string that we like?
+    {
+      if (debug)
+        printDebug(filePath + " - using entry (" + bestEntryPlatform
+          + ", " + bestEntryEncoding + ", " + bestEntryLanguage + ", "
+          + bestEntryName + ") with name <" + nameFound + ">");
+
+      String replace = convertFilename(nameFound, profile.convertTable);
+      if (nameFound.equals(replace) == false) // is this different?
+      {
+        nameFound = replace;      // yes, use the modified string instead
+        if (debug)
+          printDebug(filePath + " - replacing some characters <"
+            + nameFound + ">");
+      }
+
+      replace = collapseString(nameFound); // remove extra spaces
+      if (nameFound.equals(replace) == false) // is this different?
+      {
+        nameFound = replace;      // yes, use the modified string instead
+        if (debug)
+          printDebug(filePath + " - removing extra spaces <" + nameFound
+            + ">");
+      }
+    }
+
+    return(nameFound);            // best name for this profile, or <null>
+
+  } // end of chooseName() method
+
 
 /*
   collapseString() method
@@ -781,9 +1433,10 @@ public class FontRename4
   convertFilename() method
 
   The caller gives us a string to be used as a file name.  We delete or replace
-  characters that we don't like, or that the user wants translated (converted).
+  characters that we don't like, or that the user wants translated (converted)
+  according to the caller's conversion table (from the profile being used).
 */
-  static String convertFilename(String input)
+  static String convertFilename(String input, FontRename4Convert convertTable)
   {
     StringBuffer buffer;          // faster than String for multiple appends
     char ch;                      // one character from input string
@@ -791,19 +1444,11 @@ public class FontRename4
     int length;                   // size of input string in characters
     String text;                  // caller's input after some manipulation
 
-    /* Convert (translate) characters, according to user's configuration. */
+    /* Convert (translate) characters, according to user's configuration.  A
+    sequence of characters may be converted as one unit. */
 
-    buffer = new StringBuffer();  // allocate empty string buffer for result
-    length = input.length();      // get size of input string in characters
-    for (i = 0; i < length; i ++)
-    {
-      ch = input.charAt(i);       // get one character from input string
-      text = (String) convertMap.get(new Integer(ch));
-      if (text == null)           // is there a translation for this character?
-        buffer.append(ch);        // no, use the original character
-      else
-        buffer.append(text);      // yes, use the character's translated string
-    }
+    buffer = new StringBuffer(input.length() * 2); // empty buffer for result
+    convertTable.convert(input, buffer); // longest matching sequences first
     text = buffer.toString();     // convert buffer back to normal string
 
     /* Remove or replace characters that are not allowed in file names.  Expand
@@ -844,6 +1489,61 @@ public class FontRename4
   }
 
 
+/*
+  doCommitRunner() method
+
+  This method is called inside a separate thread by the runnable interface of
+  our "committer" class when font files are parsed in parallel.  We take parsed
+  files from <pipelineQueue> in the same order as they were found, wait for
+  each file to finish parsing, print any messages that were held back, and then
+  rename the file.  Since only this thread renames files, and always in order,
+  the numeric suffixes for duplicate names are the same as if everything was
+  done one file at a time.  An unexpected exception for one file is reported as
+  a failure for that file, and we go on to the next file, because the walker
+  thread would wait forever on a full queue if this thread stopped.
+*/
+  static void doCommitRunner()
+  {
+    int i;                        // index variable
+    FontRename4Job job;           // next parsed file (or messages) in order
+
+    while (true)                  // until walker tells us that it's done
+    {
+      try { job = (FontRename4Job) pipelineQueue.take(); }
+      catch (InterruptedException ie) { break; } // should never happen
+      job.waitDone();             // wait for parsing thread to finish
+
+      if (job.messages != null)   // print messages held back by other threads
+      {
+        for (i = 0; i < job.messages.size(); i ++)
+          printAlways((String) job.messages.get(i));
+      }
+      try                         // keep going if this file has a problem
+      {
+        if (job.checksum != null) // is a checksum thread finishing the name?
+        {
+          String checksum;        // hexadecimal CRC32 checksum or "CRC32BAD"
+          try { checksum = (String) job.checksum.result.get(); }
+          catch (Exception e) { checksum = "CRC32BAD"; } // shouldn't happen
+          for (i = 0; i < job.checksum.messages.size(); i ++)
+            printAlways((String) job.checksum.messages.get(i));
+          job.setChecksum(checksum); // same as parseTrueType() would do
+        }
+        if (planWriter != null)   // are we writing a plan instead?
+          planTrueType(job);      // yes, add names to plan
+        else
+          renameTrueType(job);    // rename file if parsing was successful
+      }
+      catch (Throwable t)         // bug or out of memory, but not fatal here
+      {
+        printFailure(((job.givenFile == null) ? "" : (job.givenFile.getPath()
+          + " - ")) + "unexpected error: " + t);
+      }
+      if (job.last) break;        // exit from loop after last queued item
+    }
+  } // end of doCommitRunner() method
+
+
 /*
   doOpenButton() method
 
@@ -911,6 +1611,13 @@ public class FontRename4
     printAlways(("Found " + prettyPlural(fileCount, "file") + " and "
       + prettyPlural(folderCount, "folder") + " with "
       + prettyPlural(changeCount, "change") + "."), true);
+    if (journal != null)          // force last records in journal to disk
+      journal.sync();
+    if (planWriter != null)       // write everything so far to plan file
+    {
+      try { planWriter.flush(); }
+      catch (IOException ioe) { /* reported again when closing */ }
+    }
 
     /* We are done.  Turn off the "Cancel" button and allow the user to click
     the "Start" button again. */
@@ -923,6 +1630,30 @@ public class FontRename4
   } // end of doOpenRunner() method
 
 
+/*
+  doParseRunner() method
+
+  This method is called by one of the threads in <pipelinePool> to parse a font
+  file.  All output from this thread goes into the job's list of messages, for
+  the committer thread to print in the correct order.
+*/
+  static void doParseRunner(FontRename4Job job)
+  {
+    messageSink.set(job.messages); // hold back output for this file
+    try { parseTrueType(job); }   // open and read file, choose new name
+    finally
+    {
+      if ((job.givenBytes != null) && (job.givenBytes.length > 0))
+      {
+        archiveBudget.release(job.givenBytes.length); // done with memory
+        job.givenBytes = new byte[0]; // still marks file as from archive
+      }
+      messageSink.set(null);      // stop holding back output from this thread
+      job.setDone();              // tell committer that it can rename file
+    }
+  } // end of doParseRunner() method
+
+
 /*
   doSaveButton() method
 
@@ -998,9 +1729,18 @@ public class FontRename4
 /*
   formatHexBytes() method
 
-  Format a raw array of binary bytes as a hexadecimal string.
+  Format a raw array of binary bytes as a hexadecimal string.  We also accept
+  part of a bigger array.
 */
   static String formatHexBytes(byte[] raw)
+  {
+    return(formatHexBytes(raw, 0, raw.length));
+  }
+
+  static String formatHexBytes(
+    byte[] raw,                   // array with binary bytes
+    int offset,                   // index of first byte to format
+    int length)                   // number of bytes to format
   {
     StringBuffer buffer;          // faster than String for multiple appends
     final char[] hexDigits = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
@@ -1008,9 +1748,9 @@ public class FontRename4
     int i;                        // index variable
     int value;                    // one byte value from raw array
 
-    buffer = new StringBuffer(raw.length * 2);
+    buffer = new StringBuffer(length * 2);
                                   // allocate empty string buffer for result
-    for (i = 0; i < raw.length; i ++)
+    for (i = offset; i < (offset + length); i ++)
     {
       value = raw[i];             // get one byte value from raw array
       buffer.append(hexDigits[(value >> 4) & 0x0F]); // hex high-order nibble
@@ -1036,19 +1776,65 @@ public class FontRename4
 /*
   loadConfig() method
 
+  Load the profiles: the configuration files given with -p options, or else the
+  one configuration file from the -d option (or its default).  If we are writing
+  a plan, then create the plan file now, with one column for each profile.
+*/
+  static void loadConfig()
+  {
+    StringBuffer buffer;          // faster than String for multiple appends
+    int i;                        // index variable
+
+    if (profileFiles.size() == 0) // were there any -p options?
+      profiles = new FontRename4Profile[] {loadProfile(dataFile)};
+    else                          // yes, load each file as a profile
+    {
+      profiles = new FontRename4Profile[profileFiles.size()];
+      for (i = 0; i < profiles.length; i ++)
+        profiles[i] = loadProfile((String) profileFiles.get(i));
+    }
+
+    if ((planFile != null) && (planWriter == null)) // write plan, not open yet?
+    {
+      buffer = new StringBuffer(); // header line has names of profiles
+      buffer.append("file");      // first column is file to be renamed
+      for (i = 0; i < profiles.length; i ++)
+        buffer.append("\t" + FontRename4Journal.escape(profiles[i].label));
+      try
+      {
+        planWriter = new BufferedWriter(new OutputStreamWriter(new
+          FileOutputStream(planFile), "UTF-8")); // UTF-8 encoded text file
+        planWriter.write(buffer.toString() + "\n");
+      }
+      catch (IOException ioe)     // permissions, bad folder name, etc
+      {
+        System.err.println("Can't create plan file: " + planFile + " ("
+          + ioe.getMessage() + ")");
+        System.exit(-1);          // exit application, nothing was renamed
+      }
+    }
+  } // end of loadConfig() method
+
+
+/*
+  loadProfile() method
+
   Load configuration data from a text file in the current working directory,
   which is usually the same folder as the program's *.class files.  Should we
   encounter an error, then print a message, but continue normal execution.
   None of the file data is critical to the operation of this program.
 */
-  static void loadConfig()
+  static FontRename4Profile loadProfile(String dataFile)
   {
+    String[] acceptCharset;       // character set names for <acceptEntries>
+    int[][] acceptEntries;        // preferred order for name table entries
     Pattern acceptPattern;        // compiled regular expression
     Vector acceptVector;          // variable-sized for name table entries
     StringBuffer buffer;          // faster than String for multiple appends
     char ch;                      // one character from input line
     Vector charsetVector;         // variable-sized for character set names
     Pattern convertPattern;       // compiled regular expression
+    FontRename4Convert convertTable; // conversions for file name characters
     int i;                        // index variable
     BufferedReader inputFile;     // input character stream from text file
     int length;                   // size of a string in characters
@@ -1061,9 +1847,9 @@ public class FontRename4
     acceptVector = new Vector();  // empty vector for name table entries
     buffer = new StringBuffer();  // re-use same string buffer for each line
     charsetVector = new Vector(); // empty vector for character set names
-    convertMap = new TreeMap();   // empty mapping for file name characters
+    convertTable = new FontRename4Convert(); // empty mapping for file names
     convertPattern = Pattern.compile(
-      "\\s*[Uu]\\+([0-9A-Fa-f]+)\\s*=\\s*\"([^\"]*)\"(?:\\s+#.*)?\\s*");
+      "\\s*((?:[Uu]\\+[0-9A-Fa-f]+\\s*)+)=\\s*\"([^\"]*)\"(?:\\s+#.*)?\\s*");
 
     /* Open and read lines from the configuration data file. */
 
@@ -1116,7 +1902,8 @@ public class FontRename4
               && (array[2] >= -1) && (array[2] <= 0xFFFF) // language ID
               && (array[3] >= 0) && (array[3] <= 0xFFFF) // name ID
               && ((charset == null) // no character set, or if supported name
-                || java.nio.charset.Charset.isSupported(charset)))
+                || (Charset.isSupported(charset) // that can also encode
+                && Charset.forName(charset).canEncode())))
             {
               acceptVector.add(array); // good enough for a name table entry
               charsetVector.add(charset); // and character set name if given
@@ -1129,26 +1916,36 @@ public class FontRename4
         }
         else if (word.equals("convert"))
         {
-          /* Input line should be the conversion of a single Unicode character
-          to an arbitrary Unicode string.  The syntax does not allow for double
-          quotes (") inside the string, which is unimportant, since quotes are
-          illegal in file names on Windows anyway. */
+          /* Input line should be the conversion of one or more Unicode
+          characters to an arbitrary Unicode string.  The syntax does not allow
+          for double quotes (") inside the string, which is unimportant, since
+          quotes are illegal in file names on Windows anyway. */
 
           matcher = convertPattern.matcher(text.substring(i)); // parse syntax
           if (matcher.matches())  // only if the entire substring matches
           {
-            try { i = Integer.parseInt(matcher.group(1), 16); } // parse U+ hex
-            catch (NumberFormatException nfe) { i = -999999999; } // invalidate
-            if ((i >= Character.MIN_VALUE) && (i <= Character.MAX_VALUE))
+            String[] codes = matcher.group(1).trim().split("\\s+");
+            buffer.setLength(0);  // collect source characters in this buffer
+            for (i = 0; i < codes.length; i ++) // each U+ number on left side
             {
-              Integer key = new Integer(i); // convert U+ number to an object
-              if (convertMap.containsKey(key))
-                System.err.println("Duplicate character conversion: " + text);
-              else
-                convertMap.put(key, matcher.group(2)); // save substitution
+              int value;          // one U+ number converted to binary
+              try { value = Integer.parseInt(codes[i].substring(2), 16); }
+              catch (NumberFormatException nfe) { value = -999999999; }
+              if ((value < Character.MIN_VALUE)
+                || (value > Character.MAX_VALUE))
+              {
+                buffer.setLength(0); // character number can't be Unicode
+                break;            // exit early from <for> loop
+              }
+              buffer.append((char) value); // add one source character
             }
-            else                  // character number can't be Unicode
+            if (buffer.length() == 0) // were all U+ numbers valid?
               System.err.println("Invalid character convert value: " + text);
+            else if (convertTable.add(buffer.toString(), matcher.group(2))
+              == false)           // is this a new source sequence?
+            {
+              System.err.println("Duplicate character conversion: " + text);
+            }
           }
           else
             System.err.println("Invalid character convert syntax: " + text);
@@ -1201,15 +1998,125 @@ public class FontRename4
         acceptEntries[i] = (int[]) acceptVector.get(i); // name table entries
       }
     }
-  } // end of loadConfig() method
+    return(new FontRename4Profile(dataFile, acceptCharset, acceptEntries,
+      convertTable));             // compiled for lookup
+
+  } // end of loadProfile() method
 
 
 /*
-  prettyPlural() method
+  openJournal() method
 
-  Return a string that formats a number and appends a lowercase "s" to a word
-  if the number is plural (not one).  Also provide a more general method that
-  accepts both a singular word and a plural word.
+  Open a journal file for recording renamed files, creating the file if it
+  doesn't exist and adding to the end if it does.  When resuming an earlier run,
+  first read the journal and remember which files were already renamed, so that
+  they won't be opened and parsed again.  A journal that can't be opened is a
+  fatal error, because the user asked for a record of everything we do.
+*/
+  static void openJournal(
+    String fileName,              // name of journal file from command line
+    boolean resume)               // true if we skip files already renamed
+  {
+    File file;                    // File object for <fileName>
+    int i;                        // index variable
+    Vector renamed;               // old and new names from earlier run
+
+    if (fileName.length() == 0)   // did the user give us a file name?
+    {
+      System.err.println("Missing journal file name after -j -resume -undo");
+      showHelp();                 // show help summary
+      System.exit(-1);            // exit application after printing help
+    }
+    if (journal != null)          // was there already a journal option?
+      journal.close();            // yes, finish with that journal first
+
+    file = new File(fileName);    // convert name to Java File object
+    try                           // catch I/O errors in journal file
+    {
+      if (resume)                 // are we continuing an interrupted run?
+      {
+        renamed = FontRename4Journal.renamed(FontRename4Journal.read(file));
+        resumeSet = new HashSet(); // new file names from earlier run
+        for (i = 0; i < renamed.size(); i ++)
+          resumeSet.add(((File[]) renamed.get(i))[1].getAbsolutePath());
+        System.err.println("Resuming after " + prettyPlural(renamed.size(),
+          "renamed file") + " in journal: " + fileName);
+      }
+      journal = new FontRename4Journal(file); // append to end of journal
+    }
+    catch (IOException ioe)       // file doesn't exist, permissions, etc
+    {
+      System.err.println("Can't open journal file: " + fileName + " ("
+        + ioe.getMessage() + ")");
+      System.exit(-1);            // exit application, nothing was renamed
+    }
+  } // end of openJournal() method
+
+
+/*
+  planTrueType() method
+
+  Given a font file that has been parsed by parseTrueType(), add one line to the
+  plan file with the file's path name and the new name chosen by each profile.
+  Only one thread may call this method at a time, like renameTrueType(), so
+  lines are in the same order as files are found.
+*/
+  static void planTrueType(
+    FontRename4Job job)           // parsed file with our choices for names
+  {
+    StringBuffer buffer;          // faster than String for multiple appends
+    int i;                        // index variable
+
+    if (cancelFlag || (job.ready == false)) // was file parsed successfully?
+      return;                     // no, any messages have already been printed
+    if (job.givenBytes != null)   // a plan can't rename files in archives
+    {
+      printSummary(job.givenFile.getPath()
+        + " - in archive, not added to plan");
+      return;
+    }
+
+    buffer = new StringBuffer();  // one line in plan file
+    buffer.append(FontRename4Journal.escape(job.givenFile.getAbsolutePath()));
+    for (i = 0; i < job.namesFound.length; i ++)
+    {
+      buffer.append('\t');        // empty field if profile found no name
+      if ((job.fileType != null) && (job.namesFound[i] != null))
+      {
+        buffer.append(FontRename4Journal.escape(job.namesFound[i] + "."
+          + job.fileType));
+      }
+    }
+    buffer.append('\n');
+
+    try { planWriter.write(buffer.toString()); } // write one line
+    catch (IOException ioe)       // disk full, etc
+    {
+      printAlways(job.givenFile.getPath() + " - can't write plan file, "
+        + "stopping: " + planFile);
+      cancelFlag = true;          // plan would be incomplete anyway
+      return;
+    }
+    if ((job.fileType == null) || (job.nameFound == null)) // first profile?
+    {
+      printSummary(job.givenFile.getPath()
+        + " - added to plan, no name for profile 1");
+    }
+    else
+    {
+      printSummary(job.givenFile.getPath() + " - added to plan as <"
+        + job.nameFound + "." + job.fileType + ">");
+    }
+
+  } // end of planTrueType() method
+
+
+/*
+  prettyPlural() method
+
+  Return a string that formats a number and appends a lowercase "s" to a word
+  if the number is plural (not one).  Also provide a more general method that
+  accepts both a singular word and a plural word.
 */
   static String prettyPlural(
     long number,                  // number to be formatted
@@ -1264,7 +2171,10 @@ public class FontRename4
 
   static void printAlways(String text, boolean scroll)
   {
-    if (consoleFlag)              // are we running as a console application?
+    Vector sink = (Vector) messageSink.get(); // held for committer thread?
+    if (sink != null)             // are we parsing files in parallel?
+      sink.add(text);             // yes, committer prints this line later
+    else if (consoleFlag)         // are we running as a console application?
       System.out.println(text);   // console output goes onto standard output
     else
     {
@@ -1279,7 +2189,8 @@ public class FontRename4
   printChange(), printDebug(), printFailure(), printSummary() methods
 
   Print a complete line of output depending upon the user's choice for the
-  message level.
+  message level.  Debugging messages can be long, and there are many of them,
+  so busy code should call wantDebug() before building a message.
 */
   static void printChange(String text) // successfully changed file name
   {
@@ -1301,11 +2212,86 @@ public class FontRename4
 
   static void printDebug(String text) // detailed information for debugging
   {
-    if ((cancelFlag == false) && (reportIndex >= 4))
+    if (wantDebug())
       printAlways(text);
   }
 
 
+/*
+  processArchive() method
+
+  The caller gives us a ZIP archive, which we search like a folder.  Each font
+  file in the archive is inflated into memory and parsed from there, without
+  any temporary files.  ZIP files are read as a stream (forward only), so the
+  entries are reported in the order that they are stored.  Nothing inside an
+  archive can be renamed; we only report the new names.  Entry names are UTF-8
+  only if the archive says so; otherwise we decode them as the DOS code page
+  (IBM437), which accepts any bytes, so a name from an older archive may be
+  printed wrong but doesn't stop us.
+*/
+  static void processArchive(File givenFile)
+  {
+    byte[] bytes;                 // entry inflated into memory, or null
+    ZipEntry entry;               // next entry from ZIP archive
+    File entryFile;               // pretend file for entry, inside archive
+    ZipInputStream input;         // ZIP archive opened for reading
+    String lower;                 // entry name in lowercase, for comparison
+
+    setStatusMessage("Searching archive " + givenFile.getPath());
+    try                           // catch file I/O and ZIP format errors
+    {
+      input = new ZipInputStream(new BufferedInputStream(new FileInputStream(
+        givenFile), BUFFER_SIZE), Charset.forName("IBM437"));
+      while ((entry = input.getNextEntry()) != null)
+      {
+        if (cancelFlag) break;    // exit from <while> loop if user cancelled
+        if (entry.isDirectory())  // folders are implied by entry names
+          continue;               // silently ignore folders
+        entryFile = new File(givenFile, entry.getName());
+        lower = entry.getName().toLowerCase(); // for comparing file types
+        if ((lower.endsWith(".otf") || lower.endsWith(".ttc")
+          || lower.endsWith(".ttf") || lower.endsWith(".woff")
+          || lower.endsWith(".woff2")) == false)
+        {
+          printSummary(entryFile.getPath()
+            + " - ignoring archive entry (not a font)");
+          continue;
+        }
+        if ((hiddenFlag == false) && (lower.startsWith("__macosx/")
+          || lower.startsWith(".") || (lower.indexOf("/.") >= 0)))
+        {
+          printSummary(entryFile.getPath()
+            + " - ignoring hidden file or folder");
+          continue;
+        }
+
+        fileCount ++;             // found one more file, inside archive
+        bytes = readArchiveEntry(input); // inflate entry into memory
+        if (bytes == null)        // too big for memory?
+        {
+          printFailure(entryFile.getPath() + " - font in archive is bigger "
+            + "than " + formatMegabytes(MAX_ARCHIVE) + " MB");
+        }
+        else if (pipelineQueue != null) // are we parsing files in parallel?
+          queueTrueType(entryFile, entryFile.getName(), bytes, null);
+        else                      // one at a time
+          processTrueType(entryFile, entryFile.getName(), bytes, null);
+      }
+      input.close();              // try to close ZIP archive
+    }
+    catch (IOException ioe)       // includes ZipException for bad archives
+    {
+      printFailure(givenFile.getPath() + " - can't read archive ("
+        + ioe.getMessage() + ")");
+    }
+    catch (IllegalArgumentException iae) // bad entry name in archive
+    {
+      printFailure(givenFile.getPath() + " - can't read archive ("
+        + iae.getMessage() + ")");
+    }
+  } // end of processArchive() method
+
+
 /*
   processFileOrFolder() method
 
@@ -1317,6 +2303,7 @@ public class FontRename4
   static void processFileOrFolder(File givenFile)
   {
     File[] contents;              // contents if <givenFile> is a folder
+    FontRename4Index folderIndex; // names in folder, for choosing new names
     int i;                        // index variable
     File next;                    // next File object from <contents>
 
@@ -1347,6 +2334,7 @@ public class FontRename4
       folderCount ++;             // found one more folder, contents unknown
       setStatusMessage("Searching folder " + givenFile.getPath());
       contents = sortFileList(givenFile.listFiles()); // no filter, but sorted
+      folderIndex = new FontRename4Index(givenFile, contents, mswinFlag);
       for (i = 0; i < contents.length; i ++) // for each file in order
       {
         if (cancelFlag) return;   // stop if user hit the panic button
@@ -1367,7 +2355,8 @@ public class FontRename4
         }
         else if (next.isFile())   // we do want to look at normal files
         {
-          processUnknownFile(next, allTypesFlag); // do file only if font type
+          processUnknownFile(next, allTypesFlag, folderIndex);
+                                  // do file only if font type
         }
         else                      // file directory has an invalid entry
         {
@@ -1377,7 +2366,7 @@ public class FontRename4
     }
     else if (givenFile.isFile())  // we do want to look at normal files
     {
-      processUnknownFile(givenFile, true); // always open files given by user
+      processUnknownFile(givenFile, true, null); // always open user's files
     }
     else                          // user gave bad file or folder name
     {
@@ -1386,12 +2375,81 @@ public class FontRename4
   } // end of processFileOrFolder() method
 
 
+/*
+  processPipeline() method
+
+  Same as processFileOrFolder(), except that font files are parsed by a pool of
+  <threadCount> threads while the current thread keeps searching folders.  A
+  single committer thread renames the files in the order that they were found.
+  The queue between us and the committer is bounded, so if parsing falls behind,
+  then we wait instead of filling memory with pending files.  Output goes to the
+  committer in the same queue, so the report is the same as one file at a time.
+  Checksums for the -c option (and for forced or generic names) are calculated
+  by a separate pool of threads, so reading whole files overlaps with parsing
+  the next few files.  This is only for console applications, because the
+  graphical interface has no way to cancel the parsing threads.
+*/
+  static void processPipeline(File givenFile)
+  {
+    Thread committer;             // thread that renames files in order
+
+    archiveBudget = new Semaphore(ARCHIVE_BUDGET); // fonts from archives
+    checksumPool = Executors.newFixedThreadPool(threadCount);
+    pipelineQueue = new ArrayBlockingQueue(PIPELINE_DEPTH * threadCount);
+    pipelinePool = Executors.newFixedThreadPool(threadCount);
+    committer = new Thread(new FontRename4Committer(), "doCommitRunner");
+    committer.start();            // start renaming as soon as files are parsed
+
+    messageSink.set(new Vector()); // hold back our own output for committer
+    processFileOrFolder(givenFile); // search folders, queue files to parse
+    queueMessages(true);          // remaining output, then committer stops
+    messageSink.set(null);        // print directly from this thread again
+
+    try { committer.join(); }     // wait for all files to be renamed
+    catch (InterruptedException ie) { cancelFlag = true; } // shouldn't happen
+    checksumPool.shutdown();      // checksum threads are no longer needed
+    checksumPool = null;
+    pipelinePool.shutdown();      // parsing threads are no longer needed
+    pipelinePool = null;          // and go back to one file at a time
+    pipelineQueue = null;
+    archiveBudget = null;
+
+  } // end of processPipeline() method
+
+
 /*
   processTrueType() method
 
+  Parse and rename one OpenType or TrueType font file in the current thread.
+  This is the same work as a pipeline does, except that everything happens in
+  order without waiting.
+*/
+  static void processTrueType(
+    File givenFile,               // file that we are to open, read, and rename
+    String oldName,               // must be *exact* current file name, no path
+    byte[] givenBytes,            // archive entry in memory, or null for file
+    FontRename4Index folderIndex) // names in same folder, or <null> if unknown
+  {
+    FontRename4Job job = new FontRename4Job(givenFile, oldName);
+    job.folderIndex = folderIndex; // for choosing a new name
+    job.givenBytes = givenBytes;  // only for fonts inside archives
+    parseTrueType(job);           // open and read file, choose new name
+    if (planWriter != null)       // are we writing a plan instead?
+      planTrueType(job);          // yes, add names to plan
+    else
+      renameTrueType(job);        // rename file if parsing was successful
+  }
+
+
+/*
+  parseTrueType() method
+
   The caller gives us a Java File object that should be an OpenType (*.OTF) or
   TrueType (*.TTC, *.TTF) font file.  The file header contains some information
-  that we use; most of what we want is in the "name" table.
+  that we use; most of what we want is in the "name" table.  We choose a new
+  file name, but don't rename the file: see renameTrueType().  This method may
+  be called from more than one thread at a time, so any output must go through
+  printAlways() and nothing here changes class variables.
 
   For a list of the possible character set names, as supported by Java 5.0
   (1.5), see the following web page:
@@ -1402,64 +2460,124 @@ public class FontRename4
   better web page, and it's actually expected that this program will be run on
   Java 1.5 or newer.
 */
-  static void processTrueType(
-    File givenFile,               // file that we are to open, read, and rename
-    String oldName)               // must be *exact* current file name, no path
+  static void parseTrueType(
+    FontRename4Job job)           // file that we are to open and read
   {
-    int acceptIndex;              // current name table entry in "accept" list
-    int fileIndex;                // current name table entry from font file
+    boolean anyChecksum;          // true if any name needs a checksum
+    ByteBuffer collection;        // start of TTC header with offsets, or null
+    boolean debug;                // true if we build debugging messages
     String filePath;              // name of caller's file, including path
     long fileSize;                // size of caller's file in bytes
     String fileType;              // only the part after the last period (dot)
+    File givenFile;               // file that we are to open and read
+    ByteBuffer header;            // buffered Offset Table and table directory
     int i;                        // index variable
-    boolean localChecksum;        // local (modified) copy of <checksumFlag>
+    boolean[] localChecksum;      // local (modified) copies of <checksumFlag>
+    int member;                   // index of current internal font
     String nameFound;             // our best choice for a name string
-    long nameTable;               // location of "name" table in file
-    File newFile;                 // used to construct new file name(s)
-    int numNames;                 // number of entries in "name" table
-    int numTables;                // number of entries in table directory
-    long offsetTable;             // location of (first) Offset Table in file
-    RandomAccessFile ramFile;     // file stream for reading font file
+    String[] namesFound;          // best name for each profile
+    long numFonts;                // number of internal fonts in file
+    long offsetTable;             // location of current Offset Table in file
+    String oldName;               // must be *exact* current file name, no path
+    int p;                        // index into <profiles>
+    FontRename4Input ramFile;     // font file or archive entry for reading
+    HashSet searched;             // Long locations of "name" tables searched
     long signature;               // signature bytes from beginning of file
-    long stringOffset;            // start of strings, relative to <nameTable>
+    byte[] woffBytes;             // tables expanded from WOFF file, or null
+    String woffType;              // "woff" or "woff2" for web fonts, or null
 
     /* Initialize some local variables.  Many others are initialized or even
     declared at the beginning of sections where they are used. */
 
+    givenFile = job.givenFile;    // get caller's file and current name
+    oldName = job.oldName;
     filePath = givenFile.getPath(); // get name of caller's file, with path
-    fileSize = givenFile.length(); // get size of caller's file in bytes
-    localChecksum = checksumFlag; // default to using global flag for checksums
+    fileSize = (job.givenBytes != null) ? job.givenBytes.length
+      : givenFile.length();       // get size of caller's file in bytes
+    localChecksum = new boolean[profiles.length]; // one flag for each profile
 
-    /* Print a debugging trace if the user wants detailed information. */
+    /* Print a debugging trace if the user wants detailed information.  Some
+    fonts have thousands of name table entries, so we don't even build the
+    debugging messages unless they will be printed. */
 
     if (cancelFlag) return;       // stop if user hit the panic button
-    printDebug(filePath + " - processTrueType called, oldName = <" + oldName
-      + ">");
+    debug = wantDebug();          // same message level for this entire file
+    if (debug)
+      printDebug(filePath + " - processTrueType called, oldName = <" + oldName
+        + ">");
 
     /* Open the file, index through the tables, and extract possible names. */
 
     try                           // catch file I/O errors
     {
-      ramFile = new RandomAccessFile(givenFile, "r"); // open file for reading
+      ramFile = new FontRename4Input(givenFile, job.givenBytes); // open file
 
-      /* Figure out what type of file this is, if it's even a font file! */
+      /* Figure out what type of file this is, if it's even a font file!  The
+      first read is big enough for the signature and, when the Offset Table is
+      at the start of the file, for the entire table directory as well. */
 
+      collection = null;          // not a TrueType collection yet
       fileType = null;            // assume that we can't determine file type
+      header = null;              // no Offset Table or table directory yet
+      numFonts = 0;               // no internal fonts found yet
       offsetTable = -1;           // assume failure, mark as invalid
+      woffBytes = null;           // not a WOFF or WOFF2 file yet
+      woffType = null;
       if (fileSize < 16)          // need this many bytes for signature
       {
-        printDebug(filePath + " - file too small for OTF/TTC/TTF signature");
+        if (debug)
+          printDebug(filePath + " - file too small for OTF/TTC/TTF signature");
       }
       else
       {
-        signature = ((long) ramFile.readInt()) & INT_MASK;
-                                  // read four signature bytes
-        if ((signature == 0x00010000L) // binary version 1.0 for TrueType
+        header = readBuffer(ramFile, 0, (int) Math.min(fileSize,
+          MAX_DIRECTORY));        // signature plus largest table directory
+        signature = ((long) header.getInt(0)) & INT_MASK;
+                                  // four signature bytes
+        if ((signature == FontRename4Woff.WOFF)
+          || (signature == FontRename4Woff.WOFF2))
+        {
+          /* This is a WOFF or WOFF2 web font.  Expand only the "name" table
+          into a small font in memory, and read that instead.  The checksum is
+          still for the original file. */
+
+          woffType = (signature == FontRename4Woff.WOFF) ? "woff" : "woff2";
+          if ((signature == FontRename4Woff.WOFF2)
+            && (FontRename4Woff.brotliAvailable() == false))
+          {
+            printFailure(filePath + " - WOFF2 file needs a Brotli decoder ("
+              + FontRename4Woff.BROTLI_CLASS + ")");
+            ramFile.close();      // try to close input file
+            return;               // job is not ready, so no more messages
+          }
+          woffBytes = FontRename4Woff.extract(ramFile, fileSize,
+            new String[] {"name"}); // expanded tables, or null
+          if (woffBytes != null)  // was the WOFF file good enough?
+          {
+            ramFile.close();      // done with original file
+            ramFile = new FontRename4Input(givenFile, woffBytes);
+            fileSize = woffBytes.length; // only for checking offsets
+            header = readBuffer(ramFile, 0, (int) Math.min(fileSize,
+              MAX_DIRECTORY));    // signature plus largest table directory
+            signature = ((long) header.getInt(0)) & INT_MASK;
+          }
+          else if (debug)
+            printDebug(filePath + " - bad table directory or compressed data"
+              + " in " + woffType + " file");
+        }
+
+        if ((woffType != null) && (woffBytes == null))
+        {
+          /* Do nothing more with a damaged WOFF or WOFF2 file.  It's still a
+          font file, and may get a forced or generic name. */
+        }
+        else if ((signature == 0x00010000L) // binary version 1.0 for TrueType
           || (signature == 0x74727565L)) // "true" for Macintosh TrueType
         {
           /* This is a TrueType file containing a single font. */
 
           fileType = "ttf";       // correct extension (type) for file name
+          numFonts = 1;           // there is only one font in this file
           offsetTable = 0;        // conveniently located at start of file
         }
         else if (signature == 0x4F54544FL) // "OTTO" for OpenType
@@ -1467,543 +2585,302 @@ public class FontRename4
           /* This is an OpenType file containing a single font. */
 
           fileType = "otf";       // correct extension (type) for file name
+          numFonts = 1;           // there is only one font in this file
           offsetTable = 0;        // conveniently located at start of file
         }
         else if (signature == 0x74746366L) // "ttcf" for TrueType collection
         {
-          /* This is a TrueType collection containing at least one font.  Well,
-          we assume that there is at least one internal font! */
+          /* This is a TrueType collection containing any number of fonts.
+          The Offset Tables are somewhere else in the file, so our first read
+          is only good for the signature and the start of the offset list. */
 
           fileType = "ttc";       // correct extension (type) for file name
-          ramFile.skipBytes(8);   // skip TTC version, number of internal fonts
-          offsetTable = ((long) ramFile.readInt()) & INT_MASK;
-                                  // location of Offset Table for first font
+          numFonts = ((long) header.getInt(8)) & INT_MASK;
+                                  // number of internal fonts claimed by file
+          collection = header;    // keep header for list of offsets
+          header = null;          // must read table directory separately
         }
         else                      // unknown signature, not known font type
         {
-          printDebug(filePath
-            + " - not recognized as OTF/TTC/TTF font, signature = 0x"
-            + Long.toHexString(signature));
+          if (debug)
+            printDebug(filePath
+              + " - not recognized as OTF/TTC/TTF font, signature = 0x"
+              + Long.toHexString(signature));
         }
+        if (woffType != null)     // web fonts keep their own extension,
+          fileType = woffType;    // ... even if they are damaged
       }
 
-      if (offsetTable >= 0)       // did we find the Offset Table?
+      if (fileType != null)       // did we find a font signature?
       {
-        printDebug(filePath + " - Offset Table is at 0x"
-          + Long.toHexString(offsetTable) + ", file type is <" + fileType
-          + ">");
+        if (debug)
+          printDebug(filePath + " - file type is <" + fileType + "> with "
+            + prettyPlural(numFonts, "internal font"));
       }
 
-      /* Find the "name" table, if any. */
+      /* Search each internal font until every profile has a name.  For a
+      single font, that's the only Offset Table.  For a collection, we read the
+      location of each Offset Table only when we need it, since collections
+      may have hundreds of fonts, and the first one usually has all the names
+      we want.  A "name" table shared by several fonts is searched once. */
 
-      nameTable = -1;             // assume failure, mark as invalid
-      if (cancelFlag || (forcedName != null))
-      {
-        /* Do nothing if errors found, or if we already have a forced name. */
-      }
-      else if (offsetTable >= 0)  // do we have an Offset Table to work with?
+      namesFound = new String[profiles.length]; // assume failure for all
+      searched = new HashSet();   // no "name" tables searched yet
+      for (member = 0; (member < numFonts) && (cancelFlag == false)
+        && (forcedName == null); member ++)
       {
-        if (fileSize < (offsetTable + 12)) // file big enough for Offset Table?
+        if (collection != null)   // is this a TrueType collection?
         {
-          printDebug(filePath + " - file too small for Offset Table header");
-        }
-        else
-        {
-          ramFile.seek(offsetTable + 4); // location of "number of tables"
-          numTables = ramFile.readUnsignedShort(); // get entries in table
-          if ((numTables < 1) || (numTables > 299)) // check arbitrary limits
-          {
-            printDebug(filePath + " - too many entries in Offset Table ("
-              + numTables + ")");
-          }
-          else if (fileSize < (offsetTable + 12 + (16 * numTables)))
-          {
-            printDebug(filePath
-              + " - file too small for Offset Table entries");
-          }
-          else
+          i = 12 + (4 * member);  // location of offset for this font
+          if (fileSize < (i + 4)) // file big enough for this offset?
           {
-            ramFile.skipBytes(6); // skip search ranges
-            for (i = 0; i < numTables; i ++)
-            {
-              if ((((long) ramFile.readInt()) & INT_MASK) == 0x6E616D65L)
-                                  // is this entry for the "name" table?
-              {
-                ramFile.skipBytes(4); // skip checksum
-                nameTable = ((long) ramFile.readInt()) & INT_MASK;
-                break;            // exit early from <for> loop
-              }
-              else                // no, continue looking
-                ramFile.skipBytes(12); // skip remainder of table entry
-            }
-
-            if (nameTable > 0)    // did we find the "name" table?
-            {
-              printDebug(filePath + " - \"name\" table is at 0x"
-                + Long.toHexString(nameTable));
-            }
-            else
-            {
-              printDebug(filePath + " - \"name\" table not found");
-            }
+            if (debug)
+              printDebug(filePath + " - file too small for TTC offset #"
+                + (member + 1));
+            break;                // exit early from <for> loop
           }
+          offsetTable = ((long) (((i + 4) <= collection.limit())
+            ? collection.getInt(i) : readBuffer(ramFile, i, 4).getInt(0)))
+            & INT_MASK;           // location of Offset Table for this font
+          header = null;          // must read table directory separately
         }
+        parseOffsetTable(filePath, fileSize, ramFile, offsetTable, header,
+          namesFound, searched, debug); // choose names from this font
+
+        for (p = 0; p < profiles.length; p ++) // each profile in order
+          if ((namesFound[p] == null) || (namesFound[p].length() == 0))
+            break;                // this profile still needs a name
+        if (p >= profiles.length) // does every profile have a name?
+          break;                  // yes, don't look at any more fonts
       }
 
-      /* Look through the "name" table for entries that match our desired
-      platform, encoding, and language.  The obvious loop would be to decode
-      each name string, and then compare it against our "accept" list.  Most
-      name strings are of no interest to us, and since each string is found by
-      indexing through the file, the cost per string is fairly high.  It is
-      better to decode a name string only after it matches an entry in the
-      "accept" list, and to do this decoding only once per string.  (More than
-      one "accept" entry may match the same name table entry.)  Another option
-      would be to buffer the name table (usually less than a kilobyte) and the
-      string table (can be hundreds of kilobytes), and index through those
-      buffered copies as byte arrays. */
+      /* Choose between an internal font name or a constructed name.  "Forced"
+      or "generic" names will be used only if a valid OTF/TTC/TTF signature was
+      found.  We don't want to rename files that are clearly not fonts, but do
+      want to rename badly corrupted font files.  How correct should a file be
+      before we consider renaming it? */
 
-      nameFound = null;           // assume failure, mark as invalid
-      if (cancelFlag || (forcedName != null))
-      {
-        /* Do nothing if errors found, or if we already have a forced name. */
-      }
-      else if (nameTable > 0)     // did we find the "name" table?
+      anyChecksum = false;        // no checksum needed yet
+      for (p = 0; p < profiles.length; p ++) // each profile in order
       {
-        if (fileSize < (nameTable + 6)) // file big enough for "name" header?
+        localChecksum[p] = checksumFlag; // default to using global flag
+        nameFound = namesFound[p]; // best name for this profile, or <null>
+        if (fileType == null)     // do we know what type of file this is?
         {
-          printDebug(filePath + " - file too small for \"name\" header");
+          /* Do nothing if we couldn't find an OTF/TTC/TTF signature. */
         }
-        else
+        else if (forcedName != null) // did the user give us a forced name?
         {
-          ramFile.seek(nameTable + 2); // location of "number of name records"
-          numNames = ramFile.readUnsignedShort(); // get entries in table
-          if ((numNames < 1) || (numNames > 9999)) // check arbitrary limits
-          {
-            printDebug(filePath + " - too many entries in \"name\" table ("
-              + numNames + ")");
-          }
-          else if (fileSize < (nameTable + 6 + (12 * numNames)))
-          {
-            printDebug(filePath
-              + " - file too small for \"name\" table entries");
-          }
-          else                    // safe to read name table entries from file
-          {
-            stringOffset = ramFile.readUnsignedShort(); // from <nameTable>
+          localChecksum[p] = true; // append file name with CRC32 checksum
+          nameFound = forcedName; // assign user's name to this font file
+          if (debug)
+            printDebug(filePath + " - ignoring font name, using forced <"
+              + nameFound + "> plus checksum");
+        }
+        else if ((nameFound != null) && (nameFound.length() > 0))
+        {
+          /* Do nothing if we found an acceptable internal font name. */
+        }
+        else if (genericName != null) // did the user give us a default name?
+        {
+          localChecksum[p] = true; // append file name with CRC32 checksum
+          nameFound = genericName; // assign user's name to this font file
+          if (debug)
+            printDebug(filePath + " - no valid font name, using generic <"
+              + nameFound + "> plus checksum");
+        }
+        else if (localChecksum[p]) // do we have something unique for file?
+        {
+          nameFound = "Unknown";  // assign default name to this font file
+          if (debug)
+            printDebug(filePath + " - no valid font name, using default <"
+              + nameFound + "> plus checksum");
+        }
+        else                      // might get here with zero-length name
+          nameFound = null;       // cancel anything that we don't recognize
 
-            /* Initialize values for the best name table entry found so far,
-            where smaller index numbers are better.  The default "best" is one
-            more than the last legal index. */
+        localChecksum[p] = (fileType != null) && (nameFound != null)
+          && localChecksum[p];    // only if there will be a new name
+        anyChecksum |= localChecksum[p];
+        namesFound[p] = nameFound;
+      }
 
-            int bestAccept = acceptEntries.length; // best is 0, then 1, etc
-            int bestEntryEncoding = -1; // ID from name table entry
-            int bestEntryLanguage = -1; // ID from name table entry
-            int bestEntryName = -1; // ID from name table entry (usually 4)
-            int bestEntryPlatform = -1; // ID from name table entry
+      /* Close the input font file before trying to rename the file. */
 
-            /* Compare each name table entry with our desired names. */
+      ramFile.close();            // try to close input file
+      if (cancelFlag) return;     // stop if user hit the panic button
 
-            for (fileIndex = 0; fileIndex < numNames; fileIndex ++)
-            {
-              /* Read the numbers for one name table entry.  All are unsigned
-              short integers, and have non-negative values. */
-
-              ramFile.seek(nameTable + 6 + (12 * fileIndex)); // position file
-              int entryPlatformID = ramFile.readUnsignedShort();
-              int entryEncodingID = ramFile.readUnsignedShort();
-              int entryLanguageID = ramFile.readUnsignedShort();
-              int entryNameID = ramFile.readUnsignedShort();
-              int entryLength = ramFile.readUnsignedShort();
-              int entryOffset = ramFile.readUnsignedShort();
-
-              /* Check entries in our "accept" list until we find an entry that
-              matches, or we exhaust the list.  We limit our search to indexes
-              better (smaller) than our current best. */
-
-              String name = null; // show that we haven't decoded name bytes
-              for (acceptIndex = 0; acceptIndex < bestAccept; acceptIndex ++)
-              {
-                /* Do the ID numbers match for these name table entries? */
-
-                if (((acceptEntries[acceptIndex][0] >= 0)
-                  && (entryPlatformID != acceptEntries[acceptIndex][0]))
-                || ((acceptEntries[acceptIndex][1] >= 0)
-                  && (entryEncodingID != acceptEntries[acceptIndex][1]))
-                || ((acceptEntries[acceptIndex][2] >= 0)
-                  && (entryLanguageID != acceptEntries[acceptIndex][2]))
-                || ((acceptEntries[acceptIndex][3] >= 0)
-                  && (entryNameID != acceptEntries[acceptIndex][3])))
-                {
-                  continue;       // no, next step in <for acceptIndex> loop
-                }
-                printDebug(filePath + " - comparing (" + entryPlatformID
-                  + ", " + entryEncodingID + ", " + entryLanguageID + ", "
-                  + entryNameID + ") against table ("
-                  + acceptEntries[acceptIndex][0] + ", "
-                  + acceptEntries[acceptIndex][1] + ", "
-                  + acceptEntries[acceptIndex][2] + ", "
-                  + acceptEntries[acceptIndex][3]
-                  + ((acceptCharset[acceptIndex] == null) ? ")" :
-                    (") " + acceptCharset[acceptIndex])));
-
-                /* The entry IDs match, but the optional character set may not.
-                Only decode the name bytes once from the file. */
-
-                if (name == null) // do we need to decode the name bytes?
-                {
-                  /* For this name table entry, determine the character set. */
-
-                  String charset = null; // assume failure, mark as invalid
-
-                  /* Generic Unicode platform.  Officially, this platform is
-                  not to be used for name tables, but we have found a few fonts
-                  that only have generic Unicode names (apparently an attempt
-                  to prevent them from being used on some operating systems).
-                  The encoding and language are completely unreliable and are
-                  ignored. */
-
-                  if (entryPlatformID == 0)
-                  {
-                    charset = UNICODE_BMP; // assume standard 16-bit Unicode
-                  }
-
-                  /* Apple Macintosh platform.  There are many more encodings
-                  than for Windows, and some encodings may also depend on the
-                  language.  We only do encodings where Java has a matching
-                  conversion table.  There are enough badly-encoded Macintosh
-                  font names without us guessing with incorrect tables! */
-
-                  else if (entryPlatformID == 1)
-                  {
-                    switch (entryEncodingID)
-                    {
-                      case (0): charset = "MacRoman"; break; // Latin/Roman
-                      case (1): charset = "Shift_JIS"; break; // Japanese
-                      case (2): charset = "Big5"; break; // Trad. Chinese
-                      case (3): charset = "EUC-KR"; break; // Korean
-                      case (4): charset = "MacArabic"; break; // Arabic
-                      case (5): charset = "MacHebrew"; break; // Hebrew
-                      case (6): charset = "MacGreek"; break; // Greek
-                      case (7): charset = "MacCyrillic"; break; // Russian
-//                    case (8): charset = "unknown"; break; // RSymbol
-//                    case (9): charset = "unknown"; break; // Devanagari
-//                    case (10): charset = "unknown"; break; // Gurmukhi
-//                    case (11): charset = "unknown"; break; // Gujarati
-//                    case (12): charset = "unknown"; break; // Oriya
-//                    case (13): charset = "unknown"; break; // Bengali
-//                    case (14): charset = "unknown"; break; // Tamil
-//                    case (15): charset = "unknown"; break; // Telugu
-//                    case (16): charset = "unknown"; break; // Kannada
-//                    case (17): charset = "unknown"; break; // Malayalam
-//                    case (18): charset = "unknown"; break; // Sinhalese
-//                    case (19): charset = "unknown"; break; // Burmese
-//                    case (20): charset = "unknown"; break; // Khmer
-                      case (21): charset = "MacThai"; break; // Thai
-//                    case (22): charset = "unknown"; break; // Laotian
-//                    case (23): charset = "unknown"; break; // Georgian
-//                    case (24): charset = "unknown"; break; // Armenian
-                      case (25): charset = "GBK"; break; // Simp. Chinese
-//                    case (26): charset = "unknown"; break; // Tibetan
-//                    case (27): charset = "unknown"; break; // Mongolian
-//                    case (28): charset = "unknown"; break; // Geez
-//                    case (29): charset = "unknown"; break; // Slavic
-//                    case (30): charset = "unknown"; break; // Vietnamese
-//                    case (31): charset = "unknown"; break; // Sindhi
-                      default: /* do nothing */ break;
-                    }
-                  } // end of Macintosh platform ID
-
-                  /* Microsoft Windows platform.  Almost all Microsoft fonts
-                  have standard 16-bit Unicode name tables, but may also have
-                  special encodings for Chinese, Japanese, or Korean.  Extended
-                  Unicode (24-bit) names can't be properly handled by this Java
-                  version 1.4. */
-
-                  else if (entryPlatformID == 3)
-                  {
-                    switch (entryEncodingID)
-                    {
-                      case (0): charset = UNICODE_BMP; break; // symbol (16-bit Unicode)
-                      case (1): charset = UNICODE_BMP; break; // regular 16-bit Unicode
-                      case (2): charset = "Shift_JIS"; break; // Japanese Shift-JIS
-                      case (3): charset = "GBK"; break; // Simplified Chinese (China)
-                      case (4): charset = "Big5"; break; // Traditional Chinese (Taiwan)
-                      case (5): charset = "EUC-KR"; break; // Korean Wansung
-                      case (6): charset = "x-Johab"; break; // Korean Johab
-                      case (10): charset = UNICODE_BMP; break; // extended Unicode
-                      default: /* do nothing */ break;
-                    }
-                  } // end of Microsoft platform ID
-
-                  /* Ignore all other platform IDs. */
-
-                  /* Stop looking at this name table entry from the font file
-                  if we don't know what the correct character set is. */
-
-                  if (charset == null) // is it safe to decode this name?
-                  {
-                    printDebug(filePath + " - no character set for entry ("
-                      + entryPlatformID + ", " + entryEncodingID + ", "
-                      + entryLanguageID + ", " + entryNameID + ")");
-                    break;        // exit early from <for acceptIndex> loop
-                  }
-
-                  /* Can we can read file data for this name table entry? */
-
-                  if ((entryLength < 1) || (entryLength > 255) || (fileSize
-                    < (nameTable + stringOffset + entryOffset + entryLength)))
-                  {
-                    printDebug(filePath + " - bad length 0x"
-                      + Integer.toHexString(entryLength) + " or offset 0x"
-                      + Integer.toHexString(entryOffset) + " for entry ("
-                      + entryPlatformID + ", " + entryEncodingID + ", "
-                      + entryLanguageID + ", " + entryNameID + ")");
-                    break;        // exit early from <for acceptIndex> loop
-                  }
-
-                  /* Read the raw (encoded) data bytes for the name string. */
-
-                  byte[] raw = new byte[entryLength]; // allocate for file data
-                  ramFile.seek(nameTable + stringOffset + entryOffset);
-                  ramFile.read(raw); // read encoded data bytes for name
-
-                  /* Show the name table entry with string data in hex. */
-
-                  printDebug(filePath + " - name entry (" + entryPlatformID
-                    + ", " + entryEncodingID + ", " + entryLanguageID + ", "
-                    + entryNameID + ") " + charset + " 0x"
-                    + formatHexBytes(raw));
-
-                  /* Philip L. Engel has observed that some East Asian font
-                  vendors (Chinese, Japanese, Korean) insert extra null bytes
-                  in name strings, perhaps to make each character 16 bits long,
-                  whether it normally appears as a single byte or in a double-
-                  byte shifting pair. */
-
-                  byte[] adjust = raw; // assume no changes to data bytes
-                  int length = raw.length; // assume no changes to length
-                  if (charset.equals(UNICODE_BMP) == false) // not Unicode
-                  {
-                    adjust = new byte[raw.length]; // extract to new array
-                    length = 0;   // put next non-null byte at this index
-                    for (i = 0; i < raw.length; i ++)
-                    {
-                      if ((raw[i] != 0x00) && (raw[i] != 0x7F))
-                        adjust[length ++] = raw[i]; // all but nulls, deletes
-                    }
-                  }
-
-                  /* Decode the name string, if there's anything left. */
-
-                  try             // catch invalid character set names
-                  {
-                    name = new String(adjust, 0, length, charset);
-                    printDebug(filePath + " - decoded font name is <" + name
-                      + ">");
-                  }
-                  catch (UnsupportedEncodingException uee)
-                  {
-                    printDebug(filePath + " - encoding <" + charset
-                      + "> not supported on this computer");
-                  }
-                } // end of "name is null"
-
-                if ((name == null) || (name.length() == 0)) // any usable name?
-                  break;          // exit early from <for acceptIndex> loop
-
-                /* If the user gave us a character set name for this name table
-                entry, accept the name only it can be encoded correctly in that
-                character set.  Many Asian fonts have local names incorrectly
-                encoded as "MacRoman English" or "Windows 1033 English".  We
-                should be safe from <UnsupportedEncodingException> because we
-                previously checked all character set names when they were read
-                from the configuration file.  If not, they will be caught by
-                our general <IOException> handler. */
-
-                if (acceptCharset[acceptIndex] == null)
-                {
-                  /* User didn't specify a character set.  Do nothing. */
-                }
-                else if (name.equals(new String(name.getBytes(acceptCharset
-                    [acceptIndex]), acceptCharset[acceptIndex])))
-                {
-                  printDebug(filePath + " - name matches character set <"
-                    + acceptCharset[acceptIndex] + ">");
-                }
-                else
-                {
-                  printDebug(filePath + " - name not in character set <"
-                    + acceptCharset[acceptIndex] + ">");
-                  continue;       // no, next step in <for acceptIndex> loop
-                }
-
-                /* Keep this name table entry if it is better than anything we
-                have found so far.  The comparison of <acceptIndex> less than
-                <bestAccept> is not strictly necessary, since we are inside a
-                <for> loop that says exactly the same thing.  However, this
-                allows us to change the <for> loop to search all entries all
-                the time, and to report detailed information during the search.
-                The <break> statements would also need to be disabled for this
-                to happen. */
-
-                if (acceptIndex < bestAccept)
-                {
-                  bestAccept = acceptIndex;
-                  bestEntryEncoding = entryEncodingID;
-                  bestEntryLanguage = entryLanguageID;
-                  bestEntryName = entryNameID;
-                  bestEntryPlatform = entryPlatformID;
-                  nameFound = name;
-                }
-                if (bestAccept == 0) break; // stop looking, can't find better
-
-              } // end of <for acceptIndex> loop
-
-              if (bestAccept == 0) break; // stop looking, can't find better
-
-            } // end of <for fileIndex> loop
-
-            /* If we found a name, we may also want to convert (translate) some
-            of the characters. */
-
-            if (nameFound != null) // did we find a name string that we like?
-            {
-              printDebug(filePath + " - using entry (" + bestEntryPlatform
-                + ", " + bestEntryEncoding + ", " + bestEntryLanguage + ", "
-                + bestEntryName + ") with name <" + nameFound + ">");
+      job.fileType = fileType;    // give caller our choices for a new name
+      job.localChecksum = localChecksum;
+      job.namesFound = namesFound;
+      if (anyChecksum == false)   // is the name complete without a checksum?
+        job.setChecksum(null);
+      else if (job.givenBytes != null) // font from archive is in memory
+        job.setChecksum(calculateChecksum(job.givenBytes)); // and is fast
+      else if (checksumPool != null) // is there a pool for checksum threads?
+      {
+        job.checksum = new FontRename4Checksum(givenFile); // yes, committer
+        job.checksum.result = checksumPool.submit(job.checksum); // adds it
+      }
+      else                        // no, calculate checksum ourself
+        job.setChecksum(calculateChecksum(givenFile)); // may be slow
+      job.ready = true;           // safe to rename, or report failure
+    }
 
-              String replace = convertFilename(nameFound); // reduce plain text
-              if (nameFound.equals(replace) == false) // is this different?
-              {
-                nameFound = replace; // yes, use the modified string instead
-                printDebug(filePath + " - replacing some characters <"
-                  + nameFound + ">");
-              }
+    /* Catch any file I/O errors, here or in called methods. */
 
-              replace = collapseString(nameFound); // remove extra spaces
-              if (nameFound.equals(replace) == false) // is this different?
-              {
-                nameFound = replace; // yes, use the modified string instead
-                printDebug(filePath + " - removing extra spaces <" + nameFound
-                  + ">");
-              }
-            }
-          } // end of "safe to read name table entries"
-        }
-      } // end of "look through name table"
+    catch (IOException ioe)
+    {
+      printFailure(filePath + " - can't read file");
+    }
+  } // end of parseTrueType() method
 
-      /* Choose between an internal font name or a constructed name.  "Forced"
-      or "generic" names will be used only if a valid OTF/TTC/TTF signature was
-      found.  We don't want to rename files that are clearly not fonts, but do
-      want to rename badly corrupted font files.  How correct should a file be
-      before we consider renaming it? */
 
-      if (fileType == null)       // do we know what type of file this is?
-      {
-        /* Do nothing if we couldn't find an OTF/TTC/TTF signature. */
-      }
-      else if (forcedName != null) // did the user give us a forced name?
-      {
-        localChecksum = true;     // append file name with CRC32 checksum
-        nameFound = forcedName;   // assign user's name to this font file
-        printDebug(filePath + " - ignoring font name, using forced <"
-          + nameFound + "> plus checksum");
-      }
-      else if ((nameFound != null) && (nameFound.length() > 0))
+/*
+  parseOffsetTable() method
+
+  Find the "name" table for one internal font, given the location of its Offset
+  Table, and choose a name for each profile that doesn't have one yet.  This is
+  called once for a single font, and as often as needed for the fonts in a
+  TrueType collection.  Collections often have many internal fonts that point
+  to the same "name" table, so the caller keeps a set of tables that were
+  already searched, and we don't search them again.  See parseTrueType().
+*/
+  static void parseOffsetTable(
+    String filePath,              // name of caller's file, including path
+    long fileSize,                // size of caller's file in bytes
+    FontRename4Input ramFile,     // font file or archive entry for reading
+    long offsetTable,             // location of Offset Table in file
+    ByteBuffer header,            // Offset Table if already read, or null
+    String[] namesFound,          // best name for each profile, or null
+    HashSet searched,             // Long locations of "name" tables searched
+    boolean debug)                // true if we build debugging messages
+    throws IOException
+  {
+    int i;                        // index variable
+    long nameLength;              // length of "name" table from directory
+    ByteBuffer names;             // buffered "name" table with all strings
+    long nameTable;               // location of "name" table in file
+    int numNames;                 // number of entries in "name" table
+    int numTables;                // number of entries in table directory
+    int p;                        // index into <profiles>
+
+    if (debug)
+      printDebug(filePath + " - Offset Table is at 0x"
+        + Long.toHexString(offsetTable));
+
+    /* Find the "name" table, if any. */
+
+    nameLength = nameTable = -1;  // assume failure, mark as invalid
+    if (fileSize < (offsetTable + 12)) // file big enough for Offset Table?
+    {
+      if (debug)
+        printDebug(filePath + " - file too small for Offset Table header");
+    }
+    else
+    {
+      if (header == null)         // do we need to read the table directory?
       {
-        /* Do nothing if we found an acceptable internal font name. */
+        header = readBuffer(ramFile, offsetTable, (int) Math.min(
+          (fileSize - offsetTable), MAX_DIRECTORY));
       }
-      else if (genericName != null) // did the user give us a default name?
+      numTables = header.getShort(4) & 0xFFFF; // get entries in table
+      if ((numTables < 1) || (numTables > 299)) // check arbitrary limits
       {
-        localChecksum = true;     // append file name with CRC32 checksum
-        nameFound = genericName;  // assign user's name to this font file
-        printDebug(filePath + " - no valid font name, using generic <"
-          + nameFound + "> plus checksum");
+        if (debug)
+          printDebug(filePath + " - too many entries in Offset Table ("
+            + numTables + ")");
       }
-      else if (localChecksum)     // do we have something unique for file?
+      else if (fileSize < (offsetTable + 12 + (16 * numTables)))
       {
-        nameFound = "Unknown";    // assign default name to this font file
-        printDebug(filePath + " - no valid font name, using default <"
-          + nameFound + "> plus checksum");
+        if (debug)
+          printDebug(filePath + " - file too small for Offset Table entries");
       }
-      else                        // might get here with zero-length name
-        nameFound = null;         // cancel anything that we don't recognize
-
-      /* Close the input font file before trying to rename the file. */
-
-      ramFile.close();            // try to close input file
-      if (cancelFlag) return;     // stop if user hit the panic button
-
-      /* Now put the extracted font name together with the necessary file type
-      and see if this is already the correct name for the font file.  First try
-      renaming to the desired file name.  If that doesn't work, then try adding
-      a numeric suffix from 1 to 99. */
-
-      newFile = null;             // assume failure, mark as invalid
-      if ((fileType != null) && (nameFound != null)) // need both to make name
+      else
       {
-        if (localChecksum)        // should we append CRC32 checksum to name?
-        {
-          nameFound += "_" + calculateChecksum(givenFile); // may be slow
-        }
-        File givenParent = givenFile.getParentFile(); // fetch this only once
-        for (i = 0; i < 100; i ++) // zero is a special case for no suffix
+        for (i = 0; i < numTables; i ++)
         {
-          if (cancelFlag) return; // stop if user hit the panic button
-
-          /* Construct a new File object, with or without a suffix. */
-
-          if (i > 0)              // should we append a numeric suffix?
-          {
-            newFile = new File(givenParent, (nameFound + "(" + i + ")."
-              + fileType));
-          }
-          else                    // no suffix, try desired name only
-          {
-            newFile = new File(givenParent, (nameFound + "." + fileType));
-          }
-
-          /* Check if this is already the file name, or can be a new name. */
-
-          if (oldName.equals(newFile.getName())) // identical names for file?
-          {
-            printSummary(filePath + " - file name is correct");
-            break;                // exit early from <for> loop
-          }
-          else if (givenFile.equals(newFile)) // similar name for same file?
-          {
-            renameFile(givenFile, newFile); // rename uppercase vs. lowercase
-            break;                // exit early from <for> loop
-          }
-          else if (newFile.exists() == false) // can we use the new file name?
+          int entry = 12 + (16 * i); // start of this table entry
+          if ((((long) header.getInt(entry)) & INT_MASK) == 0x6E616D65L)
+                                  // is this entry for the "name" table?
           {
-            renameFile(givenFile, newFile); // doesn't exist, use new name
+            nameTable = ((long) header.getInt(entry + 8)) & INT_MASK;
+            nameLength = ((long) header.getInt(entry + 12)) & INT_MASK;
             break;                // exit early from <for> loop
           }
-          else
-            newFile = null;       // suffixed file exists, invalidate object
         }
 
-        /* If we found something that should have worked, then the <newFile>
-        variable won't be null.  If it is, then we tried all possibilities. */
-
-        if (newFile == null)      // if we failed to find a new file name
+        if (nameTable > 0)        // did we find the "name" table?
+        {
+          if (debug)
+            printDebug(filePath + " - \"name\" table is at 0x"
+              + Long.toHexString(nameTable));
+        }
+        else
         {
-          printFailure(filePath + " - can't rename as <" + nameFound + "."
-            + fileType + "> or similar");
+          if (debug) printDebug(filePath + " - \"name\" table not found");
         }
       }
-      else                        // missing internal font name or file type
-        printFailure(filePath + " - can't find usable font name");
     }
 
-    /* Catch any file I/O errors, here or in called methods. */
-
-    catch (IOException ioe)
+    /* Look through the "name" table for entries that match our desired
+    platform, encoding, and language.  The obvious loop would be to decode each
+    name string, and then compare it against our "accept" list.  Most name
+    strings are of no interest to us, and since each string is found by
+    indexing through the file, the cost per string is fairly high.  It is
+    better to decode a name string only after it matches an entry in the
+    "accept" list, and to do this decoding only once per string.  (More than
+    one "accept" entry may match the same name table entry.)  The name table
+    (usually less than a kilobyte) and the string table (can be hundreds of
+    kilobytes) are buffered by readNameTable(), and we index through those
+    buffered copies as byte arrays, so there are no more file reads for each
+    name table entry.  When there is more than one profile (the -p option),
+    each profile has its own "accept" list, but a name string is decoded only
+    once for all profiles. */
+
+    if (nameTable <= 0)           // did we find the "name" table?
     {
-      printFailure(filePath + " - can't read file");
+      /* Do nothing if there is no "name" table. */
+    }
+    else if (searched.add(new Long(nameTable)) == false) // seen it before?
+    {
+      if (debug)
+        printDebug(filePath + " - \"name\" table at 0x"
+          + Long.toHexString(nameTable) + " was already searched");
     }
-  } // end of processTrueType() method
+    else if (fileSize < (nameTable + 6)) // file big enough for "name" header?
+    {
+      if (debug)
+        printDebug(filePath + " - file too small for \"name\" header");
+    }
+    else
+    {
+      names = readNameTable(ramFile, nameTable, nameLength, fileSize);
+      numNames = names.getShort(2) & 0xFFFF; // get entries in table
+      if ((numNames < 1) || (numNames > 9999)) // check arbitrary limits
+      {
+        if (debug)
+          printDebug(filePath + " - too many entries in \"name\" table ("
+            + numNames + ")");
+      }
+      else if (fileSize < (nameTable + 6 + (12 * numNames)))
+      {
+        if (debug)
+          printDebug(filePath + " - file too small for \"name\" table entries");
+      }
+      else                        // safe to read name table entries from file
+      {
+        String[] decoded = new String[numNames]; // decode names once
+        for (p = 0; p < profiles.length; p ++) // each profile in order
+        {
+          if ((namesFound[p] == null) || (namesFound[p].length() == 0))
+            namesFound[p] = chooseName(filePath, fileSize, names, nameTable,
+              profiles[p], decoded, debug); // best name for this profile
+        }
+      } // end of "safe to read name table entries"
+    } // end of "look through name table"
+
+  } // end of parseOffsetTable() method
 
 
 /*
@@ -2016,7 +2893,8 @@ public class FontRename4
 */
   static void processUnknownFile(
     File givenFile,               // file that we are to open, read, and rename
-    boolean forceOpen)            // true if we always open file as a font file
+    boolean forceOpen,            // true if we always open file as a font file
+    FontRename4Index folderIndex) // names in same folder, or <null> if unknown
   {
     String fileName;              // name of caller's file (root + dot + type)
     String filePath;              // name of caller's file, including path
@@ -2034,9 +2912,15 @@ public class FontRename4
     user types on a command line or dialog box may be in all lowercase, for
     example, when the real file name is in mixed case ("arial.ttf" instead of
     "Arial.ttf").  This happens on Windows, where case is not important in file
-    names, but will be for us later when we compare old and new names. */
+    names, but will be for us later when we compare old and new names.  Files
+    that we found by searching a folder already have their exact names from the
+    folder listing, and don't need another trip to the file system. */
 
-    try                           // catch I/O errors during directory search
+    if (folderIndex != null)      // did this file come from a folder listing?
+    {
+      fileName = givenFile.getName(); // yes, name is exactly as in folder
+    }
+    else try                      // catch I/O errors during directory search
     {
       fileName = givenFile.getCanonicalFile().getName(); // full resolution
     }
@@ -2067,12 +2951,27 @@ public class FontRename4
     could look for signature bytes inside the file, but using only the name
     allows us to skip many files quickly without opening them. */
 
-    if (forceOpen                 // this option overrides actual file type
+    if ((resumeSet != null)       // are we continuing an interrupted run?
+      && resumeSet.contains(givenFile.getAbsolutePath()))
+    {
+      printSummary(filePath + " - already renamed (see journal)");
+    }
+    else if ((forceOpen           // this option overrides actual file type
+      && (fileType.equals("zip") == false)) // except for archives
       || fileType.equals("otf")   // OpenType single font
       || fileType.equals("ttc")   // TrueType collection
-      || fileType.equals("ttf"))  // TrueType single font
+      || fileType.equals("ttf")   // TrueType single font
+      || fileType.equals("woff")  // web fonts
+      || fileType.equals("woff2"))
     {
-      processTrueType(givenFile, fileName); // generic OpenType or TrueType
+      if (pipelineQueue != null)  // are we parsing files in parallel?
+        queueTrueType(givenFile, fileName, null, folderIndex); // pipeline
+      else                        // generic OpenType or TrueType, one at a time
+        processTrueType(givenFile, fileName, null, folderIndex);
+    }
+    else if (fileType.equals("zip")) // ZIP archive, treated like a folder
+    {
+      processArchive(givenFile);  // report fonts inside, can't rename them
     }
     else if (fileType.equals("afm") // various PostScript extensions
       || fileType.equals("cfg")
@@ -2104,12 +3003,200 @@ public class FontRename4
 
 
 /*
-  renameFile() method
+  queueMessages() method
 
-  This is a helper method to rename a file, given an old File object and a new
-  File object, and to print a message with the result.
+  Put any output that the current (searching) thread has held back onto the
+  pipeline queue, so the committer thread prints it in the correct order.  The
+  last call tells the committer to stop.
 */
-  static void renameFile(File oldFile, File newFile)
+  static void queueMessages(boolean last)
+  {
+    FontRename4Job job;           // placeholder job with only messages
+    Vector sink;                  // output held back by this thread
+
+    sink = (Vector) messageSink.get(); // output since we last queued anything
+    if (last || (sink.size() > 0)) // anything for the committer to do?
+    {
+      job = new FontRename4Job(null, null); // not a file, just messages
+      job.last = last;            // may be the end of the pipeline
+      job.messages = sink;
+      job.setDone();              // nothing to wait for
+      queuePut(job);              // add to end of pipeline
+      messageSink.set(new Vector()); // start holding back new output
+    }
+  } // end of queueMessages() method
+
+
+/*
+  queuePut() method
+
+  Add a job to the end of the pipeline queue, waiting if the queue is full.
+*/
+  static void queuePut(FontRename4Job job)
+  {
+    while (true)                  // until we succeed
+    {
+      try { pipelineQueue.put(job); return; }
+      catch (InterruptedException ie) { /* try again */ }
+    }
+  }
+
+
+/*
+  queueTrueType() method
+
+  Give an OpenType or TrueType font file to the pool of parsing threads, and put
+  the file on the pipeline queue to be renamed in order.
+*/
+  static void queueTrueType(
+    File givenFile,               // file that we are to open, read, and rename
+    String oldName,               // must be *exact* current file name, no path
+    byte[] givenBytes,            // archive entry in memory, or null for file
+    FontRename4Index folderIndex) // names in same folder, or <null> if unknown
+  {
+    FontRename4Job job;           // our parsing job for this file
+
+    queueMessages(false);         // earlier output must be printed first
+    job = new FontRename4Job(givenFile, oldName);
+    job.folderIndex = folderIndex; // only committer thread may use this
+    job.givenBytes = givenBytes;  // only for fonts inside archives
+    job.messages = new Vector();  // hold back output from parsing thread
+    if (givenBytes != null)       // wait until archive memory is available
+      archiveBudget.acquireUninterruptibly(givenBytes.length);
+    pipelinePool.execute(job);    // parse file as soon as a thread is free
+    queuePut(job);                // committer will wait for parsing to finish
+
+  } // end of queueTrueType() method
+
+
+/*
+  readArchiveEntry() method
+
+  Inflate the current entry in a ZIP archive into memory, and return the bytes,
+  or null if the entry is too big.  The size in the archive directory is only a
+  hint, because it may be missing for entries written as a stream.
+*/
+  static byte[] readArchiveEntry(ZipInputStream input) throws IOException
+  {
+    byte[] buffer;                // bytes inflated so far
+    int length;                   // number of bytes in <buffer>
+    int read;                     // number of bytes from last read
+
+    buffer = new byte[BUFFER_SIZE]; // grows as needed
+    length = 0;
+    while ((read = input.read(buffer, length, (buffer.length - length))) > 0)
+    {
+      length += read;
+      if (length == buffer.length) // is buffer full?
+      {
+        if (length >= MAX_ARCHIVE) // don't run out of memory for one font
+          return(null);           // rest of entry is skipped by caller
+        buffer = Arrays.copyOf(buffer, Math.min(MAX_ARCHIVE, (length * 2)));
+      }
+    }
+    return(Arrays.copyOf(buffer, length)); // exactly the size of the entry
+
+  } // end of readArchiveEntry() method
+
+
+/*
+  readBuffer() method
+
+  Read a block of bytes from a font file with one call to the file system, and
+  return them as a byte buffer.  Font files are big-endian, which is the default
+  byte order for Java buffers.  The caller must make sure that the requested
+  bytes are inside the file.  Fonts from archives are already in memory, and
+  the buffer shares their bytes without copying.
+*/
+  static ByteBuffer readBuffer(
+    FontRename4Input ramFile,     // font file opened for reading
+    long offset,                  // starting byte position in file
+    int length)                   // number of bytes to read
+    throws IOException
+  {
+    if (ramFile.bytes != null)    // is this font in memory?
+    {
+      if ((offset < 0) || ((offset + length) > ramFile.bytes.length))
+        throw new EOFException(); // same as reading past end of file
+      return(ByteBuffer.wrap(ramFile.bytes, (int) offset, length).slice());
+    }
+    byte[] raw = new byte[length]; // allocate space for caller's bytes
+    ramFile.file.seek(offset);    // position file
+    ramFile.file.readFully(raw);  // read all bytes, or throw an exception
+    return(ByteBuffer.wrap(raw)); // give caller a buffer with the file data
+
+  } // end of readBuffer() method
+
+
+/*
+  readNameTable() method
+
+  Read the entire "name" table: header, name records, and string storage.  We
+  start with the length from the table directory, which is almost always right.
+  If the records or strings go beyond that length (and many older fonts are
+  careless about table lengths), then we read again with the length that is
+  really needed, but never beyond the end of the file.  Either way, every name
+  record and every string that is inside the file will be in the buffer, and
+  usually after only one read.
+*/
+  static ByteBuffer readNameTable(
+    FontRename4Input ramFile,     // font file opened for reading
+    long nameTable,               // location of "name" table in file
+    long nameLength,              // length from table directory, or invalid
+    long fileSize)                // size of font file in bytes
+    throws IOException
+  {
+    long available;               // bytes from <nameTable> to end of file
+    ByteBuffer buffer;            // buffered copy of "name" table
+    int i;                        // index variable
+    int needed;                   // bytes needed for all records and strings
+    int numNames;                 // number of entries in "name" table
+    int stringOffset;             // start of strings, relative to <nameTable>
+
+    available = Math.min((fileSize - nameTable), MAX_NAME_SPAN);
+    buffer = readBuffer(ramFile, nameTable, (int) Math.min(available,
+      Math.max(nameLength, (6 + 12)))); // header plus at least one record
+
+    numNames = buffer.getShort(2) & 0xFFFF; // number of name records
+    stringOffset = buffer.getShort(4) & 0xFFFF; // start of string storage
+    needed = 6 + (12 * numNames); // header and all name records
+    if ((needed > buffer.limit()) && (buffer.limit() < available))
+    {
+      buffer = readBuffer(ramFile, nameTable, (int) Math.min(available,
+        needed));                 // need all name records before strings
+    }
+
+    if (needed <= buffer.limit()) // are all name records in this buffer?
+    {
+      for (i = 0; i < numNames; i ++) // find end of farthest string
+      {
+        int record = 6 + (12 * i); // start of this name record
+        int length = buffer.getShort(record + 8) & 0xFFFF;
+        int offset = buffer.getShort(record + 10) & 0xFFFF;
+        if ((length > 0) && (length <= 0xFF)) // only strings we would decode
+          needed = Math.max(needed, (stringOffset + offset + length));
+      }
+      if ((needed > buffer.limit()) && (buffer.limit() < available))
+      {
+        buffer = readBuffer(ramFile, nameTable, (int) Math.min(available,
+          needed));               // read again with the real size
+      }
+    }
+    return(buffer);               // give caller whatever we could find
+
+  } // end of readNameTable() method
+
+
+/*
+  renameFile() method
+
+  This is a helper method to rename a file, given an old File object and a new
+  File object, and to print a message with the result.  We return true if the
+  file was renamed.  If there is a journal, then the rename is recorded there
+  before and after, and we stop everything if the journal can't be written,
+  because renaming files without a record is what the journal prevents.
+*/
+  static boolean renameFile(File oldFile, File newFile)
   {
     String newName = newFile.getName(); // get new file name, without path
     String oldPath = oldFile.getPath(); // get old file name, including path
@@ -2119,18 +3206,147 @@ public class FontRename4
       printFailure(oldPath + " - can't rename read-only file to <" + newName
         + ">");
     }
+    else if ((journal != null)    // record plan before renaming the file
+      && (journal.write(FontRename4Journal.PLANNED, oldFile, newFile) == false))
+    {
+      printAlways(oldPath + " - can't write journal, stopping: "
+        + journal.getPath());
+      cancelFlag = true;          // don't rename anything without a record
+    }
     else if (oldFile.renameTo(newFile)) // try to rename the file
     {
       changeCount ++;             // count successful file name changes
       printChange(oldPath + " - renamed to <" + newName + ">");
+      if (watchRenamed != null)   // ignore the event for our own new name
+      {
+        watchRenamed.put(newFile.getAbsolutePath(), new Long(
+          newFile.lastModified()));
+      }
+      if ((journal != null)       // record that the rename is done
+        && (journal.write(FontRename4Journal.COMMITTED, oldFile, newFile)
+        == false))
+      {
+        printAlways(oldPath + " - can't write journal, stopping: "
+          + journal.getPath());
+        cancelFlag = true;        // plan is still there, for -undo option
+      }
+      return(true);
     }
     else                          // rename operation failed
     {
       printFailure(oldPath + " - failed to rename as <" + newName + ">");
     }
+    return(false);
+
   } // end of renameFile() method
 
 
+/*
+  renameTrueType() method
+
+  Given a font file that has been parsed by parseTrueType(), rename the file
+  with the chosen name, if possible.  Only one thread may call this method at a
+  time, because names are checked against what is already in the folder.  When
+  the file was found by searching a folder, we check names against our index
+  of that folder, instead of asking the file system about each suffix.
+*/
+  static void renameTrueType(
+    FontRename4Job job)           // parsed file with our choice for a name
+  {
+    String filePath;              // name of caller's file, including path
+    String fileType;              // only the part after the last period (dot)
+    FontRename4Index folderIndex; // names in same folder, or <null> if unknown
+    File givenFile;               // file that we are to rename
+    int i;                        // index variable
+    String nameFound;             // our best choice for a name string
+    File newFile;                 // used to construct new file name(s)
+    String oldName;               // must be *exact* current file name, no path
+
+    if (cancelFlag || (job.ready == false)) // was file parsed successfully?
+      return;                     // no, any messages have already been printed
+
+    fileType = job.fileType;      // get all values from parsed file
+    givenFile = job.givenFile;
+    filePath = givenFile.getPath();
+    folderIndex = job.folderIndex;
+    nameFound = job.nameFound;
+    oldName = job.oldName;
+
+    /* Fonts inside an archive can't be renamed, but we can say what their new
+    names would be.  There are no numeric suffixes, because nothing in the
+    archive will change. */
+
+    if (job.givenBytes != null)   // is this font from an archive?
+    {
+      if ((fileType == null) || (nameFound == null)) // need both to make name
+        printFailure(filePath + " - can't find usable font name");
+      else if (oldName.equals(nameFound + "." + fileType)) // same name?
+        printSummary(filePath + " - file name is correct");
+      else
+        printChange(filePath + " - in archive, would be renamed as <"
+          + nameFound + "." + fileType + ">");
+      return;                     // nothing more to do for archives
+    }
+
+    /* Now put the extracted font name together with the necessary file type
+    and see if this is already the correct name for the font file.  First try
+    renaming to the desired file name.  If that doesn't work, then try adding
+    a numeric suffix from 1 to 99. */
+
+    newFile = null;               // assume failure, mark as invalid
+    if ((fileType != null) && (nameFound != null)) // need both to make name
+    {
+      File givenParent = givenFile.getParentFile(); // fetch this only once
+      for (i = 0; i < 100; i ++)  // zero is a special case for no suffix
+      {
+        if (cancelFlag) return;   // stop if user hit the panic button
+
+        /* Construct a new File object, with or without a suffix. */
+
+        if (i > 0)                // should we append a numeric suffix?
+        {
+          newFile = new File(givenParent, (nameFound + "(" + i + ")."
+            + fileType));
+        }
+        else                      // no suffix, try desired name only
+        {
+          newFile = new File(givenParent, (nameFound + "." + fileType));
+        }
+
+        /* Check if this is already the file name, or can be a new name. */
+
+        if (oldName.equals(newFile.getName())) // identical names for file?
+        {
+          printSummary(filePath + " - file name is correct");
+          break;                  // exit early from <for> loop
+        }
+        else if (givenFile.equals(newFile) // similar name for same file?
+          || ((folderIndex != null) ? (folderIndex.contains(newFile.getName())
+          == false) : (newFile.exists() == false))) // or new name not in use?
+        {
+          if (renameFile(givenFile, newFile) && (folderIndex != null))
+            folderIndex.rename(oldName, newFile.getName()); // remember change
+          break;                  // exit early from <for> loop
+        }
+        else
+          newFile = null;         // suffixed file exists, invalidate object
+      }
+
+      /* If we found something that should have worked, then the <newFile>
+      variable won't be null.  If it is, then we tried all possibilities. */
+
+      if (newFile == null)        // if we failed to find a new file name
+      {
+        printFailure(filePath + " - can't rename as <" + nameFound + "."
+          + fileType + "> or similar");
+      }
+    }
+    else                          // missing internal font name or file type
+      printFailure(filePath + " - can't find usable font name");
+
+  } // end of renameTrueType() method
+
+
 /*
   setStatusMessage() method
 
@@ -2171,26 +3387,35 @@ public class FontRename4
     System.err.println();
     System.err.println("Options:");
     System.err.println("  -? = -help = show summary of command-line syntax");
-    System.err.println("  -a0 = only check files with known extensions .OTF .TTC .TTF (default)");
+    System.err.println("  -a0 = only check files with known extensions .OTF .TTC .TTF .WOFF .WOFF2 (default)");
     System.err.println("  -a1 = -a = check all file types, ignore current file name extensions");
     System.err.println("  -c0 = don't append CRC32 checksum to file names (default)");
     System.err.println("  -c1 = -c = append CRC32 checksum to file names (may be slow)");
     System.err.println("  -d# = text file with configuration data; default is -d\"" + DEFAULT_FILE + "\"");
+    System.err.println("  -e# = rename files from plan file \"#\"; column for first -p# option");
     System.err.println("  -f# = ignore internal names; force given name \"#\" plus checksum");
     System.err.println("  -g# = generic name \"#\" plus checksum if no valid font name found");
     System.err.println("  -h0 = ignore hidden files or folders (default)");
     System.err.println("  -h1 = -h = process hidden files and folders");
+    System.err.println("  -j# = record renamed files in journal \"#\" for -resume# or -undo#");
+    System.err.println("      (full path names; don't move folders before -resume# or -undo#)");
     System.err.println("  -m0 = show only program summary, critical errors");
     System.err.println("  -m1 = show files with successful changes (default)");
     System.err.println("  -m2 = show only files that couldn't be changed");
     System.err.println("  -m3 = show all files, with summary for each file");
     System.err.println("  -m4 = show all files, with details for each file");
+    System.err.println("  -o# = don't rename files; write plan file \"#\" with names for each -p#");
+    System.err.println("  -p# = add a profile (configuration file); may be repeated");
     System.err.println("  -r0 = don't try to rename read-only files (default)");
     System.err.println("  -r1 = -r = rename read-only files if permitted by system");
+    System.err.println("  -resume# = skip files already renamed in journal \"#\" and add to it");
     System.err.println("  -s0 = do only given files or folders, no subfolders (default)");
     System.err.println("  -s1 = -s = process files, folders, and subfolders");
+    System.err.println("  -t# = number of threads for parsing fonts with -s; default is -t1");
+    System.err.println("  -undo# = rename files back to their names before journal \"#\"");
     System.err.println("  -u# = font size for buttons, dialogs, etc; default is local system;");
     System.err.println("      example: -u16");
+    System.err.println("  -watch = rename new or changed files in folders given after this option");
     System.err.println("  -w(#,#,#,#) = normal window position: left, top, width, height;");
     System.err.println("      example: -w(50,50,700,500)");
     System.err.println("  -x = maximize application window; default is normal window");
@@ -2266,6 +3491,61 @@ public class FontRename4
   } // end of sortFileList() method
 
 
+/*
+  undoJournal() method
+
+  Reverse the renames recorded in a journal, starting with the most recent, so
+  that a file renamed more than once goes back through each name in turn.  A
+  rename that was planned but not committed (the program or system stopped in
+  the middle) is reversed only if the new name exists and the old name doesn't.
+  If there is also a journal for this run, then undoing is recorded there like
+  any other rename.
+*/
+  static void undoJournal(String fileName)
+  {
+    int i;                        // index variable
+    File newFile;                 // current name of a renamed file
+    File oldFile;                 // name of file before it was renamed
+    Vector renamed;               // old and new names from journal
+
+    if (fileName.length() == 0)   // did the user give us a file name?
+    {
+      openJournal(fileName, false); // let common code complain about name
+      return;                     // shouldn't get here
+    }
+    try                           // catch I/O errors in journal file
+    {
+      renamed = FontRename4Journal.renamed(FontRename4Journal.read(
+        new File(fileName)));     // files that are known to be renamed
+    }
+    catch (IOException ioe)       // file doesn't exist, permissions, etc
+    {
+      printAlways(fileName + " - can't read journal (" + ioe.getMessage()
+        + ")");
+      return;                     // nothing was renamed
+    }
+
+    for (i = renamed.size() - 1; i >= 0; i --) // newest renames first
+    {
+      if (cancelFlag) return;     // stop if journal for undo fails
+      fileCount ++;               // found one more file to rename back
+      newFile = ((File[]) renamed.get(i))[1];
+      oldFile = ((File[]) renamed.get(i))[0];
+      if (newFile.exists() == false) // is the file still there?
+      {
+        printFailure(newFile.getPath() + " - can't undo, file not found");
+      }
+      else if (oldFile.exists() && (oldFile.equals(newFile) == false))
+      {
+        printFailure(newFile.getPath() + " - can't undo, <"
+          + oldFile.getName() + "> already exists");
+      }
+      else
+        renameFile(newFile, oldFile); // rename back, print result, count
+    }
+  } // end of undoJournal() method
+
+
 /*
   userButton() method
 
@@ -2328,10 +3608,336 @@ public class FontRename4
     }
   } // end of userButton() method
 
+
+/*
+  wantDebug() method
+
+  Return true if detailed debugging messages would be printed.  Callers use
+  this to avoid building message strings that nobody will see.
+*/
+  static boolean wantDebug()
+  {
+    return((cancelFlag == false) && (reportIndex >= 4));
+  }
+
+
+/*
+  watchFolders() method
+
+  Watch the folders given on the command line after the -watch option, and
+  rename font files that are created or changed in those folders (and in their
+  subfolders, if the -s option is also given).  Files that were already there
+  when we started are left alone.  A file is opened only after its size and
+  date have stopped changing for a few seconds, so we don't read a file that is
+  still being copied into the folder.  Renaming a file creates an event for the
+  new name, which we ignore.  This runs until the program is stopped, or until
+  there are no folders to watch (none could be registered, or all of them have
+  been deleted).
+*/
+  static void watchFolders()
+  {
+    long checked;                 // time when we last checked <pending>
+    java.util.List events;        // events from one watch key
+    File file;                    // one file or folder from an event
+    int i;                        // index variable
+    WatchKey key;                 // next signalled watch key, or <null>
+    long now;                     // current time in milliseconds
+    TreeMap pending;              // files waiting to settle, by path name
+    long[] state;                 // size, date, time of last event for a file
+
+    try { watchService = FileSystems.getDefault().newWatchService(); }
+    catch (IOException ioe)       // watching isn't supported everywhere
+    {
+      printAlways("Can't watch folders (" + ioe.getMessage() + ")");
+      return;
+    }
+    watchKeys = new HashMap();    // watched folders by watch key
+    watchRenamed = new HashMap(); // our own new file names, by path name
+    for (i = 0; i < watchList.size(); i ++)
+    {
+      file = (File) watchList.get(i);
+      if (file.isDirectory())     // can only watch folders
+        watchRegister(file, null);
+      else
+        printAlways(file.getPath() + " - not a folder, can't watch");
+    }
+    if (watchKeys.size() == 0)    // was anything registered?
+      return;
+    printAlways("Watching " + prettyPlural(watchKeys.size(), "folder")
+      + " for new or changed font files.");
+
+    checked = System.currentTimeMillis();
+    pending = new TreeMap();      // sorted so files are renamed in order
+    while (true)                  // until the program is stopped
+    {
+      /* Wait for the next event, or until it's time to look at files that may
+      have settled. */
+
+      try { key = watchService.poll(WATCH_DELAY, TimeUnit.MILLISECONDS); }
+      catch (InterruptedException ie) { key = null; }
+      catch (ClosedWatchServiceException cwse) { return; }
+      now = System.currentTimeMillis();
+
+      if (key != null)            // was there an event in a watched folder?
+      {
+        File folder = (File) watchKeys.get(key);
+        events = key.pollEvents(); // all events since last time
+        for (i = 0; i < events.size(); i ++)
+        {
+          WatchEvent event = (WatchEvent) events.get(i);
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+          {
+            printAlways(folder.getPath()
+              + " - too many changes, some files may be missed");
+            continue;             // next step in <for> loop
+          }
+          file = new File(folder, ((Path) event.context()).toString());
+          if ((hiddenFlag == false) && file.isHidden()) // hidden file?
+            continue;             // ignore, same as processFileOrFolder()
+          else if (file.isDirectory()) // new subfolder, maybe with files
+          {
+            if (recurseFlag && (event.kind()
+              == StandardWatchEventKinds.ENTRY_CREATE))
+            {
+              watchRegister(file, pending); // watch subfolder, note files
+            }
+          }
+          else if (watchRenamed.containsKey(file.getAbsolutePath())
+            && (((Long) watchRenamed.get(file.getAbsolutePath())).longValue()
+            == file.lastModified())) // our own rename, unchanged since?
+          {
+            /* This is the event for a name that we created.  We only need to
+            recognize it once, so forget the name, or a program that runs for
+            weeks would remember every file that it renamed. */
+
+            watchRenamed.remove(file.getAbsolutePath());
+          }
+          else                    // new or changed file, wait for it to settle
+          {
+            watchRenamed.remove(file.getAbsolutePath()); // changed by someone
+            pending.put(file.getPath(), new long[] {-1, -1, now});
+          }
+        }
+        if (key.reset() == false) // is the folder still there?
+          watchKeys.remove(key);  // no, stop watching
+      }
+
+      /* Every so often, look at the files waiting to settle.  A file is ready
+      when its size and date are the same as the last time that we looked, and
+      there have been no events for a while. */
+
+      if ((now - checked) < WATCH_DELAY) // too soon to check files again?
+        continue;                 // yes, wait for more events
+      checked = now;
+      Iterator iterator = pending.keySet().iterator();
+      while (iterator.hasNext())
+      {
+        file = new File((String) iterator.next());
+        state = (long[]) pending.get(file.getPath());
+        if (file.isFile() == false) // deleted or renamed by someone else?
+        {
+          iterator.remove();      // forget about it
+        }
+        else if ((file.length() != state[0])
+          || (file.lastModified() != state[1])) // still being written?
+        {
+          state[0] = file.length(); // remember for next time
+          state[1] = file.lastModified();
+        }
+        else if ((now - state[2]) >= WATCH_SETTLE) // quiet long enough?
+        {
+          iterator.remove();      // no longer waiting
+          processUnknownFile(file, allTypesFlag, null); // rename if font
+        }
+      }
+      if (journal != null)        // force any records in journal to disk
+        journal.sync();
+      if (watchKeys.size() == 0)  // are all watched folders gone?
+      {
+        printAlways("No more folders to watch.");
+        return;
+      }
+    }
+  } // end of watchFolders() method
+
+
+/*
+  watchRegister() method
+
+  Start watching a folder, and its subfolders if the -s option was given.  When
+  a new subfolder appears while we are watching, the caller gives us a map for
+  pending files, because files may already be in the subfolder before we start
+  watching it.
+*/
+  static void watchRegister(
+    File folder,                  // folder to watch
+    TreeMap pending)              // add existing files here, or <null>
+  {
+    File[] contents;              // contents of <folder>
+    int i;                        // index variable
+    WatchKey key;                 // registration with <watchService>
+
+    try
+    {
+      key = folder.toPath().register(watchService,
+        new WatchEvent.Kind[] {StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY});
+    }
+    catch (IOException ioe)       // permissions, too many watches, etc
+    {
+      printAlways(folder.getPath() + " - can't watch folder ("
+        + ioe.getMessage() + ")");
+      return;
+    }
+    watchKeys.put(key, folder);   // remember folder for this key
+    printSummary(folder.getPath() + " - watching folder");
+
+    contents = sortFileList(folder.listFiles()); // no filter, but sorted
+    for (i = 0; i < contents.length; i ++)
+    {
+      if ((hiddenFlag == false) && contents[i].isHidden()) // hidden?
+        continue;                 // ignore, same as processFileOrFolder()
+      else if (contents[i].isDirectory()) // a subfolder inside this folder?
+      {
+        if (recurseFlag)          // do subfolders only if option selected
+          watchRegister(contents[i], pending);
+      }
+      else if (pending != null)   // file was there before we started watching?
+      {
+        pending.put(contents[i].getPath(), new long[] {-1, -1,
+          System.currentTimeMillis()});
+      }
+    }
+  } // end of watchRegister() method
+
 } // end of FontRename4 class
 
 // ------------------------------------------------------------------------- //
 
+/*
+  FontRename4Convert class
+
+  This class holds the "convert" commands from the configuration file as a
+  tree (a "trie") of source characters, so that the longest matching sequence
+  of characters is replaced, not just one character at a time.  Most commands
+  convert a single character, so the first level of the tree is a flat array
+  indexed by character for the entire Basic Multilingual Plane (BMP).  Lower
+  levels are sorted character arrays, searched with a binary search.  Nothing
+  is allocated while converting, and nothing changes after the configuration
+  file has been read, so all threads may share the same copy.
+*/
+
+class FontRename4Convert
+{
+  FontRename4Convert[] children;  // next characters in sequence, or <null>
+  boolean flat;                   // true if <children> indexed by character
+  char[] keys;                    // sorted characters for <children>
+  String value;                   // replacement if sequence ends here
+
+  public FontRename4Convert()
+  {
+    this(true);                   // caller gets top level of tree
+  }
+
+  FontRename4Convert(boolean flat)
+  {
+    this.children = null;         // no conversions yet
+    this.flat = flat;
+    this.keys = null;
+    this.value = null;
+  }
+
+  /* add a conversion; return false if source sequence already defined */
+
+  public boolean add(String source, String target)
+  {
+    FontRename4Convert node = this; // start at top of tree
+    for (int i = 0; i < source.length(); i ++) // one level per character
+      node = node.findChild(source.charAt(i), true);
+    if (node.value != null)       // is this sequence already defined?
+      return(false);
+    node.value = target;          // save substitution
+    return(true);
+  }
+
+  /* convert a string, appending the result to the caller's buffer */
+
+  public void convert(String input, StringBuffer buffer)
+  {
+    int length = input.length();  // size of input string in characters
+    int start = 0;                // index of next unconverted character
+    while (start < length)
+    {
+      FontRename4Convert node = findChild(input.charAt(start), false);
+      String best = null;         // longest replacement found so far
+      int bestLength = 1;         // number of characters it replaces
+      int i = start + 1;          // index of next character to match
+      while (node != null)
+      {
+        if (node.value != null)   // is there a replacement this long?
+        {
+          best = node.value;
+          bestLength = i - start;
+        }
+        if (i >= length)          // no more input characters to match
+          break;
+        node = node.findChild(input.charAt(i ++), false);
+      }
+
+      if (best == null)           // is there a translation here?
+        buffer.append(input.charAt(start)); // no, use the original character
+      else
+        buffer.append(best);      // yes, use the sequence's translated string
+      start += bestLength;
+    }
+  }
+
+  /* find the next node for a character, and maybe create a new node */
+
+  FontRename4Convert findChild(char ch, boolean create)
+  {
+    if (flat)                     // top level is a flat array for speed
+    {
+      if (children == null)       // first conversion of any kind?
+      {
+        if (create == false)
+          return(null);
+        children = new FontRename4Convert[Character.MAX_VALUE + 1];
+      }
+      if ((children[ch] == null) && create)
+        children[ch] = new FontRename4Convert(false);
+      return(children[ch]);
+    }
+
+    int found = (keys == null) ? -1 : Arrays.binarySearch(keys, ch);
+    if (found >= 0)               // already have this character?
+      return(children[found]);
+    else if (create == false)     // no, and caller doesn't want a new one
+      return(null);
+
+    int insert = -1 - found;      // index that keeps <keys> sorted
+    int size = (keys == null) ? 0 : keys.length;
+    char[] newKeys = new char[size + 1];
+    FontRename4Convert[] newChildren = new FontRename4Convert[size + 1];
+    if (size > 0)
+    {
+      System.arraycopy(keys, 0, newKeys, 0, insert);
+      System.arraycopy(keys, insert, newKeys, (insert + 1), (size - insert));
+      System.arraycopy(children, 0, newChildren, 0, insert);
+      System.arraycopy(children, insert, newChildren, (insert + 1),
+        (size - insert));
+    }
+    newKeys[insert] = ch;
+    newChildren[insert] = new FontRename4Convert(false);
+    keys = newKeys;
+    children = newChildren;
+    return(newChildren[insert]);
+  }
+
+} // end of FontRename4Convert class
+
+// ------------------------------------------------------------------------- //
+
 /*
   FontRename4Filter class
 
@@ -2353,7 +3959,10 @@ class FontRename4Filter extends javax.swing.filechooser.FileFilter
     if (givenFile.isDirectory()   // allow user to navigate directories
       || name.endsWith(".otf")    // accept this list of file types
       || name.endsWith(".ttc")
-      || name.endsWith(".ttf"))
+      || name.endsWith(".ttf")
+      || name.endsWith(".woff")   // web fonts
+      || name.endsWith(".woff2")
+      || name.endsWith(".zip"))   // archives are searched like folders
     {
       return(true);               // accept directories and most font files
     }
@@ -2364,13 +3973,317 @@ class FontRename4Filter extends javax.swing.filechooser.FileFilter
 
   public String getDescription()
   {
-    return("OpenType and TrueType font files");
+    return("OpenType, TrueType, and WOFF font files, ZIP archives");
   }
 
 } // end of FontRename4Filter class
 
 // ------------------------------------------------------------------------- //
 
+/*
+  FontRename4Journal class
+
+  This class appends records of renamed files to a plain text journal, one line
+  per record: a letter for the type, the old path name, and the new path name,
+  separated by tabs.  A "planned" record is written before a file is renamed,
+  and a "committed" record after.  Each record goes to the operating system in
+  one write, so nothing is lost if only the program stops; records are forced
+  to disk (fsync) once per batch, and when the journal is closed, so a system
+  crash may lose the most recent batch.  Files are still renamed one at a time.
+
+  Reading a journal ignores an unfinished last line, which happens when the
+  program stopped in the middle of writing a record, and opening a journal to
+  add more records removes that unfinished line.  The first line is a header,
+  so that we never read or change a file that isn't a journal, such as when
+  the user mistypes a file name.
+*/
+
+class FontRename4Journal
+{
+  static final int BATCH_SIZE = 64; // records between forced writes to disk
+  static final String COMMITTED = "C"; // record type after renaming file
+  static final String HEADER = "FontRename4 journal 1"; // first line of file
+  static final String PLANNED = "P"; // record type before renaming file
+
+  File file;                      // journal file
+  FileOutputStream stream;        // open for appending, or <null> if closed
+  int unsynced;                   // records written since last forced write
+
+  public FontRename4Journal(File file) throws IOException
+  {
+    RandomAccessFile ramFile;     // for removing an unfinished last line
+    long length;                  // size of existing journal in bytes
+
+    this.file = file;
+    this.unsynced = 0;
+    if (file.exists() && (file.length() > 0)) // adding to an existing journal?
+    {
+      if (isJournal(file) == false) // don't destroy somebody else's file
+        throw new IOException("not a journal file, won't be changed");
+      ramFile = new RandomAccessFile(file, "rw");
+      length = ramFile.length();  // find end of last complete line
+      while (length > (HEADER.length() + 1)) // always keep header line
+      {
+        ramFile.seek(length - 1);
+        if (ramFile.read() == '\n')
+          break;                  // exit early from <while> loop
+        length --;
+      }
+      ramFile.setLength(length);  // no effect if last line is complete
+      ramFile.close();
+      this.stream = new FileOutputStream(file, true);
+    }
+    else                          // new journal starts with header line
+    {
+      this.stream = new FileOutputStream(file, true);
+      this.stream.write((HEADER + "\n").getBytes("UTF-8"));
+    }
+  }
+
+  /* close the journal after forcing any remaining records to disk */
+
+  public synchronized void close()
+  {
+    if (stream == null)           // already closed?
+      return;
+    sync();
+    try { stream.close(); }
+    catch (IOException ioe) { /* records have been forced to disk */ }
+    stream = null;
+  }
+
+  /* escape characters in a path name that separate fields or records */
+
+  static String escape(String text)
+  {
+    StringBuffer buffer = new StringBuffer(text.length() + 16);
+    for (int i = 0; i < text.length(); i ++)
+    {
+      char ch = text.charAt(i);
+      if (ch == '\\') buffer.append("\\\\");
+      else if (ch == '\t') buffer.append("\\t");
+      else if (ch == '\n') buffer.append("\\n");
+      else if (ch == '\r') buffer.append("\\r");
+      else buffer.append(ch);
+    }
+    return(buffer.toString());
+  }
+
+  public String getPath() { return(file.getPath()); }
+
+  /* return true if a file starts with our header line */
+
+  static boolean isJournal(File file) throws IOException
+  {
+    byte[] bytes = new byte[HEADER.length() + 1]; // header and newline
+    RandomAccessFile ramFile = new RandomAccessFile(file, "r");
+    try
+    {
+      if (ramFile.length() < bytes.length) // too short for header?
+        return(false);
+      ramFile.readFully(bytes);
+    }
+    finally { ramFile.close(); }
+    return(new String(bytes, "UTF-8").equals(HEADER + "\n"));
+  }
+
+  /* read all complete records from a journal as arrays of strings: type, old
+  path, new path */
+
+  public static Vector read(File file) throws IOException
+  {
+    byte[] bytes;                 // entire journal file
+    FileInputStream input;        // for reading journal file
+    int start;                    // index of current line in <bytes>
+    Vector result;                // records in order from journal
+
+    if (isJournal(file) == false) // exception if file doesn't exist
+      throw new IOException("not a journal file");
+    bytes = new byte[(int) file.length()];
+    input = new FileInputStream(file);
+    try
+    {
+      int count = 0;              // bytes read so far
+      while (count < bytes.length)
+      {
+        int got = input.read(bytes, count, (bytes.length - count));
+        if (got < 0)
+          break;                  // file got shorter while reading
+        count += got;
+      }
+    }
+    finally { input.close(); }
+
+    result = new Vector();
+    start = HEADER.length() + 1;  // skip header line
+    for (int i = start; i < bytes.length; i ++)
+    {
+      if (bytes[i] != '\n')       // look for end of complete line
+        continue;
+      String[] fields = new String(bytes, start, (i - start), "UTF-8")
+        .split("\t", -1);         // type, old path, new path
+      start = i + 1;              // next line starts after newline
+      if ((fields.length == 3) && (fields[0].equals(COMMITTED)
+        || fields[0].equals(PLANNED)))
+      {
+        fields[1] = unescape(fields[1]);
+        fields[2] = unescape(fields[2]);
+        result.add(fields);
+      }
+    }
+    return(result);
+  }
+
+  /* from records read in a journal, list the files that were renamed (in order)
+  as arrays with old and new File objects */
+
+  public static Vector renamed(Vector records)
+  {
+    boolean[] done;               // true if rename was committed
+    HashMap pending;              // planned renames without commit, by key
+    Vector result;                // renamed files in order
+    Vector planned;               // all renames in order
+
+    pending = new HashMap();
+    planned = new Vector();
+    done = new boolean[records.size()];
+    for (int i = 0; i < records.size(); i ++)
+    {
+      String[] fields = (String[]) records.get(i);
+      String key = fields[1] + "\n" + fields[2]; // old and new path names
+      if (fields[0].equals(PLANNED))
+      {
+        pending.put(key, new Integer(planned.size()));
+        planned.add(fields);
+      }
+      else                        // committed, normally after planned
+      {
+        Integer index = (Integer) pending.remove(key);
+        if (index == null)        // committed without a plan?
+        {
+          index = new Integer(planned.size());
+          planned.add(fields);
+        }
+        done[index.intValue()] = true;
+      }
+    }
+
+    result = new Vector();
+    for (int i = 0; i < planned.size(); i ++)
+    {
+      String[] fields = (String[]) planned.get(i);
+      File oldFile = new File(fields[1]);
+      File newFile = new File(fields[2]);
+      if (done[i] || (newFile.exists() && (oldFile.exists() == false)))
+        result.add(new File[] {oldFile, newFile});
+    }
+    return(result);
+  }
+
+  /* force records to disk, so they survive a system crash */
+
+  public synchronized void sync()
+  {
+    if ((stream == null) || (unsynced == 0)) // anything to force?
+      return;
+    try { stream.getFD().sync(); unsynced = 0; }
+    catch (IOException ioe)
+    {
+      System.err.println("Can't force journal to disk: " + getPath() + " ("
+        + ioe.getMessage() + ")");
+    }
+  }
+
+  /* undo escape() for a path name read from the journal */
+
+  static String unescape(String text)
+  {
+    if (text.indexOf('\\') < 0)   // most path names have nothing escaped
+      return(text);
+    StringBuffer buffer = new StringBuffer(text.length());
+    for (int i = 0; i < text.length(); i ++)
+    {
+      char ch = text.charAt(i);
+      if ((ch == '\\') && ((i + 1) < text.length()))
+      {
+        ch = text.charAt(++ i);
+        if (ch == 't') ch = '\t';
+        else if (ch == 'n') ch = '\n';
+        else if (ch == 'r') ch = '\r';
+      }
+      buffer.append(ch);
+    }
+    return(buffer.toString());
+  }
+
+  /* write one record; return false if the journal can't be written */
+
+  public synchronized boolean write(String type, File oldFile, File newFile)
+  {
+    if (stream == null)           // journal was closed?
+      return(false);
+    try
+    {
+      stream.write((type + "\t" + escape(oldFile.getAbsolutePath()) + "\t"
+        + escape(newFile.getAbsolutePath()) + "\n").getBytes("UTF-8"));
+      if (++ unsynced >= BATCH_SIZE) // time to force a batch to disk?
+      {
+        stream.getFD().sync();
+        unsynced = 0;
+      }
+    }
+    catch (IOException ioe) { return(false); }
+    return(true);
+  }
+
+} // end of FontRename4Journal class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Profile class
+
+  This class holds the commands from one configuration file: the "accept" list
+  for choosing a name from a font's name table, and the "convert" table for
+  changing characters in that name.  Nothing changes after the file has been
+  read, so all threads may share the same profile.
+*/
+
+class FontRename4Profile
+{
+  String[] acceptCharset;         // character set names for <acceptEntries>
+  int[][] acceptEntries;          // preferred order for name table entries
+  FontRename4Accept acceptList;   // <acceptEntries> by platform, name ID
+  FontRename4Convert convertTable; // conversions for file name characters
+  String label;                   // column name in plan files
+
+  public FontRename4Profile(
+    String dataFile,              // configuration file, maybe not found
+    String[] acceptCharset,       // character set names, or <null> entries
+    int[][] acceptEntries,        // name table entries in preferred order
+    FontRename4Convert convertTable) // conversions for file name characters
+  {
+    this.acceptCharset = acceptCharset;
+    this.acceptEntries = acceptEntries;
+    this.acceptList = new FontRename4Accept(acceptEntries); // for lookup
+    this.convertTable = convertTable;
+    this.label = labelFor(dataFile);
+  }
+
+  /* column name for a configuration file: file name without folder or type */
+
+  public static String labelFor(String dataFile)
+  {
+    String name = new File(dataFile).getName(); // remove folder, if any
+    if (name.toLowerCase().endsWith(".txt")) // remove usual file type
+      name = name.substring(0, (name.length() - 4));
+    return(name);
+  }
+
+} // end of FontRename4Profile class
+
+// ------------------------------------------------------------------------- //
+
 /*
   FontRename4User class
 
@@ -2400,4 +4313,874 @@ class FontRename4User implements ActionListener, Runnable
 
 } // end of FontRename4User class
 
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Accept class
+
+  This class is a compiled copy of the "accept" list from the configuration
+  file, so that each name table entry in a font can find its matching "accept"
+  entries with one lookup, instead of comparing against the whole list.  The
+  platform ID and name ID must always be given (no -1 for "any"), so they make
+  a good key.  Each key has the indexes of its "accept" entries in increasing
+  order, which is the order of preference.  We use a small open hash table with
+  integer keys, because Java's collection classes would create a new object
+  for each lookup.  Nothing changes after this is created, so all threads may
+  share the same copy.
+*/
+
+class FontRename4Accept
+{
+  static final int[] EMPTY = new int[0]; // no "accept" entries for this key
+
+  int[] keys;                     // platform ID and name ID for each slot
+  int mask;                       // size of hash table minus one
+  int[][] values;                 // "accept" indexes, or <null> if unused
+
+  public FontRename4Accept(
+    int[][] entries)              // platform, encoding, language, name IDs
+  {
+    int i, k;                     // index variables
+    int size;                     // size of hash table, a power of two
+
+    size = 16;                    // always keep table less than half full
+    while (size < (entries.length * 2))
+      size *= 2;
+    keys = new int[size];
+    mask = size - 1;
+    values = new int[size][];     // all slots start as unused
+
+    for (i = 0; i < entries.length; i ++) // in order of preference
+    {
+      k = find(entries[i][0], entries[i][3]); // slot for platform, name ID
+      if (values[k] == null)      // is this the first entry with this key?
+      {
+        keys[k] = (entries[i][0] << 16) | entries[i][3];
+        values[k] = new int[] {i};
+      }
+      else                        // no, append to existing list of indexes
+      {
+        int[] more = new int[values[k].length + 1];
+        System.arraycopy(values[k], 0, more, 0, values[k].length);
+        more[values[k].length] = i;
+        values[k] = more;
+      }
+    }
+  }
+
+  /* find the slot for a platform ID and name ID, used or unused */
+
+  int find(int platformID, int nameID)
+  {
+    int key = (platformID << 16) | nameID; // both are unsigned 16-bit IDs
+    int k = (key ^ (key >>> 15)) & mask; // first slot to try
+    while ((values[k] != null) && (keys[k] != key))
+      k = (k + 1) & mask;         // linear probing, table is never full
+    return(k);
+  }
+
+  /* return "accept" indexes in order, for a platform ID and name ID */
+
+  public int[] lookup(int platformID, int nameID)
+  {
+    int k = find(platformID, nameID);
+    return((values[k] == null) ? EMPTY : values[k]);
+  }
+
+} // end of FontRename4Accept class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Charsets class
+
+  This class decodes name strings from font files, and checks if names can be
+  encoded in a character set.  Creating a String from bytes with a character
+  set name looks up the character set each time, and creates a new decoder.
+  Here, each thread keeps its own decoders and encoders, one per character set
+  (MacRoman, Shift_JIS, Big5, GBK, EUC-KR, x-Johab, UTF-16, etc), along with
+  buffers for the bytes and characters, all of which are reused.  Decoders and
+  encoders can't be shared between threads.
+
+  Malformed or unmappable bytes become the Unicode replacement character, the
+  same as <new String(bytes, charset)> would give.
+*/
+
+class FontRename4Charsets
+{
+  static ThreadLocal cache = new ThreadLocal(); // one instance per thread
+
+  byte[] bytes;                   // bytes with nulls removed
+  CharBuffer chars;               // decoded characters
+  HashMap decoders;               // character set name to CharsetDecoder
+  HashMap encoders;               // character set name to CharsetEncoder
+
+  public FontRename4Charsets()
+  {
+    bytes = new byte[256];        // big enough for most name strings
+    chars = CharBuffer.allocate(256);
+    decoders = new HashMap();
+    encoders = new HashMap();
+  }
+
+  /* return true if text can be encoded in the given character set, false if
+  not, or if the character set can only decode */
+
+  public static boolean canEncode(String charset, String text)
+    throws UnsupportedEncodingException
+  {
+    FontRename4Charsets local = forThread();
+    CharsetEncoder encoder = (CharsetEncoder) local.encoders.get(charset);
+    if (encoder == null)          // first use of this character set?
+    {
+      Charset lookup = forName(charset);
+      if (lookup.canEncode() == false) // newEncoder() would throw exception
+        return(false);
+      encoder = lookup.newEncoder();
+      local.encoders.put(charset, encoder);
+    }
+    return(encoder.canEncode(text));
+  }
+
+  /* decode bytes from a bigger array, optionally removing null bytes */
+
+  public static String decode(
+    String charset,               // official Java character set name
+    byte[] input,                 // array of encoded bytes
+    int offset,                   // index of first byte for this string
+    int length,                   // number of bytes for this string
+    boolean removeNulls)          // true if we delete null (0x00, 0x7F) bytes
+    throws UnsupportedEncodingException
+  {
+    ByteBuffer in;                // encoded bytes given to decoder
+    int i, to;                    // index variables
+
+    FontRename4Charsets local = forThread();
+    CharsetDecoder decoder = (CharsetDecoder) local.decoders.get(charset);
+    if (decoder == null)          // first use of this character set?
+    {
+      decoder = forName(charset).newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      local.decoders.put(charset, decoder);
+    }
+
+    if (removeNulls)              // copy bytes, except nulls and deletes
+    {
+      if (local.bytes.length < length) // is our byte buffer big enough?
+        local.bytes = new byte[length];
+      to = 0;                     // put next non-null byte at this index
+      for (i = offset; i < (offset + length); i ++)
+      {
+        if ((input[i] != 0x00) && (input[i] != 0x7F))
+          local.bytes[to ++] = input[i]; // all but nulls, deletes
+      }
+      in = ByteBuffer.wrap(local.bytes, 0, to);
+    }
+    else                          // decode directly from caller's array
+      in = ByteBuffer.wrap(input, offset, length);
+
+    int needed = (int) Math.ceil(in.remaining()
+      * (double) decoder.maxCharsPerByte()) + 1;
+    if (local.chars.capacity() < needed) // is our character buffer too small?
+      local.chars = CharBuffer.allocate(needed);
+    local.chars.clear();          // empty character buffer for decoding
+    decoder.reset();              // forget anything from previous string
+    decoder.decode(in, local.chars, true);
+    decoder.flush(local.chars);
+    local.chars.flip();           // prepare characters for reading
+    return(local.chars.toString());
+  }
+
+  /* look up a character set, as the old String methods would */
+
+  static Charset forName(String charset)
+    throws UnsupportedEncodingException
+  {
+    try { return(Charset.forName(charset)); }
+    catch (IllegalArgumentException iae) // illegal or unsupported name
+    {
+      throw new UnsupportedEncodingException(charset);
+    }
+  }
+
+  /* get the decoders and encoders for the current thread */
+
+  static FontRename4Charsets forThread()
+  {
+    FontRename4Charsets local = (FontRename4Charsets) cache.get();
+    if (local == null)            // first use by this thread?
+    {
+      local = new FontRename4Charsets();
+      cache.set(local);
+    }
+    return(local);
+  }
+
+} // end of FontRename4Charsets class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Checksum class
+
+  This class calculates the CRC32 checksum for one font file in a thread from
+  the checksum pool, when font files are parsed in parallel.  Any output is held
+  back for the committer thread, like the output from parsing threads.
+*/
+
+class FontRename4Checksum implements Callable
+{
+  File givenFile;                 // file that we are to read
+  Vector messages;                // output held back for committer
+  Future result;                  // checksum string, when finished
+
+  public FontRename4Checksum(File givenFile)
+  {
+    this.givenFile = givenFile;
+    this.messages = new Vector();
+    this.result = null;           // caller sets this when submitted to pool
+  }
+
+  /* separate thread from the checksum pool */
+
+  public Object call()
+  {
+    FontRename4.messageSink.set(messages); // hold back our output
+    try { return(FontRename4.calculateChecksum(givenFile)); }
+    finally { FontRename4.messageSink.set(null); }
+  }
+
+} // end of FontRename4Checksum class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Committer class
+
+  This class runs the committer thread that renames files in order, when font
+  files are parsed in parallel.
+*/
+
+class FontRename4Committer implements Runnable
+{
+  /* empty constructor */
+
+  public FontRename4Committer() { }
+
+  /* separate thread for renaming files */
+
+  public void run()
+  {
+    FontRename4.doCommitRunner();
+  }
+
+} // end of FontRename4Committer class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Job class
+
+  This class holds one font file while it moves from a parsing thread to the
+  committer thread, along with the name chosen for the file and any output that
+  has been held back.  A job without a file carries only messages.
+*/
+
+class FontRename4Job implements Runnable
+{
+  FontRename4Checksum checksum;   // checksum still to add to name, or <null>
+  boolean done;                   // true when parsing has finished
+  String fileType;                // extension for new name, from signature
+  FontRename4Index folderIndex;   // names in same folder, or <null> if unknown
+  byte[] givenBytes;              // archive entry in memory, or null for file
+  File givenFile;                 // file that we are to open, read, and rename
+  boolean last;                   // true if committer stops after this job
+  boolean[] localChecksum;        // true if name for profile needs checksum
+  Vector messages;                // output held back for committer, or null
+  String nameFound;               // chosen name without extension, or null
+  String[] namesFound;            // chosen name for each profile, or null
+  String oldName;                 // must be *exact* current file name, no path
+  boolean ready;                  // true if parsing was successful
+
+  public FontRename4Job(File givenFile, String oldName)
+  {
+    this.checksum = null;         // by default, name is complete when parsed
+    this.done = false;            // not parsed yet
+    this.fileType = null;         // no name chosen yet
+    this.folderIndex = null;      // by default, ask file system about names
+    this.givenBytes = null;       // by default, read font from file
+    this.givenFile = givenFile;
+    this.last = false;            // assume more jobs will follow
+    this.localChecksum = null;
+    this.messages = null;         // by default, print output directly
+    this.nameFound = null;
+    this.namesFound = null;
+    this.oldName = oldName;
+    this.ready = false;
+  }
+
+  /* separate thread from the parsing pool */
+
+  public void run()
+  {
+    FontRename4.doParseRunner(this);
+  }
+
+  /* add the checksum to names that need one; first profile is for renaming */
+
+  public void setChecksum(String checksum)
+  {
+    for (int i = 0; i < namesFound.length; i ++)
+    {
+      if (localChecksum[i])
+        namesFound[i] += "_" + checksum;
+    }
+    nameFound = namesFound[0];
+  }
+
+  /* tell committer thread that parsing has finished */
+
+  public synchronized void setDone()
+  {
+    done = true;
+    notifyAll();
+  }
+
+  /* committer thread waits here until parsing has finished */
+
+  public synchronized void waitDone()
+  {
+    while (done == false)
+    {
+      try { wait(); }
+      catch (InterruptedException ie) { /* keep waiting */ }
+    }
+  }
+
+} // end of FontRename4Job class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Index class
+
+  This class remembers the names in one folder, from the single listFiles() call
+  that we make anyway when searching the folder, so that we can choose free
+  names for renamed files without asking the file system about each possible
+  suffix.  Names that differ only in uppercase versus lowercase are a problem:
+  they are the same on Windows, different on most UNIX systems, and may be
+  either on a Macintosh.  If we aren't sure, then we ask the file system, but
+  only for that one name.  This index must be kept up to date with any changes
+  that we make, and it's only used by one thread at a time.
+*/
+
+class FontRename4Index
+{
+  File folder;                    // folder where these names are found
+  boolean ignoreCase;             // true if uppercase same as lowercase
+  HashMap lowerNames;             // lowercase name to number of exact names
+  HashSet names;                  // exact names for files and subfolders
+
+  public FontRename4Index(
+    File folder,                  // folder that was searched
+    File[] contents,              // everything found in that folder
+    boolean ignoreCase)           // true if uppercase same as lowercase
+  {
+    int i;                        // index variable
+
+    this.folder = folder;
+    this.ignoreCase = ignoreCase;
+    this.lowerNames = new HashMap();
+    this.names = new HashSet();
+    for (i = 0; i < contents.length; i ++)
+      add(contents[i].getName()); // files, subfolders, everything
+  }
+
+  /* add one name to the index */
+
+  void add(String name)
+  {
+    if (names.add(name))          // ignore duplicates, which shouldn't happen
+    {
+      String lower = name.toLowerCase(); // key for comparing without case
+      int[] count = (int[]) lowerNames.get(lower);
+      if (count == null)          // is this the first name with this key?
+        lowerNames.put(lower, new int[] {1});
+      else
+        count[0] ++;              // no, one more name differing only in case
+    }
+  }
+
+  /* return true if a name is already used by a file or subfolder */
+
+  public boolean contains(String name)
+  {
+    if (names.contains(name))     // is this exact name in the folder?
+      return(true);
+    else if (lowerNames.containsKey(name.toLowerCase()) == false)
+      return(false);              // not even with different uppercase, lowercase
+    else if (ignoreCase)          // does case matter for this system?
+      return(true);               // no, same as the name that was found
+    else                          // not sure, ask the file system this once
+      return((new File(folder, name)).exists());
+  }
+
+  /* remove one name from the index */
+
+  void remove(String name)
+  {
+    if (names.remove(name))       // ignore names that weren't in index
+    {
+      String lower = name.toLowerCase(); // key for comparing without case
+      int[] count = (int[]) lowerNames.get(lower);
+      if ((count != null) && (-- count[0] <= 0))
+        lowerNames.remove(lower); // last name with this key is gone
+    }
+  }
+
+  /* a file has been renamed */
+
+  public void rename(String oldName, String newName)
+  {
+    remove(oldName);
+    add(newName);
+  }
+
+} // end of FontRename4Index class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Input class
+
+  This class holds a font for parseTrueType(): either a file opened for
+  reading, or the bytes of a font that was inflated from a ZIP archive.  See
+  the readBuffer() method, which reads from whichever one we have.  The seek()
+  and readFully() methods are for FontRename4Woff, which is shared with other
+  programs that read fonts like a RandomAccessFile.
+*/
+
+class FontRename4Input
+{
+  byte[] bytes;                   // font in memory, or null for file
+  RandomAccessFile file;          // font file opened for reading, or null
+  int position;                   // current position in <bytes>
+
+  public FontRename4Input(File givenFile, byte[] givenBytes)
+    throws IOException
+  {
+    bytes = givenBytes;
+    file = (givenBytes != null) ? null : new RandomAccessFile(givenFile, "r");
+    position = 0;
+  }
+
+  /* close file, if any */
+
+  public void close() throws IOException
+  {
+    if (file != null)
+      file.close();
+  }
+
+  /* read exactly enough bytes to fill caller's array */
+
+  public void readFully(byte[] buffer) throws IOException
+  {
+    if (file != null)
+      file.readFully(buffer);
+    else if ((bytes.length - position) < buffer.length)
+      throw new EOFException();
+    else
+    {
+      System.arraycopy(bytes, position, buffer, 0, buffer.length);
+      position += buffer.length;
+    }
+  }
+
+  /* set position for next read */
+
+  public void seek(long offset) throws IOException
+  {
+    if (file != null)
+      file.seek(offset);
+    else
+      position = (int) Math.min(offset, bytes.length); // reads will fail
+  }
+
+} // end of FontRename4Input class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  FontRename4Woff class
+
+  WOFF and WOFF2 files are OpenType or TrueType fonts compressed for web pages.
+  Both have a table directory at the start of the file, so we can find the
+  tables we want without expanding the whole font.  WOFF compresses each table
+  separately with "zlib", and we inflate only the tables we want.  WOFF2
+  compresses all tables together as one Brotli stream, which we decode only as
+  far as the end of the last table we want.  Java doesn't have a Brotli decoder
+  built in, so WOFF2 files can only be read if the "org.brotli.dec" package
+  (the decoder published by Google) is on the class path.
+
+  The result is a small font file in memory: an Offset Table with the same
+  entries as the original, but only the tables we asked for have any data.
+  (The others have zero length.)  A WOFF2 collection becomes a TrueType
+  collection.  Checksums are not calculated.  We return null if the file is
+  not a well-formed WOFF or WOFF2 file, and throw an exception only for I/O
+  errors.
+
+  Each program is one self-contained source file, so this class is also
+  copied into FontNames3.java (as FontNames3Woff) and FontRedate3.java (as
+  FontRedate3Woff).  Apart from the program name in class names, the three
+  copies are identical: a change here must be made in all of them.
+*/
+
+class FontRename4Woff
+{
+  /* constants */
+
+  static final String BROTLI_CLASS = "org.brotli.dec.BrotliInputStream";
+                                  // optional decoder for WOFF2 files
+  static final String[] KNOWN_TAGS = {"cmap", "head", "hhea", "hmtx", "maxp",
+    "name", "OS/2", "post", "cvt ", "fpgm", "glyf", "loca", "prep", "CFF ",
+    "VORG", "EBDT", "EBLC", "gasp", "hdmx", "kern", "LTSH", "PCLT", "VDMX",
+    "vhea", "vmtx", "BASE", "GDEF", "GPOS", "GSUB", "EBSC", "JSTF", "MATH",
+    "CBDT", "CBLC", "COLR", "CPAL", "SVG ", "sbix", "acnt", "avar", "bdat",
+    "bloc", "bsln", "cvar", "fdsc", "feat", "fmtx", "fvar", "gvar", "hsty",
+    "just", "lcar", "mort", "morx", "opbd", "prop", "trak", "Zapf", "Silf",
+    "Glat", "Gloc", "Feat", "Sill"}; // WOFF2 table tags by number, 0 to 62
+  static final int MAX_TABLE = 0x1000000; // largest table we expand (16 MB)
+  static final int MAX_WOFF2 = 0x4000000; // largest WOFF2 file we read (64 MB)
+  static final long WOFF = 0x774F4646L; // "wOFF" signature for WOFF files
+  static final long WOFF2 = 0x774F4632L; // "wOF2" signature for WOFF2 files
+
+  /* is there a Brotli decoder for WOFF2 files? */
+
+  static boolean brotliAvailable()
+  {
+    try
+    {
+      Class.forName(BROTLI_CLASS);
+      return(true);
+    }
+    catch (ClassNotFoundException cnfe) { return(false); }
+    catch (LinkageError le) { return(false); }
+  }
+
+  /* build a font file in memory from the tables that we expanded */
+
+  static byte[] build(
+    long[] flavors,               // signature for each font's Offset Table
+    int[][] fonts,                // table numbers used by each font
+    String[] tags,                // tag for each table in WOFF directory
+    byte[][] tables,              // expanded data for each table, or null
+    boolean collection)           // true if we build a TrueType collection
+    throws IOException
+  {
+    int f, i, size;               // index variables, size of result
+    int[] where;                  // offset of each table in result
+
+    size = collection ? (12 + (4 * fonts.length)) : 0; // TTC header
+    for (f = 0; f < fonts.length; f ++)
+      size += 12 + (16 * fonts[f].length); // each Offset Table
+    where = new int[tables.length];
+    for (i = 0; i < tables.length; i ++)
+    {
+      where[i] = size;            // tables follow the Offset Tables
+      if (tables[i] != null)      // and are aligned on four bytes
+        size += (tables[i].length + 3) & ~3;
+    }
+
+    ByteBuffer result = ByteBuffer.allocate(size); // big-endian by default
+    if (collection)
+    {
+      result.putInt(0x74746366);  // "ttcf" for TrueType collection
+      result.putInt(0x00010000);  // version 1.0, no digital signature
+      result.putInt(fonts.length);
+      result.position(12 + (4 * fonts.length)); // offsets filled in below
+    }
+    for (f = 0; f < fonts.length; f ++)
+    {
+      if (collection)             // location of this font's Offset Table
+        result.putInt((12 + (4 * f)), result.position());
+      result.putInt((int) flavors[f]);
+      result.putShort((short) fonts[f].length);
+      result.putShort((short) 0).putShort((short) 0).putShort((short) 0);
+                                  // search ranges aren't used by us
+      for (i = 0; i < fonts[f].length; i ++)
+      {
+        int table = fonts[f][i];  // table number in WOFF directory
+        result.put(tags[table].getBytes("ISO-8859-1"));
+        result.putInt(0);         // no checksum
+        result.putInt((tables[table] == null) ? 0 : where[table]);
+        result.putInt((tables[table] == null) ? 0 : tables[table].length);
+      }
+    }
+    for (i = 0; i < tables.length; i ++)
+    {
+      if (tables[i] != null)
+      {
+        result.position(where[i]);
+        result.put(tables[i]);
+      }
+    }
+    return(result.array());
+  }
+
+  /* expand the wanted tables from a WOFF or WOFF2 file */
+
+  static byte[] extract(
+    FontRename4Input input,       // WOFF or WOFF2 file opened for reading
+    long fileSize,                // size of file in bytes
+    String[] wanted)              // tags of tables that caller wants
+    throws IOException
+  {
+    try
+    {
+      if (fileSize < 48)          // need this many bytes for either header
+        return(null);
+      ByteBuffer header = ByteBuffer.wrap(readAt(input, 0, 48));
+      if ((((long) header.getInt(0)) & 0xFFFFFFFFL) == WOFF)
+        return(extractWoff(input, fileSize, header, wanted));
+      else if (fileSize > MAX_WOFF2) // don't run out of memory for one font
+        return(null);
+      else
+        return(extractWoff2(readAt(input, 0, (int) fileSize), wanted));
+    }
+    catch (BufferUnderflowException bue) { return(null); }
+    catch (DataFormatException dfe) { return(null); }
+  }
+
+  /* WOFF: inflate each wanted table separately */
+
+  static byte[] extractWoff(
+    FontRename4Input input,       // WOFF file opened for reading
+    long fileSize,                // size of file in bytes
+    ByteBuffer header,            // first 48 bytes of file
+    String[] wanted)              // tags of tables that caller wants
+    throws DataFormatException, IOException
+  {
+    int numTables = header.getShort(12) & 0xFFFF; // entries in directory
+    if ((numTables < 1) || (fileSize < (44 + (20 * numTables))))
+      return(null);
+    ByteBuffer directory = ByteBuffer.wrap(readAt(input, 44,
+      (20 * numTables)));
+    int[] font = new int[numTables]; // one font using every table
+    String[] tags = new String[numTables];
+    byte[][] tables = new byte[numTables][];
+    for (int i = 0; i < numTables; i ++)
+    {
+      font[i] = i;
+      tags[i] = tagText(directory.getInt(20 * i));
+      if (wants(wanted, tags[i]) == false)
+        continue;                 // don't expand tables we don't want
+      long offset = ((long) directory.getInt((20 * i) + 4)) & 0xFFFFFFFFL;
+      long compLength = ((long) directory.getInt((20 * i) + 8)) & 0xFFFFFFFFL;
+      long origLength = ((long) directory.getInt((20 * i) + 12))
+        & 0xFFFFFFFFL;
+      if ((origLength > MAX_TABLE) || (compLength > origLength)
+        || ((offset + compLength) > fileSize))
+      {
+        return(null);             // table directory is damaged
+      }
+      tables[i] = readAt(input, offset, (int) compLength);
+      if (compLength < origLength) // same length means not compressed
+      {
+        Inflater inflater = new Inflater(); // "zlib" format with header
+        inflater.setInput(tables[i]);
+        tables[i] = new byte[(int) origLength];
+        int length = inflater.inflate(tables[i]);
+        inflater.end();
+        if (length != origLength) // did we get exactly the original size?
+          return(null);
+      }
+    }
+    return(build(new long[] {((long) header.getInt(4)) & 0xFFFFFFFFL},
+      new int[][] {font}, tags, tables, false));
+  }
+
+  /* WOFF2: decode the Brotli stream as far as the last wanted table */
+
+  static byte[] extractWoff2(
+    byte[] file,                  // entire WOFF2 file in memory
+    String[] wanted)              // tags of tables that caller wants
+    throws IOException
+  {
+    ByteBuffer buffer = ByteBuffer.wrap(file); // big-endian by default
+    long flavor = ((long) buffer.getInt(4)) & 0xFFFFFFFFL;
+    int numTables = buffer.getShort(12) & 0xFFFF; // entries in directory
+    long compressed = ((long) buffer.getInt(20)) & 0xFFFFFFFFL;
+    if (numTables < 1)
+      return(null);
+
+    /* Table directory: one flag byte, maybe a tag, then variable-length
+    numbers for the original length and (if transformed) the stored length.
+    Tables are stored in directory order, with no padding.  Transformed tables
+    ("glyf", "loca", "hmtx") are never tables that we want. */
+
+    buffer.position(48);          // directory follows header
+    int last = -1;                // index of last table we want
+    long[] lengths = new long[numTables]; // bytes in decoded stream
+    String[] tags = new String[numTables];
+    boolean[] wantFlags = new boolean[numTables];
+    for (int i = 0; i < numTables; i ++)
+    {
+      int flags = buffer.get() & 0xFF;
+      tags[i] = ((flags & 0x3F) == 0x3F) ? tagText(buffer.getInt())
+        : KNOWN_TAGS[flags & 0x3F];
+      long origLength = readBase128(buffer);
+      int version = flags >> 6;   // transformation version
+      boolean transformed = (tags[i].equals("glyf") || tags[i].equals("loca"))
+        ? (version != 3) : (version != 0);
+      lengths[i] = transformed ? readBase128(buffer) : origLength;
+      if ((origLength < 0) || (lengths[i] < 0))
+        return(null);             // bad variable-length number
+      wantFlags[i] = (transformed == false) && wants(wanted, tags[i])
+        && (origLength <= MAX_TABLE);
+      if (wantFlags[i])
+        last = i;
+    }
+
+    /* Collection directory, if any: table numbers used by each font. */
+
+    int[][] fonts;                // table numbers used by each font
+    long[] flavors;               // signature for each font
+    if (flavor == 0x74746366L)    // "ttcf" for TrueType collection
+    {
+      buffer.getInt();            // skip TTC version
+      fonts = new int[read255UShort(buffer)][];
+      flavors = new long[fonts.length];
+      for (int f = 0; f < fonts.length; f ++)
+      {
+        fonts[f] = new int[read255UShort(buffer)];
+        flavors[f] = ((long) buffer.getInt()) & 0xFFFFFFFFL;
+        for (int i = 0; i < fonts[f].length; i ++)
+        {
+          fonts[f][i] = read255UShort(buffer);
+          if (fonts[f][i] >= numTables)
+            return(null);         // table number is out of range
+        }
+      }
+    }
+    else                          // one font using every table
+    {
+      fonts = new int[1][numTables];
+      flavors = new long[] {flavor};
+      for (int i = 0; i < numTables; i ++)
+        fonts[0][i] = i;
+    }
+    if ((buffer.position() + compressed) > file.length)
+      return(null);               // compressed data goes past end of file
+
+    /* Decode only as far as the end of the last table that we want. */
+
+    byte[][] tables = new byte[numTables][];
+    if (last >= 0)                // is there anything to decode?
+    {
+      InputStream stream;         // Brotli decoder for compressed data
+      try
+      {
+        stream = (InputStream) Class.forName(BROTLI_CLASS).getConstructor(
+          new Class[] {InputStream.class}).newInstance(new Object[] {
+          new ByteArrayInputStream(file, buffer.position(),
+          (int) compressed)});
+      }
+      catch (Exception e) { return(null); } // no decoder, or bad stream
+      DataInputStream data = new DataInputStream(stream);
+      try
+      {
+        for (int i = 0; i <= last; i ++)
+        {
+          if (wantFlags[i])       // read tables we want
+          {
+            tables[i] = new byte[(int) lengths[i]];
+            data.readFully(tables[i]);
+          }
+          else                    // skip tables we don't want
+          {
+            for (long skip = lengths[i]; skip > 0; )
+            {
+              int count = data.skipBytes((int) Math.min(skip, 0x10000));
+              if (count <= 0)     // end of stream before end of table
+                throw new EOFException();
+              skip -= count;
+            }
+          }
+        }
+      }
+      catch (IOException ioe) { return(null); } // bad compressed data
+      finally { data.close(); }
+    }
+    return(build(flavors, fonts, tags, tables, (flavor == 0x74746366L)));
+  }
+
+  /* read a 255UInt16 number from WOFF2 collection directory */
+
+  static int read255UShort(ByteBuffer buffer)
+  {
+    int code = buffer.get() & 0xFF;
+    if (code == 253)              // next two bytes are the value
+      return(buffer.getShort() & 0xFFFF);
+    else if (code == 254)         // second group of 253 values
+      return((buffer.get() & 0xFF) + 506);
+    else if (code == 255)         // first group of 253 values
+      return((buffer.get() & 0xFF) + 253);
+    return(code);                 // small values are only one byte
+  }
+
+  /* read bytes from any location in the file */
+
+  static byte[] readAt(
+    FontRename4Input input,       // file or memory opened for reading
+    long offset,                  // starting byte position in file
+    int length)                   // number of bytes to read
+    throws IOException
+  {
+    byte[] result = new byte[length];
+    input.seek(offset);
+    input.readFully(result);
+    return(result);
+  }
+
+  /* read a UIntBase128 number from WOFF2 table directory, or -1 if bad */
+
+  static long readBase128(ByteBuffer buffer)
+  {
+    long result = 0;
+    for (int i = 0; i < 5; i ++)  // at most five bytes for 32 bits
+    {
+      int digit = buffer.get() & 0xFF;
+      if ((i == 0) && (digit == 0x80)) // leading zeros aren't allowed
+        return(-1);
+      result = (result << 7) | (digit & 0x7F);
+      if ((digit & 0x80) == 0)    // high bit clear on last byte
+        return((result > 0xFFFFFFFFL) ? -1 : result);
+    }
+    return(-1);                   // more than five bytes
+  }
+
+  /* convert a four-byte tag to a string */
+
+  static String tagText(int tag)
+  {
+    char[] result = new char[4];
+    for (int i = 0; i < 4; i ++)
+      result[i] = (char) ((tag >> (24 - (8 * i))) & 0xFF);
+    return(new String(result));
+  }
+
+  /* is this tag in the caller's list? */
+
+  static boolean wants(String[] wanted, String tag)
+  {
+    for (int i = 0; i < wanted.length; i ++)
+      if (wanted[i].equals(tag))
+        return(true);
+    return(false);
+  }
+
+} // end of FontRename4Woff class
+
 /* Copyright (c) 2009 by Keith Fenske.  Released under GNU Public License. */